@@ -8,69 +8,40 @@
  ********************************************************* {COPYRIGHT-END} **/
 package com.sourcepatch.ctviz;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.URL;
-import java.nio.file.Files;
+import java.net.URLEncoder;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
+import java.util.regex.Pattern;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Unmarshaller;
-
-import org.gephi.graph.api.DirectedGraph;
+import org.gephi.graph.api.Column;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
 import org.gephi.graph.api.Table;
-import org.gephi.io.exporter.api.ExportController;
-import org.gephi.layout.plugin.AutoLayout;
-import org.gephi.layout.plugin.fruchterman.FruchtermanReingold;
+import org.gephi.io.importer.api.Container;
+import org.gephi.io.importer.api.ImportController;
+import org.gephi.io.processor.plugin.DefaultProcessor;
 import org.gephi.project.api.Project;
 import org.gephi.project.api.ProjectController;
 import org.gephi.project.api.Workspace;
 import org.openide.util.Lookup;
 
-import com.google.maps.GeoApiContext;
-import com.google.maps.GeocodingApi;
-import com.google.maps.GeocodingApiRequest;
-import com.google.maps.model.ComponentFilter;
-import com.google.maps.model.GeocodingResult;
-import com.google.maps.model.LatLng;
-import com.sourcepatch.ctviz.ctgov.AddressStruct;
-import com.sourcepatch.ctviz.ctgov.AgencyClassEnum;
-import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
-import com.sourcepatch.ctviz.ctgov.EligibilityStruct;
-import com.sourcepatch.ctviz.ctgov.FacilityStruct;
-import com.sourcepatch.ctviz.ctgov.InterventionStruct;
-import com.sourcepatch.ctviz.ctgov.InterventionTypeEnum;
-import com.sourcepatch.ctviz.ctgov.SponsorsStruct;
-import com.sourcepatch.ctviz.ctgov.StudyDesignInfoStruct;
-import com.sourcepatch.ctviz.ctgov.StudyTypeEnum;
-
 /**
  * Converts a clinical trial search into a graph visualization.
  * 
@@ -78,16 +49,61 @@ import com.sourcepatch.ctviz.ctgov.StudyTypeEnum;
  */
 public class App {
 
-	private static final String NCT_DATE_PATTERN_1 = "MMMMM yyyy";
-	private static final String NCT_DATE_PATTERN_2 = "MMMMM dd, yyyy";
-	private static final SimpleDateFormat NCT_DATE_FORMAT_1 = new SimpleDateFormat(NCT_DATE_PATTERN_1);
-	private static final SimpleDateFormat NCT_DATE_FORMAT_2 = new SimpleDateFormat(NCT_DATE_PATTERN_2);
+	/**
+	 * Number of threads unmarshalling studies during ingestion. Zero processes
+	 * each study on the thread building the graph.
+	 */
+	private static final String PROPERTY_INGEST_WORKERS = "ctviz.ingest.workers";
+
+	/**
+	 * Maximum number of studies waiting between the archive reader and the
+	 * graph writer.
+	 */
+	private static final String PROPERTY_INGEST_QUEUE = "ctviz.ingest.queue";
+
+	/**
+	 * Local clinical trial archive, or directory of study XML files, to build
+	 * the graph from, instead of downloading the search results.
+	 */
+	private static final String PROPERTY_ARCHIVE = "ctviz.archive";
+
+	/**
+	 * Regular expression selecting the NCT ids to ingest from a local archive.
+	 */
+	private static final String PROPERTY_NCT_FILTER = "ctviz.ingest.nct.filter";
+
+	/**
+	 * Graph exported by a previous run, updated with the trials in
+	 * {@link #PROPERTY_ARCHIVE} instead of building a new graph.
+	 */
+	private static final String PROPERTY_UPDATE_GRAPH = "ctviz.update.graph";
+
+	/**
+	 * Number of addresses geocoded at the same time.
+	 */
+	private static final String PROPERTY_GEOCODE_THREADS = "ctviz.geocode.threads";
+
+	/**
+	 * Maximum queries per second sent to the geocoding service.
+	 */
+	private static final String PROPERTY_GEOCODE_QPS = "ctviz.geocode.qps";
+
+	/**
+	 * Attempts for each address before leaving it without coordinates.
+	 */
+	private static final String PROPERTY_GEOCODE_ATTEMPTS = "ctviz.geocode.attempts";
+
+	/**
+	 * Positions the nodes before the export: <code>force</code> for a
+	 * {@link ForceLayout}, <code>geo</code> for a {@link GeoLayout} placing
+	 * the nodes on a map.
+	 */
+	private static final String PROPERTY_LAYOUT = "ctviz.layout";
 
 	private Map<String, String> stateAbbrev = new TreeMap<>();
-	private Map<String, String> cuiDisease = new TreeMap<>();
-	private Map<String, String> diseaseCui = new TreeMap<>();
-	private Map<String, String> nctConditionDisease = new TreeMap<>();
-	private Map<String, LatLng> locationCoordMap = new TreeMap<>();
+	private ConditionDictionary conditionDictionary = ConditionDictionary.empty();
+	private ConditionNormalizer conditionNormalizer = new ConditionNormalizer(conditionDictionary,
+			ConditionNormalizer.DEFAULT_CACHE_SIZE, null);
 
 	/**
 	 * Google GeoCode API key
@@ -95,8 +111,13 @@ public class App {
 	 * @see https://developers.google.com/maps/documentation/geocoding/intro#geocoding
 	 */
 	private static final String PROPERTY_GOOGLE_MAPS_APIKEY = "google.maps.apikey";
-	private static final GeoApiContext googleGeoContext = new GeoApiContext()
-			.setApiKey(System.getProperty(PROPERTY_GOOGLE_MAPS_APIKEY));
+
+	private TrialSource trialSource = TrialSource.fromProperties();
+
+	private GeocodeCache geocoder = new GeocodeCache(
+			Paths.get(System.getProperty(GeocodeCache.PROPERTY_CACHE_FILE, GeocodeCache.DEFAULT_CACHE_FILE.toString())),
+			new RateLimitedGeocoder(new GoogleGeocoder(System.getProperty(PROPERTY_GOOGLE_MAPS_APIKEY)),
+					Double.parseDouble(System.getProperty(PROPERTY_GEOCODE_QPS, "10"))));
 
 	/*
 	 * Ensuring default logging properties are loaded
@@ -129,7 +150,11 @@ public class App {
 	 * Applicationentry point
 	 * 
 	 * @param args
-	 *            0 - search term
+	 *            0 - search term, unless <code>ctviz.archive</code> points to
+	 *            a local archive. With <code>ctviz.update.graph</code>, the
+	 *            archive holds the trials changed since that graph was
+	 *            exported. Ignored when <code>ctviz.service.port</code>
+	 *            starts a {@link GraphService} instead.
 	 * 
 	 * @throws Exception
 	 */
@@ -138,41 +163,49 @@ public class App {
 
 		app.init();
 
-		String searchTerm = args[0];
-		Workspace w = app.generateGraph(searchTerm);
+		if (System.getProperty(GraphService.PROPERTY_PORT) != null) {
+			GraphService.fromProperties(app::buildSnapshot).start();
+			return;
+		}
+
+		String archive = System.getProperty(PROPERTY_ARCHIVE);
+		String updateGraph = System.getProperty(PROPERTY_UPDATE_GRAPH);
+		Workspace w = null;
+		if (archive != null) {
+			Pattern nctFilter = Pattern.compile(System.getProperty(PROPERTY_NCT_FILTER, ".*"));
+			Predicate<String> nctIdFilter = nctId -> nctFilter.matcher(nctId).matches();
+			if (updateGraph != null) {
+				w = app.updateGraph(Paths.get(updateGraph), Paths.get(archive), nctIdFilter);
+			} else {
+				w = app.generateGraph(Paths.get(archive), nctIdFilter);
+			}
+		} else if (updateGraph != null) {
+			throw new IllegalArgumentException(
+					PROPERTY_UPDATE_GRAPH + " requires " + PROPERTY_ARCHIVE + " with the trials to update.");
+		} else {
+			String searchTerm = args[0];
+			w = app.generateGraph(searchTerm);
+		}
 
 		// See if graph is well imported
 		GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
 		GraphModel gm = graphController.getGraphModel(w);
-		DirectedGraph g = gm.getDirectedGraph();
 
-		// Run Tasks and wait for termination in the current thread
-		// createLayoutRunnable(gm);
+		layout(gm);
 
 		// Export
-		Path outGraph = Paths.get("out/ctgraph.gexf");
-		Files.createDirectories(outGraph.getParent());
-
-		ExportController ec = Lookup.getDefault().lookup(ExportController.class);
-		ec.exportFile(outGraph.toFile(), w);
+		Path outGraph = GraphExporter.getOutputFile(Paths.get("out/ctgraph.gexf"));
+		ExportableGraph<Node, Edge> exportable = toExportable(gm);
+		GraphExporter.fromProperties().export(exportable, outGraph);
 
 		LOG.info("Output graph written to " + outGraph.toFile().getAbsolutePath());
 
-		Path outConditionPhrases = Paths.get("out/ct.condition.phrases.txt");
-		try (PrintWriter pw = new PrintWriter(outConditionPhrases.toFile())) {
-			g.getNodes().toCollection().stream()
-					.filter(n -> n.getAttribute(GraphSchema.VERTEX_PROPERTY_CONDITION_RAW) != null)
-					.forEach(n -> pw.println(n.getAttribute(GraphSchema.VERTEX_PROPERTY_CONDITION_RAW) + " ."));
-		}
+		Path outSnapshot = Paths.get("out/ctgraph" + GraphSnapshot.FILE_EXTENSION);
+		toSnapshot(gm).write(outSnapshot);
+		LOG.info("Graph snapshot written to " + outSnapshot.toFile().getAbsolutePath());
 
-		Path outInterventionPhrases = Paths.get("out/ct.intervention.phrases.txt");
-		try (PrintWriter pw = new PrintWriter(outInterventionPhrases.toFile())) {
-			g.getNodes().toCollection().stream()
-					.filter(n -> n.getAttribute(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME) != null)
-					.forEach(n -> pw.println(n.getAttribute(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME) + " ."));
-		}
-
-		LOG.info("Output conditions written to " + outConditionPhrases.toFile().getAbsolutePath());
+		PhraseExporter.fromProperties(Paths.get("out")).export(exportable);
+		LOG.info("Output phrases written to " + Paths.get("out").toFile().getAbsolutePath());
 	}
 
 	/**
@@ -189,23 +222,11 @@ public class App {
 	 * @throws IOException
 	 */
 	public void loadConditionMaps() throws IOException {
-		try (ZipFile zf = new ZipFile("src/main/resources/MRCONSO.conditions.zip")) {
-			ZipEntry entry = zf.getEntry("dsyn.rrf");
-			InputStream zis = zf.getInputStream(entry);
-			BufferedReader br = new BufferedReader(new InputStreamReader(zis));
-
-			String line = null;
-			while ((line = br.readLine()) != null) {
-				String[] tokens = line.split("\\|");
-				String cui = tokens[0];
-				String preferredName = tokens[14];
-
-				cuiDisease.put(cui, preferredName);
-				diseaseCui.put(preferredName, cui);
-			}
-		}
-		LOG.info("Loaded condition maps. Unique concepts:" + cuiDisease.size() + " Unique surface forms:"
-				+ diseaseCui.size());
+		conditionDictionary = ConditionDictionary.open();
+		LOG.info("Loaded condition maps. Unique concepts:" + conditionDictionary.getConceptCount()
+				+ " Unique surface forms:" + conditionDictionary.getSurfaceFormCount() + " Matcher states:"
+				+ conditionDictionary.getMatcher().size());
+		conditionNormalizer = ConditionNormalizer.fromProperties(conditionDictionary);
 	}
 
 	/**
@@ -213,29 +234,55 @@ public class App {
 	 * @throws IOException
 	 */
 	public void loadStateAbbreviationMap() throws IOException {
+		stateAbbrev.putAll(StudyGraphBuilder.loadStateAbbreviations());
+	}
 
-		try (InputStream resourceAsStream = getClass().getResourceAsStream("/states.csv");
-				InputStreamReader in = new InputStreamReader(resourceAsStream);
-				BufferedReader br = new BufferedReader(in)) {
+	/**
+	 * 
+	 * @param trialSource
+	 *            source of the trials of {@link #generateGraph(String)},
+	 *            clinicaltrials.gov by default
+	 */
+	public void setTrialSource(TrialSource trialSource) {
+		this.trialSource = trialSource;
+	}
 
-			String line = null;
-			while ((line = br.readLine()) != null) {
-				String[] tokens = line.split(",");
-				String expanded = tokens[0];
-				String abbrv = tokens[1];
+	/**
+	 * 
+	 * @param searchTerm
+	 * @return
+	 * @throws Exception
+	 */
+	public Workspace generateGraph(String searchTerm) throws Exception {
+		return generateGraph(trialSource, searchTerm, nctId -> true);
+	}
 
-				stateAbbrev.put(expanded, abbrv);
-			}
-		}
+	/**
+	 * 
+	 * @param archive
+	 *            clinical trial archive previously downloaded from
+	 *            clinicaltrials.gov, or directory of study XML files
+	 * @param nctIdFilter
+	 *            selects the trials to add to the graph
+	 * @return
+	 * @throws Exception
+	 */
+	public Workspace generateGraph(Path archive, Predicate<String> nctIdFilter) throws Exception {
+		return generateGraph(new LocalTrialSource(archive), archive.toString(), nctIdFilter);
 	}
 
 	/**
 	 * 
+	 * @param source
+	 *            source of the trials
 	 * @param searchTerm
+	 * @param nctIdFilter
+	 *            selects the trials to add to the graph
 	 * @return
 	 * @throws Exception
 	 */
-	public Workspace generateGraph(String searchTerm) throws Exception {
+	public Workspace generateGraph(TrialSource source, String searchTerm, Predicate<String> nctIdFilter)
+			throws Exception {
 		// Init a project - and therefore a workspace
 		ProjectController pc = Lookup.getDefault().lookup(ProjectController.class);
 		pc.newProject();
@@ -246,534 +293,445 @@ public class App {
 		GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
 		GraphModel gm = graphController.getGraphModel(result);
 
-		addGraphMetadata(gm);
-
-		Graph g = gm.getGraph();
-
-		String instancePath = "com.sourcepatch.ctviz.ctgov";
-		JAXBContext jc = JAXBContext.newInstance(instancePath);
-		Unmarshaller u = jc.createUnmarshaller();
-
-		String urlStr = "https://clinicaltrials.gov/ct2/results/download?down_stds=all&down_typ=results&down_flds=shown&down_fmt=plain&show_down=Y&term=";
-		urlStr += searchTerm;
-		URL url = new URL(urlStr);
-		int trialCount = 0;
-		Path target = Files.createTempFile("ct", "zip");
-		try (InputStream is = url.openStream()) {
-			Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING);
+		try (StudyArchive archive = source.open(searchTerm, nctIdFilter)) {
+			LOG.info("Starting graph generation.");
+			ingestArchive(archive, newGraphBuilder(new GephiGraphSink(gm)));
 		}
-		LOG.info("NCT download from [" + urlStr + "] complete.");
-
-		LOG.info("Starting graph generation.");
-		try (InputStream is = new FileInputStream(target.toFile()); ZipInputStream zis = new ZipInputStream(is)) {
 
-			/* int entries = 10; */
-			ZipEntry ctXmlEntry = null;
-			while ((ctXmlEntry = zis
-					.getNextEntry()) != null /* && entries-- >= 0 */) {
+		return result;
+	}
 
-				LOG.info(ctXmlEntry.getName());
+	/**
+	 * Builds the graph of a search term into a snapshot, laid out according
+	 * to <code>ctviz.layout</code>, and closes its Gephi project.
+	 * 
+	 * @param searchTerm
+	 * @param snapshot
+	 *            file receiving the graph
+	 * @throws Exception
+	 */
+	public void buildSnapshot(String searchTerm, Path snapshot) throws Exception {
+		Workspace w = generateGraph(URLEncoder.encode(searchTerm, "UTF-8"));
+		try {
+			GraphModel gm = Lookup.getDefault().lookup(GraphController.class).getGraphModel(w);
+			layout(gm);
+			toSnapshot(gm).write(snapshot);
+		} finally {
+			Lookup.getDefault().lookup(ProjectController.class).closeCurrentProject();
+		}
+	}
 
-				Path tf = Files.createTempFile(GraphSchema.EDGE_PROPERTY_NCT_ID, "xml");
-				Files.copy(zis, tf, StandardCopyOption.REPLACE_EXISTING);
+	/**
+	 * Loads a graph exported by a previous run and replaces the trials that
+	 * changed since, keeping the rest of the graph.
+	 * 
+	 * <p>
+	 * Trials are matched by NCT id. A trial whose last update date is the
+	 * same as in the graph is left alone. Otherwise its vertex and its edges
+	 * are replaced, its NCT id is removed from the sponsor edges, and
+	 * vertices left without edges are removed.
+	 * 
+	 * @param graphFile
+	 *            GEXF file or graph snapshot exported by a previous run
+	 * @param archive
+	 *            clinical trial archive with the trials added or changed
+	 *            since the graph was exported
+	 * @param nctIdFilter
+	 *            selects the trials to update
+	 * @return
+	 * @throws Exception
+	 */
+	public Workspace updateGraph(Path graphFile, Path archive, Predicate<String> nctIdFilter) throws Exception {
+		ProjectController pc = Lookup.getDefault().lookup(ProjectController.class);
+		pc.newProject();
+		Project p = pc.getProjects().getProjects()[0];
 
-				try (InputStream ftf = Files.newInputStream(tf)) {
-					Object obj = u.unmarshal(ftf);
-					ClinicalStudy study = (ClinicalStudy) obj;
-					Files.delete(tf);
+		Workspace result = pc.newWorkspace(p);
 
-					addStudyToGraph(study, gm);
-					trialCount++;
-				}
+		long start = System.nanoTime();
+		GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
+		if (GraphSnapshot.isSnapshot(graphFile)) {
+			fromSnapshot(GraphSnapshot.load(graphFile), graphController.getGraphModel(result));
+		} else {
+			ImportController importController = Lookup.getDefault().lookup(ImportController.class);
+			Container container = importController.importFile(graphFile.toFile());
+			if (container == null) {
+				throw new IOException("Unable to import graph " + graphFile);
 			}
-		} finally {
-			Files.delete(target);
+			importController.process(container, new DefaultProcessor(), result);
 		}
 
-		LOG.info("Processed " + trialCount + " clinical trials into graph. Nodes: " + g.getNodeCount() + ". Edges: "
-				+ g.getEdgeCount());
+		GephiGraphSink sink = new GephiGraphSink(graphController.getGraphModel(result));
+		sink.setIdPrefix("u" + Long.toString(System.currentTimeMillis(), Character.MAX_RADIX) + "-");
+		StudyGraphBuilder<Node, Edge> builder = newGraphBuilder(sink);
+		int trialCount = builder.registerGraph();
+		LOG.info("Loaded " + trialCount + " clinical trials from " + graphFile + " in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
 
-		return result;
-	}
+		try (StudyArchive studyArchive = new StudyArchive(archive, nctIdFilter)) {
+			ingestArchive(studyArchive, builder);
+		}
 
-	private void addGraphMetadata(GraphModel gm) {
-		Table nodeTable = gm.getNodeTable();
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_LABEL_V, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_ADDRESS_CITY, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_ADDRESS_STATE, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_ADDRESS_COUNTRY, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_ADDRESS_ZIP, String.class);
-
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_LOCATION_FULL_ADDRESS, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_LOCATION_LATITUDE, Double.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_LOCATION_LONGITUDE, Double.class);
-
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_CONDITION_NAME, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_CONDITION_RAW, String.class);
-
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_STUDY_ID, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_ORG_STUDY_ID, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_TITLE, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_OVERALL_STATUS, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_PHASE, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_STUDY_TYPE, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_ENROLLMENT, Long.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_GENDER, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_MIN_AGE, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_MAX_AGE, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_MASKING, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_PRIMARY_PURPOSE, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_MODEL, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_TYPE, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR, Integer.class);
-
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_SPONSOR_CLASS, String.class);
-		nodeTable.addColumn(GraphSchema.VERTEX_PROPERTY_SPONSOR_NAME, String.class);
-
-		Table edgeTable = gm.getEdgeTable();
-		edgeTable.addColumn(GraphSchema.EDGE_PROPERTY_LABEL, String.class);
-		edgeTable.addColumn(GraphSchema.EDGE_PROPERTY_LOCATION_NAME, String.class);
-		edgeTable.addColumn(GraphSchema.EDGE_PROPERTY_NCT_ID, String.class);
-		edgeTable.addColumn(GraphSchema.EDGE_PROPERTY_NCT_INTERVENTION_TYPE, String.class);
+		return result;
 	}
 
-	/*
-	 * Private methods.
-	 */
-
 	/**
 	 * 
-	 * @param study
-	 * @param g
-	 */
-	private void addStudyToGraph(ClinicalStudy study, GraphModel gm) {
-
-		String nctId = study.getIdInfo().getNctId();
-
-		//
-		// Add nodes
-		//
-
-		String studyType = study.getStudyType() != null ? study.getStudyType().toString() : "";
-		String briefTitle = getStringOrEmpty(study.getBriefTitle());
-		String overallStatus = getStringOrEmpty(study.getOverallStatus());
-		String phase = study.getPhase() != null ? study.getPhase().toString() : "";
-		Long enrollment = study.getEnrollment() != null ? study.getEnrollment().getValue().longValue() : 0;
-		String orgStudyId = getStringOrEmpty(study.getIdInfo().getOrgStudyId());
-		EligibilityStruct studyEligibility = study.getEligibility();
-		String genderStr = studyEligibility.getGender().toString();
-		String minAge = studyEligibility.getMinimumAge();
-		String maxAge = studyEligibility.getMaximumAge();
-		Node ctVertex = gm.factory().newNode();
-
-		ctVertex.setLabel(GraphSchema.VERTEX_LABEL_TRIAL);
-		ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_LABEL_V, GraphSchema.VERTEX_LABEL_TRIAL);
-		ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_STUDY_ID, nctId);
-		ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_ORG_STUDY_ID, orgStudyId);
-		ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_TITLE, briefTitle);
-		ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_OVERALL_STATUS, overallStatus);
-		ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_PHASE, phase);
-		ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_STUDY_TYPE, studyType);
-		ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_ENROLLMENT, enrollment);
-		ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_GENDER, genderStr);
-		ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_MIN_AGE, minAge);
-		ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_MAX_AGE, maxAge);
-		Graph g = gm.getDirectedGraph();
-		g.addNode(ctVertex);
-
-		StudyDesignInfoStruct designInfo = study.getStudyDesignInfo();
-		if (designInfo != null) {
-			String interventionModel = getStringOrEmpty(designInfo.getInterventionModel());
-			String primaryPurpose = getStringOrEmpty(designInfo.getPrimaryPurpose());
-			String masking = getStringOrEmpty(designInfo.getMasking());
-
-			ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_MODEL, interventionModel);
-			ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_PRIMARY_PURPOSE, primaryPurpose);
-			ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_MASKING, masking);
-		}
-
-		if (study.getStudyType().equals(StudyTypeEnum.INTERVENTIONAL)) {
-			List<InterventionStruct> interventions = study.getIntervention();
-			for (InterventionStruct intv : interventions) {
-				Node interventionVertex = getOrCreateIntervention(gm, intv);
-				Edge testsEdge = gm.factory().newEdge(ctVertex, interventionVertex, true);
-				testsEdge.setLabel(GraphSchema.EDGE_LABEL_TESTS);
-				testsEdge.setAttribute(GraphSchema.EDGE_PROPERTY_LABEL, GraphSchema.EDGE_LABEL_TESTS);
-				testsEdge.setAttribute(GraphSchema.EDGE_PROPERTY_NCT_INTERVENTION_TYPE,
-						intv.getInterventionType().toString());
-				g.addEdge(testsEdge);
+	 * @param gm
+	 * @return builder holding the nodes and edges of the graph, with their
+	 *         ids, labels, positions, weights and attributes
+	 */
+	public static GraphSnapshot.Builder toSnapshot(GraphModel gm) {
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+		Graph g = gm.getGraph();
+		List<Column> nodeColumns = getAttributeColumns(gm.getNodeTable());
+		List<Column> edgeColumns = getAttributeColumns(gm.getEdgeTable());
+		Map<Node, Integer> rows = new HashMap<>();
+		for (Node node : g.getNodes()) {
+			int row = builder.addVertex(node.getId().toString(), node.getLabel());
+			builder.setVertexPosition(row, node.x(), node.y());
+			for (Column column : nodeColumns) {
+				builder.setVertexProperty(row, column.getId(), node.getAttribute(column));
 			}
+			rows.put(node, row);
 		}
-
-		if (study.getStartDate() != null) {
-			String startDateStr = study.getStartDate().getValue();
-			try {
-				int startYear = getYear(startDateStr);
-				if (startYear < 1900) {
-					LOG.warning(nctId + " has a likely invalid start year: " + startDateStr);
-				} else {
-					ctVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR, startYear);
-				}
-			} catch (ParseException e) {
-				LOG.warning(nctId + " does not have a valid start year: " + startDateStr);
+		for (Edge edge : g.getEdges()) {
+			int row = builder.addEdge(edge.getId().toString(), rows.get(edge.getSource()),
+					rows.get(edge.getTarget()), edge.getLabel(), edge.getWeight());
+			for (Column column : edgeColumns) {
+				builder.setEdgeProperty(row, column.getId(), edge.getAttribute(column));
 			}
 		}
-
-		SponsorsStruct ssList = study.getSponsors();
-		String sponsorAgency = ssList.getLeadSponsor().getAgency();
-		AgencyClassEnum agencyClass = ssList.getLeadSponsor().getAgencyClass();
-		final Node sv = getOrCreateSponsorVertex(gm, sponsorAgency, agencyClass.toString());
-
-		List<String> studyConditions = study.getCondition();
-
-		// sponsor -> condition
-		// sponsor -> trial
-		studyConditions.forEach(c -> {
-			Node conditionVertex = getOrCreateConditionVertex(gm, c);
-			Edge researchesEdge = gm.factory().newEdge(sv, conditionVertex, true);
-			researchesEdge.setLabel(GraphSchema.EDGE_LABEL_RESEARCHES);
-			researchesEdge.setAttribute(GraphSchema.EDGE_PROPERTY_LABEL, GraphSchema.EDGE_LABEL_RESEARCHES);
-			researchesEdge.setAttribute(GraphSchema.EDGE_PROPERTY_NCT_ID, nctId);
-			g.addEdge(researchesEdge);
-
-			Edge sponsorsEdge = gm.factory().newEdge(sv, ctVertex, true);
-			sponsorsEdge.setLabel(GraphSchema.EDGE_LABEL_SPONSORS);
-			sponsorsEdge.setAttribute(GraphSchema.EDGE_PROPERTY_LABEL, GraphSchema.EDGE_LABEL_SPONSORS);
-			sponsorsEdge.setAttribute(GraphSchema.EDGE_PROPERTY_NCT_ID, nctId);
-			g.addEdge(sponsorsEdge);
-		});
-
-		study.getSponsors().getCollaborator().forEach(collabAgency -> {
-			// sponsor -> collaborators
-			String collab = collabAgency.getAgency();
-
-			AgencyClassEnum collabClass = collabAgency.getAgencyClass();
-			Node collabVertex = getOrCreateSponsorVertex(gm, collab, collabClass.toString());
-
-			Edge leadsEdge = gm.factory().newEdge(sv, collabVertex, true);
-			leadsEdge.setLabel(GraphSchema.EDGE_LABEL_LEADS);
-			leadsEdge.setAttribute(GraphSchema.EDGE_PROPERTY_LABEL, GraphSchema.EDGE_LABEL_LEADS);
-			leadsEdge.setAttribute(GraphSchema.EDGE_PROPERTY_NCT_ID, nctId);
-			g.addEdge(leadsEdge);
-
-			Edge collabEdge = gm.factory().newEdge(collabVertex, sv, true);
-			collabEdge.setLabel(GraphSchema.EDGE_LABEL_COLLABORATES);
-			collabEdge.setAttribute(GraphSchema.EDGE_PROPERTY_LABEL, GraphSchema.EDGE_LABEL_COLLABORATES);
-			collabEdge.setAttribute(GraphSchema.EDGE_PROPERTY_NCT_ID, nctId);
-			g.addEdge(collabEdge);
-
-			// collaborators -> condition
-			// collaborators -> trial
-			studyConditions.forEach(c -> {
-				Node conditionVertex = getOrCreateConditionVertex(gm, c);
-
-				Edge researchesEdge = gm.factory().newEdge(collabVertex, conditionVertex, true);
-				researchesEdge.setLabel(GraphSchema.EDGE_LABEL_RESEARCHES);
-				researchesEdge.setAttribute(GraphSchema.EDGE_PROPERTY_LABEL, GraphSchema.EDGE_LABEL_RESEARCHES);
-				researchesEdge.setAttribute(GraphSchema.EDGE_PROPERTY_NCT_ID, nctId);
-				g.addEdge(researchesEdge);
-
-			});
-
-			Edge consponsorEdge = gm.factory().newEdge(collabVertex, ctVertex, true);
-			consponsorEdge.setLabel(GraphSchema.EDGE_LABEL_CONSPONSOR);
-			consponsorEdge.setAttribute(GraphSchema.EDGE_PROPERTY_LABEL, GraphSchema.EDGE_LABEL_CONSPONSOR);
-			consponsorEdge.setAttribute(GraphSchema.EDGE_PROPERTY_NCT_ID, nctId);
-			g.addEdge(consponsorEdge);
-
-		});
-
-		// trial -> conditions
-		studyConditions.forEach(c -> {
-			Node conditionVertex = getOrCreateConditionVertex(gm, c);
-
-			Edge coversEdge = gm.factory().newEdge(ctVertex, conditionVertex, true);
-			coversEdge.setLabel(GraphSchema.EDGE_LABEL_COVERS);
-			coversEdge.setAttribute(GraphSchema.EDGE_PROPERTY_LABEL, GraphSchema.EDGE_LABEL_COVERS);
-			g.addEdge(coversEdge);
-		});
-
-		// trial -> locations
-		study.getLocation().forEach(l -> {
-			Node locationVertex = getOrCreateLocationVertex(gm, ctVertex, l.getFacility());
-			String facilityName = getStringOrEmpty(l.getFacility().getName());
-
-			Edge locationEdge = gm.factory().newEdge(ctVertex, locationVertex, true);
-			locationEdge.setLabel(GraphSchema.EDGE_LABEL_LOCATION);
-			locationEdge.setAttribute(GraphSchema.EDGE_PROPERTY_LABEL, GraphSchema.EDGE_LABEL_LOCATION);
-			locationEdge.setAttribute(GraphSchema.EDGE_PROPERTY_LOCATION_NAME, facilityName);
-			g.addEdge(locationEdge);
-		});
-
+		return builder;
 	}
 
 	/**
+	 * Positions the nodes of a graph, starting from their current positions,
+	 * with edges pulling their ends according to their weights.
 	 * 
-	 * @param startDateStr
-	 * @return
-	 * @throws ParseException
-	 */
-	private int getYear(String startDateStr) throws ParseException {
-		Date startDate = NCT_DATE_FORMAT_1.parse(startDateStr);
-		Calendar c = Calendar.getInstance();
-		c.setTime(startDate);
-		int startYear = c.get(Calendar.YEAR);
-		if (startYear <= 31) {
-			startDate = NCT_DATE_FORMAT_2.parse(startDateStr);
-			c.setTime(startDate);
-			startYear = c.get(Calendar.YEAR);
-		}
-		return startYear;
+	 * @param gm
+	 * @param layout
+	 * @return number of layout iterations
+	 */
+	public static int layout(GraphModel gm, ForceLayout layout) {
+		LayoutArrays arrays = new LayoutArrays(gm.getGraph());
+		int iterations = layout.run(arrays.x, arrays.y, arrays.sources, arrays.targets, arrays.weights);
+		arrays.setPositions();
+		return iterations;
 	}
 
 	/**
+	 * Positions the nodes of a graph on a map, pinning the locations to their
+	 * coordinates.
 	 * 
 	 * @param gm
-	 * @param ctVertex
-	 * @param facility
-	 * @return
+	 * @param layout
+	 * @return number of nodes pinned to their coordinates
 	 */
-	private Node getOrCreateLocationVertex(GraphModel gm, Node ctVertex, FacilityStruct facility) {
-		AddressStruct locationAddress = facility.getAddress();
-
-		String city = getStringOrEmpty(locationAddress.getCity());
-		String state = getStringOrEmpty(locationAddress.getState());
-		String zip = getStringOrEmpty(locationAddress.getZip());
-		String country = getStringOrEmpty(locationAddress.getCountry());
-		String locationString = city + " " + state + " " + zip + " " + country;
+	public static int layout(GraphModel gm, GeoLayout layout) {
+		LayoutArrays arrays = new LayoutArrays(gm.getGraph());
+		double[] latitudes = new double[arrays.nodes.length];
+		double[] longitudes = new double[arrays.nodes.length];
+		boolean geocoded = gm.getNodeTable().hasColumn(GraphSchema.VERTEX_PROPERTY_LOCATION_LATITUDE)
+				&& gm.getNodeTable().hasColumn(GraphSchema.VERTEX_PROPERTY_LOCATION_LONGITUDE);
+		for (int i = 0; i < arrays.nodes.length; i++) {
+			Object lat = geocoded ? arrays.nodes[i].getAttribute(GraphSchema.VERTEX_PROPERTY_LOCATION_LATITUDE) : null;
+			Object lng = geocoded ? arrays.nodes[i].getAttribute(GraphSchema.VERTEX_PROPERTY_LOCATION_LONGITUDE)
+					: null;
+			latitudes[i] = lat instanceof Number ? ((Number) lat).doubleValue() : Double.NaN;
+			longitudes[i] = lng instanceof Number ? ((Number) lng).doubleValue() : Double.NaN;
+		}
+		int anchors = layout.run(arrays.x, arrays.y, latitudes, longitudes, arrays.sources, arrays.targets,
+				arrays.weights);
+		arrays.setPositions();
+		return anchors;
+	}
 
-		DirectedGraph g = gm.getDirectedGraph();
+	/**
+	 * 
+	 * @param gm
+	 * @return view of the graph for the {@link GraphExporter}
+	 */
+	public static ExportableGraph<Node, Edge> toExportable(GraphModel gm) {
+		return new GephiExportable(gm);
+	}
 
-		Optional<Node> findFirst = g.getNodes().toCollection().stream()
-				.filter(n -> n.getAttributeKeys().contains(GraphSchema.VERTEX_PROPERTY_LOCATION_FULL_ADDRESS)
-						&& locationString.equals(n.getAttribute(GraphSchema.VERTEX_PROPERTY_LOCATION_FULL_ADDRESS)))
-				.findFirst();
+	/**
+	 * Adds the nodes and edges of a snapshot to a graph, keeping their ids,
+	 * labels, positions, weights and attributes.
+	 * 
+	 * @param snapshot
+	 * @param gm
+	 */
+	public static void fromSnapshot(GraphSnapshot snapshot, GraphModel gm) {
+		for (GraphSnapshot.Column column : snapshot.getVertexColumns().values()) {
+			GephiGraphSink.addColumn(gm.getNodeTable(), column.getName(), column.getType());
+		}
+		for (GraphSnapshot.Column column : snapshot.getEdgeColumns().values()) {
+			GephiGraphSink.addColumn(gm.getEdgeTable(), column.getName(), column.getType());
+		}
 
-		Node locationVertex = null;
-		if (findFirst.isPresent()) {
-			locationVertex = findFirst.get();
-		} else {
-			LatLng coords = locationCoordMap.get(locationString);
-			if (null == coords) {
-
-				try {
-					GeocodingApiRequest geocodeRequest = GeocodingApi.newRequest(googleGeoContext);
-					ComponentFilter countryFilter = ComponentFilter.country(country);
-					ComponentFilter localityFilter = ComponentFilter.locality(city);
-					if (!zip.isEmpty()) {
-						ComponentFilter zipFilter = ComponentFilter.postalCode(zip);
-						geocodeRequest.components(countryFilter, localityFilter, zipFilter);
-					} else {
-						geocodeRequest.components(countryFilter, localityFilter);
-					}
-					GeocodingResult[] results = geocodeRequest.await();
-					if (results.length > 0) {
-						coords = results[0].geometry.location;
-						locationCoordMap.put(locationString, coords);
-					}
-				} catch (Exception e) {
-					LOG.log(Level.WARNING, "Unable to determine coordinates for address: " + locationString
-							+ " due to: " + e.getLocalizedMessage(), e);
+		Node[] nodes = new Node[snapshot.getVertexCount()];
+		for (int v = 0; v < nodes.length; v++) {
+			Node node = gm.factory().newNode(snapshot.getVertexId(v));
+			node.setLabel(snapshot.getVertexLabel(v));
+			node.setPosition(snapshot.getVertexX(v), snapshot.getVertexY(v));
+			for (GraphSnapshot.Column column : snapshot.getVertexColumns().values()) {
+				Object value = column.get(v);
+				if (value != null) {
+					node.setAttribute(column.getName(), value);
 				}
 			}
-
-			locationVertex = gm.factory().newNode();
-
-			// Cloning essential clinical trial fields in case we want to just
-			// plot the view of clinical trials with location and attributes on
-			// a map, without the relations to everything else.
-			Set<String> ctVertexAttrs = ctVertex.getAttributeKeys();
-			for (String ctVertexAttr : ctVertexAttrs) {
-				if (!ctVertexAttr.equals("id") && !ctVertexAttr.equals(GraphSchema.VERTEX_PROPERTY_LABEL_V)) {
-					locationVertex.setAttribute(ctVertexAttr, ctVertex.getAttribute(ctVertexAttr));
+			nodes[v] = node;
+		}
+		List<Edge> edges = new ArrayList<>(snapshot.getEdgeCount());
+		for (int e = 0; e < snapshot.getEdgeCount(); e++) {
+			Edge edge = gm.factory().newEdge(snapshot.getEdgeId(e), nodes[snapshot.getEdgeSource(e)],
+					nodes[snapshot.getEdgeTarget(e)], 0, snapshot.getEdgeWeight(e), true);
+			edge.setLabel(snapshot.getEdgeLabel(e));
+			for (GraphSnapshot.Column column : snapshot.getEdgeColumns().values()) {
+				Object value = column.get(e);
+				if (value != null) {
+					edge.setAttribute(column.getName(), value);
 				}
 			}
-
-			locationVertex.setLabel(GraphSchema.VERTEX_LABEL_LOCATION);
-			locationVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_LABEL_V, GraphSchema.VERTEX_LABEL_LOCATION);
-			locationVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_LOCATION_FULL_ADDRESS, locationString);
-			if (coords != null) {
-				locationVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_LOCATION_LATITUDE, coords.lat);
-				locationVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_LOCATION_LONGITUDE, coords.lng);
-			}
-			locationVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_ADDRESS_CITY, city);
-			locationVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_ADDRESS_STATE,
-					stateAbbrev.getOrDefault(state, state));
-			locationVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_ADDRESS_ZIP, zip);
-			locationVertex.setAttribute(GraphSchema.VERTEX_PROPERTY_ADDRESS_COUNTRY, country);
-
-			g.addNode(locationVertex);
+			edges.add(edge);
 		}
-		return locationVertex;
-
+		Graph g = gm.getGraph();
+		g.addAllNodes(Arrays.asList(nodes));
+		g.addAllEdges(edges);
 	}
 
+	/*
+	 * Private methods.
+	 */
+
 	/**
+	 * Positions the nodes with the layout selected by
+	 * {@link #PROPERTY_LAYOUT}, if any.
 	 * 
 	 * @param gm
-	 * @param intv
-	 * @return
 	 */
-	private Node getOrCreateIntervention(GraphModel gm, InterventionStruct intv) {
-		DirectedGraph g = gm.getDirectedGraph();
-
-		InterventionTypeEnum iType = intv.getInterventionType();
-		String interventionName = intv.getInterventionName();
-		Optional<Node> findFirst = g.getNodes().toCollection().stream()
-				.filter(n -> n.getAttributeKeys().contains(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME)
-						&& interventionName.equals(n.getAttribute(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME)))
-				.findFirst();
-
-		Node iVt = null;
-		if (findFirst.isPresent()) {
-			iVt = findFirst.get();
-		} else {
-			iVt = gm.factory().newNode();
-			iVt.setLabel(GraphSchema.VERTEX_LABEL_INTERVENTION);
-			iVt.setAttribute(GraphSchema.VERTEX_PROPERTY_LABEL_V, GraphSchema.VERTEX_LABEL_INTERVENTION);
-			iVt.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_TYPE, iType.toString());
-			iVt.setAttribute(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME, interventionName);
-			g.addNode(iVt);
-		}
-		return iVt;
+	private static void layout(GraphModel gm) {
+		String layoutMode = System.getProperty(PROPERTY_LAYOUT, "");
+		if (layoutMode.equals("force")) {
+			layout(gm, ForceLayout.fromProperties());
+		} else if (layoutMode.equals("geo")) {
+			layout(gm, GeoLayout.fromProperties());
+		} else if (!layoutMode.isEmpty()) {
+			throw new IllegalArgumentException("Unknown " + PROPERTY_LAYOUT + ": " + layoutMode);
+		}
 	}
 
 	/**
 	 * 
-	 * @param gm
-	 * @param conditionName
-	 * @return
+	 * @param sink
+	 * @return builder adding the trials to the graph in batches
 	 */
-	private Node getOrCreateConditionVertex(GraphModel gm, String conditionName) {
-		DirectedGraph g = gm.getDirectedGraph();
-
-		String c2 = getNormalizedConditionName(conditionName);
-		Optional<Node> findFirst = g.getNodes().toCollection().stream()
-				.filter(n -> n.getAttributeKeys().contains(GraphSchema.VERTEX_PROPERTY_CONDITION_NAME)
-						&& c2.equals(n.getAttribute(GraphSchema.VERTEX_PROPERTY_CONDITION_NAME)))
-				.findFirst();
-
-		Node cVt = null;
-		if (findFirst.isPresent()) {
-			cVt = findFirst.get();
-		} else {
-			cVt = gm.factory().newNode();
-			cVt.setLabel(GraphSchema.VERTEX_LABEL_CONDITION);
-			cVt.setAttribute(GraphSchema.VERTEX_PROPERTY_LABEL_V, GraphSchema.VERTEX_LABEL_CONDITION);
-			cVt.setAttribute(GraphSchema.VERTEX_PROPERTY_CONDITION_RAW, conditionName);
-			cVt.setAttribute(GraphSchema.VERTEX_PROPERTY_CONDITION_NAME, c2);
-			g.addNode(cVt);
-		}
-		return cVt;
+	private StudyGraphBuilder<Node, Edge> newGraphBuilder(GephiGraphSink sink) {
+		return new StudyGraphBuilder<>(BatchingGraphSink.fromProperties(sink), conditionDictionary,
+				conditionNormalizer, stateAbbrev);
 	}
 
 	/**
 	 * 
-	 * @param gm
-	 * @param sponsorAgency
-	 * @param agencyClass
-	 * @return
+	 * @param archive
+	 * @param builder
+	 *            builder of the graph, with the vertices and edges already
+	 *            in the graph registered
+	 * @throws Exception
 	 */
-	private Node getOrCreateSponsorVertex(GraphModel gm, String sponsorAgency, String agencyClass) {
-		DirectedGraph g = gm.getDirectedGraph();
-
-		Optional<Node> findFirst = g.getNodes().toCollection().stream()
-				.filter(n -> n.getAttributeKeys().contains(GraphSchema.VERTEX_PROPERTY_SPONSOR_NAME)
-						&& sponsorAgency.equals(n.getAttribute(GraphSchema.VERTEX_PROPERTY_SPONSOR_NAME)))
-				.findFirst();
-
-		Node sv = null;
-		if (findFirst.isPresent()) {
-			sv = findFirst.get();
+	private void ingestArchive(StudyArchive archive, StudyGraphBuilder<Node, Edge> builder) throws Exception {
+		int workers = Integer.getInteger(PROPERTY_INGEST_WORKERS, Runtime.getRuntime().availableProcessors());
+		String apiKey = System.getProperty(PROPERTY_GOOGLE_MAPS_APIKEY);
+		if (apiKey == null || apiKey.isEmpty()) {
+			LOG.info("Leaving locations without coordinates, " + PROPERTY_GOOGLE_MAPS_APIKEY + " is not set.");
+			builder.ingest(archive, workers, Integer.getInteger(PROPERTY_INGEST_QUEUE, workers * 4));
 		} else {
-			sv = gm.factory().newNode();
-			sv.setLabel(GraphSchema.VERTEX_LABEL_SPONSOR);
-			sv.setAttribute(GraphSchema.VERTEX_PROPERTY_LABEL_V, GraphSchema.VERTEX_LABEL_SPONSOR);
-			sv.setAttribute(GraphSchema.VERTEX_PROPERTY_SPONSOR_NAME, sponsorAgency);
-			sv.setAttribute(GraphSchema.VERTEX_PROPERTY_SPONSOR_CLASS, agencyClass);
-			g.addNode(sv);
-		}
-		return sv;
+			try (GeocodingStage geocoding = new GeocodingStage(geocoder,
+					Integer.getInteger(PROPERTY_GEOCODE_THREADS, 4), Integer.getInteger(PROPERTY_GEOCODE_ATTEMPTS, 3),
+					500)) {
+				builder.setGeocoding(geocoding);
+				builder.ingest(archive, workers, Integer.getInteger(PROPERTY_INGEST_QUEUE, workers * 4));
+			}
+			LOG.info("Geocoding cache hits: " + geocoder.getHitCount() + ", misses: " + geocoder.getMissCount());
+		}
+		saveConditionCache();
 	}
 
 	/**
 	 * 
-	 * @param c
-	 * @return
+	 * @param table
+	 * @return columns of the table, without the id, label and other element
+	 *         properties
+	 */
+	private static List<Column> getAttributeColumns(Table table) {
+		List<Column> columns = new ArrayList<>();
+		for (Column column : table.toArray()) {
+			if (!column.isProperty()) {
+				columns.add(column);
+			}
+		}
+		return columns;
+	}
+
+	private void saveConditionCache() {
+		try {
+			conditionNormalizer.save();
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Unable to save the condition normalization cache", e);
+		}
+	}
+
+	/*
+	 * Private classes.
 	 */
-	private String getNormalizedConditionName(String c) {
-		String c3 = nctConditionDisease.get(c);
-		if (c3 == null) {
-			String c2 = c.replaceAll("-", " ").toLowerCase();
 
-			String cLowerCase = c.toLowerCase();
-			for (String surfaceForm : diseaseCui.keySet()) {
-				if (surfaceForm.equals(surfaceForm.toUpperCase())) {
-					continue;
-				}
-				try {
-					String sfLowerCase = surfaceForm.toLowerCase();
-					int sfIndex = cLowerCase.indexOf(sfLowerCase);
-					if (sfIndex > -1) {
-						if (cLowerCase.length() == sfLowerCase.length()
-								|| (sfIndex == 0 && cLowerCase.charAt(sfLowerCase.length()) == ' ')
-								|| (sfIndex > 0 && sfIndex + sfLowerCase.length() == cLowerCase.length()
-										&& cLowerCase.charAt(sfIndex - 1) == ' ')
-								|| (sfIndex > 0 && cLowerCase.charAt(sfIndex - 1) == ' '
-										&& cLowerCase.charAt(sfIndex + sfLowerCase.length()) == ' ')) {
-							if (c3 == null || surfaceForm.length() > c3.length()) {
-								c3 = surfaceForm;
-							}
-						}
-					}
-				} catch (StringIndexOutOfBoundsException e) {
-					LOG.log(Level.WARNING, "ugh::" + c + " ::" + surfaceForm, e);
-				}
+	/**
+	 * Positions, edge ends and edge weights of a Gephi graph, as arrays
+	 * indexed by node and edge, for the layouts.
+	 */
+	private static class LayoutArrays {
+		private final Node[] nodes;
+		private final float[] x;
+		private final float[] y;
+		private final int[] sources;
+		private final int[] targets;
+		private final double[] weights;
+
+		LayoutArrays(Graph g) {
+			nodes = g.getNodes().toArray();
+			x = new float[nodes.length];
+			y = new float[nodes.length];
+			Map<Node, Integer> rows = new HashMap<>();
+			for (int i = 0; i < nodes.length; i++) {
+				x[i] = nodes[i].x();
+				y[i] = nodes[i].y();
+				rows.put(nodes[i], i);
 			}
-			if (c3 == null) {
-				c3 = c2;
+			Edge[] edges = g.getEdges().toArray();
+			sources = new int[edges.length];
+			targets = new int[edges.length];
+			weights = new double[edges.length];
+			for (int e = 0; e < edges.length; e++) {
+				sources[e] = rows.get(edges[e].getSource());
+				targets[e] = rows.get(edges[e].getTarget());
+				weights[e] = edges[e].getWeight();
 			}
-			nctConditionDisease.put(c, c3);
-		}
-		if (LOG.isLoggable(Level.FINER)) {
-			LOG.finer(c + " :: " + c3);
 		}
 
-		return c3;
+		/**
+		 * Moves the nodes to the positions in the arrays.
+		 */
+		void setPositions() {
+			for (int i = 0; i < nodes.length; i++) {
+				nodes[i].setPosition(x[i], y[i]);
+			}
+		}
 	}
 
 	/**
-	 * 
-	 * @param parm
-	 * @return
+	 * Gephi graph seen as a graph to export, with the columns of the node and
+	 * edge tables as attributes.
 	 */
-	private String getStringOrEmpty(String parm) {
-		return parm != null ? parm : "";
-	}
+	private static class GephiExportable implements ExportableGraph<Node, Edge> {
+		private final Graph g;
+		private final Map<String, Class<?>> nodeAttributes = new LinkedHashMap<>();
+		private final Map<String, Class<?>> edgeAttributes = new LinkedHashMap<>();
+
+		GephiExportable(GraphModel gm) {
+			this.g = gm.getGraph();
+			for (Column column : getAttributeColumns(gm.getNodeTable())) {
+				nodeAttributes.put(column.getId(), column.getTypeClass());
+			}
+			for (Column column : getAttributeColumns(gm.getEdgeTable())) {
+				edgeAttributes.put(column.getId(), column.getTypeClass());
+			}
+		}
 
-	private static void createLayoutRunnable(GraphModel gm) {
-		AutoLayout autoLayout = new AutoLayout(100, TimeUnit.SECONDS);
-		LOG.info("Processing layout for " + 100 + " seconds.");
-		autoLayout.setGraphModel(gm);
-		FruchtermanReingold firstLayout = new FruchtermanReingold(null);
-		firstLayout.setGravity(10.0d);
-		firstLayout.setSpeed(1d);
-		firstLayout.setArea(10000f);
-
-		// ForceAtlasLayout secondLayout = new ForceAtlasLayout(null);
-		// AutoLayout.DynamicProperty adjustBySizeProperty = AutoLayout
-		// .createDynamicProperty("forceAtlas.adjustSizes.name", Boolean.TRUE,
-		// 0.1f);// True
-		// // after 10% of layout time
-		// AutoLayout.DynamicProperty repulsionProperty = AutoLayout
-		// .createDynamicProperty("forceAtlas.repulsionStrength.name", new
-		// Double(500.), 0f);// 500
-		// for the complete period
-		// autoLayout.addLayout(secondLayout, 0.5f,
-		// new AutoLayout.DynamicProperty[] { adjustBySizeProperty,
-		// repulsionProperty });
-		autoLayout.addLayout(firstLayout, 1.0f);
-		autoLayout.execute();
+		@Override
+		public Map<String, Class<?>> getNodeAttributes() {
+			return nodeAttributes;
+		}
+
+		@Override
+		public Map<String, Class<?>> getEdgeAttributes() {
+			return edgeAttributes;
+		}
+
+		@Override
+		public boolean hasPositions() {
+			return true;
+		}
+
+		@Override
+		public boolean hasWeights() {
+			return true;
+		}
+
+		@Override
+		public Iterable<Node> getNodes() {
+			return g.getNodes();
+		}
+
+		@Override
+		public Iterable<Edge> getEdges() {
+			return g.getEdges();
+		}
+
+		@Override
+		public String getNodeId(Node node) {
+			return node.getId().toString();
+		}
+
+		@Override
+		public String getNodeLabel(Node node) {
+			return node.getLabel();
+		}
+
+		@Override
+		public Object getNodeAttribute(Node node, String attribute) {
+			return node.getAttribute(attribute);
+		}
+
+		@Override
+		public float getNodeX(Node node) {
+			return node.x();
+		}
+
+		@Override
+		public float getNodeY(Node node) {
+			return node.y();
+		}
+
+		@Override
+		public String getEdgeId(Edge edge) {
+			return edge.getId().toString();
+		}
+
+		@Override
+		public String getEdgeSource(Edge edge) {
+			return edge.getSource().getId().toString();
+		}
+
+		@Override
+		public String getEdgeTarget(Edge edge) {
+			return edge.getTarget().getId().toString();
+		}
+
+		@Override
+		public String getEdgeLabel(Edge edge) {
+			return edge.getLabel();
+		}
+
+		@Override
+		public double getEdgeWeight(Edge edge) {
+			return edge.getWeight();
+		}
+
+		@Override
+		public Object getEdgeAttribute(Edge edge, String attribute) {
+			return edge.getAttribute(attribute);
+		}
 	}
 }
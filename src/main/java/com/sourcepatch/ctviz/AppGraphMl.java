@@ -8,52 +8,28 @@
  ********************************************************* {COPYRIGHT-END} **/
 package com.sourcepatch.ctviz;
 
-import java.io.BufferedReader;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Unmarshaller;
-
-import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.T;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
-import org.apache.tinkerpop.gremlin.structure.io.graphml.GraphMLWriter;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.apache.tinkerpop.gremlin.structure.io.graphml.GraphMLReader;
 import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
 
-import com.sourcepatch.ctviz.ctgov.AddressStruct;
-import com.sourcepatch.ctviz.ctgov.AgencyClassEnum;
-import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
-import com.sourcepatch.ctviz.ctgov.EligibilityStruct;
-import com.sourcepatch.ctviz.ctgov.FacilityStruct;
-import com.sourcepatch.ctviz.ctgov.InterventionStruct;
-import com.sourcepatch.ctviz.ctgov.InterventionTypeEnum;
-import com.sourcepatch.ctviz.ctgov.SponsorsStruct;
-import com.sourcepatch.ctviz.ctgov.StudyDesignInfoStruct;
-import com.sourcepatch.ctviz.ctgov.StudyTypeEnum;
-
 /**
  * Converts a clinical trial search into a graph visualization.
  * 
@@ -61,20 +37,11 @@ import com.sourcepatch.ctviz.ctgov.StudyTypeEnum;
  */
 public class AppGraphMl {
 
-	private static final String VERTEX_PROPERTY_INTERVENTION_NAME = "intervention_name";
-	private static final String VERTEX_PROPERTY_CONDITION_RAW = "nct_condition";
-	private static final String VERTEX_PROPERTY_LOCATION_FULL_ADDRESS = "location_full_address";
-	private static final String VERTEX_PROPERTY_CONDITION_NAME = "condition_name";
-	private static final String VERTEX_PROPERTY_SPONSOR_NAME = "sponsor_name";
-
-	private static final String NCT_DATE_PATTERN_1 = "MMMMM yyyy";
-	private static final String NCT_DATE_PATTERN_2 = "MMMMM dd, yyyy";
-	private static final SimpleDateFormat NCT_DATE_FORMAT_1 = new SimpleDateFormat(NCT_DATE_PATTERN_1);
-	private static final SimpleDateFormat NCT_DATE_FORMAT_2 = new SimpleDateFormat(NCT_DATE_PATTERN_2);
-
-	private Map<String, String> cuiDisease = new TreeMap<>();
-	private Map<String, String> diseaseCui = new TreeMap<>();
-	private Map<String, String> nctConditionDisease = new TreeMap<>();
+	private TrialSource trialSource = TrialSource.fromProperties();
+	private Map<String, String> stateAbbrev = new TreeMap<>();
+	private ConditionDictionary conditionDictionary = ConditionDictionary.empty();
+	private ConditionNormalizer conditionNormalizer = new ConditionNormalizer(conditionDictionary,
+			ConditionNormalizer.DEFAULT_CACHE_SIZE, null);
 
 	/*
 	 * Ensuring default logging properties are loaded
@@ -99,6 +66,12 @@ public class AppGraphMl {
 	 */
 	private static final Logger LOG = Logger.getLogger(AppGraphMl.class.getName());
 
+	/**
+	 * Graph written by a previous run, updated with the trials in the archive
+	 * passed as the first argument instead of building a new graph.
+	 */
+	private static final String PROPERTY_UPDATE_GRAPH = "ctviz.update.graph";
+
 	/*
 	 * Public methods.
 	 */
@@ -106,34 +79,32 @@ public class AppGraphMl {
 	/**
 	 * 
 	 * @param args
+	 *            0 - search term, or the archive with the trials changed
+	 *            since the graph in <code>ctviz.update.graph</code> was
+	 *            written
 	 * @throws Exception
 	 */
 	public static void main(String[] args) throws Exception {
 		AppGraphMl app = new AppGraphMl();
 
 		app.loadConditionMaps();
+		app.loadStateAbbreviationMap();
 
-		Graph g = app.generateGraph(args[0]);
-		Path outGraph = Paths.get("out/ctgraph.graphml");
-		Files.createDirectories(outGraph.getParent());
-		GraphMLWriter gmlWriter = GraphMLWriter.build().create();
-		gmlWriter.writeGraph(new FileOutputStream(outGraph.toFile()), g);
+		String updateGraph = System.getProperty(PROPERTY_UPDATE_GRAPH);
+		Graph g = updateGraph != null ? app.updateGraph(Paths.get(updateGraph), Paths.get(args[0]))
+				: app.generateGraph(args[0]);
+		Path outGraph = GraphExporter.getOutputFile(Paths.get("out/ctgraph.graphml"));
+		ExportableGraph<Vertex, Edge> exportable = toExportable(g);
+		GraphExporter.fromProperties().export(exportable, outGraph);
 
 		LOG.info("Output graph written to " + outGraph.toFile().getAbsolutePath());
 
-		Path outConditionPhrases = Paths.get("out/ct.condition.phrases.txt");
-		try (PrintWriter pw = new PrintWriter(outConditionPhrases.toFile())) {
-			g.traversal().V().has(VERTEX_PROPERTY_CONDITION_RAW)
-					.forEachRemaining(v -> pw.println(v.value(VERTEX_PROPERTY_CONDITION_RAW).toString() + " ."));
-		}
-
-		Path outInterventionPhrases = Paths.get("out/ct.intervention.phrases.txt");
-		try (PrintWriter pw = new PrintWriter(outInterventionPhrases.toFile())) {
-			g.traversal().V().has(VERTEX_PROPERTY_INTERVENTION_NAME)
-					.forEachRemaining(v -> pw.println(v.value(VERTEX_PROPERTY_INTERVENTION_NAME).toString() + " ."));
-		}
+		Path outSnapshot = Paths.get("out/ctgraph" + GraphSnapshot.FILE_EXTENSION);
+		toSnapshot(g).write(outSnapshot);
+		LOG.info("Graph snapshot written to " + outSnapshot.toFile().getAbsolutePath());
 
-		LOG.info("Output conditions written to " + outConditionPhrases.toFile().getAbsolutePath());
+		PhraseExporter.fromProperties(Paths.get("out")).export(exportable);
+		LOG.info("Output phrases written to " + Paths.get("out").toFile().getAbsolutePath());
 	}
 
 	/**
@@ -141,23 +112,29 @@ public class AppGraphMl {
 	 * @throws IOException
 	 */
 	public void loadConditionMaps() throws IOException {
-		try (ZipFile zf = new ZipFile("src/main/resources/MRCONSO.conditions.zip")) {
-			ZipEntry entry = zf.getEntry("dsyn.rrf");
-			InputStream zis = zf.getInputStream(entry);
-			BufferedReader br = new BufferedReader(new InputStreamReader(zis));
-
-			String line = null;
-			while ((line = br.readLine()) != null) {
-				String[] tokens = line.split("\\|");
-				String cui = tokens[0];
-				String preferredName = tokens[14];
-
-				cuiDisease.put(cui, preferredName);
-				diseaseCui.put(preferredName, cui);
-			}
-		}
-		LOG.info("Loaded condition maps. Unique concepts:" + cuiDisease.size() + " Unique surface forms:"
-				+ diseaseCui.size());
+		conditionDictionary = ConditionDictionary.open();
+		LOG.info("Loaded condition maps. Unique concepts:" + conditionDictionary.getConceptCount()
+				+ " Unique surface forms:" + conditionDictionary.getSurfaceFormCount() + " Matcher states:"
+				+ conditionDictionary.getMatcher().size());
+		conditionNormalizer = ConditionNormalizer.fromProperties(conditionDictionary);
+	}
+
+	/**
+	 * 
+	 * @throws IOException
+	 */
+	public void loadStateAbbreviationMap() throws IOException {
+		stateAbbrev.putAll(StudyGraphBuilder.loadStateAbbreviations());
+	}
+
+	/**
+	 * 
+	 * @param trialSource
+	 *            source of the trials of {@link #generateGraph(String)},
+	 *            clinicaltrials.gov by default
+	 */
+	public void setTrialSource(TrialSource trialSource) {
+		this.trialSource = trialSource;
 	}
 
 	/**
@@ -168,280 +145,260 @@ public class AppGraphMl {
 	 */
 	public Graph generateGraph(String searchTerm) throws Exception {
 		Graph g = TinkerGraph.open();
+		StudyGraphBuilder<Vertex, Edge> builder = newGraphBuilder(g);
 
-		String instancePath = "com.sourcepatch.ctviz.ctgov";
-		JAXBContext jc = JAXBContext.newInstance(instancePath);
-		Unmarshaller u = jc.createUnmarshaller();
-
-		String urlStr = "https://clinicaltrials.gov/ct2/results/download?down_stds=all&down_typ=results&down_flds=shown&down_fmt=plain&show_down=Y&term=";
-		urlStr += searchTerm;
-		URL url = new URL(urlStr);
 		int trialCount = 0;
-		try (InputStream is = url.openStream(); ZipInputStream zis = new ZipInputStream(is)) {
-
-			ZipEntry ctXmlEntry = null;
-			while ((ctXmlEntry = zis.getNextEntry()) != null) {
-
-				LOG.info(ctXmlEntry.getName());
-
-				Path tf = Files.createTempFile("nct", "xml");
-				Files.copy(zis, tf, StandardCopyOption.REPLACE_EXISTING);
-
-				try (InputStream ftf = Files.newInputStream(tf)) {
-					Object obj = u.unmarshal(ftf);
-					ClinicalStudy study = (ClinicalStudy) obj;
-					Files.delete(tf);
-
-					addStudyToGraph(study, g);
-					trialCount++;
-				}
-			}
+		try (StudyArchive archive = trialSource.open(searchTerm, nctId -> true)) {
+			trialCount = builder.ingest(archive, 0, 0);
 		}
 
 		LOG.info("Processed " + trialCount + " clinical trials into graph: " + g.toString());
+		saveConditionCache();
 		return g;
 	}
 
-	/*
-	 * Private methods.
-	 */
-
 	/**
+	 * Reads a graph written by a previous run and replaces the trials that
+	 * changed since, keeping the rest of the graph.
 	 * 
-	 * @param study
-	 * @param g
+	 * @param graphFile
+	 *            GraphML file or graph snapshot written by a previous run
+	 * @param archive
+	 *            clinical trial archive with the trials added or changed
+	 *            since the graph was written
+	 * @return
+	 * @throws Exception
 	 */
-	private void addStudyToGraph(ClinicalStudy study, Graph g) {
-
-		String nctId = study.getIdInfo().getNctId();
-
-		//
-		// Add nodes
-		//
-
-		String studyType = study.getStudyType() != null ? study.getStudyType().toString() : "";
-		String briefTitle = getStringOrEmpty(study.getBriefTitle());
-		String overallStatus = getStringOrEmpty(study.getOverallStatus());
-		String phase = study.getPhase() != null ? study.getPhase().toString() : "";
-		Long enrollment = study.getEnrollment() != null ? study.getEnrollment().getValue().longValue() : 0;
-		String orgStudyId = getStringOrEmpty(study.getIdInfo().getOrgStudyId());
-		EligibilityStruct studyEligibility = study.getEligibility();
-		String genderStr = studyEligibility.getGender().toString();
-		String minAge = studyEligibility.getMinimumAge();
-		String maxAge = studyEligibility.getMaximumAge();
-		Vertex ctVertex = g.addVertex(T.label, "trial", "study_id", nctId, "org_study_id", orgStudyId, "title",
-				briefTitle, "overall_status", overallStatus, "phase", phase, "study_type", studyType, "enrollment",
-				enrollment, "gender", genderStr, "minAge", minAge, "maxAge", maxAge);
-
-		StudyDesignInfoStruct designInfo = study.getStudyDesignInfo();
-		if (designInfo != null) {
-			String interventionModel = getStringOrEmpty(designInfo.getInterventionModel());
-			String primaryPurpose = getStringOrEmpty(designInfo.getPrimaryPurpose());
-			String masking = getStringOrEmpty(designInfo.getMasking());
-
-			ctVertex.property("intervention_model", interventionModel);
-			ctVertex.property("primary_purpose", primaryPurpose);
-			ctVertex.property("masking", masking);
-		}
-
-		if (study.getStudyType().equals(StudyTypeEnum.INTERVENTIONAL)) {
-			List<InterventionStruct> interventions = study.getIntervention();
-			for (InterventionStruct intv : interventions) {
-				Vertex interventionVertex = getOrCreateIntervention(g, intv);
-				ctVertex.addEdge("tests", interventionVertex, "intervention_type",
-						intv.getInterventionType().toString());
-			}
-		}
-
-		if (study.getStartDate() != null) {
-			String startDateStr = study.getStartDate().getValue();
-			try {
-				int startYear = getYear(startDateStr);
-				if (startYear < 1900) {
-					LOG.warning(nctId + " has a likely invalid start year: " + startDateStr);
-				} else {
-					ctVertex.property("start_year", startYear);
-				}
-			} catch (ParseException e) {
-				LOG.warning(nctId + " does not have a valid start year: " + startDateStr);
-			}
+	public Graph updateGraph(Path graphFile, Path archive) throws Exception {
+		long start = System.nanoTime();
+		Graph g = readGraph(graphFile);
+		StudyGraphBuilder<Vertex, Edge> builder = newGraphBuilder(g);
+		int trialCount = builder.registerGraph();
+		LOG.info("Loaded " + trialCount + " clinical trials from " + graphFile + " in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+
+		try (StudyArchive studyArchive = new StudyArchive(archive)) {
+			builder.ingest(studyArchive, 0, 0);
 		}
 
-		SponsorsStruct ssList = study.getSponsors();
-		String sponsorAgency = ssList.getLeadSponsor().getAgency();
-		AgencyClassEnum agencyClass = ssList.getLeadSponsor().getAgencyClass();
-		final Vertex sv = getOrCreateSponsorVertex(g, sponsorAgency, agencyClass.toString());
-
-		List<String> studyConditions = study.getCondition();
-
-		// sponsor -> condition
-		// sponsor -> trial
-		studyConditions.forEach(c -> {
-			Vertex conditionVertex = getOrCreateConditionVertex(g, c);
-			sv.addEdge("researches", conditionVertex, "nct", nctId);
-			sv.addEdge("sponsors", ctVertex, "nct", nctId);
-		});
-
-		study.getSponsors().getCollaborator().forEach(collabAgency -> {
-			// sponsor -> collaborators
-			String collab = collabAgency.getAgency();
-
-			AgencyClassEnum collabClass = collabAgency.getAgencyClass();
-			final Vertex collabVertex = getOrCreateSponsorVertex(g, collab, collabClass.toString());
-
-			sv.addEdge("leads", collabVertex, "nct", nctId);
-			collabVertex.addEdge("collaborates", sv, "nct", nctId);
-
-			// collaborators -> condition
-			// collaborators -> trial
-			// trial -> conditions
-			studyConditions.forEach(c -> {
-				Vertex conditionVertex = getOrCreateConditionVertex(g, c);
-				collabVertex.addEdge("researches", conditionVertex, "nct", nctId);
-				collabVertex.addEdge("cosponsors", ctVertex, "nct", nctId);
-				ctVertex.addEdge("covers", conditionVertex);
-			});
-
-			// trial -> locations
-			study.getLocation().forEach(l -> {
-				Vertex locationVertex = getOrCreateLocationVertex(g, l.getFacility());
-				String facilityName = getStringOrEmpty(l.getFacility().getName());
-				ctVertex.addEdge("location", locationVertex, "location_name", facilityName);
-			});
-
-		});
-
+		LOG.info("Updated graph: " + g.toString());
+		saveConditionCache();
+		return g;
 	}
 
-	private int getYear(String startDateStr) throws ParseException {
-		Date startDate = NCT_DATE_FORMAT_1.parse(startDateStr);
-		Calendar c = Calendar.getInstance();
-		c.setTime(startDate);
-		int startYear = c.get(Calendar.YEAR);
-		if (startYear <= 31) {
-			startDate = NCT_DATE_FORMAT_2.parse(startDateStr);
-			c.setTime(startDate);
-			startYear = c.get(Calendar.YEAR);
+	/**
+	 * 
+	 * @param graphFile
+	 *            GraphML file, or graph snapshot if the file name ends with
+	 *            {@link GraphSnapshot#FILE_EXTENSION}
+	 * @return graph read from the file
+	 * @throws IOException
+	 */
+	public static Graph readGraph(Path graphFile) throws IOException {
+		Graph g = TinkerGraph.open();
+		if (GraphSnapshot.isSnapshot(graphFile)) {
+			fromSnapshot(GraphSnapshot.load(graphFile), g);
+		} else {
+			try (InputStream is = Files.newInputStream(graphFile)) {
+				GraphMLReader.build().create().readGraph(is, g);
+			}
 		}
-		return startYear;
+		return g;
 	}
 
 	/**
 	 * 
 	 * @param g
-	 * @param facility
-	 * @return
+	 * @return builder holding the vertices and edges of the graph, with
+	 *         their ids, labels and properties
 	 */
-	private Vertex getOrCreateLocationVertex(Graph g, FacilityStruct facility) {
-		AddressStruct locationAddress = facility.getAddress();
-
-		String city = getStringOrEmpty(locationAddress.getCity());
-		String state = getStringOrEmpty(locationAddress.getState());
-		String zip = getStringOrEmpty(locationAddress.getZip());
-		String country = getStringOrEmpty(locationAddress.getCountry());
-		String locationString = city + " " + state + " " + zip + " " + country;
-		GraphTraversal<Vertex, Vertex> locationIter = g.traversal().V().has(VERTEX_PROPERTY_LOCATION_FULL_ADDRESS,
-				locationString);
-		final Vertex locationVertex = locationIter.hasNext() ? locationIter.next()
-				: g.addVertex(T.label, "location", VERTEX_PROPERTY_LOCATION_FULL_ADDRESS, locationString, "city", city,
-						"state", state, "zip", zip, "country", country);
-		return locationVertex;
+	public static GraphSnapshot.Builder toSnapshot(Graph g) {
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+		Map<Object, Integer> rows = new HashMap<>();
+		g.vertices().forEachRemaining(v -> {
+			int row = builder.addVertex(v.id().toString(), v.label());
+			rows.put(v.id(), row);
+			v.properties().forEachRemaining(p -> builder.setVertexProperty(row, p.key(), p.value()));
+		});
+		g.edges().forEachRemaining(e -> {
+			int row = builder.addEdge(e.id().toString(), rows.get(e.outVertex().id()), rows.get(e.inVertex().id()),
+					e.label(), 1.0);
+			e.properties().forEachRemaining(p -> builder.setEdgeProperty(row, p.key(), p.value()));
+		});
+		return builder;
 	}
 
 	/**
 	 * 
 	 * @param g
-	 * @param intv
-	 * @return
+	 * @return view of the graph for the {@link GraphExporter}
 	 */
-	private Vertex getOrCreateIntervention(Graph g, InterventionStruct intv) {
-		InterventionTypeEnum iType = intv.getInterventionType();
-		String interventionName = intv.getInterventionName();
-		GraphTraversal<Vertex, Vertex> intvIter = g.traversal().V().has(VERTEX_PROPERTY_INTERVENTION_NAME,
-				interventionName);
-		final Vertex iVt = intvIter.hasNext() ? intvIter.next()
-				: g.addVertex(T.label, "intervention", "intervention_type", iType.toString(),
-						VERTEX_PROPERTY_INTERVENTION_NAME, interventionName);
-		;
-		return iVt;
+	public static ExportableGraph<Vertex, Edge> toExportable(Graph g) {
+		return new TinkerPopExportable(g);
 	}
 
 	/**
+	 * Adds the vertices and edges of a snapshot to a graph, keeping their
+	 * ids, labels and properties.
 	 * 
+	 * @param snapshot
 	 * @param g
-	 * @param conditionName
-	 * @return
 	 */
-	private Vertex getOrCreateConditionVertex(Graph g, String conditionName) {
-		String c2 = getNormalizedConditionName(conditionName);
-		GraphTraversal<Vertex, Vertex> conditionIter = g.traversal().V().has(VERTEX_PROPERTY_CONDITION_NAME, c2);
-		final Vertex cVt = conditionIter.hasNext() ? conditionIter.next()
-				: g.addVertex(T.label, "condition", VERTEX_PROPERTY_CONDITION_RAW, conditionName,
-						VERTEX_PROPERTY_CONDITION_NAME, c2);
-		return cVt;
+	public static void fromSnapshot(GraphSnapshot snapshot, Graph g) {
+		Vertex[] vertices = new Vertex[snapshot.getVertexCount()];
+		for (int v = 0; v < vertices.length; v++) {
+			Vertex vertex = g.addVertex(T.id, snapshot.getVertexId(v), T.label, snapshot.getVertexLabel(v));
+			for (GraphSnapshot.Column column : snapshot.getVertexColumns().values()) {
+				Object value = column.get(v);
+				if (value != null) {
+					vertex.property(VertexProperty.Cardinality.single, column.getName(), value);
+				}
+			}
+			vertices[v] = vertex;
+		}
+		for (int e = 0; e < snapshot.getEdgeCount(); e++) {
+			Edge edge = vertices[snapshot.getEdgeSource(e)].addEdge(snapshot.getEdgeLabel(e),
+					vertices[snapshot.getEdgeTarget(e)], T.id, snapshot.getEdgeId(e));
+			for (GraphSnapshot.Column column : snapshot.getEdgeColumns().values()) {
+				Object value = column.get(e);
+				if (value != null) {
+					edge.property(column.getName(), value);
+				}
+			}
+		}
 	}
 
+	/*
+	 * Package methods.
+	 */
+
 	/**
 	 * 
 	 * @param g
-	 * @param sponsorAgency
-	 * @param agencyClass
-	 * @return
+	 * @return builder adding trials to the graph
 	 */
-	private Vertex getOrCreateSponsorVertex(Graph g, String sponsorAgency, String agencyClass) {
-		GraphTraversal<Vertex, Vertex> sponsorIter = g.traversal().V().has(VERTEX_PROPERTY_SPONSOR_NAME, sponsorAgency);
-		final Vertex sv = sponsorIter.hasNext() ? sponsorIter.next()
-				: g.addVertex(T.label, "sponsor", VERTEX_PROPERTY_SPONSOR_NAME, sponsorAgency, "class", agencyClass);
-		return sv;
+	StudyGraphBuilder<Vertex, Edge> newGraphBuilder(Graph g) {
+		return new StudyGraphBuilder<>(new TinkerPopGraphSink(g), conditionDictionary, conditionNormalizer,
+				stateAbbrev);
 	}
 
+	/*
+	 * Private methods.
+	 */
+
+	private void saveConditionCache() {
+		try {
+			conditionNormalizer.save();
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Unable to save the condition normalization cache", e);
+		}
+	}
+
+	/*
+	 * Private classes.
+	 */
+
 	/**
-	 * 
-	 * @param c
-	 * @return
+	 * TinkerPop graph seen as a graph to export. Vertex and edge labels are
+	 * the node and edge labels and properties are the attributes, typed after
+	 * the first value found for each property.
 	 */
-	private String getNormalizedConditionName(String c) {
-		String c3 = nctConditionDisease.get(c);
-		if (c3 == null) {
-			String c2 = c.replaceAll("-", " ").toLowerCase();
-
-			String cLowerCase = c.toLowerCase();
-			for (String surfaceForm : diseaseCui.keySet()) {
-				if (surfaceForm.equals(surfaceForm.toUpperCase())) {
-					continue;
-				}
-				try {
-					String sfLowerCase = surfaceForm.toLowerCase();
-					int sfIndex = cLowerCase.indexOf(sfLowerCase);
-					if (sfIndex > -1) {
-						if (cLowerCase.length() == sfLowerCase.length()
-								|| (sfIndex == 0 && cLowerCase.charAt(sfLowerCase.length()) == ' ')
-								|| (sfIndex > 0 && sfIndex + sfLowerCase.length() == cLowerCase.length()
-										&& cLowerCase.charAt(sfIndex - 1) == ' ')
-								|| (sfIndex > 0 && cLowerCase.charAt(sfIndex - 1) == ' '
-										&& cLowerCase.charAt(sfIndex + sfLowerCase.length()) == ' ')) {
-							if (c3 == null || surfaceForm.length() > c3.length()) {
-								c3 = surfaceForm;
-							}
-						}
-					}
-				} catch (StringIndexOutOfBoundsException e) {
-					LOG.log(Level.WARNING, "ugh::" + c + " ::" + surfaceForm, e);
-				}
-			}
-			if (c3 == null) {
-				c3 = c2;
-			}
-			nctConditionDisease.put(c, c3);
+	private static class TinkerPopExportable implements ExportableGraph<Vertex, Edge> {
+		private final Graph g;
+		private final Map<String, Class<?>> nodeAttributes = new LinkedHashMap<>();
+		private final Map<String, Class<?>> edgeAttributes = new LinkedHashMap<>();
+
+		TinkerPopExportable(Graph g) {
+			this.g = g;
+			g.vertices().forEachRemaining(v -> v.properties()
+					.forEachRemaining(p -> nodeAttributes.putIfAbsent(p.key(), p.value().getClass())));
+			g.edges().forEachRemaining(e -> e.properties()
+					.forEachRemaining(p -> edgeAttributes.putIfAbsent(p.key(), p.value().getClass())));
+		}
+
+		@Override
+		public Map<String, Class<?>> getNodeAttributes() {
+			return nodeAttributes;
 		}
-		if (LOG.isLoggable(Level.FINER)) {
-			LOG.finer(c + " :: " + c3);
+
+		@Override
+		public Map<String, Class<?>> getEdgeAttributes() {
+			return edgeAttributes;
 		}
 
-		return c3;
-	}
+		@Override
+		public boolean hasPositions() {
+			return false;
+		}
+
+		@Override
+		public boolean hasWeights() {
+			return false;
+		}
+
+		@Override
+		public Iterable<Vertex> getNodes() {
+			return g::vertices;
+		}
+
+		@Override
+		public Iterable<Edge> getEdges() {
+			return g::edges;
+		}
+
+		@Override
+		public String getNodeId(Vertex node) {
+			return node.id().toString();
+		}
+
+		@Override
+		public String getNodeLabel(Vertex node) {
+			return node.label();
+		}
+
+		@Override
+		public Object getNodeAttribute(Vertex node, String attribute) {
+			return node.property(attribute).orElse(null);
+		}
 
-	private String getStringOrEmpty(String parm) {
-		return parm != null ? parm : "";
+		@Override
+		public float getNodeX(Vertex node) {
+			return 0;
+		}
+
+		@Override
+		public float getNodeY(Vertex node) {
+			return 0;
+		}
+
+		@Override
+		public String getEdgeId(Edge edge) {
+			return edge.id().toString();
+		}
+
+		@Override
+		public String getEdgeSource(Edge edge) {
+			return edge.outVertex().id().toString();
+		}
+
+		@Override
+		public String getEdgeTarget(Edge edge) {
+			return edge.inVertex().id().toString();
+		}
+
+		@Override
+		public String getEdgeLabel(Edge edge) {
+			return edge.label();
+		}
+
+		@Override
+		public double getEdgeWeight(Edge edge) {
+			return 1.0;
+		}
+
+		@Override
+		public Object getEdgeAttribute(Edge edge, String attribute) {
+			return edge.property(attribute).orElse(null);
+		}
 	}
 }
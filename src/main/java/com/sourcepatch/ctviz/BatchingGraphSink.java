@@ -0,0 +1,228 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Holds the vertices and edges added to another sink and adds them in
+ * batches, so that the graph library receives bulk inserts instead of one
+ * call per element.
+ *
+ * <p>
+ * Vertices are always added before edges, so that every edge finds its
+ * source and target in the graph. Pending elements are also added before
+ * anything that reads or removes elements of the graph, so the sink looks
+ * like the graph it wraps.
+ *
+ * @param <V>
+ *            vertex type of the underlying graph library
+ * @param <E>
+ *            edge type of the underlying graph library
+ *
+ * @author Denilson Nastacio
+ */
+public class BatchingGraphSink<V, E> implements GraphSink<V, E> {
+
+	/**
+	 * Number of vertices or edges added to the graph at once.
+	 */
+	public static final String PROPERTY_BATCH_SIZE = "ctviz.sink.batch";
+
+	private static final int DEFAULT_BATCH_SIZE = 4096;
+
+	private final GraphSink<V, E> sink;
+	private final int batchSize;
+	private final List<V> vertices;
+	private final List<E> edges;
+
+	/**
+	 *
+	 * @param sink
+	 *            sink receiving the batches
+	 * @param batchSize
+	 *            number of vertices or edges added at once
+	 */
+	public BatchingGraphSink(GraphSink<V, E> sink, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+		}
+		this.sink = sink;
+		this.batchSize = batchSize;
+		this.vertices = new ArrayList<>(batchSize);
+		this.edges = new ArrayList<>(batchSize);
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param sink
+	 * @return sink adding batches of the size in {@link #PROPERTY_BATCH_SIZE}
+	 */
+	public static <V, E> BatchingGraphSink<V, E> fromProperties(GraphSink<V, E> sink) {
+		return new BatchingGraphSink<>(sink, Integer.getInteger(PROPERTY_BATCH_SIZE, DEFAULT_BATCH_SIZE));
+	}
+
+	@Override
+	public V newVertex(String label) {
+		return sink.newVertex(label);
+	}
+
+	@Override
+	public void addVertex(V vertex) {
+		vertices.add(vertex);
+		if (vertices.size() >= batchSize) {
+			flushVertices();
+		}
+	}
+
+	@Override
+	public void addVertices(Collection<V> vertices) {
+		for (V vertex : vertices) {
+			addVertex(vertex);
+		}
+	}
+
+	@Override
+	public E newEdge(V source, V target, String label) {
+		return sink.newEdge(source, target, label);
+	}
+
+	@Override
+	public void addEdge(E edge) {
+		edges.add(edge);
+		if (edges.size() >= batchSize) {
+			flushVertices();
+			flushEdges();
+		}
+	}
+
+	@Override
+	public void addEdges(Collection<E> edges) {
+		for (E edge : edges) {
+			addEdge(edge);
+		}
+	}
+
+	@Override
+	public String getVertexLabel(V vertex) {
+		return sink.getVertexLabel(vertex);
+	}
+
+	@Override
+	public Object getVertexProperty(V vertex, String property) {
+		return sink.getVertexProperty(vertex, property);
+	}
+
+	@Override
+	public void setVertexProperty(V vertex, String property, Object value) {
+		sink.setVertexProperty(vertex, property, value);
+	}
+
+	@Override
+	public void removeVertexProperty(V vertex, String property) {
+		sink.removeVertexProperty(vertex, property);
+	}
+
+	@Override
+	public String getEdgeLabel(E edge) {
+		return sink.getEdgeLabel(edge);
+	}
+
+	@Override
+	public V getEdgeSource(E edge) {
+		return sink.getEdgeSource(edge);
+	}
+
+	@Override
+	public V getEdgeTarget(E edge) {
+		return sink.getEdgeTarget(edge);
+	}
+
+	@Override
+	public Object getEdgeProperty(E edge, String property) {
+		return sink.getEdgeProperty(edge, property);
+	}
+
+	@Override
+	public void setEdgeProperty(E edge, String property, Object value) {
+		sink.setEdgeProperty(edge, property, value);
+	}
+
+	@Override
+	public void setEdgeWeight(E edge, double weight) {
+		sink.setEdgeWeight(edge, weight);
+	}
+
+	@Override
+	public Iterable<V> getVertices() {
+		flush();
+		return sink.getVertices();
+	}
+
+	@Override
+	public Iterable<E> getEdges() {
+		flush();
+		return sink.getEdges();
+	}
+
+	@Override
+	public Collection<E> getEdges(V vertex) {
+		flush();
+		return sink.getEdges(vertex);
+	}
+
+	@Override
+	public boolean hasEdges(V vertex) {
+		flush();
+		return sink.hasEdges(vertex);
+	}
+
+	@Override
+	public void removeVertex(V vertex) {
+		flush();
+		sink.removeVertex(vertex);
+	}
+
+	@Override
+	public void removeEdge(E edge) {
+		flush();
+		sink.removeEdge(edge);
+	}
+
+	@Override
+	public void flush() {
+		flushVertices();
+		flushEdges();
+		sink.flush();
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private void flushVertices() {
+		if (!vertices.isEmpty()) {
+			sink.addVertices(vertices);
+			vertices.clear();
+		}
+	}
+
+	private void flushEdges() {
+		if (!edges.isEmpty()) {
+			sink.addEdges(edges);
+			edges.clear();
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes the sections of the binary snapshot files.
+ *
+ * <p>
+ * A snapshot starts with a magic number and a format version, followed by
+ * sections. Each section holds a count, a padding word and an array of that
+ * many little-endian values, padded to a multiple of 8 bytes so that the next
+ * section is aligned. Sections are read as views over a memory-mapped buffer,
+ * without copying them to the heap.
+ *
+ * @author Denilson Nastacio
+ */
+final class BinarySnapshot {
+
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private BinarySnapshot() {
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param file
+	 * @return read-only buffer over the whole file
+	 * @throws IOException
+	 */
+	static ByteBuffer map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot too large to map: " + file);
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ORDER);
+		}
+	}
+
+	/**
+	 *
+	 * @param out
+	 * @param magic
+	 * @param version
+	 * @throws IOException
+	 */
+	static void putHeader(FileChannel out, int magic, int version) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(8).order(ORDER);
+		header.putInt(magic).putInt(version).flip();
+		write(out, header);
+	}
+
+	/**
+	 *
+	 * @param in
+	 * @param magic
+	 * @param version
+	 * @param file
+	 *            named in the error message
+	 * @throws IOException
+	 *             if the buffer does not start with the magic number and
+	 *             version
+	 */
+	static void checkHeader(ByteBuffer in, int magic, int version, Path file) throws IOException {
+		if (in.remaining() < 8 || in.getInt() != magic) {
+			throw new IOException("Not a snapshot of the expected type: " + file);
+		}
+		int fileVersion = in.getInt();
+		if (fileVersion != version) {
+			throw new IOException("Unsupported snapshot version " + fileVersion + " in " + file);
+		}
+	}
+
+	/**
+	 *
+	 * @param out
+	 * @param values
+	 * @param count
+	 *            number of values, starting at index 0
+	 * @throws IOException
+	 */
+	static void putInts(FileChannel out, IntBuffer values, int count) throws IOException {
+		ByteBuffer chunk = startSection(count);
+		for (int i = 0; i < count; i++) {
+			if (chunk.remaining() < Integer.BYTES) {
+				flush(out, chunk);
+			}
+			chunk.putInt(values.get(i));
+		}
+		endSection(out, chunk);
+	}
+
+	/**
+	 *
+	 * @param out
+	 * @param values
+	 * @param count
+	 *            number of values, starting at index 0
+	 * @throws IOException
+	 */
+	static void putLongs(FileChannel out, LongBuffer values, int count) throws IOException {
+		ByteBuffer chunk = startSection(count);
+		for (int i = 0; i < count; i++) {
+			if (chunk.remaining() < Long.BYTES) {
+				flush(out, chunk);
+			}
+			chunk.putLong(values.get(i));
+		}
+		endSection(out, chunk);
+	}
+
+	/**
+	 *
+	 * @param out
+	 * @param strings
+	 *            written one after the other, without separators
+	 * @param count
+	 *            total number of characters in the strings
+	 * @throws IOException
+	 */
+	static void putChars(FileChannel out, Iterable<String> strings, int count) throws IOException {
+		ByteBuffer chunk = startSection(count);
+		for (String s : strings) {
+			for (int i = 0; i < s.length(); i++) {
+				if (chunk.remaining() < Character.BYTES) {
+					flush(out, chunk);
+				}
+				chunk.putChar(s.charAt(i));
+			}
+		}
+		endSection(out, chunk);
+	}
+
+	/**
+	 *
+	 * @param in
+	 *            buffer positioned at a section, left positioned after it
+	 * @return read-only view of the section
+	 * @throws IOException
+	 */
+	static IntBuffer getInts(ByteBuffer in) throws IOException {
+		int count = getCount(in, Integer.BYTES);
+		IntBuffer values = in.slice().order(ORDER).asIntBuffer();
+		values.limit(count);
+		skip(in, (long) count * Integer.BYTES);
+		return values;
+	}
+
+	/**
+	 *
+	 * @param in
+	 *            buffer positioned at a section, left positioned after it
+	 * @return read-only view of the section
+	 * @throws IOException
+	 */
+	static LongBuffer getLongs(ByteBuffer in) throws IOException {
+		int count = getCount(in, Long.BYTES);
+		LongBuffer values = in.slice().order(ORDER).asLongBuffer();
+		values.limit(count);
+		skip(in, (long) count * Long.BYTES);
+		return values;
+	}
+
+	/**
+	 *
+	 * @param in
+	 *            buffer positioned at a section, left positioned after it
+	 * @return read-only view of the section
+	 * @throws IOException
+	 */
+	static CharBuffer getChars(ByteBuffer in) throws IOException {
+		int count = getCount(in, Character.BYTES);
+		CharBuffer values = in.slice().order(ORDER).asCharBuffer();
+		values.limit(count);
+		skip(in, (long) count * Character.BYTES);
+		return values;
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private static ByteBuffer startSection(int count) {
+		ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE).order(ORDER);
+		chunk.putInt(count).putInt(0);
+		return chunk;
+	}
+
+	/**
+	 * Writes what is left in the chunk and pads the section.
+	 */
+	private static void endSection(FileChannel out, ByteBuffer chunk) throws IOException {
+		flush(out, chunk);
+		int padding = (int) (-out.position() & 7);
+		if (padding > 0) {
+			write(out, ByteBuffer.allocate(padding));
+		}
+	}
+
+	private static void flush(FileChannel out, ByteBuffer chunk) throws IOException {
+		chunk.flip();
+		write(out, chunk);
+		chunk.clear();
+	}
+
+	private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	private static int getCount(ByteBuffer in, int valueBytes) throws IOException {
+		if (in.remaining() < 8) {
+			throw new IOException("Truncated snapshot");
+		}
+		int count = in.getInt();
+		in.getInt();
+		if (count < 0 || (long) count * valueBytes > in.remaining()) {
+			throw new IOException("Truncated snapshot section of " + count + " values");
+		}
+		return count;
+	}
+
+	private static void skip(ByteBuffer in, long bytes) {
+		long padded = (bytes + 7) & ~7L;
+		in.position((int) Math.min(in.limit(), in.position() + padded));
+	}
+}
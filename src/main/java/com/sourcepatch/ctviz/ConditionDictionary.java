@@ -0,0 +1,434 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * UMLS surface forms of conditions, the concepts (CUIs) they name, and the
+ * automaton that finds them in condition texts.
+ *
+ * <p>
+ * CUIs, always "C" followed by seven digits, are represented by their
+ * numeric part, see {@link #parseCui(CharSequence)} and
+ * {@link #formatCui(int)}. The surface forms are kept sorted, each with the
+ * int CUI it names, and the preferred name of each concept is kept as the
+ * position of one of the surface forms in an {@link IntIntHashMap}.
+ *
+ * <p>
+ * The dictionary is built from the <code>dsyn.rrf</code> entry of
+ * <code>MRCONSO.conditions.zip</code>, or read from a snapshot written by
+ * {@link #write(Path)}. The snapshot holds the surface forms as a string
+ * table, the int columns and tables, and the automaton of the
+ * {@link SurfaceFormMatcher}, and is read through a memory-mapped buffer
+ * without parsing or rebuilding anything.
+ *
+ * <p>
+ * Instances are immutable and can be shared across threads.
+ *
+ * @author Denilson Nastacio
+ */
+public class ConditionDictionary {
+
+	/**
+	 * Location of the dictionary snapshot.
+	 */
+	public static final String PROPERTY_SNAPSHOT = "ctviz.conditions.snapshot";
+
+	/**
+	 * Snapshot used when {@link #PROPERTY_SNAPSHOT} is not set.
+	 */
+	public static final String DEFAULT_SNAPSHOT = "src/main/resources/MRCONSO.conditions.dict";
+
+	/**
+	 * Subset of the UMLS MRCONSO.RRF file for conditions, read when there is
+	 * no snapshot.
+	 */
+	public static final String DEFAULT_RRF_ARCHIVE = "src/main/resources/MRCONSO.conditions.zip";
+
+	/**
+	 * Returned for surface forms not in the dictionary.
+	 */
+	public static final int NO_CUI = -1;
+
+	private static final Logger LOG = Logger.getLogger(ConditionDictionary.class.getName());
+
+	private static final String RRF_ENTRY = "dsyn.rrf";
+
+	private static final int RRF_FIELD_CUI = 0;
+	private static final int RRF_FIELD_LAT = 1;
+	private static final int RRF_FIELD_TS = 2;
+	private static final int RRF_FIELD_STT = 4;
+	private static final int RRF_FIELD_ISPREF = 6;
+	private static final int RRF_FIELD_STR = 14;
+
+	private static final int MAGIC = 0x44435443; // "CTCD"
+	private static final int VERSION = 2;
+
+	private final List<String> surfaceForms;
+	private final IntBuffer surfaceFormCui;
+	private final IntIntHashMap preferredNames;
+	private final SurfaceFormMatcher matcher;
+
+	private volatile String contentHash;
+
+	/**
+	 *
+	 * @param surfaceForms
+	 *            sorted surface forms
+	 * @param surfaceFormCui
+	 *            CUI named by each surface form
+	 * @param preferredNames
+	 *            position of the preferred name in the surface forms, by CUI
+	 * @param matcher
+	 */
+	private ConditionDictionary(List<String> surfaceForms, IntBuffer surfaceFormCui, IntIntHashMap preferredNames,
+			SurfaceFormMatcher matcher) {
+		this.surfaceForms = surfaceForms;
+		this.surfaceFormCui = surfaceFormCui;
+		this.preferredNames = preferredNames;
+		this.matcher = matcher;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @return dictionary without surface forms
+	 */
+	public static ConditionDictionary empty() {
+		List<String> none = Collections.emptyList();
+		return new ConditionDictionary(none, IntBuffer.allocate(0), new IntIntHashMap(0),
+				SurfaceFormMatcher.build(none));
+	}
+
+	/**
+	 * Reads the snapshot from {@link #PROPERTY_SNAPSHOT}, or builds the
+	 * dictionary from {@link #DEFAULT_RRF_ARCHIVE} if there is no usable
+	 * snapshot or the archive is newer.
+	 *
+	 * @return the dictionary
+	 * @throws IOException
+	 */
+	public static ConditionDictionary open() throws IOException {
+		Path snapshot = Paths.get(System.getProperty(PROPERTY_SNAPSHOT, DEFAULT_SNAPSHOT));
+		Path archive = Paths.get(DEFAULT_RRF_ARCHIVE);
+
+		long start = System.nanoTime();
+		ConditionDictionary result = null;
+		Path source = snapshot;
+		if (Files.exists(snapshot) && (!Files.exists(archive)
+				|| Files.getLastModifiedTime(snapshot).compareTo(Files.getLastModifiedTime(archive)) >= 0)) {
+			try {
+				result = load(snapshot);
+			} catch (IOException e) {
+				if (!Files.exists(archive)) {
+					throw e;
+				}
+				LOG.warning("Ignoring condition dictionary snapshot " + snapshot + ": " + e.getMessage()
+						+ ". Run GenerateConditionRRF to update it.");
+			}
+		} else if (Files.exists(snapshot)) {
+			LOG.warning("Ignoring condition dictionary snapshot " + snapshot + ", older than " + archive
+					+ ". Run GenerateConditionRRF to update it.");
+		}
+		if (result == null) {
+			result = fromRrf(archive);
+			source = archive;
+		}
+		LOG.info("Loaded condition dictionary from " + source + " in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+		return result;
+	}
+
+	/**
+	 *
+	 * @param archive
+	 *            zip file with the MRCONSO rows for conditions
+	 * @return dictionary built from the rows
+	 * @throws IOException
+	 */
+	public static ConditionDictionary fromRrf(Path archive) throws IOException {
+		try (ZipFile zf = new ZipFile(archive.toFile())) {
+			ZipEntry entry = zf.getEntry(RRF_ENTRY);
+			if (entry == null) {
+				throw new IOException("Missing " + RRF_ENTRY + " in " + archive);
+			}
+			try (BufferedReader br = new BufferedReader(
+					new InputStreamReader(zf.getInputStream(entry), StandardCharsets.UTF_8))) {
+				return fromRrf(br);
+			}
+		}
+	}
+
+	/**
+	 * When a surface form names more than one concept, the concept in the
+	 * last row wins. The preferred name of a concept is its English preferred
+	 * term (LAT=ENG, TS=P, STT=PF, ISPREF=Y), or its first surface form if
+	 * there is none.
+	 *
+	 * @param rrf
+	 *            MRCONSO rows
+	 * @return dictionary built from the rows
+	 * @throws IOException
+	 */
+	public static ConditionDictionary fromRrf(BufferedReader rrf) throws IOException {
+		Map<String, Integer> surfaceFormCuiMap = new TreeMap<>();
+		Map<Integer, String> preferredNameMap = new HashMap<>();
+		IntHashSet preferredTerms = new IntHashSet(1024);
+		String line = null;
+		while ((line = rrf.readLine()) != null) {
+			int cui = parseCui(getField(line, RRF_FIELD_CUI));
+			String surfaceForm = getField(line, RRF_FIELD_STR);
+			if (cui == NO_CUI || surfaceForm == null) {
+				LOG.fine("Skipping malformed MRCONSO line: " + line);
+				continue;
+			}
+			surfaceFormCuiMap.put(surfaceForm, cui);
+			if (isPreferredTerm(line)) {
+				if (preferredTerms.add(cui)) {
+					preferredNameMap.put(cui, surfaceForm);
+				}
+			} else {
+				preferredNameMap.putIfAbsent(cui, surfaceForm);
+			}
+		}
+
+		List<String> surfaceForms = new ArrayList<>(surfaceFormCuiMap.keySet());
+		IntBuffer surfaceFormCui = IntBuffer.allocate(surfaceForms.size());
+		int i = 0;
+		for (int cui : surfaceFormCuiMap.values()) {
+			surfaceFormCui.put(i++, cui);
+		}
+		IntIntHashMap preferredNames = new IntIntHashMap(preferredNameMap.size());
+		for (Map.Entry<Integer, String> entry : preferredNameMap.entrySet()) {
+			preferredNames.put(entry.getKey(), Collections.binarySearch(surfaceForms, entry.getValue()));
+		}
+		return new ConditionDictionary(surfaceForms, surfaceFormCui, preferredNames,
+				SurfaceFormMatcher.build(surfaceForms));
+	}
+
+	/**
+	 *
+	 * @param snapshot
+	 *            file written by {@link #write(Path)}
+	 * @return dictionary backed by the memory-mapped file
+	 * @throws IOException
+	 */
+	public static ConditionDictionary load(Path snapshot) throws IOException {
+		ByteBuffer in = BinarySnapshot.map(snapshot);
+		BinarySnapshot.checkHeader(in, MAGIC, VERSION, snapshot);
+		StringTable surfaceForms = StringTable.read(in);
+		IntBuffer surfaceFormCui = BinarySnapshot.getInts(in);
+		if (surfaceFormCui.limit() != surfaceForms.size()) {
+			throw new IOException("Inconsistent condition dictionary snapshot: " + snapshot);
+		}
+		IntIntHashMap preferredNames = IntIntHashMap.read(in);
+		SurfaceFormMatcher matcher = SurfaceFormMatcher.read(in, surfaceForms);
+		return new ConditionDictionary(surfaceForms, surfaceFormCui, preferredNames, matcher);
+	}
+
+	/**
+	 * Writes a snapshot of the dictionary, replacing the file at once so that
+	 * processes still reading the previous snapshot are not affected.
+	 *
+	 * @param snapshot
+	 * @throws IOException
+	 */
+	public void write(Path snapshot) throws IOException {
+		Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+		try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			BinarySnapshot.putHeader(out, MAGIC, VERSION);
+			StringTable.write(out, surfaceForms);
+			BinarySnapshot.putInts(out, surfaceFormCui, surfaceForms.size());
+			preferredNames.write(out);
+			matcher.write(out);
+		}
+		Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Identifies the contents of the dictionary, whether it was built from
+	 * MRCONSO rows or loaded from a snapshot. Computed on first use.
+	 *
+	 * @return SHA-256 of the surface forms and the concepts they name, in
+	 *         hexadecimal
+	 */
+	public String getContentHash() {
+		String result = contentHash;
+		if (result == null) {
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			ByteBuffer ints = ByteBuffer.allocate(8);
+			for (int i = 0; i < surfaceForms.size(); i++) {
+				byte[] surfaceForm = surfaceForms.get(i).getBytes(StandardCharsets.UTF_8);
+				ints.clear();
+				ints.putInt(surfaceForm.length).putInt(surfaceFormCui.get(i));
+				digest.update(ints.array());
+				digest.update(surfaceForm);
+			}
+			result = String.format("%064x", new BigInteger(1, digest.digest()));
+			contentHash = result;
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param surfaceForm
+	 * @return concept named by the surface form, or {@link #NO_CUI} if the
+	 *         surface form is not in the dictionary
+	 */
+	public int getCui(String surfaceForm) {
+		int index = Collections.binarySearch(surfaceForms, surfaceForm);
+		return index >= 0 ? surfaceFormCui.get(index) : NO_CUI;
+	}
+
+	/**
+	 *
+	 * @param cui
+	 * @return preferred name of the concept, or <code>null</code> if the
+	 *         concept is not in the dictionary
+	 */
+	public String getPreferredName(int cui) {
+		int index = preferredNames.get(cui);
+		return index != IntIntHashMap.NO_VALUE ? surfaceForms.get(index) : null;
+	}
+
+	/**
+	 *
+	 * @return automaton over the surface forms
+	 */
+	public SurfaceFormMatcher getMatcher() {
+		return matcher;
+	}
+
+	/**
+	 *
+	 * @return number of unique concepts
+	 */
+	public int getConceptCount() {
+		return preferredNames.size();
+	}
+
+	/**
+	 *
+	 * @return number of unique surface forms
+	 */
+	public int getSurfaceFormCount() {
+		return surfaceForms.size();
+	}
+
+	/**
+	 *
+	 * @param cui
+	 *            CUI such as C0006142
+	 * @return numeric part of the CUI, or {@link #NO_CUI} if it is not a CUI
+	 */
+	public static int parseCui(CharSequence cui) {
+		if (cui == null) {
+			return NO_CUI;
+		}
+		int length = cui.length();
+		if (length < 2 || length > 10 || cui.charAt(0) != 'C') {
+			return NO_CUI;
+		}
+		int value = 0;
+		for (int i = 1; i < length; i++) {
+			int digit = cui.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return NO_CUI;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 *
+	 * @param cui
+	 *            numeric part of a CUI
+	 * @return CUI such as C0006142
+	 */
+	public static String formatCui(int cui) {
+		String digits = Integer.toString(cui);
+		StringBuilder sb = new StringBuilder(8).append('C');
+		for (int i = digits.length(); i < 7; i++) {
+			sb.append('0');
+		}
+		return sb.append(digits).toString();
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 *
+	 * @param line
+	 *            MRCONSO row
+	 * @return <code>true</code> if the row is the English preferred term of
+	 *         its concept
+	 */
+	private static boolean isPreferredTerm(String line) {
+		return "ENG".equals(getField(line, RRF_FIELD_LAT)) && "P".equals(getField(line, RRF_FIELD_TS))
+				&& "PF".equals(getField(line, RRF_FIELD_STT)) && "Y".equals(getField(line, RRF_FIELD_ISPREF));
+	}
+
+	/**
+	 *
+	 * @param line
+	 *            pipe-delimited line
+	 * @param field
+	 *            zero-based field number
+	 * @return the field or <code>null</code> if the line is too short
+	 */
+	private static String getField(String line, int field) {
+		int start = 0;
+		for (int i = 0; i < field; i++) {
+			start = line.indexOf('|', start) + 1;
+			if (start == 0) {
+				return null;
+			}
+		}
+		int end = line.indexOf('|', start);
+		return line.substring(start, end == -1 ? line.length() : end);
+	}
+}
@@ -0,0 +1,219 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Maps the condition texts of studies to the longest condition name they
+ * contain, remembering the results in a {@link TinyLfuCache}.
+ *
+ * <p>
+ * Texts without a known condition name are normalized to lowercase, with
+ * dashes replaced by spaces. Normalizers can be shared across threads.
+ *
+ * <p>
+ * When created with a cache file, the entries are read from the file and
+ * saved back to it by {@link #save()}, as tab-separated lines after a header
+ * with the content hash of the dictionary they came from. The file is ignored
+ * when the dictionary changes.
+ *
+ * @author Denilson Nastacio
+ */
+public class ConditionNormalizer {
+
+	/**
+	 * Maximum number of condition texts remembered.
+	 */
+	public static final String PROPERTY_CACHE_SIZE = "ctviz.conditions.cache.size";
+
+	/**
+	 * File where the normalized condition texts are kept across runs. Not set
+	 * by default.
+	 */
+	public static final String PROPERTY_CACHE_FILE = "ctviz.conditions.cache";
+
+	/**
+	 * Cache size used when {@link #PROPERTY_CACHE_SIZE} is not set.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 100000;
+
+	private static final Logger LOG = Logger.getLogger(ConditionNormalizer.class.getName());
+
+	private static final String HEADER_PREFIX = "# ctviz condition cache ";
+
+	private static final char SEPARATOR = '\t';
+
+	private final ConditionDictionary dictionary;
+	private final TinyLfuCache<String, String> cache;
+	private final Path file;
+
+	/**
+	 *
+	 * @param dictionary
+	 * @param maximumSize
+	 *            maximum number of condition texts remembered
+	 * @param file
+	 *            cache file, or <code>null</code> to keep the results only in
+	 *            memory
+	 */
+	public ConditionNormalizer(ConditionDictionary dictionary, int maximumSize, Path file) {
+		this.dictionary = dictionary;
+		this.cache = new TinyLfuCache<>(maximumSize);
+		this.file = file;
+		if (file != null && Files.exists(file)) {
+			try {
+				readFile();
+			} catch (IOException e) {
+				LOG.log(Level.WARNING, "Unable to read condition cache " + file, e);
+			}
+		}
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 * Reads the cache size and file from {@link #PROPERTY_CACHE_SIZE} and
+	 * {@link #PROPERTY_CACHE_FILE}.
+	 *
+	 * @param dictionary
+	 * @return normalizer for the dictionary
+	 */
+	public static ConditionNormalizer fromProperties(ConditionDictionary dictionary) {
+		String cacheFile = System.getProperty(PROPERTY_CACHE_FILE);
+		return new ConditionNormalizer(dictionary, Integer.getInteger(PROPERTY_CACHE_SIZE, DEFAULT_CACHE_SIZE),
+				cacheFile != null ? Paths.get(cacheFile) : null);
+	}
+
+	/**
+	 *
+	 * @param condition
+	 *            condition text of a study
+	 * @return normalized condition name
+	 */
+	public String normalize(String condition) {
+		return cache.get(condition, this::findConditionName);
+	}
+
+	/**
+	 *
+	 * @return dictionary used to normalize the condition texts
+	 */
+	public ConditionDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 *
+	 * @return cache of normalized condition texts, with its counters
+	 */
+	public TinyLfuCache<String, String> getCache() {
+		return cache;
+	}
+
+	/**
+	 * Logs the cache counters and writes the cache file, if there is one.
+	 *
+	 * @throws IOException
+	 */
+	public void save() throws IOException {
+		LOG.info("Condition normalization cache: " + cache.getStatistics());
+		if (file == null) {
+			return;
+		}
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter bw = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			bw.write(getHeader());
+			bw.write('\n');
+			IOException[] failure = new IOException[1];
+			cache.forEach((condition, name) -> {
+				if (failure[0] != null || !isSavable(condition) || !isSavable(name)) {
+					return;
+				}
+				try {
+					bw.write(condition);
+					bw.write(SEPARATOR);
+					bw.write(name);
+					bw.write('\n');
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			});
+			if (failure[0] != null) {
+				throw failure[0];
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private String findConditionName(String condition) {
+		String name = dictionary.getMatcher().findLongest(condition);
+		if (name == null) {
+			name = condition.replaceAll("-", " ").toLowerCase();
+		}
+		if (LOG.isLoggable(Level.FINER)) {
+			LOG.finer(condition + " :: " + name);
+		}
+		return name;
+	}
+
+	private void readFile() throws IOException {
+		long start = System.nanoTime();
+		int count = 0;
+		try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String header = br.readLine();
+			if (!getHeader().equals(header)) {
+				LOG.info("Ignoring condition cache " + file + ", written for another condition dictionary.");
+				return;
+			}
+			String line;
+			while ((line = br.readLine()) != null && count < cache.getMaximumSize()) {
+				int separator = line.indexOf(SEPARATOR);
+				if (separator == -1) {
+					continue;
+				}
+				cache.putIfAbsent(line.substring(0, separator), line.substring(separator + 1));
+				count++;
+			}
+		}
+		LOG.info("Loaded " + count + " normalized conditions from " + file + " in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+	}
+
+	/**
+	 *
+	 * @return first line of the cache file, identifying the dictionary
+	 */
+	private String getHeader() {
+		return HEADER_PREFIX + dictionary.getContentHash();
+	}
+
+	private static boolean isSavable(String text) {
+		return text.indexOf(SEPARATOR) == -1 && text.indexOf('\n') == -1 && text.indexOf('\r') == -1;
+	}
+}
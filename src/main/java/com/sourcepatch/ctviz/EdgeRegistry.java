@@ -0,0 +1,328 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Hash index of the edges in one graph, keyed by source vertex, target vertex
+ * and edge label, so that each relation is a single edge.
+ *
+ * <p>
+ * A relation stated more than once, by the same trial or by different
+ * trials, is kept as one edge with the number of times it was stated in
+ * {@link GraphSchema#EDGE_PROPERTY_COUNT} and the NCT ids of the trials
+ * stating it in {@link GraphSchema#EDGE_PROPERTY_NCT_ID}, as a multiset
+ * separated by spaces. The registry counts the occurrences of each NCT id,
+ * and builds the multiset of the edges changed since the last call to
+ * {@link #writeNctIds(BiConsumer)}, so that adding a trial to an edge stated
+ * by many trials does not copy the NCT ids of all of them.
+ *
+ * <p>
+ * Instances are not thread-safe and must be used from the thread that writes
+ * to the graph.
+ *
+ * @param <V>
+ *            vertex type of the underlying graph library
+ * @param <E>
+ *            edge type of the underlying graph library
+ *
+ * @author Denilson Nastacio
+ */
+public class EdgeRegistry<V, E> {
+
+	private static final char NCT_ID_SEPARATOR = ' ';
+
+	private final Map<EdgeKey, Relation<E>> edges = new HashMap<>();
+
+	/**
+	 * Relations whose NCT ids changed since they were last written.
+	 */
+	private final List<Relation<E>> changed = new ArrayList<>();
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param source
+	 * @param target
+	 * @param edgeLabel
+	 * @return the registered edge or <code>null</code> if there is none
+	 */
+	public E get(V source, V target, String edgeLabel) {
+		Relation<E> relation = edges.get(new EdgeKey(source, target, edgeLabel));
+		return relation != null ? relation.edge : null;
+	}
+
+	/**
+	 * Registers an edge, such as a new edge or an edge in a graph loaded from
+	 * disk.
+	 *
+	 * @param source
+	 * @param target
+	 * @param edgeLabel
+	 * @param edge
+	 * @param nctIds
+	 *            NCT id multiset already on the edge, or <code>null</code>
+	 *            for a new edge
+	 */
+	public void register(V source, V target, String edgeLabel, E edge, String nctIds) {
+		Relation<E> relation = new Relation<>(edge);
+		if (nctIds != null) {
+			int start = 0;
+			while (start < nctIds.length()) {
+				int end = nctIds.indexOf(NCT_ID_SEPARATOR, start);
+				if (end < 0) {
+					end = nctIds.length();
+				}
+				if (end > start) {
+					relation.add(nctIds.substring(start, end));
+				}
+				start = end + 1;
+			}
+		}
+		Relation<E> previous = edges.put(new EdgeKey(source, target, edgeLabel), relation);
+		if (previous != null) {
+			previous.registered = false;
+		}
+	}
+
+	/**
+	 *
+	 * @param source
+	 * @param target
+	 * @param edgeLabel
+	 * @return the edge that was registered, or <code>null</code> if there was
+	 *         none
+	 */
+	public E remove(V source, V target, String edgeLabel) {
+		Relation<E> relation = edges.remove(new EdgeKey(source, target, edgeLabel));
+		if (relation == null) {
+			return null;
+		}
+		relation.registered = false;
+		return relation.edge;
+	}
+
+	/**
+	 *
+	 * @return number of registered edges
+	 */
+	public int size() {
+		return edges.size();
+	}
+
+	/**
+	 *
+	 * @param source
+	 * @param target
+	 * @param edgeLabel
+	 * @param nctId
+	 * @return number of NCT id occurrences of the registered edge, with one
+	 *         more occurrence of the NCT id
+	 */
+	public int addNctId(V source, V target, String edgeLabel, String nctId) {
+		Relation<E> relation = edges.get(new EdgeKey(source, target, edgeLabel));
+		relation.add(nctId);
+		markChanged(relation);
+		return relation.count;
+	}
+
+	/**
+	 *
+	 * @param source
+	 * @param target
+	 * @param edgeLabel
+	 * @param nctId
+	 * @return number of NCT id occurrences left on the registered edge,
+	 *         without any occurrence of the NCT id
+	 */
+	public int removeNctId(V source, V target, String edgeLabel, String nctId) {
+		Relation<E> relation = edges.get(new EdgeKey(source, target, edgeLabel));
+		if (relation.remove(nctId)) {
+			markChanged(relation);
+		}
+		return relation.count;
+	}
+
+	/**
+	 *
+	 * @param source
+	 * @param target
+	 * @param edgeLabel
+	 * @param nctId
+	 * @return <code>true</code> if the edge is registered and has the NCT id
+	 */
+	public boolean containsNctId(V source, V target, String edgeLabel, String nctId) {
+		Relation<E> relation = edges.get(new EdgeKey(source, target, edgeLabel));
+		return relation != null && relation.contains(nctId);
+	}
+
+	/**
+	 *
+	 * @param source
+	 * @param target
+	 * @param edgeLabel
+	 * @return NCT id multiset of the registered edge, or <code>null</code> if
+	 *         it is empty or the edge is not registered
+	 */
+	public String getNctIds(V source, V target, String edgeLabel) {
+		Relation<E> relation = edges.get(new EdgeKey(source, target, edgeLabel));
+		return relation != null ? relation.toNctIds() : null;
+	}
+
+	/**
+	 * Hands out the NCT id multiset of each registered edge changed since the
+	 * last call.
+	 *
+	 * @param writer
+	 *            receives each edge with its NCT id multiset
+	 * @return number of edges written
+	 */
+	public int writeNctIds(BiConsumer<E, String> writer) {
+		int written = 0;
+		for (Relation<E> relation : changed) {
+			relation.changed = false;
+			if (relation.registered) {
+				writer.accept(relation.edge, relation.toNctIds());
+				written++;
+			}
+		}
+		changed.clear();
+		return written;
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private void markChanged(Relation<E> relation) {
+		if (!relation.changed) {
+			relation.changed = true;
+			changed.add(relation);
+		}
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Registered edge with the occurrences of the NCT ids stating it. Most
+	 * edges are stated by a single trial, whose NCT id is kept without a map.
+	 */
+	private static class Relation<E> {
+		private final E edge;
+		private String nctId;
+		private Map<String, Integer> occurrences;
+		private int count;
+		private boolean changed;
+		private boolean registered = true;
+
+		Relation(E edge) {
+			this.edge = edge;
+		}
+
+		void add(String id) {
+			if (occurrences != null) {
+				occurrences.merge(id, 1, Integer::sum);
+			} else if (count == 0 || id.equals(nctId)) {
+				nctId = id;
+			} else {
+				occurrences = new LinkedHashMap<>();
+				occurrences.put(nctId, count);
+				occurrences.put(id, 1);
+				nctId = null;
+			}
+			count++;
+		}
+
+		boolean remove(String id) {
+			if (occurrences == null) {
+				if (!id.equals(nctId)) {
+					return false;
+				}
+				nctId = null;
+				count = 0;
+				return true;
+			}
+			Integer removed = occurrences.remove(id);
+			if (removed == null) {
+				return false;
+			}
+			count -= removed;
+			return true;
+		}
+
+		boolean contains(String id) {
+			return occurrences == null ? id.equals(nctId) : occurrences.containsKey(id);
+		}
+
+		String toNctIds() {
+			if (count == 0) {
+				return null;
+			}
+			StringBuilder sb = new StringBuilder();
+			if (occurrences == null) {
+				append(sb, nctId, count);
+			} else {
+				occurrences.forEach((id, n) -> append(sb, id, n));
+			}
+			return sb.toString();
+		}
+
+		private static void append(StringBuilder sb, String id, int n) {
+			for (int i = 0; i < n; i++) {
+				if (sb.length() > 0) {
+					sb.append(NCT_ID_SEPARATOR);
+				}
+				sb.append(id);
+			}
+		}
+	}
+
+	/**
+	 * Source, target and label of an edge.
+	 */
+	private static class EdgeKey {
+		private final Object source;
+		private final Object target;
+		private final String label;
+		private final int hash;
+
+		EdgeKey(Object source, Object target, String label) {
+			this.source = source;
+			this.target = target;
+			this.label = label;
+			this.hash = (source.hashCode() * 31 + target.hashCode()) * 31 + label.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof EdgeKey)) {
+				return false;
+			}
+			EdgeKey other = (EdgeKey) obj;
+			return hash == other.hash && source.equals(other.source) && target.equals(other.target)
+					&& label.equals(other.label);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.Map;
+
+/**
+ * Read-only view of a graph for the {@link GraphExporter}, over the nodes and
+ * edges of the graph model it comes from.
+ *
+ * <p>
+ * The accessors of nodes and edges are called from several threads at once,
+ * while the graph is not modified.
+ *
+ * @author Denilson Nastacio
+ *
+ * @param <N>
+ *            node type
+ * @param <E>
+ *            edge type
+ */
+public interface ExportableGraph<N, E> {
+
+	/**
+	 *
+	 * @return name and value type of the node attributes
+	 */
+	Map<String, Class<?>> getNodeAttributes();
+
+	/**
+	 *
+	 * @return name and value type of the edge attributes
+	 */
+	Map<String, Class<?>> getEdgeAttributes();
+
+	/**
+	 *
+	 * @return <code>true</code> if the nodes have a position in a layout
+	 */
+	boolean hasPositions();
+
+	/**
+	 *
+	 * @return <code>true</code> if the edges have weights other than 1
+	 */
+	boolean hasWeights();
+
+	/**
+	 *
+	 * @return nodes of the graph
+	 */
+	Iterable<N> getNodes();
+
+	/**
+	 *
+	 * @return edges of the graph
+	 */
+	Iterable<E> getEdges();
+
+	/**
+	 *
+	 * @param node
+	 * @return id of the node
+	 */
+	String getNodeId(N node);
+
+	/**
+	 *
+	 * @param node
+	 * @return label of the node, or <code>null</code>
+	 */
+	String getNodeLabel(N node);
+
+	/**
+	 *
+	 * @param node
+	 * @param attribute
+	 *            one of the {@link #getNodeAttributes()}
+	 * @return value of the attribute, or <code>null</code>
+	 */
+	Object getNodeAttribute(N node, String attribute);
+
+	/**
+	 *
+	 * @param node
+	 * @return horizontal position of the node
+	 */
+	float getNodeX(N node);
+
+	/**
+	 *
+	 * @param node
+	 * @return vertical position of the node
+	 */
+	float getNodeY(N node);
+
+	/**
+	 *
+	 * @param edge
+	 * @return id of the edge
+	 */
+	String getEdgeId(E edge);
+
+	/**
+	 *
+	 * @param edge
+	 * @return id of the source node
+	 */
+	String getEdgeSource(E edge);
+
+	/**
+	 *
+	 * @param edge
+	 * @return id of the target node
+	 */
+	String getEdgeTarget(E edge);
+
+	/**
+	 *
+	 * @param edge
+	 * @return label of the edge, or <code>null</code>
+	 */
+	String getEdgeLabel(E edge);
+
+	/**
+	 *
+	 * @param edge
+	 * @return weight of the edge
+	 */
+	double getEdgeWeight(E edge);
+
+	/**
+	 *
+	 * @param edge
+	 * @param attribute
+	 *            one of the {@link #getEdgeAttributes()}
+	 * @return value of the attribute, or <code>null</code>
+	 */
+	Object getEdgeAttribute(E edge, String attribute);
+}
@@ -0,0 +1,521 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Force-directed layout for large graphs, run until the positions converge.
+ *
+ * <p>
+ * Nodes repel each other and edges pull their ends together, as in
+ * Fruchterman-Reingold, with a gravity pulling every node towards the
+ * origin so that disconnected parts stay close. Repulsion is approximated
+ * with a Barnes-Hut quadtree, rebuilt on each iteration, so that each
+ * iteration costs O(n log n) instead of O(n<sup>2</sup>), and the forces on
+ * the nodes are computed in parallel with fork-join. Nodes move a step along
+ * their force, and the step grows while the energy of the layout keeps
+ * dropping and shrinks when it does not, after Hu's adaptive cooling. The
+ * layout stops once the step is below the tolerance, or after the maximum
+ * number of iterations.
+ *
+ * <p>
+ * Forces on each node only depend on the positions at the start of the
+ * iteration, so the result does not depend on the number of threads.
+ *
+ * @author Denilson Nastacio
+ */
+public class ForceLayout {
+
+	/**
+	 * Number of threads computing forces.
+	 */
+	public static final String PROPERTY_THREADS = "ctviz.layout.threads";
+
+	/**
+	 * Barnes-Hut opening angle: a group of nodes is seen as a single node
+	 * when its size is below this fraction of its distance. Larger values
+	 * are faster and less precise.
+	 */
+	public static final String PROPERTY_THETA = "ctviz.layout.theta";
+
+	/**
+	 * Step, relative to the length of an edge, below which the layout is
+	 * converged.
+	 */
+	public static final String PROPERTY_TOLERANCE = "ctviz.layout.tolerance";
+
+	/**
+	 * Maximum number of iterations.
+	 */
+	public static final String PROPERTY_MAX_ITERATIONS = "ctviz.layout.iterations";
+
+	private static final Logger LOG = Logger.getLogger(ForceLayout.class.getName());
+
+	/**
+	 * Length of an edge at rest, in layout coordinates.
+	 */
+	private static final double EDGE_LENGTH = 10;
+
+	private static final double GRAVITY = 0.05;
+
+	/**
+	 * Step factor applied when the energy does not drop, or inverted after
+	 * the energy drops {@link #PROGRESS_STEPS} times in a row.
+	 */
+	private static final double COOLING = 0.9;
+	private static final int PROGRESS_STEPS = 5;
+
+	/**
+	 * Nodes whose forces are computed by the same fork-join task.
+	 */
+	private static final int TASK_NODES = 1024;
+
+	private final int threads;
+	private final double theta;
+	private final double tolerance;
+	private final int maxIterations;
+
+	/**
+	 *
+	 * @param threads
+	 *            threads computing forces
+	 * @param theta
+	 *            Barnes-Hut opening angle, see {@link #PROPERTY_THETA}
+	 * @param tolerance
+	 *            step, relative to the length of an edge, below which the
+	 *            layout is converged
+	 * @param maxIterations
+	 */
+	public ForceLayout(int threads, double theta, double tolerance, int maxIterations) {
+		if (threads < 1 || theta < 0 || tolerance <= 0 || maxIterations < 1) {
+			throw new IllegalArgumentException("Invalid layout parameters: threads " + threads + ", theta " + theta
+					+ ", tolerance " + tolerance + ", iterations " + maxIterations);
+		}
+		this.threads = threads;
+		this.theta = theta;
+		this.tolerance = tolerance;
+		this.maxIterations = maxIterations;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @return layout configured by the <code>ctviz.layout.*</code> properties
+	 */
+	public static ForceLayout fromProperties() {
+		return new ForceLayout(Integer.getInteger(PROPERTY_THREADS, Runtime.getRuntime().availableProcessors()),
+				Double.parseDouble(System.getProperty(PROPERTY_THETA, "1.2")),
+				Double.parseDouble(System.getProperty(PROPERTY_TOLERANCE, "0.01")),
+				Integer.getInteger(PROPERTY_MAX_ITERATIONS, 1000));
+	}
+
+	/**
+	 * Lays out a graph, starting from the current positions of the nodes, or
+	 * from random positions if all nodes are at the origin.
+	 *
+	 * @param x
+	 *            horizontal position of each node, replaced by the new one
+	 * @param y
+	 *            vertical position of each node, replaced by the new one
+	 * @param sources
+	 *            source node of each edge
+	 * @param targets
+	 *            target node of each edge
+	 * @param weights
+	 *            weight of each edge, multiplying its attraction
+	 * @return number of iterations
+	 */
+	public int run(float[] x, float[] y, int[] sources, int[] targets, double[] weights) {
+		int n = x.length;
+		if (n == 0) {
+			return 0;
+		}
+		long start = System.nanoTime();
+		Simulation simulation = new Simulation(x, y, sources, targets, weights);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		int iteration = 0;
+		double step = 0.1 * Math.sqrt(n);
+		try {
+			double energy = Double.POSITIVE_INFINITY;
+			int progress = 0;
+			while (iteration < maxIterations && step >= tolerance) {
+				simulation.tree.build(simulation.px, simulation.py);
+				double newEnergy = pool.invoke(simulation.new ForceTask(0, n));
+				simulation.move(step);
+				iteration++;
+
+				if (newEnergy < energy) {
+					if (++progress >= PROGRESS_STEPS) {
+						progress = 0;
+						step /= COOLING;
+					}
+				} else {
+					progress = 0;
+					step *= COOLING;
+				}
+				energy = newEnergy;
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		for (int i = 0; i < n; i++) {
+			x[i] = (float) (simulation.px[i] * EDGE_LENGTH);
+			y[i] = (float) (simulation.py[i] * EDGE_LENGTH);
+		}
+		long nanos = System.nanoTime() - start;
+		LOG.info("Laid out " + n + " nodes and " + sources.length + " edges in " + iteration + " iterations, "
+				+ TimeUnit.NANOSECONDS.toMillis(nanos) + "ms, "
+				+ String.format("%.2f", iteration * 1e9 / Math.max(nanos, 1)) + " iterations/s, "
+				+ (step < tolerance ? "converged." : "stopped before converging."));
+		return iteration;
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Positions, forces and adjacency of the nodes during a layout, in units
+	 * of the edge length.
+	 */
+	private class Simulation {
+		private final double[] px;
+		private final double[] py;
+		private final double[] fx;
+		private final double[] fy;
+		private final int[] offsets;
+		private final int[] neighbors;
+		private final double[] neighborWeights;
+		private final QuadTree tree;
+		private final double theta2 = theta * theta;
+
+		Simulation(float[] x, float[] y, int[] sources, int[] targets, double[] weights) {
+			int n = x.length;
+			px = new double[n];
+			py = new double[n];
+			fx = new double[n];
+			fy = new double[n];
+			boolean positioned = false;
+			for (int i = 0; i < n && !positioned; i++) {
+				positioned = x[i] != 0 || y[i] != 0;
+			}
+			Random random = new Random(n);
+			double side = Math.sqrt(n);
+			for (int i = 0; i < n; i++) {
+				px[i] = positioned ? x[i] / EDGE_LENGTH : (random.nextDouble() - 0.5) * side;
+				py[i] = positioned ? y[i] / EDGE_LENGTH : (random.nextDouble() - 0.5) * side;
+			}
+
+			// Both ends of each edge see the other end as a neighbor.
+			offsets = new int[n + 1];
+			for (int e = 0; e < sources.length; e++) {
+				if (sources[e] != targets[e]) {
+					offsets[sources[e] + 1]++;
+					offsets[targets[e] + 1]++;
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				offsets[i + 1] += offsets[i];
+			}
+			neighbors = new int[offsets[n]];
+			neighborWeights = new double[offsets[n]];
+			int[] next = Arrays.copyOf(offsets, n);
+			for (int e = 0; e < sources.length; e++) {
+				int s = sources[e];
+				int t = targets[e];
+				if (s != t) {
+					neighbors[next[s]] = t;
+					neighborWeights[next[s]++] = weights[e];
+					neighbors[next[t]] = s;
+					neighborWeights[next[t]++] = weights[e];
+				}
+			}
+			tree = new QuadTree(n);
+		}
+
+		/**
+		 * Moves each node by the step, along its force.
+		 *
+		 * @param step
+		 */
+		void move(double step) {
+			for (int i = 0; i < px.length; i++) {
+				double length = Math.sqrt(fx[i] * fx[i] + fy[i] * fy[i]);
+				if (length > 0) {
+					px[i] += step * fx[i] / length;
+					py[i] += step * fy[i] / length;
+				}
+			}
+		}
+
+		/**
+		 * Computes the force on a node.
+		 *
+		 * @param i
+		 * @param stack
+		 *            scratch space for the quadtree traversal
+		 * @return squared magnitude of the force
+		 */
+		double computeForce(int i, int[] stack) {
+			double xi = px[i];
+			double yi = py[i];
+			double fxi = 0;
+			double fyi = 0;
+
+			// Repulsion, magnitude 1/d for each other node.
+			int top = 0;
+			stack[top++] = QuadTree.ROOT;
+			while (top > 0) {
+				int c = stack[--top];
+				int body = tree.body[c];
+				double mass = tree.mass[c];
+				if (body == i || mass == 0) {
+					continue;
+				}
+				double cx = tree.centerX[c];
+				double cy = tree.centerY[c];
+				boolean inside = tree.contains(c, xi, yi);
+				if (body == QuadTree.INTERNAL) {
+					double dx = xi - cx;
+					double dy = yi - cy;
+					double size = tree.size[c];
+					if (inside || size * size >= theta2 * (dx * dx + dy * dy)) {
+						int child = tree.firstChild[c];
+						stack[top++] = child;
+						stack[top++] = child + 1;
+						stack[top++] = child + 2;
+						stack[top++] = child + 3;
+						continue;
+					}
+				} else if (body == QuadTree.MULTIPLE && inside) {
+					// Leaving the node itself out of the coincident nodes.
+					cx = (cx * mass - xi) / (mass - 1);
+					cy = (cy * mass - yi) / (mass - 1);
+					mass--;
+					if (mass == 0) {
+						continue;
+					}
+				}
+				double dx = xi - cx;
+				double dy = yi - cy;
+				double d2 = dx * dx + dy * dy;
+				if (d2 > QuadTree.MIN_DISTANCE2) {
+					double f = mass / d2;
+					fxi += dx * f;
+					fyi += dy * f;
+				}
+			}
+
+			// Attraction, magnitude weight * d^2 for each neighbor.
+			for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+				int j = neighbors[k];
+				double dx = px[j] - xi;
+				double dy = py[j] - yi;
+				double f = neighborWeights[k] * Math.sqrt(dx * dx + dy * dy);
+				fxi += dx * f;
+				fyi += dy * f;
+			}
+
+			// Gravity, proportional to the distance to the origin.
+			fxi -= GRAVITY * xi;
+			fyi -= GRAVITY * yi;
+
+			fx[i] = fxi;
+			fy[i] = fyi;
+			return fxi * fxi + fyi * fyi;
+		}
+
+		/**
+		 * Computes the forces on a range of nodes, splitting large ranges
+		 * into subtasks.
+		 */
+		class ForceTask extends RecursiveTask<Double> {
+			private static final long serialVersionUID = 1L;
+			private final int from;
+			private final int to;
+
+			ForceTask(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+
+			@Override
+			protected Double compute() {
+				if (to - from > TASK_NODES) {
+					int middle = (from + to) >>> 1;
+					ForceTask left = new ForceTask(from, middle);
+					left.fork();
+					double right = new ForceTask(middle, to).compute();
+					return left.join() + right;
+				}
+				int[] stack = new int[QuadTree.STACK_SIZE];
+				double energy = 0;
+				for (int i = from; i < to; i++) {
+					energy += computeForce(i, stack);
+				}
+				return energy;
+			}
+		}
+	}
+
+	/**
+	 * Quadtree over the positions of the nodes, with the mass and center of
+	 * mass of the nodes in each cell. The four children of a cell are
+	 * consecutive.
+	 */
+	private static class QuadTree {
+		static final int ROOT = 0;
+		static final int EMPTY = -1;
+		static final int INTERNAL = -2;
+
+		/**
+		 * Leaf at the maximum depth holding more than one node.
+		 */
+		static final int MULTIPLE = -3;
+
+		static final int MAX_DEPTH = 48;
+		static final int STACK_SIZE = 3 * MAX_DEPTH + 4;
+		static final double MIN_DISTANCE2 = 1e-18;
+
+		private double[] minX;
+		private double[] minY;
+		private double[] size;
+		private double[] mass;
+		private double[] centerX;
+		private double[] centerY;
+		private int[] firstChild;
+		private int[] body;
+		private int cells;
+
+		QuadTree(int nodes) {
+			allocate(Math.max(16, nodes * 2));
+		}
+
+		/**
+		 *
+		 * @param px
+		 * @param py
+		 */
+		void build(double[] px, double[] py) {
+			double x0 = Double.POSITIVE_INFINITY;
+			double y0 = Double.POSITIVE_INFINITY;
+			double x1 = Double.NEGATIVE_INFINITY;
+			double y1 = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < px.length; i++) {
+				x0 = Math.min(x0, px[i]);
+				y0 = Math.min(y0, py[i]);
+				x1 = Math.max(x1, px[i]);
+				y1 = Math.max(y1, py[i]);
+			}
+			cells = 0;
+			newCell(x0, y0, Math.max(Math.max(x1 - x0, y1 - y0), 1e-9) * 1.0001);
+			for (int i = 0; i < px.length; i++) {
+				insert(i, px[i], py[i], px, py);
+			}
+			for (int c = 0; c < cells; c++) {
+				if (mass[c] > 0) {
+					centerX[c] /= mass[c];
+					centerY[c] /= mass[c];
+				}
+			}
+		}
+
+		boolean contains(int c, double x, double y) {
+			return x >= minX[c] && x < minX[c] + size[c] && y >= minY[c] && y < minY[c] + size[c];
+		}
+
+		/**
+		 * Adds a node, keeping the sum of the positions in the center of
+		 * mass until the tree is built.
+		 */
+		private void insert(int i, double x, double y, double[] px, double[] py) {
+			int c = ROOT;
+			int depth = 0;
+			while (true) {
+				if (body[c] == INTERNAL) {
+					addMass(c, x, y);
+					c = firstChild[c] + quadrant(c, x, y);
+					depth++;
+				} else if (body[c] == EMPTY) {
+					body[c] = i;
+					addMass(c, x, y);
+					return;
+				} else if (body[c] == MULTIPLE || depth >= MAX_DEPTH) {
+					body[c] = MULTIPLE;
+					addMass(c, x, y);
+					return;
+				} else {
+					// Leaf with one node: split it and move the node down.
+					int other = body[c];
+					split(c);
+					int child = firstChild[c] + quadrant(c, px[other], py[other]);
+					body[child] = other;
+					addMass(child, px[other], py[other]);
+				}
+			}
+		}
+
+		private void addMass(int c, double x, double y) {
+			mass[c]++;
+			centerX[c] += x;
+			centerY[c] += y;
+		}
+
+		private int quadrant(int c, double x, double y) {
+			double half = size[c] / 2;
+			return (x >= minX[c] + half ? 1 : 0) + (y >= minY[c] + half ? 2 : 0);
+		}
+
+		private void split(int c) {
+			if (cells + 4 > body.length) {
+				allocate(body.length * 2);
+			}
+			double half = size[c] / 2;
+			firstChild[c] = newCell(minX[c], minY[c], half);
+			newCell(minX[c] + half, minY[c], half);
+			newCell(minX[c], minY[c] + half, half);
+			newCell(minX[c] + half, minY[c] + half, half);
+			body[c] = INTERNAL;
+		}
+
+		private int newCell(double x, double y, double cellSize) {
+			int c = cells++;
+			minX[c] = x;
+			minY[c] = y;
+			size[c] = cellSize;
+			mass[c] = 0;
+			centerX[c] = 0;
+			centerY[c] = 0;
+			body[c] = EMPTY;
+			return c;
+		}
+
+		private void allocate(int capacity) {
+			int length = capacity;
+			minX = minX == null ? new double[length] : Arrays.copyOf(minX, length);
+			minY = minY == null ? new double[length] : Arrays.copyOf(minY, length);
+			size = size == null ? new double[length] : Arrays.copyOf(size, length);
+			mass = mass == null ? new double[length] : Arrays.copyOf(mass, length);
+			centerX = centerX == null ? new double[length] : Arrays.copyOf(centerX, length);
+			centerY = centerY == null ? new double[length] : Arrays.copyOf(centerY, length);
+			firstChild = firstChild == null ? new int[length] : Arrays.copyOf(firstChild, length);
+			body = body == null ? new int[length] : Arrays.copyOf(body, length);
+		}
+	}
+}
@@ -3,23 +3,47 @@
  */
 package com.sourcepatch.ctviz;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.PrintWriter;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 /**
+ * Extracts the UMLS MRCONSO.RRF rows for conditions into
+ * MRCONSO.conditions.zip and writes the condition dictionary snapshot.
+ *
+ * <pre>
+ * GenerateConditionRRF [-mrconso MRCONSO.RRF] [-mrsty MRSTY.RRF]
+ *     [-types "Disease or Syndrome,Sign or Symptom,Neoplastic Process"] [-threads n]
+ * </pre>
+ *
+ * With <code>-mrsty</code>, the CUIs of the conditions are read from the
+ * semantic types in MRSTY.RRF and saved to cui.conditions.csv. Otherwise they
+ * are read from the existing cui.conditions.csv.
+ *
  * @author nastacio
  *
  */
 public class GenerateConditionRRF {
 
+	private static final Logger LOG = Logger.getLogger(GenerateConditionRRF.class.getName());
+
+	private static final String CUI_FILE = "src/main/resources/cui.conditions.csv";
+
+	private static final List<String> DEFAULT_SEMANTIC_TYPES = Arrays.asList("Disease or Syndrome",
+			"Sign or Symptom", "Neoplastic Process");
+
+	private static final String USAGE = "Usage: GenerateConditionRRF [-mrconso MRCONSO.RRF] [-mrsty MRSTY.RRF]"
+			+ " [-types \"Disease or Syndrome,Sign or Symptom,Neoplastic Process\"] [-threads n]";
+
 	/**
 	 * @param args
 	 */
@@ -33,20 +57,55 @@ public class GenerateConditionRRF {
 	 * @param args
 	 */
 	private void run(String[] args) throws Exception {
-		Set<String> diseaseCuis = new TreeSet<>(Files.readAllLines(Paths.get("src/main/resources/cui.conditions.csv")));
-		try (BufferedReader br = new BufferedReader(
-				new FileReader("MRCONSO.RRF"));
-				ZipOutputStream zos = new ZipOutputStream(
-						new FileOutputStream("src/main/resources/MRCONSO.conditions.zip"));
-				PrintWriter pw = new PrintWriter(zos)) {
-			zos.putNextEntry(new ZipEntry("dsyn.rrf"));
-			String line = null;
-			while ((line = br.readLine()) != null) {
-				String cui = line.split("\\|")[0];
-				if (diseaseCuis.contains(cui)) {
-					pw.println(line);
-				}
+		Path mrconso = Paths.get("MRCONSO.RRF");
+		Path mrsty = null;
+		List<String> semanticTypes = DEFAULT_SEMANTIC_TYPES;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i < args.length; i++) {
+			if (i + 1 == args.length) {
+				throw new IllegalArgumentException("Missing value for " + args[i] + ". " + USAGE);
 			}
+			switch (args[i]) {
+			case "-mrconso":
+				mrconso = Paths.get(args[++i]);
+				break;
+			case "-mrsty":
+				mrsty = Paths.get(args[++i]);
+				break;
+			case "-types":
+				semanticTypes = Arrays.asList(args[++i].split("\\s*,\\s*"));
+				break;
+			case "-threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i] + ". " + USAGE);
+			}
+		}
+
+		long start = System.nanoTime();
+		Path cuiFile = Paths.get(CUI_FILE);
+		if (mrsty != null) {
+			Set<String> conditionCuis = RrfFilter.readSemanticTypeCuis(mrsty, semanticTypes);
+			Files.write(cuiFile, conditionCuis);
+			LOG.info("Wrote " + conditionCuis.size() + " CUIs with semantic types " + semanticTypes + " to "
+					+ cuiFile);
 		}
+		IntHashSet diseaseCuis = RrfFilter.readCuis(cuiFile);
+
+		long rows;
+		try (ZipOutputStream zos = new ZipOutputStream(
+				new BufferedOutputStream(new FileOutputStream(ConditionDictionary.DEFAULT_RRF_ARCHIVE)))) {
+			zos.putNextEntry(new ZipEntry("dsyn.rrf"));
+			rows = new RrfFilter(threads, RrfFilter.DEFAULT_CHUNK_BYTES).filterByCui(mrconso, diseaseCuis, zos);
+		}
+		LOG.info("Wrote " + rows + " rows for " + diseaseCuis.size() + " CUIs to "
+				+ ConditionDictionary.DEFAULT_RRF_ARCHIVE + " in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+
+		// Precompiled dictionary, so the applications do not parse the
+		// archive and build the matcher on every start.
+		ConditionDictionary.fromRrf(Paths.get(ConditionDictionary.DEFAULT_RRF_ARCHIVE))
+				.write(Paths.get(ConditionDictionary.DEFAULT_SNAPSHOT));
 	}
 }
@@ -0,0 +1,271 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Layout for maps, pinning geocoded nodes to their Web Mercator projection
+ * and placing the other nodes around them.
+ *
+ * <p>
+ * Nodes with coordinates, the trial locations, are anchors. Nodes reachable
+ * from an anchor are first placed, closest to the anchors first, at the
+ * weighted average position of their placed neighbors, then moved a fixed
+ * number of times to the weighted average of all their neighbors, anchors
+ * staying in place. Nodes are then spread on small discs around their
+ * positions, so that nodes placed at the same position do not overlap.
+ * Nodes not connected to any anchor are lined up below the map.
+ *
+ * <p>
+ * Each pass costs O(n + m) and there are no random positions, so the layout
+ * is fast and the same graph always gets the same layout.
+ *
+ * @author Denilson Nastacio
+ */
+public class GeoLayout {
+
+	/**
+	 * Width of the map, from longitude -180 to 180, in layout coordinates.
+	 */
+	public static final String PROPERTY_WIDTH = "ctviz.layout.geo.width";
+
+	/**
+	 * Number of passes moving the nodes towards their neighbors.
+	 */
+	public static final String PROPERTY_SWEEPS = "ctviz.layout.geo.sweeps";
+
+	private static final Logger LOG = Logger.getLogger(GeoLayout.class.getName());
+
+	/**
+	 * Latitude beyond which the Web Mercator projection is cut, making the
+	 * map square.
+	 */
+	private static final double MAX_LATITUDE = 85.05112878;
+
+	/**
+	 * Nodes placed at the same position are spread on a disc, in a sunflower
+	 * pattern with this number of positions.
+	 */
+	private static final int SPREAD_SLOTS = 64;
+
+	private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+
+	private final double width;
+	private final int sweeps;
+
+	/**
+	 *
+	 * @param width
+	 *            width of the map in layout coordinates
+	 * @param sweeps
+	 *            passes moving the nodes towards their neighbors
+	 */
+	public GeoLayout(double width, int sweeps) {
+		if (width <= 0 || sweeps < 0) {
+			throw new IllegalArgumentException("Invalid layout parameters: width " + width + ", sweeps " + sweeps);
+		}
+		this.width = width;
+		this.sweeps = sweeps;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @return layout configured by the <code>ctviz.layout.geo.*</code>
+	 *         properties
+	 */
+	public static GeoLayout fromProperties() {
+		return new GeoLayout(Double.parseDouble(System.getProperty(PROPERTY_WIDTH, "10000")),
+				Integer.getInteger(PROPERTY_SWEEPS, 20));
+	}
+
+	/**
+	 *
+	 * @param longitude
+	 * @return horizontal Web Mercator position, from <code>-width/2</code> to
+	 *         <code>width/2</code>
+	 */
+	public double projectX(double longitude) {
+		return width * longitude / 360;
+	}
+
+	/**
+	 *
+	 * @param latitude
+	 * @return vertical Web Mercator position, north up, from
+	 *         <code>-width/2</code> to <code>width/2</code>
+	 */
+	public double projectY(double latitude) {
+		double phi = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+		return width / (2 * Math.PI) * Math.log(Math.tan(Math.PI / 4 + phi / 2));
+	}
+
+	/**
+	 * Lays out a graph.
+	 *
+	 * @param x
+	 *            receives the horizontal position of each node
+	 * @param y
+	 *            receives the vertical position of each node
+	 * @param latitudes
+	 *            latitude of each node, {@link Double#NaN} for nodes without
+	 *            coordinates
+	 * @param longitudes
+	 *            longitude of each node, {@link Double#NaN} for nodes without
+	 *            coordinates
+	 * @param sources
+	 *            source node of each edge
+	 * @param targets
+	 *            target node of each edge
+	 * @param weights
+	 *            weight of each edge, pulling its ends closer
+	 * @return number of nodes pinned to their coordinates
+	 */
+	public int run(float[] x, float[] y, double[] latitudes, double[] longitudes, int[] sources, int[] targets,
+			double[] weights) {
+		long start = System.nanoTime();
+		int n = x.length;
+		double[] px = new double[n];
+		double[] py = new double[n];
+		boolean[] anchored = new boolean[n];
+		int[] order = new int[n];
+		int anchors = 0;
+		for (int i = 0; i < n; i++) {
+			if (!Double.isNaN(latitudes[i]) && !Double.isNaN(longitudes[i])) {
+				anchored[i] = true;
+				px[i] = projectX(longitudes[i]);
+				py[i] = projectY(latitudes[i]);
+				order[anchors++] = i;
+			}
+		}
+
+		int[] offsets = new int[n + 1];
+		int[] neighbors = new int[2 * sources.length];
+		double[] neighborWeights = new double[2 * sources.length];
+		buildAdjacency(sources, targets, weights, offsets, neighbors, neighborWeights);
+
+		// Places nodes closest to the anchors first, breadth-first.
+		boolean[] reachable = Arrays.copyOf(anchored, n);
+		boolean[] placed = Arrays.copyOf(anchored, n);
+		int reached = anchors;
+		for (int head = 0; head < reached; head++) {
+			int i = order[head];
+			for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+				int j = neighbors[k];
+				if (!reachable[j]) {
+					reachable[j] = true;
+					order[reached++] = j;
+				}
+			}
+			if (!anchored[i]) {
+				moveToNeighbors(i, px, py, placed, offsets, neighbors, neighborWeights);
+				placed[i] = true;
+			}
+		}
+		for (int sweep = 0; sweep < sweeps; sweep++) {
+			for (int head = anchors; head < reached; head++) {
+				moveToNeighbors(order[head], px, py, null, offsets, neighbors, neighborWeights);
+			}
+		}
+
+		// Spreads the nodes on small discs around their positions.
+		double spread = width / 2000;
+		for (int head = anchors; head < reached; head++) {
+			int i = order[head];
+			int slot = head % SPREAD_SLOTS;
+			double radius = spread * Math.sqrt((slot + 0.5) / SPREAD_SLOTS);
+			px[i] += radius * Math.cos(slot * GOLDEN_ANGLE);
+			py[i] += radius * Math.sin(slot * GOLDEN_ANGLE);
+		}
+
+		// Lines up nodes without a path to an anchor below the map.
+		int columns = Math.max(1, (int) Math.sqrt(n - reached));
+		double cell = width / Math.max(columns, 100);
+		int unreached = 0;
+		for (int i = 0; i < n; i++) {
+			if (!reachable[i]) {
+				px[i] = -width / 2 + cell * (unreached % columns);
+				py[i] = -width / 2 - cell * (1 + unreached / columns);
+				unreached++;
+			}
+		}
+
+		for (int i = 0; i < n; i++) {
+			x[i] = (float) px[i];
+			y[i] = (float) py[i];
+		}
+		LOG.info("Laid out " + n + " nodes and " + sources.length + " edges on a map with " + anchors
+				+ " nodes pinned to their coordinates and " + unreached + " nodes not connected to them in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+		return anchors;
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * Lists the neighbors of each node, both ends of each edge seeing the
+	 * other end as a neighbor.
+	 */
+	private static void buildAdjacency(int[] sources, int[] targets, double[] weights, int[] offsets,
+			int[] neighbors, double[] neighborWeights) {
+		int n = offsets.length - 1;
+		for (int e = 0; e < sources.length; e++) {
+			offsets[sources[e] + 1]++;
+			offsets[targets[e] + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] next = Arrays.copyOf(offsets, n);
+		for (int e = 0; e < sources.length; e++) {
+			int s = sources[e];
+			int t = targets[e];
+			neighbors[next[s]] = t;
+			neighborWeights[next[s]++] = weights[e];
+			neighbors[next[t]] = s;
+			neighborWeights[next[t]++] = weights[e];
+		}
+	}
+
+	/**
+	 * Moves a node to the weighted average position of its neighbors.
+	 *
+	 * @param i
+	 * @param placed
+	 *            nodes with a position, or <code>null</code> if all nodes
+	 *            have one
+	 */
+	private static void moveToNeighbors(int i, double[] px, double[] py, boolean[] placed, int[] offsets,
+			int[] neighbors, double[] neighborWeights) {
+		double sumX = 0;
+		double sumY = 0;
+		double sumWeights = 0;
+		for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+			int j = neighbors[k];
+			if (j != i && (placed == null || placed[j])) {
+				double w = neighborWeights[k] > 0 ? neighborWeights[k] : 1;
+				sumX += w * px[j];
+				sumY += w * py[j];
+				sumWeights += w;
+			}
+		}
+		if (sumWeights > 0) {
+			px[i] = sumX / sumWeights;
+			py[i] = sumY / sumWeights;
+		}
+	}
+}
@@ -0,0 +1,377 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.maps.model.LatLng;
+
+/**
+ * Geocoder that remembers the results of another geocoder in a file, so that
+ * addresses resolved in previous runs are not sent to the geocoding service
+ * again.
+ *
+ * <p>
+ * Addresses are keyed by their lowercase components separated by single
+ * spaces. Both coordinates and addresses without a match are remembered, each
+ * with its own time to live. Failures of the underlying geocoder are not
+ * remembered.
+ *
+ * <p>
+ * The file is a log of tab-separated lines, read on the first lookup, where
+ * the last line for an address wins. New results are appended while holding a
+ * lock on a companion <code>.lock</code> file, so several threads and
+ * processes can share the same cache. Obsolete lines are dropped when the log
+ * is read and has grown to more than twice the live entries.
+ *
+ * @author Denilson Nastacio
+ */
+public class GeocodeCache implements Geocoder {
+
+	/**
+	 * Location of the cache file.
+	 */
+	public static final String PROPERTY_CACHE_FILE = "ctviz.geocode.cache";
+
+	/**
+	 * Days before coordinates are looked up again.
+	 */
+	public static final String PROPERTY_TTL_DAYS = "ctviz.geocode.cache.ttl.days";
+
+	/**
+	 * Days before an address without a match is looked up again.
+	 */
+	public static final String PROPERTY_NEGATIVE_TTL_DAYS = "ctviz.geocode.cache.negative.ttl.days";
+
+	/**
+	 * Cache file used when {@link #PROPERTY_CACHE_FILE} is not set.
+	 */
+	public static final Path DEFAULT_CACHE_FILE = Paths.get(System.getProperty("user.home"), ".ctviz",
+			"geocode.cache");
+
+	private static final Logger LOG = Logger.getLogger(GeocodeCache.class.getName());
+
+	private static final char SEPARATOR = '\t';
+
+	private static final int COMPACTION_MIN_LINES = 1000;
+
+	/**
+	 * File locks are held by the whole process, so threads and caches in the
+	 * same process take turns before asking for one.
+	 */
+	private static final Object PROCESS_LOCK = new Object();
+
+	private final Path file;
+	private final Path lockFile;
+	private final Geocoder delegate;
+	private final long ttlMillis;
+	private final long negativeTtlMillis;
+	private final Clock clock;
+
+	private final Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+	private volatile boolean loaded;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Reads the times to live from {@link #PROPERTY_TTL_DAYS} and
+	 * {@link #PROPERTY_NEGATIVE_TTL_DAYS}, defaulting to 365 and 30 days.
+	 *
+	 * @param file
+	 *            cache file, created on the first new result
+	 * @param delegate
+	 *            geocoder for addresses missing from the cache
+	 */
+	public GeocodeCache(Path file, Geocoder delegate) {
+		this(file, delegate, TimeUnit.DAYS.toMillis(Long.getLong(PROPERTY_TTL_DAYS, 365)),
+				TimeUnit.DAYS.toMillis(Long.getLong(PROPERTY_NEGATIVE_TTL_DAYS, 30)), Clock.systemUTC());
+	}
+
+	/**
+	 *
+	 * @param file
+	 *            cache file, created on the first new result
+	 * @param delegate
+	 *            geocoder for addresses missing from the cache
+	 * @param ttlMillis
+	 *            how long coordinates are kept
+	 * @param negativeTtlMillis
+	 *            how long addresses without a match are kept
+	 * @param clock
+	 */
+	public GeocodeCache(Path file, Geocoder delegate, long ttlMillis, long negativeTtlMillis, Clock clock) {
+		this.file = file;
+		this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+		this.delegate = delegate;
+		this.ttlMillis = ttlMillis;
+		this.negativeTtlMillis = negativeTtlMillis;
+		this.clock = clock;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	@Override
+	public LatLng geocode(String city, String state, String zip, String country) throws Exception {
+		load();
+
+		String key = getKey(city, state, zip, country);
+		long now = clock.millis();
+		CacheEntry entry = entries.get(key);
+		if (entry != null && !isExpired(entry, now)) {
+			hits.incrementAndGet();
+			return entry.toLatLng();
+		}
+
+		misses.incrementAndGet();
+		LatLng coords = delegate.geocode(city, state, zip, country);
+		entry = new CacheEntry(coords, now);
+		entries.put(key, entry);
+		try {
+			append(key, entry);
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Unable to save coordinates for " + key + " to " + file, e);
+		}
+		return coords;
+	}
+
+	/**
+	 *
+	 * @return lookups answered from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 *
+	 * @return lookups passed to the underlying geocoder
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 *
+	 * @param city
+	 * @param state
+	 * @param zip
+	 * @param country
+	 * @return normalized address used as the key of the cache
+	 */
+	public static String getKey(String city, String state, String zip, String country) {
+		StringBuilder sb = new StringBuilder();
+		for (String component : new String[] { city, state, zip, country }) {
+			if (component == null) {
+				continue;
+			}
+			for (int i = 0; i < component.length(); i++) {
+				char ch = component.charAt(i);
+				if (Character.isWhitespace(ch)) {
+					if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+						sb.append(' ');
+					}
+				} else {
+					sb.append(ch);
+				}
+			}
+			if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+				sb.append(' ');
+			}
+		}
+		int end = sb.length();
+		while (end > 0 && sb.charAt(end - 1) == ' ') {
+			end--;
+		}
+		return sb.substring(0, end).toLowerCase(Locale.ROOT);
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private boolean isExpired(CacheEntry entry, long now) {
+		long ttl = entry.isNegative() ? negativeTtlMillis : ttlMillis;
+		return now - entry.timestamp > ttl;
+	}
+
+	/**
+	 * Reads the cache file once, compacting it if needed.
+	 */
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		synchronized (this) {
+			if (loaded) {
+				return;
+			}
+			if (Files.exists(file)) {
+				try {
+					readFile();
+				} catch (IOException e) {
+					LOG.log(Level.WARNING, "Unable to read geocoding cache " + file, e);
+				}
+			}
+			loaded = true;
+		}
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	private void readFile() throws IOException {
+		long start = System.nanoTime();
+		synchronized (PROCESS_LOCK) {
+			try (FileChannel lockChannel = openLockChannel(); FileLock lock = lockChannel.lock()) {
+				int lineCount = readEntries();
+
+				long now = clock.millis();
+				entries.values().removeIf(entry -> isExpired(entry, now));
+				if (lineCount > COMPACTION_MIN_LINES && lineCount > 2 * entries.size()) {
+					compact();
+				}
+			}
+		}
+		LOG.info("Loaded " + entries.size() + " geocoded addresses from " + file + " in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+	}
+
+	/**
+	 *
+	 * @return number of lines in the cache file
+	 * @throws IOException
+	 */
+	private int readEntries() throws IOException {
+		int lineCount = 0;
+		try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				lineCount++;
+				String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+				if (fields.length != 4) {
+					// Left by a writer that did not finish its line.
+					continue;
+				}
+				try {
+					LatLng coords = fields[1].isEmpty() ? null
+							: new LatLng(Double.parseDouble(fields[1]), Double.parseDouble(fields[2]));
+					entries.put(fields[0], new CacheEntry(coords, Long.parseLong(fields[3])));
+				} catch (NumberFormatException e) {
+					LOG.fine("Skipping malformed geocoding cache line: " + line);
+				}
+			}
+		}
+		return lineCount;
+	}
+
+	/**
+	 * Rewrites the cache file with only the live entries. Must be called
+	 * while holding the file lock.
+	 *
+	 * @throws IOException
+	 */
+	private void compact() throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter bw = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, CacheEntry> entry : entries.entrySet()) {
+				bw.write(toLine(entry.getKey(), entry.getValue()));
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @param entry
+	 * @throws IOException
+	 */
+	private void append(String key, CacheEntry entry) throws IOException {
+		ByteBuffer line = ByteBuffer.wrap(toLine(key, entry).getBytes(StandardCharsets.UTF_8));
+		synchronized (PROCESS_LOCK) {
+			try (FileChannel lockChannel = openLockChannel();
+					FileLock lock = lockChannel.lock();
+					FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+							StandardOpenOption.APPEND)) {
+				while (line.hasRemaining()) {
+					out.write(line);
+				}
+			}
+		}
+	}
+
+	private FileChannel openLockChannel() throws IOException {
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
+	private static String toLine(String key, CacheEntry entry) {
+		StringBuilder sb = new StringBuilder(key.length() + 48).append(key).append(SEPARATOR);
+		if (!entry.isNegative()) {
+			sb.append(entry.lat).append(SEPARATOR).append(entry.lng);
+		} else {
+			sb.append(SEPARATOR);
+		}
+		return sb.append(SEPARATOR).append(entry.timestamp).append('\n').toString();
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Coordinates of an address, or the absence of a match, and when they
+	 * were obtained.
+	 */
+	private static class CacheEntry {
+
+		private final double lat;
+		private final double lng;
+		private final long timestamp;
+
+		CacheEntry(LatLng coords, long timestamp) {
+			this.lat = coords != null ? coords.lat : Double.NaN;
+			this.lng = coords != null ? coords.lng : Double.NaN;
+			this.timestamp = timestamp;
+		}
+
+		boolean isNegative() {
+			return Double.isNaN(lat);
+		}
+
+		LatLng toLatLng() {
+			return isNegative() ? null : new LatLng(lat, lng);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import com.google.maps.model.LatLng;
+
+/**
+ * Resolves the address of a trial location to coordinates.
+ *
+ * @author Denilson Nastacio
+ */
+public interface Geocoder {
+
+	/**
+	 *
+	 * @param city
+	 * @param state
+	 *            empty if not known
+	 * @param zip
+	 *            empty if not known
+	 * @param country
+	 * @return coordinates of the address or <code>null</code> if the address
+	 *         has no match
+	 * @throws Exception
+	 *             if the address could not be resolved, for instance because
+	 *             the geocoding service is unreachable
+	 */
+	LatLng geocode(String city, String state, String zip, String country) throws Exception;
+}
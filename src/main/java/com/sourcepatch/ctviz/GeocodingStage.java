@@ -0,0 +1,225 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.maps.errors.OverQueryLimitException;
+import com.google.maps.model.LatLng;
+
+/**
+ * Geocodes trial locations in the background while the graph is being built.
+ *
+ * <p>
+ * The graph writer submits each new address and keeps going. Each address is
+ * geocoded once, on a pool of threads, retrying transient failures with an
+ * increasing delay. Other failures, such as a missing or rejected API key,
+ * leave the address without coordinates after the first attempt. The writer collects finished addresses with
+ * {@link #drain(Consumer)} whenever it is convenient, and with
+ * {@link #awaitAll(Consumer)} once the graph is complete, so coordinates are
+ * always applied to the graph from the writer thread.
+ *
+ * @author Denilson Nastacio
+ */
+public class GeocodingStage implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(GeocodingStage.class.getName());
+
+	private final Geocoder geocoder;
+	private final ExecutorService pool;
+	private final int maxAttempts;
+	private final long retryDelayMillis;
+
+	private final Map<String, Boolean> submitted = new ConcurrentHashMap<>();
+	private final BlockingQueue<GeocodedAddress> completed = new LinkedBlockingQueue<>();
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	/**
+	 *
+	 * @param geocoder
+	 *            thread-safe geocoder for each unique address
+	 * @param threads
+	 *            number of addresses geocoded at the same time
+	 * @param maxAttempts
+	 *            attempts for each address with transient failures before
+	 *            giving up on it
+	 * @param retryDelayMillis
+	 *            delay before the first retry, doubled for each further retry
+	 */
+	public GeocodingStage(Geocoder geocoder, int threads, int maxAttempts, long retryDelayMillis) {
+		this.geocoder = geocoder;
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.retryDelayMillis = retryDelayMillis;
+		AtomicInteger threadId = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+			Thread t = new Thread(r, "ctviz-geocode-" + threadId.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 * Returns immediately.
+	 *
+	 * @param key
+	 *            identifies the address when its result is drained
+	 * @param city
+	 * @param state
+	 * @param zip
+	 * @param country
+	 * @return <code>false</code> if an address with the same key was already
+	 *         submitted
+	 */
+	public boolean submit(String key, String city, String state, String zip, String country) {
+		if (submitted.putIfAbsent(key, Boolean.TRUE) != null) {
+			return false;
+		}
+		outstanding.incrementAndGet();
+		pool.execute(() -> completed.add(new GeocodedAddress(key, geocode(key, city, state, zip, country))));
+		return true;
+	}
+
+	/**
+	 * Hands over the addresses geocoded so far, without waiting.
+	 *
+	 * @param consumer
+	 *            called on the calling thread
+	 * @return number of addresses handed over
+	 */
+	public int drain(Consumer<GeocodedAddress> consumer) {
+		int count = 0;
+		GeocodedAddress address;
+		while ((address = completed.poll()) != null) {
+			outstanding.decrementAndGet();
+			consumer.accept(address);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Hands over every submitted address not drained yet, waiting for the
+	 * ones still being geocoded.
+	 *
+	 * @param consumer
+	 *            called on the calling thread
+	 * @throws InterruptedException
+	 */
+	public void awaitAll(Consumer<GeocodedAddress> consumer) throws InterruptedException {
+		while (outstanding.get() > 0) {
+			GeocodedAddress address = completed.take();
+			outstanding.decrementAndGet();
+			consumer.accept(address);
+		}
+	}
+
+	/**
+	 * Stops geocoding addresses still in progress.
+	 */
+	@Override
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 *
+	 * @return coordinates or <code>null</code> if there was no match or all
+	 *         attempts failed
+	 */
+	private LatLng geocode(String key, String city, String state, String zip, String country) {
+		long delay = retryDelayMillis;
+		for (int attempt = 1;; attempt++) {
+			try {
+				return geocoder.geocode(city, state, zip, country);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (Exception e) {
+				if (attempt >= maxAttempts || !isTransient(e)) {
+					LOG.log(Level.WARNING, "Unable to determine coordinates for address: " + key + " due to: "
+							+ e.getLocalizedMessage(), e);
+					return null;
+				}
+				LOG.fine("Retrying address " + key + " after failed attempt " + attempt + ": "
+						+ e.getLocalizedMessage());
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+				delay *= 2;
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param e
+	 *            failure of a geocoding request
+	 * @return <code>true</code> if the same request may succeed later
+	 */
+	private static boolean isTransient(Exception e) {
+		return e instanceof IOException || e instanceof OverQueryLimitException;
+	}
+
+	/*
+	 * Public classes.
+	 */
+
+	/**
+	 * Result of geocoding one address.
+	 */
+	public static class GeocodedAddress {
+
+		private final String key;
+		private final LatLng coordinates;
+
+		GeocodedAddress(String key, LatLng coordinates) {
+			this.key = key;
+			this.coordinates = coordinates;
+		}
+
+		/**
+		 *
+		 * @return key given when the address was submitted
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 *
+		 * @return coordinates or <code>null</code> if the address could not
+		 *         be geocoded
+		 */
+		public LatLng getCoordinates() {
+			return coordinates;
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.Collection;
+
+import org.gephi.graph.api.DirectedGraph;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
+
+/**
+ * Gephi graph receiving the nodes and edges of the clinical trials.
+ *
+ * <p>
+ * Nodes and edges are created by the graph factory and stay out of the graph
+ * until they are added, so that {@link #addVertices(Collection)} and
+ * {@link #addEdges(Collection)} insert them in bulk. Vertex and edge labels
+ * are also kept in the {@link GraphSchema#VERTEX_PROPERTY_LABEL_V} and
+ * {@link GraphSchema#EDGE_PROPERTY_LABEL} attributes, which survive the GEXF
+ * export.
+ *
+ * @author Denilson Nastacio
+ */
+public class GephiGraphSink implements GraphSink<Node, Edge> {
+
+	private final GraphModel gm;
+	private final DirectedGraph g;
+	private final Table nodeTable;
+	private final Table edgeTable;
+
+	/**
+	 * Prefix of the ids of new nodes and edges, or <code>null</code> to
+	 * leave ids to the graph factory.
+	 */
+	private String idPrefix;
+	private long idCount;
+
+	/**
+	 * Adds the attribute columns missing from the graph.
+	 *
+	 * @param gm
+	 */
+	public GephiGraphSink(GraphModel gm) {
+		this.gm = gm;
+		this.g = gm.getDirectedGraph();
+		this.nodeTable = gm.getNodeTable();
+		this.edgeTable = gm.getEdgeTable();
+		addColumns();
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 * Sets the prefix of the ids of new nodes and edges, so that they do not
+	 * collide with the ids of a graph loaded from a previous run.
+	 *
+	 * @param idPrefix
+	 *            prefix, or <code>null</code> to leave ids to the graph
+	 *            factory
+	 */
+	public void setIdPrefix(String idPrefix) {
+		this.idPrefix = idPrefix;
+		this.idCount = 0;
+	}
+
+	@Override
+	public Node newVertex(String label) {
+		Node node = idPrefix == null ? gm.factory().newNode() : gm.factory().newNode(idPrefix + idCount++);
+		node.setLabel(label);
+		node.setAttribute(GraphSchema.VERTEX_PROPERTY_LABEL_V, label);
+		return node;
+	}
+
+	@Override
+	public void addVertex(Node vertex) {
+		g.addNode(vertex);
+	}
+
+	@Override
+	public void addVertices(Collection<Node> vertices) {
+		g.addAllNodes(vertices);
+	}
+
+	@Override
+	public Edge newEdge(Node source, Node target, String label) {
+		Edge edge = idPrefix == null ? gm.factory().newEdge(source, target, true)
+				: gm.factory().newEdge(idPrefix + idCount++, source, target, 0, 1.0, true);
+		edge.setLabel(label);
+		edge.setAttribute(GraphSchema.EDGE_PROPERTY_LABEL, label);
+		return edge;
+	}
+
+	@Override
+	public void addEdge(Edge edge) {
+		g.addEdge(edge);
+	}
+
+	@Override
+	public void addEdges(Collection<Edge> edges) {
+		g.addAllEdges(edges);
+	}
+
+	@Override
+	public String getVertexLabel(Node vertex) {
+		Object label = vertex.getAttribute(GraphSchema.VERTEX_PROPERTY_LABEL_V);
+		return label != null ? label.toString() : null;
+	}
+
+	@Override
+	public Object getVertexProperty(Node vertex, String property) {
+		return nodeTable.hasColumn(property) ? vertex.getAttribute(property) : null;
+	}
+
+	@Override
+	public void setVertexProperty(Node vertex, String property, Object value) {
+		if (value != null) {
+			addColumn(nodeTable, property, value.getClass());
+			vertex.setAttribute(property, value);
+		}
+	}
+
+	@Override
+	public void removeVertexProperty(Node vertex, String property) {
+		if (nodeTable.hasColumn(property)) {
+			vertex.removeAttribute(property);
+		}
+	}
+
+	@Override
+	public String getEdgeLabel(Edge edge) {
+		return edge.getLabel();
+	}
+
+	@Override
+	public Node getEdgeSource(Edge edge) {
+		return edge.getSource();
+	}
+
+	@Override
+	public Node getEdgeTarget(Edge edge) {
+		return edge.getTarget();
+	}
+
+	@Override
+	public Object getEdgeProperty(Edge edge, String property) {
+		return edgeTable.hasColumn(property) ? edge.getAttribute(property) : null;
+	}
+
+	@Override
+	public void setEdgeProperty(Edge edge, String property, Object value) {
+		if (value != null) {
+			addColumn(edgeTable, property, value.getClass());
+			edge.setAttribute(property, value);
+		}
+	}
+
+	@Override
+	public void setEdgeWeight(Edge edge, double weight) {
+		edge.setWeight(weight);
+	}
+
+	@Override
+	public Iterable<Node> getVertices() {
+		return g.getNodes();
+	}
+
+	@Override
+	public Iterable<Edge> getEdges() {
+		return g.getEdges();
+	}
+
+	@Override
+	public Collection<Edge> getEdges(Node vertex) {
+		return g.getEdges(vertex).toCollection();
+	}
+
+	@Override
+	public boolean hasEdges(Node vertex) {
+		return g.getDegree(vertex) > 0;
+	}
+
+	@Override
+	public void removeVertex(Node vertex) {
+		g.removeNode(vertex);
+	}
+
+	@Override
+	public void removeEdge(Edge edge) {
+		g.removeEdge(edge);
+	}
+
+	/*
+	 * Package methods.
+	 */
+
+	/**
+	 *
+	 * @param table
+	 * @param id
+	 * @param type
+	 */
+	static void addColumn(Table table, String id, Class<?> type) {
+		if (!table.hasColumn(id)) {
+			table.addColumn(id, type);
+		}
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * Declares the columns of all attributes, so they have the same type
+	 * whatever value is set first.
+	 */
+	private void addColumns() {
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_LABEL_V, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_ADDRESS_CITY, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_ADDRESS_STATE, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_ADDRESS_COUNTRY, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_ADDRESS_ZIP, String.class);
+
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_LOCATION_FULL_ADDRESS, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_LOCATION_LATITUDE, Double.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_LOCATION_LONGITUDE, Double.class);
+
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_CONDITION_NAME, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_CONDITION_RAW, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_CONDITION_CUI, Integer.class);
+
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_STUDY_ID, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_ORG_STUDY_ID, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_TITLE, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_OVERALL_STATUS, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_PHASE, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_STUDY_TYPE, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_ENROLLMENT, Long.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_GENDER, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_MIN_AGE, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_MAX_AGE, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_LAST_CHANGED, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_MASKING, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_PRIMARY_PURPOSE, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_MODEL, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_TYPE, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR, Integer.class);
+
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_SPONSOR_CLASS, String.class);
+		addColumn(nodeTable, GraphSchema.VERTEX_PROPERTY_SPONSOR_NAME, String.class);
+
+		addColumn(edgeTable, GraphSchema.EDGE_PROPERTY_LABEL, String.class);
+		addColumn(edgeTable, GraphSchema.EDGE_PROPERTY_COUNT, Integer.class);
+		addColumn(edgeTable, GraphSchema.EDGE_PROPERTY_LOCATION_NAME, String.class);
+		addColumn(edgeTable, GraphSchema.EDGE_PROPERTY_NCT_ID, String.class);
+		addColumn(edgeTable, GraphSchema.EDGE_PROPERTY_NCT_INTERVENTION_TYPE, String.class);
+	}
+}
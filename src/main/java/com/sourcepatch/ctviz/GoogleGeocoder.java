@@ -0,0 +1,56 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import com.google.maps.GeoApiContext;
+import com.google.maps.GeocodingApi;
+import com.google.maps.GeocodingApiRequest;
+import com.google.maps.model.ComponentFilter;
+import com.google.maps.model.GeocodingResult;
+import com.google.maps.model.LatLng;
+
+/**
+ * Geocoder backed by the Google Geocoding API.
+ *
+ * @see https://developers.google.com/maps/documentation/geocoding/intro#geocoding
+ *
+ * @author Denilson Nastacio
+ */
+public class GoogleGeocoder implements Geocoder {
+
+	private final GeoApiContext context;
+
+	/**
+	 *
+	 * @param apiKey
+	 *            Google Geocoding API key
+	 */
+	public GoogleGeocoder(String apiKey) {
+		this.context = new GeoApiContext().setApiKey(apiKey);
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	@Override
+	public LatLng geocode(String city, String state, String zip, String country) throws Exception {
+		GeocodingApiRequest geocodeRequest = GeocodingApi.newRequest(context);
+		ComponentFilter countryFilter = ComponentFilter.country(country);
+		ComponentFilter localityFilter = ComponentFilter.locality(city);
+		if (!zip.isEmpty()) {
+			ComponentFilter zipFilter = ComponentFilter.postalCode(zip);
+			geocodeRequest.components(countryFilter, localityFilter, zipFilter);
+		} else {
+			geocodeRequest.components(countryFilter, localityFilter);
+		}
+		GeocodingResult[] results = geocodeRequest.await();
+		return results.length > 0 ? results[0].geometry.location : null;
+	}
+}
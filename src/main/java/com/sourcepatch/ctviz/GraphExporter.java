@@ -0,0 +1,621 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes graphs as GEXF or GraphML documents without holding the document
+ * in memory.
+ *
+ * <p>
+ * Nodes and edges are read from an {@link ExportableGraph} in chunks. The
+ * chunks are serialized in parallel and written in their original order,
+ * with a bounded number of serialized chunks waiting for the ones before
+ * them, so memory use depends on the chunk size and number of threads rather
+ * than on the size of the graph. Files whose names end with <code>.gz</code>
+ * are compressed.
+ *
+ * @author Denilson Nastacio
+ */
+public class GraphExporter {
+
+	/**
+	 * Number of threads serializing nodes and edges.
+	 */
+	public static final String PROPERTY_THREADS = "ctviz.export.threads";
+
+	/**
+	 * Compresses the exported graphs when <code>true</code>.
+	 */
+	public static final String PROPERTY_GZIP = "ctviz.export.gzip";
+
+	/**
+	 * Default number of nodes or edges serialized together.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+	private static final Logger LOG = Logger.getLogger(GraphExporter.class.getName());
+
+	private static final String GZIP_EXTENSION = ".gz";
+
+	private static final int BUFFER_BYTES = 256 * 1024;
+
+	/**
+	 * Document formats.
+	 */
+	public enum Format {
+		/**
+		 * GEXF 1.2, as written by Gephi.
+		 */
+		GEXF(".gexf"),
+		/**
+		 * GraphML, as written and read by TinkerPop.
+		 */
+		GRAPHML(".graphml");
+
+		private final String extension;
+
+		private Format(String extension) {
+			this.extension = extension;
+		}
+
+		/**
+		 *
+		 * @return file name extension of the format
+		 */
+		public String getExtension() {
+			return extension;
+		}
+
+		/**
+		 *
+		 * @param file
+		 * @return format matching the file name extension, before any
+		 *         <code>.gz</code> extension
+		 */
+		public static Format forFile(Path file) {
+			String name = file.getFileName().toString();
+			if (name.endsWith(GZIP_EXTENSION)) {
+				name = name.substring(0, name.length() - GZIP_EXTENSION.length());
+			}
+			for (Format format : values()) {
+				if (name.endsWith(format.extension)) {
+					return format;
+				}
+			}
+			throw new IllegalArgumentException("Unknown graph format: " + file);
+		}
+	}
+
+	private final int threads;
+	private final int chunkSize;
+
+	/**
+	 *
+	 * @param threads
+	 *            number of chunks serialized at the same time
+	 * @param chunkSize
+	 *            number of nodes or edges in each chunk
+	 */
+	public GraphExporter(int threads, int chunkSize) {
+		this.threads = Math.max(1, threads);
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 * Reads the number of threads from {@link #PROPERTY_THREADS}, all
+	 * processors by default.
+	 *
+	 * @return exporter
+	 */
+	public static GraphExporter fromProperties() {
+		return new GraphExporter(Integer.getInteger(PROPERTY_THREADS, Runtime.getRuntime().availableProcessors()),
+				DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 *
+	 * @param file
+	 *            file name without the <code>.gz</code> extension
+	 * @return the file name, with the <code>.gz</code> extension if
+	 *         {@link #PROPERTY_GZIP} is set
+	 */
+	public static Path getOutputFile(Path file) {
+		return Boolean.getBoolean(PROPERTY_GZIP) ? file.resolveSibling(file.getFileName() + GZIP_EXTENSION) : file;
+	}
+
+	/**
+	 *
+	 * @param graph
+	 * @param file
+	 *            written in the format of its extension, compressed if it
+	 *            ends with <code>.gz</code>
+	 * @throws IOException
+	 */
+	public <N, E> void export(ExportableGraph<N, E> graph, Path file) throws IOException {
+		Format format = Format.forFile(file);
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		long start = System.nanoTime();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			if (file.getFileName().toString().endsWith(GZIP_EXTENSION)) {
+				try (OutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_BYTES)) {
+					export(graph, format, Channels.newChannel(gzip));
+				}
+			} else {
+				export(graph, format, channel);
+			}
+		}
+		LOG.info("Exported graph to " + file + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+				+ "ms, " + Files.size(file) + " bytes.");
+	}
+
+	/**
+	 *
+	 * @param graph
+	 * @param format
+	 * @param out
+	 *            receives the document, encoded in UTF-8
+	 * @throws IOException
+	 */
+	public <N, E> void export(ExportableGraph<N, E> graph, Format format, WritableByteChannel out)
+			throws IOException {
+		Syntax<N, E> syntax = format == Format.GEXF ? new GexfSyntax<>(graph) : new GraphMlSyntax<>(graph);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			StringBuilder sb = new StringBuilder();
+			syntax.startDocument(sb);
+			write(out, sb);
+			writeChunks(graph.getNodes(), syntax::appendNode, out, pool);
+			sb.setLength(0);
+			syntax.endNodes(sb);
+			write(out, sb);
+			writeChunks(graph.getEdges(), syntax::appendEdge, out, pool);
+			sb.setLength(0);
+			syntax.endDocument(sb);
+			write(out, sb);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while exporting graph", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException("Unable to export graph", cause);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private <T> void writeChunks(Iterable<T> elements, ElementAppender<T> appender, WritableByteChannel out,
+			ExecutorService pool) throws IOException, InterruptedException, ExecutionException {
+		Deque<Future<byte[]>> pending = new ArrayDeque<>();
+		List<T> chunk = new ArrayList<>(chunkSize);
+		for (T element : elements) {
+			chunk.add(element);
+			if (chunk.size() == chunkSize) {
+				pending.add(submit(pool, chunk, appender));
+				chunk = new ArrayList<>(chunkSize);
+				while (pending.size() >= threads * 2) {
+					write(out, pending.remove().get());
+				}
+			}
+		}
+		if (!chunk.isEmpty()) {
+			pending.add(submit(pool, chunk, appender));
+		}
+		while (!pending.isEmpty()) {
+			write(out, pending.remove().get());
+		}
+	}
+
+	private static <T> Future<byte[]> submit(ExecutorService pool, List<T> chunk, ElementAppender<T> appender) {
+		return pool.submit(() -> {
+			StringBuilder sb = new StringBuilder(chunk.size() * 256);
+			for (T element : chunk) {
+				appender.append(sb, element);
+			}
+			return sb.toString().getBytes(StandardCharsets.UTF_8);
+		});
+	}
+
+	private static void write(WritableByteChannel out, CharSequence text) throws IOException {
+		write(out, text.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void write(WritableByteChannel out, byte[] bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	/**
+	 * Appends text to XML content or attribute values, escaping markup and
+	 * dropping the characters XML does not allow.
+	 *
+	 * @param sb
+	 * @param text
+	 */
+	static void appendEscaped(StringBuilder sb, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				sb.append("&amp;");
+				break;
+			case '<':
+				sb.append("&lt;");
+				break;
+			case '>':
+				sb.append("&gt;");
+				break;
+			case '"':
+				sb.append("&quot;");
+				break;
+			case '\t':
+			case '\n':
+			case '\r':
+				sb.append("&#").append((int) c).append(';');
+				break;
+			default:
+				if (c >= 0x20 && c != 0xFFFE && c != 0xFFFF) {
+					sb.append(c);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Serializes one node or edge.
+	 */
+	private interface ElementAppender<T> {
+		void append(StringBuilder sb, T element);
+	}
+
+	/**
+	 * Markup of a document format.
+	 */
+	private abstract static class Syntax<N, E> {
+		protected final ExportableGraph<N, E> graph;
+		protected final Map<String, Class<?>> nodeAttributes;
+		protected final Map<String, Class<?>> edgeAttributes;
+
+		Syntax(ExportableGraph<N, E> graph) {
+			this.graph = graph;
+			this.nodeAttributes = new LinkedHashMap<>(graph.getNodeAttributes());
+			this.edgeAttributes = new LinkedHashMap<>(graph.getEdgeAttributes());
+		}
+
+		abstract void startDocument(StringBuilder sb);
+
+		abstract void appendNode(StringBuilder sb, N node);
+
+		abstract void endNodes(StringBuilder sb);
+
+		abstract void appendEdge(StringBuilder sb, E edge);
+
+		abstract void endDocument(StringBuilder sb);
+
+		void appendAttribute(StringBuilder sb, String name, String value) {
+			sb.append(' ').append(name).append("=\"");
+			appendEscaped(sb, value);
+			sb.append('"');
+		}
+	}
+
+	/**
+	 * GEXF 1.2 markup, with node positions in the visualization namespace.
+	 */
+	private static class GexfSyntax<N, E> extends Syntax<N, E> {
+
+		GexfSyntax(ExportableGraph<N, E> graph) {
+			super(graph);
+		}
+
+		@Override
+		void startDocument(StringBuilder sb) {
+			sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			sb.append("<gexf xmlns=\"http://www.gexf.net/1.2draft\"");
+			sb.append(" xmlns:viz=\"http://www.gexf.net/1.2draft/viz\" version=\"1.2\">\n");
+			sb.append("  <meta>\n    <creator>ctviz</creator>\n  </meta>\n");
+			sb.append("  <graph defaultedgetype=\"directed\" mode=\"static\">\n");
+			appendDeclarations(sb, "node", nodeAttributes);
+			appendDeclarations(sb, "edge", edgeAttributes);
+			sb.append("    <nodes>\n");
+		}
+
+		@Override
+		void appendNode(StringBuilder sb, N node) {
+			sb.append("      <node");
+			appendAttribute(sb, "id", graph.getNodeId(node));
+			String label = graph.getNodeLabel(node);
+			if (label != null) {
+				appendAttribute(sb, "label", label);
+			}
+			sb.append(">\n");
+			appendValues(sb, nodeAttributes, attribute -> graph.getNodeAttribute(node, attribute));
+			if (graph.hasPositions()) {
+				sb.append("        <viz:position x=\"").append(graph.getNodeX(node)).append("\" y=\"")
+						.append(graph.getNodeY(node)).append("\" z=\"0.0\"/>\n");
+			}
+			sb.append("      </node>\n");
+		}
+
+		@Override
+		void endNodes(StringBuilder sb) {
+			sb.append("    </nodes>\n    <edges>\n");
+		}
+
+		@Override
+		void appendEdge(StringBuilder sb, E edge) {
+			sb.append("      <edge");
+			appendAttribute(sb, "id", graph.getEdgeId(edge));
+			appendAttribute(sb, "source", graph.getEdgeSource(edge));
+			appendAttribute(sb, "target", graph.getEdgeTarget(edge));
+			String label = graph.getEdgeLabel(edge);
+			if (label != null) {
+				appendAttribute(sb, "label", label);
+			}
+			sb.append(" weight=\"").append(graph.getEdgeWeight(edge)).append("\">\n");
+			appendValues(sb, edgeAttributes, attribute -> graph.getEdgeAttribute(edge, attribute));
+			sb.append("      </edge>\n");
+		}
+
+		@Override
+		void endDocument(StringBuilder sb) {
+			sb.append("    </edges>\n  </graph>\n</gexf>\n");
+		}
+
+		private void appendDeclarations(StringBuilder sb, String elementClass, Map<String, Class<?>> attributes) {
+			if (attributes.isEmpty()) {
+				return;
+			}
+			sb.append("    <attributes class=\"").append(elementClass).append("\" mode=\"static\">\n");
+			for (Map.Entry<String, Class<?>> attribute : attributes.entrySet()) {
+				sb.append("      <attribute");
+				appendAttribute(sb, "id", attribute.getKey());
+				appendAttribute(sb, "title", attribute.getKey());
+				appendAttribute(sb, "type", getType(attribute.getValue()));
+				sb.append("/>\n");
+			}
+			sb.append("    </attributes>\n");
+		}
+
+		private void appendValues(StringBuilder sb, Map<String, Class<?>> attributes,
+				Function<String, Object> values) {
+			boolean started = false;
+			for (String attribute : attributes.keySet()) {
+				Object value = values.apply(attribute);
+				if (value == null) {
+					continue;
+				}
+				if (!started) {
+					sb.append("        <attvalues>\n");
+					started = true;
+				}
+				sb.append("          <attvalue");
+				appendAttribute(sb, "for", attribute);
+				appendAttribute(sb, "value", value.toString());
+				sb.append("/>\n");
+			}
+			if (started) {
+				sb.append("        </attvalues>\n");
+			}
+		}
+
+		private static String getType(Class<?> type) {
+			if (type == Integer.class) {
+				return "integer";
+			} else if (type == Long.class) {
+				return "long";
+			} else if (type == Double.class) {
+				return "double";
+			} else if (type == Float.class) {
+				return "float";
+			} else if (type == Boolean.class) {
+				return "boolean";
+			}
+			return "string";
+		}
+	}
+
+	/**
+	 * GraphML markup, with the node and edge labels in the
+	 * <code>labelV</code> and <code>labelE</code> keys used by TinkerPop.
+	 */
+	private static class GraphMlSyntax<N, E> extends Syntax<N, E> {
+		private static final String KEY_NODE_LABEL = GraphSchema.VERTEX_PROPERTY_LABEL_V;
+		private static final String KEY_EDGE_LABEL = GraphSchema.EDGE_PROPERTY_LABEL;
+		private static final String KEY_X = "x";
+		private static final String KEY_Y = "y";
+		private static final String KEY_WEIGHT = "weight";
+
+		private final Map<String, String> nodeKeys = new LinkedHashMap<>();
+		private final Map<String, String> edgeKeys = new LinkedHashMap<>();
+		private final boolean writeNodeLabels;
+		private final boolean writeEdgeLabels;
+		private final boolean writePositions;
+		private final boolean writeWeights;
+
+		GraphMlSyntax(ExportableGraph<N, E> graph) {
+			super(graph);
+			for (String attribute : nodeAttributes.keySet()) {
+				nodeKeys.put(attribute, attribute);
+			}
+			for (String attribute : edgeAttributes.keySet()) {
+				String key = attribute;
+				while (nodeKeys.containsValue(key) || KEY_NODE_LABEL.equals(key)) {
+					key = "edge_" + key;
+				}
+				edgeKeys.put(attribute, key);
+			}
+			writeNodeLabels = !nodeKeys.containsValue(KEY_NODE_LABEL) && !edgeKeys.containsValue(KEY_NODE_LABEL);
+			writeEdgeLabels = !nodeKeys.containsValue(KEY_EDGE_LABEL) && !edgeKeys.containsValue(KEY_EDGE_LABEL);
+			writePositions = graph.hasPositions() && !isKey(KEY_X) && !isKey(KEY_Y);
+			writeWeights = graph.hasWeights() && !isKey(KEY_WEIGHT);
+		}
+
+		@Override
+		void startDocument(StringBuilder sb) {
+			sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			sb.append("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n");
+			if (writeNodeLabels) {
+				appendKey(sb, KEY_NODE_LABEL, "node", KEY_NODE_LABEL, String.class);
+			}
+			if (writePositions) {
+				appendKey(sb, KEY_X, "node", KEY_X, Float.class);
+				appendKey(sb, KEY_Y, "node", KEY_Y, Float.class);
+			}
+			for (Map.Entry<String, String> key : nodeKeys.entrySet()) {
+				appendKey(sb, key.getValue(), "node", key.getKey(), nodeAttributes.get(key.getKey()));
+			}
+			if (writeEdgeLabels) {
+				appendKey(sb, KEY_EDGE_LABEL, "edge", KEY_EDGE_LABEL, String.class);
+			}
+			if (writeWeights) {
+				appendKey(sb, KEY_WEIGHT, "edge", KEY_WEIGHT, Double.class);
+			}
+			for (Map.Entry<String, String> key : edgeKeys.entrySet()) {
+				appendKey(sb, key.getValue(), "edge", key.getKey(), edgeAttributes.get(key.getKey()));
+			}
+			sb.append("  <graph id=\"G\" edgedefault=\"directed\">\n");
+		}
+
+		@Override
+		void appendNode(StringBuilder sb, N node) {
+			sb.append("    <node");
+			appendAttribute(sb, "id", graph.getNodeId(node));
+			sb.append(">");
+			String label = graph.getNodeLabel(node);
+			if (writeNodeLabels && label != null) {
+				appendData(sb, KEY_NODE_LABEL, label);
+			}
+			if (writePositions) {
+				appendData(sb, KEY_X, Float.toString(graph.getNodeX(node)));
+				appendData(sb, KEY_Y, Float.toString(graph.getNodeY(node)));
+			}
+			for (Map.Entry<String, String> key : nodeKeys.entrySet()) {
+				Object value = graph.getNodeAttribute(node, key.getKey());
+				if (value != null) {
+					appendData(sb, key.getValue(), value.toString());
+				}
+			}
+			sb.append("</node>\n");
+		}
+
+		@Override
+		void endNodes(StringBuilder sb) {
+			// Edges follow the nodes in the same graph element.
+		}
+
+		@Override
+		void appendEdge(StringBuilder sb, E edge) {
+			sb.append("    <edge");
+			appendAttribute(sb, "id", graph.getEdgeId(edge));
+			appendAttribute(sb, "source", graph.getEdgeSource(edge));
+			appendAttribute(sb, "target", graph.getEdgeTarget(edge));
+			sb.append(">");
+			String label = graph.getEdgeLabel(edge);
+			if (writeEdgeLabels && label != null) {
+				appendData(sb, KEY_EDGE_LABEL, label);
+			}
+			if (writeWeights) {
+				appendData(sb, KEY_WEIGHT, Double.toString(graph.getEdgeWeight(edge)));
+			}
+			for (Map.Entry<String, String> key : edgeKeys.entrySet()) {
+				Object value = graph.getEdgeAttribute(edge, key.getKey());
+				if (value != null) {
+					appendData(sb, key.getValue(), value.toString());
+				}
+			}
+			sb.append("</edge>\n");
+		}
+
+		@Override
+		void endDocument(StringBuilder sb) {
+			sb.append("  </graph>\n</graphml>\n");
+		}
+
+		private boolean isKey(String key) {
+			return nodeKeys.containsValue(key) || edgeKeys.containsValue(key);
+		}
+
+		private void appendKey(StringBuilder sb, String id, String domain, String name, Class<?> type) {
+			sb.append("  <key");
+			appendAttribute(sb, "id", id);
+			appendAttribute(sb, "for", domain);
+			appendAttribute(sb, "attr.name", name);
+			appendAttribute(sb, "attr.type", getType(type));
+			sb.append("/>\n");
+		}
+
+		private void appendData(StringBuilder sb, String key, String value) {
+			sb.append("<data");
+			appendAttribute(sb, "key", key);
+			sb.append('>');
+			appendEscaped(sb, value);
+			sb.append("</data>");
+		}
+
+		private static String getType(Class<?> type) {
+			if (type == Integer.class) {
+				return "int";
+			} else if (type == Long.class) {
+				return "long";
+			} else if (type == Double.class) {
+				return "double";
+			} else if (type == Float.class) {
+				return "float";
+			} else if (type == Boolean.class) {
+				return "boolean";
+			}
+			return "string";
+		}
+	}
+}
@@ -29,6 +29,7 @@ public interface GraphSchema {
 	String VERTEX_PROPERTY_ADDRESS_CITY = "city";
 	String VERTEX_PROPERTY_CONDITION_NAME = "condition_name";
 	String VERTEX_PROPERTY_CONDITION_RAW = "nct_condition";
+	String VERTEX_PROPERTY_CONDITION_CUI = "cui";
 	String VERTEX_PROPERTY_NCT_INTERVENTION_TYPE = "intervention_type";
 	String VERTEX_PROPERTY_NCT_INTERVENTION_NAME = "intervention_name";
 	String VERTEX_PROPERTY_LOCATION_FULL_ADDRESS = "location_full_address";
@@ -40,6 +41,7 @@ public interface GraphSchema {
 	String VERTEX_PROPERTY_NCT_ENROLLMENT = "enrollment";
 	String VERTEX_PROPERTY_NCT_GENDER = "gender";
 	String VERTEX_PROPERTY_NCT_INTERVENTION_MODEL = "intervention_model";
+	String VERTEX_PROPERTY_NCT_LAST_CHANGED = "lastchanged_date";
 	String VERTEX_PROPERTY_NCT_MASKING = "masking";
 	String VERTEX_PROPERTY_NCT_MAX_AGE = "maxAge";
 	String VERTEX_PROPERTY_NCT_MIN_AGE = "minAge";
@@ -61,6 +63,7 @@ public interface GraphSchema {
 	String EDGE_LABEL_SPONSORS = "sponsors";
 	String EDGE_LABEL_TESTS = "tests";
 
+	String EDGE_PROPERTY_COUNT = "count";
 	String EDGE_PROPERTY_LABEL = "labelE";
 	String EDGE_PROPERTY_LOCATION_NAME = "location_name";
 	String EDGE_PROPERTY_NCT_ID = "nct";
@@ -0,0 +1,432 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Resident service building the graphs of clinicaltrials.gov searches and
+ * serving their exports over HTTP.
+ *
+ * <p>
+ * Graphs are requested with
+ * <code>GET /graph?term=&lt;search term&gt;&amp;format=&lt;format&gt;</code>,
+ * where the format is <code>gexf</code> (the default), <code>graphml</code>,
+ * <code>conditions</code> or <code>interventions</code>, the last two
+ * returning the phrase files of {@link PhraseExporter}.
+ *
+ * <p>
+ * Each graph is built once into a {@link GraphSnapshot} file, and the
+ * exports are streamed from the memory-mapped snapshot. Snapshots are kept
+ * in a cache bounded by the size of their files, evicting the least recently
+ * used ones. Requests for a search term already being built wait for that
+ * build instead of starting another one. Builds run one at a time, since
+ * each one already uses all processors and the Gephi project controller is
+ * shared by the whole process.
+ *
+ * @author Denilson Nastacio
+ */
+public class GraphService {
+
+	/**
+	 * HTTP port of the service. The application starts the service instead
+	 * of building a single graph when set.
+	 */
+	public static final String PROPERTY_PORT = "ctviz.service.port";
+
+	/**
+	 * Maximum size, in bytes, of the graph snapshots kept in the cache.
+	 */
+	public static final String PROPERTY_CACHE_BYTES = "ctviz.service.cache.bytes";
+
+	/**
+	 * Directory of the graph snapshots kept in the cache.
+	 */
+	public static final String PROPERTY_CACHE_DIR = "ctviz.service.cache.dir";
+
+	/**
+	 * Number of requests served at the same time.
+	 */
+	public static final String PROPERTY_THREADS = "ctviz.service.threads";
+
+	private static final Logger LOG = Logger.getLogger(GraphService.class.getName());
+
+	private static final long DEFAULT_CACHE_BYTES = 1L << 30;
+
+	private final GraphBuild build;
+	private final Path cacheDir;
+	private final long maxBytes;
+	private final GraphExporter exporter;
+	private final ExecutorService builder = Executors.newSingleThreadExecutor();
+	private final Map<String, CompletableFuture<CachedGraph>> building = new ConcurrentHashMap<>();
+	private final LinkedHashMap<String, CachedGraph> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong builds = new AtomicLong();
+	private long cachedBytes;
+	private long nextFile;
+	private HttpServer server;
+
+	/**
+	 *
+	 * @param build
+	 *            builds the graph snapshot of a search term
+	 * @param cacheDir
+	 *            directory of the graph snapshots
+	 * @param maxBytes
+	 *            maximum size of the graph snapshots kept in the cache
+	 * @param exporter
+	 *            exporter of the GEXF and GraphML documents
+	 */
+	public GraphService(GraphBuild build, Path cacheDir, long maxBytes, GraphExporter exporter) {
+		this.build = build;
+		this.cacheDir = cacheDir;
+		this.maxBytes = maxBytes;
+		this.exporter = exporter;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param build
+	 *            builds the graph snapshot of a search term
+	 * @return service configured by the <code>ctviz.service.*</code>
+	 *         properties
+	 * @throws IOException
+	 */
+	public static GraphService fromProperties(GraphBuild build) throws IOException {
+		String dir = System.getProperty(PROPERTY_CACHE_DIR);
+		Path cacheDir = dir != null ? Paths.get(dir) : Files.createTempDirectory("ctviz");
+		return new GraphService(build, cacheDir,
+				Long.getLong(PROPERTY_CACHE_BYTES, DEFAULT_CACHE_BYTES), GraphExporter.fromProperties());
+	}
+
+	/**
+	 * Starts serving requests on the port in {@link #PROPERTY_PORT}.
+	 *
+	 * @return port of the service
+	 * @throws IOException
+	 */
+	public int start() throws IOException {
+		return start(Integer.getInteger(PROPERTY_PORT, 0),
+				Integer.getInteger(PROPERTY_THREADS, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 *
+	 * @param port
+	 *            HTTP port, or 0 for any free port
+	 * @param threads
+	 *            number of requests served at the same time
+	 * @return port of the service
+	 * @throws IOException
+	 */
+	public int start(int port, int threads) throws IOException {
+		Files.createDirectories(cacheDir);
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/graph", this::handleGraph);
+		server.setExecutor(Executors.newFixedThreadPool(Math.max(1, threads)));
+		server.start();
+		int boundPort = server.getAddress().getPort();
+		LOG.info("Serving graphs on port " + boundPort + ", caching up to " + maxBytes + " bytes of graphs in "
+				+ cacheDir.toAbsolutePath());
+		return boundPort;
+	}
+
+	/**
+	 * Stops serving requests and building graphs.
+	 */
+	public void stop() {
+		if (server != null) {
+			server.stop(0);
+			((ExecutorService) server.getExecutor()).shutdownNow();
+		}
+		builder.shutdownNow();
+	}
+
+	/**
+	 *
+	 * @param searchTerm
+	 * @return graph of the search term, from the cache or built for this
+	 *         request or a concurrent one
+	 * @throws IOException
+	 *             if the graph could not be built
+	 */
+	public CachedGraph getGraph(String searchTerm) throws IOException {
+		synchronized (cache) {
+			CachedGraph graph = cache.get(searchTerm);
+			if (graph != null) {
+				hits.incrementAndGet();
+				return graph;
+			}
+		}
+		CompletableFuture<CachedGraph> future = building.computeIfAbsent(searchTerm,
+				term -> CompletableFuture.supplyAsync(() -> buildGraph(term), builder));
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while building the graph for " + searchTerm, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+			throw new IOException("Unable to build the graph for " + searchTerm, cause);
+		}
+	}
+
+	/**
+	 *
+	 * @return number of requests served from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 *
+	 * @return number of graphs built
+	 */
+	public long getBuildCount() {
+		return builds.get();
+	}
+
+	/**
+	 *
+	 * @return size of the graph snapshots in the cache
+	 */
+	public long getCachedBytes() {
+		synchronized (cache) {
+			return cachedBytes;
+		}
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * Builds a graph and adds it to the cache, on the builder thread.
+	 */
+	private CachedGraph buildGraph(String searchTerm) {
+		try {
+			synchronized (cache) {
+				CachedGraph graph = cache.get(searchTerm);
+				if (graph != null) {
+					// Built by the previous request for the term.
+					return graph;
+				}
+			}
+			long start = System.nanoTime();
+			Path file = cacheDir.resolve("graph" + nextFile++ + GraphSnapshot.FILE_EXTENSION);
+			build.build(searchTerm, file);
+			CachedGraph graph = new CachedGraph(searchTerm, GraphSnapshot.load(file), file, Files.size(file));
+			builds.incrementAndGet();
+			LOG.info("Built graph for [" + searchTerm + "] in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms, " + graph.size + " bytes.");
+			synchronized (cache) {
+				cache.put(searchTerm, graph);
+				cachedBytes += graph.size;
+				evict();
+			}
+			return graph;
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		} finally {
+			building.remove(searchTerm);
+		}
+	}
+
+	/**
+	 * Removes the least recently used graphs until the cache fits its
+	 * maximum size. Graphs being served remain readable, since their
+	 * snapshots are already mapped in memory.
+	 */
+	private void evict() {
+		Iterator<CachedGraph> graphs = cache.values().iterator();
+		while (cachedBytes > maxBytes && graphs.hasNext()) {
+			CachedGraph graph = graphs.next();
+			graphs.remove();
+			cachedBytes -= graph.size;
+			try {
+				Files.deleteIfExists(graph.file);
+			} catch (IOException e) {
+				LOG.log(Level.WARNING, "Unable to delete graph snapshot " + graph.file, e);
+			}
+			LOG.info("Evicted graph for [" + graph.searchTerm + "] from the cache.");
+		}
+	}
+
+	private void handleGraph(HttpExchange exchange) throws IOException {
+		try {
+			Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+			String searchTerm = query.get("term");
+			String format = query.getOrDefault("format", "gexf");
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				sendError(exchange, 405, "Only GET is supported");
+			} else if (searchTerm == null || searchTerm.isEmpty()) {
+				sendError(exchange, 400, "Missing search term");
+			} else if (format.equals("gexf") || format.equals("graphml")) {
+				GraphExporter.Format graphFormat = format.equals("gexf") ? GraphExporter.Format.GEXF
+						: GraphExporter.Format.GRAPHML;
+				GraphSnapshot snapshot = getGraph(searchTerm).snapshot;
+				exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=utf-8");
+				exchange.sendResponseHeaders(200, 0);
+				try (OutputStream out = exchange.getResponseBody()) {
+					exporter.export(snapshot.toExportable(), graphFormat, Channels.newChannel(out));
+				}
+			} else if (format.equals("conditions") || format.equals("interventions")) {
+				sendPhrases(exchange, getGraph(searchTerm).snapshot,
+						format.equals("conditions") ? GraphSchema.VERTEX_PROPERTY_CONDITION_RAW
+								: GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME);
+			} else {
+				sendError(exchange, 400, "Unknown format: " + format);
+			}
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Unable to serve " + exchange.getRequestURI(), e);
+			sendError(exchange, 500, e.getMessage());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Sends the phrases of a node attribute, as written by the
+	 * {@link PhraseExporter}.
+	 */
+	private static void sendPhrases(HttpExchange exchange, GraphSnapshot snapshot, String attribute)
+			throws IOException {
+		Path file = Files.createTempFile("ctviz", ".phrases.txt");
+		try {
+			new PhraseExporter(Boolean.getBoolean(PhraseExporter.PROPERTY_DEDUPLICATE)).addPhrases(attribute, file)
+					.export(snapshot.toExportable());
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(200, Files.size(file));
+			try (OutputStream out = exchange.getResponseBody()) {
+				Files.copy(file, out);
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Sends an error, unless the response is already under way.
+	 */
+	private static void sendError(HttpExchange exchange, int status, String message) {
+		if (exchange.getResponseCode() != -1) {
+			return;
+		}
+		try {
+			byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} catch (IOException e) {
+			LOG.log(Level.FINE, "Unable to send error to client", e);
+		}
+	}
+
+	private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+		Map<String, String> result = new HashMap<>();
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				int equals = parameter.indexOf('=');
+				if (equals > 0) {
+					result.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+							URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+				}
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Public classes.
+	 */
+
+	/**
+	 * Builds the graph of a search term.
+	 */
+	@FunctionalInterface
+	public interface GraphBuild {
+
+		/**
+		 *
+		 * @param searchTerm
+		 * @param snapshot
+		 *            file receiving the graph, written by
+		 *            {@link GraphSnapshot.Builder#write(Path)}
+		 * @throws Exception
+		 */
+		void build(String searchTerm, Path snapshot) throws Exception;
+	}
+
+	/**
+	 * Graph of a search term kept in the cache.
+	 */
+	public static class CachedGraph {
+		private final String searchTerm;
+		private final GraphSnapshot snapshot;
+		private final Path file;
+		private final long size;
+
+		CachedGraph(String searchTerm, GraphSnapshot snapshot, Path file, long size) {
+			this.searchTerm = searchTerm;
+			this.snapshot = snapshot;
+			this.file = file;
+			this.size = size;
+		}
+
+		/**
+		 *
+		 * @return graph, readable after it is evicted from the cache
+		 */
+		public GraphSnapshot getSnapshot() {
+			return snapshot;
+		}
+
+		/**
+		 *
+		 * @return size of the snapshot file, counted against the size of the
+		 *         cache
+		 */
+		public long getSize() {
+			return size;
+		}
+	}
+}
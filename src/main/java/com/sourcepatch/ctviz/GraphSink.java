@@ -0,0 +1,223 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.Collection;
+
+/**
+ * Graph library receiving the vertices and edges built from the clinical
+ * trials by a {@link StudyGraphBuilder}.
+ *
+ * <p>
+ * Each vertex is created with {@link #newVertex(String)}, given its
+ * properties and then handed to {@link #addVertex(Object)}, and the same goes
+ * for edges. Libraries that insert in bulk may keep new elements out of the
+ * graph until they are added, and {@link BatchingGraphSink} groups the
+ * additions into {@link #addVertices(Collection)} and
+ * {@link #addEdges(Collection)} calls. Properties of an element can be read
+ * and written before and after it is added.
+ *
+ * <p>
+ * Instances are not thread-safe and must be used from the thread that writes
+ * to the graph.
+ *
+ * @param <V>
+ *            vertex type of the underlying graph library
+ * @param <E>
+ *            edge type of the underlying graph library
+ *
+ * @author Denilson Nastacio
+ */
+public interface GraphSink<V, E> {
+
+	/**
+	 *
+	 * @param label
+	 *            one of the <code>GraphSchema.VERTEX_LABEL_*</code> values
+	 * @return new vertex, which may not be in the graph until it is added
+	 */
+	V newVertex(String label);
+
+	/**
+	 *
+	 * @param vertex
+	 *            vertex created by {@link #newVertex(String)}
+	 */
+	void addVertex(V vertex);
+
+	/**
+	 *
+	 * @param vertices
+	 *            vertices created by {@link #newVertex(String)}
+	 */
+	default void addVertices(Collection<V> vertices) {
+		for (V vertex : vertices) {
+			addVertex(vertex);
+		}
+	}
+
+	/**
+	 *
+	 * @param source
+	 * @param target
+	 * @param label
+	 *            one of the <code>GraphSchema.EDGE_LABEL_*</code> values
+	 * @return new edge with weight 1, which may not be in the graph until it
+	 *         is added
+	 */
+	E newEdge(V source, V target, String label);
+
+	/**
+	 *
+	 * @param edge
+	 *            edge created by {@link #newEdge(Object, Object, String)},
+	 *            added after its source and target
+	 */
+	void addEdge(E edge);
+
+	/**
+	 *
+	 * @param edges
+	 *            edges created by {@link #newEdge(Object, Object, String)},
+	 *            added after their sources and targets
+	 */
+	default void addEdges(Collection<E> edges) {
+		for (E edge : edges) {
+			addEdge(edge);
+		}
+	}
+
+	/**
+	 *
+	 * @param vertex
+	 * @return vertex label, or <code>null</code> for vertices without one
+	 */
+	String getVertexLabel(V vertex);
+
+	/**
+	 *
+	 * @param vertex
+	 * @param property
+	 * @return property value, or <code>null</code> if the vertex does not
+	 *         have one
+	 */
+	Object getVertexProperty(V vertex, String property);
+
+	/**
+	 *
+	 * @param vertex
+	 * @param property
+	 * @param value
+	 *            property value, or <code>null</code> to leave the property
+	 *            unset
+	 */
+	void setVertexProperty(V vertex, String property, Object value);
+
+	/**
+	 *
+	 * @param vertex
+	 * @param property
+	 *            property to remove, if the vertex has it
+	 */
+	void removeVertexProperty(V vertex, String property);
+
+	/**
+	 *
+	 * @param edge
+	 * @return edge label, or <code>null</code> for edges without one
+	 */
+	String getEdgeLabel(E edge);
+
+	/**
+	 *
+	 * @param edge
+	 * @return source vertex
+	 */
+	V getEdgeSource(E edge);
+
+	/**
+	 *
+	 * @param edge
+	 * @return target vertex
+	 */
+	V getEdgeTarget(E edge);
+
+	/**
+	 *
+	 * @param edge
+	 * @param property
+	 * @return property value, or <code>null</code> if the edge does not have
+	 *         one
+	 */
+	Object getEdgeProperty(E edge, String property);
+
+	/**
+	 *
+	 * @param edge
+	 * @param property
+	 * @param value
+	 *            property value, or <code>null</code> to leave the property
+	 *            unset
+	 */
+	void setEdgeProperty(E edge, String property, Object value);
+
+	/**
+	 * Sets the weight of an edge, for graph libraries with weighted edges.
+	 *
+	 * @param edge
+	 * @param weight
+	 */
+	void setEdgeWeight(E edge, double weight);
+
+	/**
+	 *
+	 * @return vertices in the graph
+	 */
+	Iterable<V> getVertices();
+
+	/**
+	 *
+	 * @return edges in the graph
+	 */
+	Iterable<E> getEdges();
+
+	/**
+	 *
+	 * @param vertex
+	 * @return copy of the incoming and outgoing edges of the vertex
+	 */
+	Collection<E> getEdges(V vertex);
+
+	/**
+	 *
+	 * @param vertex
+	 * @return <code>true</code> if the vertex has incoming or outgoing edges,
+	 *         without listing them
+	 */
+	boolean hasEdges(V vertex);
+
+	/**
+	 * Removes a vertex with all its edges.
+	 *
+	 * @param vertex
+	 */
+	void removeVertex(V vertex);
+
+	/**
+	 *
+	 * @param edge
+	 */
+	void removeEdge(E edge);
+
+	/**
+	 * Adds the vertices and edges still held by the sink to the graph.
+	 */
+	default void flush() {
+	}
+}
@@ -0,0 +1,1004 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Graph stored in the columnar binary format of the snapshot files, for
+ * saving and reloading graphs much faster than GEXF or GraphML.
+ *
+ * <p>
+ * Every string in the graph is stored once, in a string table, and the
+ * vertices and edges refer to it by position. Vertices and edges are rows of
+ * columns: the fixed id, label, position, endpoint and weight columns, then
+ * one column per property, such as the <code>GraphSchema</code> properties,
+ * typed after the values it holds and with a bitmap of the rows that have a
+ * value. Edges are sorted by source vertex, so that the outgoing edges of a
+ * vertex are a range of rows, and the incoming edges are kept in compressed
+ * sparse row form.
+ *
+ * <p>
+ * Snapshots are written with a {@link Builder} and read through a
+ * memory-mapped buffer by {@link #load(Path)}, without parsing anything.
+ * Instances are immutable and can be shared across threads.
+ *
+ * @author Denilson Nastacio
+ */
+public class GraphSnapshot {
+
+	/**
+	 * Extension of snapshot files.
+	 */
+	public static final String FILE_EXTENSION = ".ctgs";
+
+	private static final int MAGIC = 0x53475443; // "CTGS"
+	private static final int VERSION = 1;
+
+	private static final int TYPE_STRING = 0;
+	private static final int TYPE_INTEGER = 1;
+	private static final int TYPE_LONG = 2;
+	private static final int TYPE_DOUBLE = 3;
+	private static final int TYPE_FLOAT = 4;
+	private static final int TYPE_BOOLEAN = 5;
+
+	private static final Class<?>[] TYPES = { String.class, Integer.class, Long.class, Double.class, Float.class,
+			Boolean.class };
+
+	private static final int NO_STRING = -1;
+
+	private final StringTable strings;
+	private final String[] stringCache;
+	private final int vertexCount;
+	private final int edgeCount;
+
+	private final IntBuffer vertexIds;
+	private final IntBuffer vertexLabels;
+	private final IntBuffer vertexX;
+	private final IntBuffer vertexY;
+
+	private final IntBuffer edgeSources;
+	private final IntBuffer edgeTargets;
+	private final IntBuffer edgeIds;
+	private final IntBuffer edgeLabels;
+	private final LongBuffer edgeWeights;
+
+	private final IntBuffer outOffsets;
+	private final IntBuffer inOffsets;
+	private final IntBuffer inEdges;
+
+	private final Map<String, Column> vertexColumns;
+	private final Map<String, Column> edgeColumns;
+
+	private GraphSnapshot(ByteBuffer in, Path file) throws IOException {
+		BinarySnapshot.checkHeader(in, MAGIC, VERSION, file);
+		IntBuffer counts = BinarySnapshot.getInts(in);
+		if (counts.limit() != 4) {
+			throw new IOException("Inconsistent graph snapshot: " + file);
+		}
+		vertexCount = counts.get(0);
+		edgeCount = counts.get(1);
+		strings = StringTable.read(in);
+		stringCache = new String[strings.size()];
+
+		vertexIds = getInts(in, vertexCount, file);
+		vertexLabels = getInts(in, vertexCount, file);
+		vertexX = getInts(in, vertexCount, file);
+		vertexY = getInts(in, vertexCount, file);
+
+		edgeSources = getInts(in, edgeCount, file);
+		edgeTargets = getInts(in, edgeCount, file);
+		edgeIds = getInts(in, edgeCount, file);
+		edgeLabels = getInts(in, edgeCount, file);
+		edgeWeights = BinarySnapshot.getLongs(in);
+		if (edgeWeights.limit() != edgeCount) {
+			throw new IOException("Inconsistent graph snapshot: " + file);
+		}
+
+		outOffsets = getInts(in, vertexCount + 1, file);
+		inOffsets = getInts(in, vertexCount + 1, file);
+		inEdges = getInts(in, edgeCount, file);
+
+		vertexColumns = readColumns(in, counts.get(2), vertexCount, file);
+		edgeColumns = readColumns(in, counts.get(3), edgeCount, file);
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param snapshot
+	 *            file written by {@link Builder#write(Path)}
+	 * @return graph backed by the memory-mapped file
+	 * @throws IOException
+	 */
+	public static GraphSnapshot load(Path snapshot) throws IOException {
+		return new GraphSnapshot(BinarySnapshot.map(snapshot), snapshot);
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @return <code>true</code> if the file name has the extension of graph
+	 *         snapshots
+	 */
+	public static boolean isSnapshot(Path file) {
+		return file.getFileName().toString().endsWith(FILE_EXTENSION);
+	}
+
+	/**
+	 *
+	 * @return number of vertices
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 *
+	 * @return number of edges
+	 */
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 *
+	 * @param vertex
+	 *            row of the vertex, from 0 to {@link #getVertexCount()}
+	 * @return id of the vertex in the graph it was taken from
+	 */
+	public String getVertexId(int vertex) {
+		return getString(vertexIds.get(vertex));
+	}
+
+	/**
+	 *
+	 * @param vertex
+	 * @return label of the vertex, or <code>null</code>
+	 */
+	public String getVertexLabel(int vertex) {
+		return getString(vertexLabels.get(vertex));
+	}
+
+	/**
+	 *
+	 * @param vertex
+	 * @return horizontal position of the vertex in the layout
+	 */
+	public float getVertexX(int vertex) {
+		return Float.intBitsToFloat(vertexX.get(vertex));
+	}
+
+	/**
+	 *
+	 * @param vertex
+	 * @return vertical position of the vertex in the layout
+	 */
+	public float getVertexY(int vertex) {
+		return Float.intBitsToFloat(vertexY.get(vertex));
+	}
+
+	/**
+	 *
+	 * @param edge
+	 *            row of the edge, from 0 to {@link #getEdgeCount()}
+	 * @return row of the source vertex
+	 */
+	public int getEdgeSource(int edge) {
+		return edgeSources.get(edge);
+	}
+
+	/**
+	 *
+	 * @param edge
+	 * @return row of the target vertex
+	 */
+	public int getEdgeTarget(int edge) {
+		return edgeTargets.get(edge);
+	}
+
+	/**
+	 *
+	 * @param edge
+	 * @return id of the edge in the graph it was taken from
+	 */
+	public String getEdgeId(int edge) {
+		return getString(edgeIds.get(edge));
+	}
+
+	/**
+	 *
+	 * @param edge
+	 * @return label of the edge, or <code>null</code>
+	 */
+	public String getEdgeLabel(int edge) {
+		return getString(edgeLabels.get(edge));
+	}
+
+	/**
+	 *
+	 * @param edge
+	 * @return weight of the edge
+	 */
+	public double getEdgeWeight(int edge) {
+		return Double.longBitsToDouble(edgeWeights.get(edge));
+	}
+
+	/**
+	 *
+	 * @param vertex
+	 * @return row of the first edge leaving the vertex
+	 */
+	public int getOutEdgeStart(int vertex) {
+		return outOffsets.get(vertex);
+	}
+
+	/**
+	 *
+	 * @param vertex
+	 * @return row after the last edge leaving the vertex
+	 */
+	public int getOutEdgeEnd(int vertex) {
+		return outOffsets.get(vertex + 1);
+	}
+
+	/**
+	 *
+	 * @param vertex
+	 * @return number of edges arriving at the vertex
+	 */
+	public int getInDegree(int vertex) {
+		return inOffsets.get(vertex + 1) - inOffsets.get(vertex);
+	}
+
+	/**
+	 *
+	 * @param vertex
+	 * @param i
+	 *            from 0 to {@link #getInDegree(int)}
+	 * @return row of an edge arriving at the vertex
+	 */
+	public int getInEdge(int vertex, int i) {
+		return inEdges.get(inOffsets.get(vertex) + i);
+	}
+
+	/**
+	 *
+	 * @return vertex property columns, by property name, in the order they
+	 *         were first set
+	 */
+	public Map<String, Column> getVertexColumns() {
+		return vertexColumns;
+	}
+
+	/**
+	 *
+	 * @return edge property columns, by property name, in the order they
+	 *         were first set
+	 */
+	public Map<String, Column> getEdgeColumns() {
+		return edgeColumns;
+	}
+
+	/**
+	 *
+	 * @param vertex
+	 * @param property
+	 * @return value of the property, or <code>null</code> if the vertex does
+	 *         not have it
+	 */
+	public Object getVertexProperty(int vertex, String property) {
+		Column column = vertexColumns.get(property);
+		return column != null ? column.get(vertex) : null;
+	}
+
+	/**
+	 *
+	 * @param edge
+	 * @param property
+	 * @return value of the property, or <code>null</code> if the edge does
+	 *         not have it
+	 */
+	public Object getEdgeProperty(int edge, String property) {
+		Column column = edgeColumns.get(property);
+		return column != null ? column.get(edge) : null;
+	}
+
+	/**
+	 *
+	 * @return view of the snapshot for the {@link GraphExporter}, with the
+	 *         rows of the vertices and edges as nodes and edges
+	 */
+	public ExportableGraph<Integer, Integer> toExportable() {
+		return new SnapshotExportable();
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private String getString(int index) {
+		if (index == NO_STRING) {
+			return null;
+		}
+		String s = stringCache[index];
+		if (s == null) {
+			s = strings.get(index);
+			stringCache[index] = s;
+		}
+		return s;
+	}
+
+	private static IntBuffer getInts(ByteBuffer in, int count, Path file) throws IOException {
+		IntBuffer values = BinarySnapshot.getInts(in);
+		if (values.limit() != count) {
+			throw new IOException("Inconsistent graph snapshot: " + file);
+		}
+		return values;
+	}
+
+	private Map<String, Column> readColumns(ByteBuffer in, int columnCount, int rows, Path file)
+			throws IOException {
+		IntBuffer descriptors = getInts(in, columnCount * 2, file);
+		Map<String, Column> columns = new LinkedHashMap<>();
+		for (int c = 0; c < columnCount; c++) {
+			String name = getString(descriptors.get(c * 2));
+			int type = descriptors.get(c * 2 + 1);
+			if (name == null || type < 0 || type >= TYPES.length) {
+				throw new IOException("Inconsistent graph snapshot: " + file);
+			}
+			LongBuffer present = BinarySnapshot.getLongs(in);
+			if (present.limit() != (rows + 63) / 64) {
+				throw new IOException("Inconsistent graph snapshot: " + file);
+			}
+			Column column;
+			if (type == TYPE_LONG || type == TYPE_DOUBLE) {
+				LongBuffer values = BinarySnapshot.getLongs(in);
+				if (values.limit() != rows) {
+					throw new IOException("Inconsistent graph snapshot: " + file);
+				}
+				column = new Column(name, type, present, null, values);
+			} else {
+				column = new Column(name, type, present, getInts(in, rows, file), null);
+			}
+			columns.put(name, column);
+		}
+		return Collections.unmodifiableMap(columns);
+	}
+
+	private static Map<String, Class<?>> getTypes(Map<String, Column> columns) {
+		Map<String, Class<?>> types = new LinkedHashMap<>();
+		for (Column column : columns.values()) {
+			types.put(column.getName(), column.getType());
+		}
+		return types;
+	}
+
+	private static Iterable<Integer> rows(int count) {
+		return () -> IntStream.range(0, count).iterator();
+	}
+
+	private static int getType(Object value) {
+		for (int type = 0; type < TYPES.length; type++) {
+			if (TYPES[type] == value.getClass()) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported property type " + value.getClass().getName());
+	}
+
+	/*
+	 * Public classes.
+	 */
+
+	/**
+	 * Values of a property for all vertices or all edges.
+	 */
+	public class Column {
+		private final String name;
+		private final int type;
+		private final LongBuffer present;
+		private final IntBuffer ints;
+		private final LongBuffer longs;
+
+		private Column(String name, int type, LongBuffer present, IntBuffer ints, LongBuffer longs) {
+			this.name = name;
+			this.type = type;
+			this.present = present;
+			this.ints = ints;
+			this.longs = longs;
+		}
+
+		/**
+		 *
+		 * @return property name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 *
+		 * @return class of the values: String, Integer, Long, Double, Float
+		 *         or Boolean
+		 */
+		public Class<?> getType() {
+			return TYPES[type];
+		}
+
+		/**
+		 *
+		 * @param row
+		 * @return value of the row, or <code>null</code> if the row does not
+		 *         have one
+		 */
+		public Object get(int row) {
+			if ((present.get(row >>> 6) & (1L << row)) == 0) {
+				return null;
+			}
+			switch (type) {
+			case TYPE_STRING:
+				return getString(ints.get(row));
+			case TYPE_INTEGER:
+				return ints.get(row);
+			case TYPE_LONG:
+				return longs.get(row);
+			case TYPE_DOUBLE:
+				return Double.longBitsToDouble(longs.get(row));
+			case TYPE_FLOAT:
+				return Float.intBitsToFloat(ints.get(row));
+			default:
+				return ints.get(row) != 0;
+			}
+		}
+	}
+
+	/**
+	 * Collects the vertices and edges of a graph, in any order, and writes
+	 * them as a snapshot.
+	 *
+	 * <p>
+	 * Instances are not thread-safe.
+	 */
+	public static class Builder {
+		private final Map<String, Integer> stringIndex = new HashMap<>();
+		private final List<String> strings = new ArrayList<>();
+
+		private int vertexCount;
+		private int[] vertexIds = new int[16];
+		private int[] vertexLabels = new int[16];
+		private int[] vertexX = new int[16];
+		private int[] vertexY = new int[16];
+
+		private int edgeCount;
+		private int[] edgeSources = new int[16];
+		private int[] edgeTargets = new int[16];
+		private int[] edgeIds = new int[16];
+		private int[] edgeLabels = new int[16];
+		private long[] edgeWeights = new long[16];
+
+		private final Map<String, ColumnBuilder> vertexColumns = new LinkedHashMap<>();
+		private final Map<String, ColumnBuilder> edgeColumns = new LinkedHashMap<>();
+
+		/**
+		 *
+		 * @param id
+		 *            id of the vertex in its graph
+		 * @param label
+		 * @return row of the vertex
+		 */
+		public int addVertex(String id, String label) {
+			if (vertexCount == vertexIds.length) {
+				int length = vertexCount * 2;
+				vertexIds = Arrays.copyOf(vertexIds, length);
+				vertexLabels = Arrays.copyOf(vertexLabels, length);
+				vertexX = Arrays.copyOf(vertexX, length);
+				vertexY = Arrays.copyOf(vertexY, length);
+			}
+			vertexIds[vertexCount] = intern(id);
+			vertexLabels[vertexCount] = intern(label);
+			return vertexCount++;
+		}
+
+		/**
+		 *
+		 * @param vertex
+		 * @param x
+		 * @param y
+		 */
+		public void setVertexPosition(int vertex, float x, float y) {
+			vertexX[vertex] = Float.floatToIntBits(x);
+			vertexY[vertex] = Float.floatToIntBits(y);
+		}
+
+		/**
+		 *
+		 * @param vertex
+		 * @param property
+		 * @param value
+		 *            String, Integer, Long, Double, Float or Boolean, the
+		 *            same type for all vertices, or <code>null</code> to
+		 *            leave the property unset
+		 */
+		public void setVertexProperty(int vertex, String property, Object value) {
+			setProperty(vertexColumns, vertex, property, value);
+		}
+
+		/**
+		 *
+		 * @param id
+		 *            id of the edge in its graph
+		 * @param source
+		 *            row of the source vertex
+		 * @param target
+		 *            row of the target vertex
+		 * @param label
+		 * @param weight
+		 * @return row of the edge, which changes when the snapshot is
+		 *         written
+		 */
+		public int addEdge(String id, int source, int target, String label, double weight) {
+			if (source < 0 || source >= vertexCount || target < 0 || target >= vertexCount) {
+				throw new IllegalArgumentException("Unknown vertex in edge " + id);
+			}
+			if (edgeCount == edgeIds.length) {
+				int length = edgeCount * 2;
+				edgeSources = Arrays.copyOf(edgeSources, length);
+				edgeTargets = Arrays.copyOf(edgeTargets, length);
+				edgeIds = Arrays.copyOf(edgeIds, length);
+				edgeLabels = Arrays.copyOf(edgeLabels, length);
+				edgeWeights = Arrays.copyOf(edgeWeights, length);
+			}
+			edgeSources[edgeCount] = source;
+			edgeTargets[edgeCount] = target;
+			edgeIds[edgeCount] = intern(id);
+			edgeLabels[edgeCount] = intern(label);
+			edgeWeights[edgeCount] = Double.doubleToLongBits(weight);
+			return edgeCount++;
+		}
+
+		/**
+		 *
+		 * @param edge
+		 * @param property
+		 * @param value
+		 *            String, Integer, Long, Double, Float or Boolean, the
+		 *            same type for all edges, or <code>null</code> to leave
+		 *            the property unset
+		 */
+		public void setEdgeProperty(int edge, String property, Object value) {
+			setProperty(edgeColumns, edge, property, value);
+		}
+
+		/**
+		 *
+		 * @param edge
+		 * @param weight
+		 */
+		public void setEdgeWeight(int edge, double weight) {
+			edgeWeights[edge] = Double.doubleToLongBits(weight);
+		}
+
+		/**
+		 *
+		 * @return number of vertices added so far
+		 */
+		public int getVertexCount() {
+			return vertexCount;
+		}
+
+		/**
+		 *
+		 * @return number of edges added so far
+		 */
+		public int getEdgeCount() {
+			return edgeCount;
+		}
+
+		/**
+		 *
+		 * @param vertex
+		 * @return label of the vertex
+		 */
+		public String getVertexLabel(int vertex) {
+			return getString(vertexLabels[vertex]);
+		}
+
+		/**
+		 *
+		 * @param vertex
+		 * @param property
+		 * @return property value, or <code>null</code> if the vertex does not
+		 *         have one
+		 */
+		public Object getVertexProperty(int vertex, String property) {
+			return getProperty(vertexColumns, vertex, property);
+		}
+
+		/**
+		 *
+		 * @param edge
+		 * @return row of the source vertex
+		 */
+		public int getEdgeSource(int edge) {
+			return edgeSources[edge];
+		}
+
+		/**
+		 *
+		 * @param edge
+		 * @return row of the target vertex
+		 */
+		public int getEdgeTarget(int edge) {
+			return edgeTargets[edge];
+		}
+
+		/**
+		 *
+		 * @param edge
+		 * @return label of the edge
+		 */
+		public String getEdgeLabel(int edge) {
+			return getString(edgeLabels[edge]);
+		}
+
+		/**
+		 *
+		 * @param edge
+		 * @param property
+		 * @return property value, or <code>null</code> if the edge does not
+		 *         have one
+		 */
+		public Object getEdgeProperty(int edge, String property) {
+			return getProperty(edgeColumns, edge, property);
+		}
+
+		/**
+		 * Writes the snapshot, replacing the file at once so that processes
+		 * still reading the previous snapshot are not affected.
+		 *
+		 * @param snapshot
+		 * @throws IOException
+		 */
+		public void write(Path snapshot) throws IOException {
+			// Edges sorted by source, then by the order they were added.
+			int[] outOffsets = new int[vertexCount + 1];
+			for (int e = 0; e < edgeCount; e++) {
+				outOffsets[edgeSources[e] + 1]++;
+			}
+			for (int v = 0; v < vertexCount; v++) {
+				outOffsets[v + 1] += outOffsets[v];
+			}
+			int[] order = new int[edgeCount];
+			int[] next = Arrays.copyOf(outOffsets, vertexCount);
+			for (int e = 0; e < edgeCount; e++) {
+				order[next[edgeSources[e]]++] = e;
+			}
+
+			int[] inOffsets = new int[vertexCount + 1];
+			for (int e = 0; e < edgeCount; e++) {
+				inOffsets[edgeTargets[e] + 1]++;
+			}
+			for (int v = 0; v < vertexCount; v++) {
+				inOffsets[v + 1] += inOffsets[v];
+			}
+			int[] inEdges = new int[edgeCount];
+			next = Arrays.copyOf(inOffsets, vertexCount);
+			for (int row = 0; row < edgeCount; row++) {
+				inEdges[next[edgeTargets[order[row]]]++] = row;
+			}
+
+			if (snapshot.getParent() != null) {
+				Files.createDirectories(snapshot.getParent());
+			}
+			Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+			try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				BinarySnapshot.putHeader(out, MAGIC, VERSION);
+				BinarySnapshot.putInts(out,
+						IntBuffer.wrap(new int[] { vertexCount, edgeCount, vertexColumns.size(), edgeColumns.size() }),
+						4);
+				StringTable.write(out, strings);
+
+				BinarySnapshot.putInts(out, IntBuffer.wrap(vertexIds), vertexCount);
+				BinarySnapshot.putInts(out, IntBuffer.wrap(vertexLabels), vertexCount);
+				BinarySnapshot.putInts(out, IntBuffer.wrap(vertexX), vertexCount);
+				BinarySnapshot.putInts(out, IntBuffer.wrap(vertexY), vertexCount);
+
+				BinarySnapshot.putInts(out, IntBuffer.wrap(permute(edgeSources, order)), edgeCount);
+				BinarySnapshot.putInts(out, IntBuffer.wrap(permute(edgeTargets, order)), edgeCount);
+				BinarySnapshot.putInts(out, IntBuffer.wrap(permute(edgeIds, order)), edgeCount);
+				BinarySnapshot.putInts(out, IntBuffer.wrap(permute(edgeLabels, order)), edgeCount);
+				long[] weights = new long[edgeCount];
+				for (int row = 0; row < edgeCount; row++) {
+					weights[row] = edgeWeights[order[row]];
+				}
+				BinarySnapshot.putLongs(out, LongBuffer.wrap(weights), edgeCount);
+
+				BinarySnapshot.putInts(out, IntBuffer.wrap(outOffsets), vertexCount + 1);
+				BinarySnapshot.putInts(out, IntBuffer.wrap(inOffsets), vertexCount + 1);
+				BinarySnapshot.putInts(out, IntBuffer.wrap(inEdges), edgeCount);
+
+				writeColumns(out, vertexColumns, vertexCount, null);
+				writeColumns(out, edgeColumns, edgeCount, order);
+			}
+			Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		private int intern(String s) {
+			if (s == null) {
+				return NO_STRING;
+			}
+			Integer index = stringIndex.get(s);
+			if (index == null) {
+				index = strings.size();
+				strings.add(s);
+				stringIndex.put(s, index);
+			}
+			return index;
+		}
+
+		private String getString(int index) {
+			return index == NO_STRING ? null : strings.get(index);
+		}
+
+		private Object getProperty(Map<String, ColumnBuilder> columns, int row, String property) {
+			ColumnBuilder column = columns.get(property);
+			if (column == null || row >= column.values.length || (column.present[row >>> 6] & (1L << row)) == 0) {
+				return null;
+			}
+			long bits = column.values[row];
+			switch (column.type) {
+			case TYPE_STRING:
+				return strings.get((int) bits);
+			case TYPE_INTEGER:
+				return (int) bits;
+			case TYPE_LONG:
+				return bits;
+			case TYPE_DOUBLE:
+				return Double.longBitsToDouble(bits);
+			case TYPE_FLOAT:
+				return Float.intBitsToFloat((int) bits);
+			default:
+				return bits != 0;
+			}
+		}
+
+		private void setProperty(Map<String, ColumnBuilder> columns, int row, String property, Object value) {
+			if (value == null) {
+				return;
+			}
+			int type = getType(value);
+			ColumnBuilder column = columns.get(property);
+			if (column == null) {
+				intern(property);
+				column = new ColumnBuilder(type);
+				columns.put(property, column);
+			} else if (column.type != type) {
+				throw new IllegalArgumentException("Property " + property + " holds "
+						+ TYPES[column.type].getSimpleName() + " values, not " + value.getClass().getSimpleName());
+			}
+			long bits;
+			switch (type) {
+			case TYPE_STRING:
+				bits = intern((String) value);
+				break;
+			case TYPE_INTEGER:
+				bits = (Integer) value;
+				break;
+			case TYPE_LONG:
+				bits = (Long) value;
+				break;
+			case TYPE_DOUBLE:
+				bits = Double.doubleToLongBits((Double) value);
+				break;
+			case TYPE_FLOAT:
+				bits = Float.floatToIntBits((Float) value);
+				break;
+			default:
+				bits = ((Boolean) value) ? 1 : 0;
+			}
+			column.set(row, bits);
+		}
+
+		private void writeColumns(FileChannel out, Map<String, ColumnBuilder> columns, int rows, int[] order)
+				throws IOException {
+			int[] descriptors = new int[columns.size() * 2];
+			int c = 0;
+			for (Map.Entry<String, ColumnBuilder> entry : columns.entrySet()) {
+				descriptors[c++] = stringIndex.get(entry.getKey());
+				descriptors[c++] = entry.getValue().type;
+			}
+			BinarySnapshot.putInts(out, IntBuffer.wrap(descriptors), descriptors.length);
+
+			for (ColumnBuilder column : columns.values()) {
+				long[] present = new long[(rows + 63) / 64];
+				long[] values = new long[rows];
+				for (int row = 0; row < rows; row++) {
+					int source = order != null ? order[row] : row;
+					if (source < column.values.length && (column.present[source >>> 6] & (1L << source)) != 0) {
+						present[row >>> 6] |= 1L << row;
+						values[row] = column.values[source];
+					}
+				}
+				BinarySnapshot.putLongs(out, LongBuffer.wrap(present), present.length);
+				if (column.type == TYPE_LONG || column.type == TYPE_DOUBLE) {
+					BinarySnapshot.putLongs(out, LongBuffer.wrap(values), rows);
+				} else {
+					int[] ints = new int[rows];
+					for (int row = 0; row < rows; row++) {
+						ints[row] = (int) values[row];
+					}
+					BinarySnapshot.putInts(out, IntBuffer.wrap(ints), rows);
+				}
+			}
+		}
+
+		private static int[] permute(int[] values, int[] order) {
+			int[] result = new int[order.length];
+			for (int row = 0; row < order.length; row++) {
+				result[row] = values[order[row]];
+			}
+			return result;
+		}
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Snapshot rows seen as the nodes and edges of a graph to export.
+	 */
+	private class SnapshotExportable implements ExportableGraph<Integer, Integer> {
+		private final boolean positions;
+		private final boolean weights;
+
+		SnapshotExportable() {
+			boolean anyPosition = false;
+			for (int v = 0; v < vertexCount && !anyPosition; v++) {
+				anyPosition = vertexX.get(v) != 0 || vertexY.get(v) != 0;
+			}
+			positions = anyPosition;
+			boolean anyWeight = false;
+			for (int e = 0; e < edgeCount && !anyWeight; e++) {
+				anyWeight = getEdgeWeight(e) != 1.0;
+			}
+			weights = anyWeight;
+		}
+
+		@Override
+		public Map<String, Class<?>> getNodeAttributes() {
+			return getTypes(vertexColumns);
+		}
+
+		@Override
+		public Map<String, Class<?>> getEdgeAttributes() {
+			return getTypes(edgeColumns);
+		}
+
+		@Override
+		public boolean hasPositions() {
+			return positions;
+		}
+
+		@Override
+		public boolean hasWeights() {
+			return weights;
+		}
+
+		@Override
+		public Iterable<Integer> getNodes() {
+			return rows(vertexCount);
+		}
+
+		@Override
+		public Iterable<Integer> getEdges() {
+			return rows(edgeCount);
+		}
+
+		@Override
+		public String getNodeId(Integer node) {
+			return getVertexId(node);
+		}
+
+		@Override
+		public String getNodeLabel(Integer node) {
+			return getVertexLabel(node);
+		}
+
+		@Override
+		public Object getNodeAttribute(Integer node, String attribute) {
+			return getVertexProperty(node, attribute);
+		}
+
+		@Override
+		public float getNodeX(Integer node) {
+			return getVertexX(node);
+		}
+
+		@Override
+		public float getNodeY(Integer node) {
+			return getVertexY(node);
+		}
+
+		@Override
+		public String getEdgeId(Integer edge) {
+			return GraphSnapshot.this.getEdgeId(edge);
+		}
+
+		@Override
+		public String getEdgeSource(Integer edge) {
+			return getVertexId(edgeSources.get(edge));
+		}
+
+		@Override
+		public String getEdgeTarget(Integer edge) {
+			return getVertexId(edgeTargets.get(edge));
+		}
+
+		@Override
+		public String getEdgeLabel(Integer edge) {
+			return GraphSnapshot.this.getEdgeLabel(edge);
+		}
+
+		@Override
+		public double getEdgeWeight(Integer edge) {
+			return GraphSnapshot.this.getEdgeWeight(edge);
+		}
+
+		@Override
+		public Object getEdgeAttribute(Integer edge, String attribute) {
+			return getEdgeProperty(edge, attribute);
+		}
+	}
+
+	/**
+	 * Values of a property while the snapshot is built, kept as the bits
+	 * written to the file.
+	 */
+	private static class ColumnBuilder {
+		private final int type;
+		private long[] present = new long[1];
+		private long[] values = new long[64];
+
+		ColumnBuilder(int type) {
+			this.type = type;
+		}
+
+		void set(int row, long bits) {
+			if (row >= values.length) {
+				int length = Math.max(values.length * 2, (row + 64) & ~63);
+				values = Arrays.copyOf(values, length);
+				present = Arrays.copyOf(present, length / 64);
+			}
+			values[row] = bits;
+			present[row >>> 6] |= 1L << row;
+		}
+	}
+}
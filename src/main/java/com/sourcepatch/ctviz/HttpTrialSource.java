@@ -0,0 +1,496 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Trials downloaded from clinicaltrials.gov, kept in a download cache.
+ *
+ * <p>
+ * Downloads are stored under the SHA-256 of their contents, so the same
+ * result set is stored once even when several search terms return it. The
+ * validators of the last download of each URL, its <code>ETag</code> and
+ * <code>Last-Modified</code> headers, are kept next to it and sent back as
+ * a conditional request, so an unchanged result set is not downloaded
+ * again.
+ *
+ * <p>
+ * Downloads are written to a partial file in chunks. When the connection
+ * drops, the download resumes from the end of the partial file with a range
+ * request, as long as the server still has the same version of the result
+ * set, and starts over otherwise.
+ *
+ * <p>
+ * The cache is bounded by {@link #PROPERTY_CACHE_BYTES}. The archives used
+ * least recently leave the cache first, and are downloaded in full the next
+ * time their search terms are requested.
+ *
+ * @author Denilson Nastacio
+ */
+public class HttpTrialSource implements TrialSource {
+
+	/**
+	 * Download URL, followed by the search term.
+	 */
+	public static final String PROPERTY_URL = "ctviz.source.url";
+
+	/**
+	 * Directory of the download cache.
+	 */
+	public static final String PROPERTY_CACHE_DIR = "ctviz.download.dir";
+
+	/**
+	 * Attempts to complete a download, each resuming the previous one.
+	 */
+	public static final String PROPERTY_ATTEMPTS = "ctviz.source.attempts";
+
+	/**
+	 * Maximum size of the archives in the download cache.
+	 */
+	public static final String PROPERTY_CACHE_BYTES = "ctviz.download.cache.bytes";
+
+	/**
+	 * Download URL used when {@link #PROPERTY_URL} is not set.
+	 */
+	public static final String DEFAULT_URL = "https://clinicaltrials.gov/ct2/results/download"
+			+ "?down_stds=all&down_typ=results&down_flds=shown&down_fmt=plain&show_down=Y&term=";
+
+	/**
+	 * Cache directory used when {@link #PROPERTY_CACHE_DIR} is not set.
+	 */
+	public static final Path DEFAULT_CACHE_DIR = Paths.get(System.getProperty("user.home"), ".ctviz",
+			"downloads");
+
+	private static final Logger LOG = Logger.getLogger(HttpTrialSource.class.getName());
+
+	private static final String ARCHIVE_EXTENSION = ".zip";
+	private static final String METADATA_EXTENSION = ".properties";
+	private static final String PARTIAL_EXTENSION = ".part";
+
+	private static final String KEY_URL = "url";
+	private static final String KEY_SHA256 = "sha256";
+	private static final String KEY_ETAG = "etag";
+	private static final String KEY_LAST_MODIFIED = "lastModified";
+	private static final String KEY_PARTIAL_VALIDATOR = "partialValidator";
+
+	private static final int CHUNK_BYTES = 1024 * 1024;
+
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+	private final String baseUrl;
+	private final Path cacheDir;
+	private final int attempts;
+	private final long maxCacheBytes;
+
+	private final AtomicLong downloadedBytes = new AtomicLong();
+	private final AtomicLong lastUse = new AtomicLong();
+
+	/**
+	 *
+	 * @param baseUrl
+	 *            download URL, followed by the search term
+	 * @param cacheDir
+	 *            directory of the download cache
+	 * @param attempts
+	 *            attempts to complete a download
+	 * @param maxCacheBytes
+	 *            maximum size of the archives in the cache, which always
+	 *            keeps the last download
+	 */
+	public HttpTrialSource(String baseUrl, Path cacheDir, int attempts, long maxCacheBytes) {
+		this.baseUrl = baseUrl;
+		this.cacheDir = cacheDir;
+		this.attempts = Math.max(1, attempts);
+		this.maxCacheBytes = maxCacheBytes;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @return source configured by {@link #PROPERTY_URL},
+	 *         {@link #PROPERTY_CACHE_DIR}, {@link #PROPERTY_ATTEMPTS} and
+	 *         {@link #PROPERTY_CACHE_BYTES}, 1 GiB by default
+	 */
+	public static HttpTrialSource fromProperties() {
+		return new HttpTrialSource(System.getProperty(PROPERTY_URL, DEFAULT_URL),
+				Paths.get(System.getProperty(PROPERTY_CACHE_DIR, DEFAULT_CACHE_DIR.toString())),
+				Integer.getInteger(PROPERTY_ATTEMPTS, 3), Long.getLong(PROPERTY_CACHE_BYTES, 1L << 30));
+	}
+
+	@Override
+	public StudyArchive open(String searchTerm, Predicate<String> nctIdFilter) throws IOException {
+		return new StudyArchive(download(searchTerm), nctIdFilter);
+	}
+
+	/**
+	 * Downloads the trials matching a search term, unless the cache already
+	 * has the current version.
+	 *
+	 * @param searchTerm
+	 *            appended to the download URL as is, URL-encoded by the
+	 *            caller
+	 * @return archive in the download cache, shared by all search terms with
+	 *         the same results
+	 * @throws IOException
+	 *             if the last attempt to download fails
+	 */
+	public synchronized Path download(String searchTerm) throws IOException {
+		String url = baseUrl + searchTerm;
+		String key = toHex(sha256().digest(url.getBytes(StandardCharsets.UTF_8)));
+		Path metadataFile = cacheDir.resolve(key + METADATA_EXTENSION);
+		Path partial = cacheDir.resolve(key + PARTIAL_EXTENSION);
+		Files.createDirectories(cacheDir);
+		Properties metadata = new Properties();
+		if (Files.exists(metadataFile)) {
+			try (InputStream is = Files.newInputStream(metadataFile)) {
+				metadata.load(is);
+			}
+		}
+		metadata.setProperty(KEY_URL, url);
+
+		IOException failure = null;
+		for (int attempt = 1; attempt <= attempts; attempt++) {
+			try {
+				Path archive = fetch(url, metadata, metadataFile, partial);
+				Files.setLastModifiedTime(archive, FileTime.fromMillis(nextUse()));
+				evict(archive);
+				return archive;
+			} catch (IOException e) {
+				failure = e;
+				LOG.log(Level.WARNING, "Attempt " + attempt + " of " + attempts + " to download " + url + " failed",
+						e);
+			}
+		}
+		throw failure;
+	}
+
+	/**
+	 *
+	 * @return bytes received from the server, for all downloads
+	 */
+	public long getDownloadedBytes() {
+		return downloadedBytes.get();
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * Makes one request, resuming the partial download if there is one.
+	 */
+	private Path fetch(String url, Properties metadata, Path metadataFile, Path partial) throws IOException {
+		long start = System.nanoTime();
+		String cachedSha256 = metadata.getProperty(KEY_SHA256);
+		Path cached = cachedSha256 != null ? cacheDir.resolve(cachedSha256 + ARCHIVE_EXTENSION) : null;
+		if (cached != null && !Files.exists(cached)) {
+			cached = null;
+		}
+		long offset = Files.exists(partial) ? Files.size(partial) : 0;
+		String partialValidator = metadata.getProperty(KEY_PARTIAL_VALIDATOR);
+
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		try {
+			if (cached != null) {
+				setHeader(connection, "If-None-Match", metadata.getProperty(KEY_ETAG));
+				setHeader(connection, "If-Modified-Since", metadata.getProperty(KEY_LAST_MODIFIED));
+			}
+			if (offset > 0 && partialValidator != null) {
+				connection.setRequestProperty("Range", "bytes=" + offset + "-");
+				connection.setRequestProperty("If-Range", partialValidator);
+			}
+
+			int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+				LOG.info("Trials for " + url + " unchanged since the last download: " + cached);
+				return cached;
+			}
+			if (status == HttpURLConnection.HTTP_PARTIAL) {
+				String contentRange = connection.getHeaderField("Content-Range");
+				if (contentRange == null || !contentRange.startsWith("bytes " + offset + "-")) {
+					Files.deleteIfExists(partial);
+					throw new IOException("Unexpected range " + contentRange + " resuming " + url + " at " + offset);
+				}
+			} else if (status == HttpURLConnection.HTTP_OK) {
+				offset = 0;
+			} else if (status == HTTP_RANGE_NOT_SATISFIABLE && offset > 0) {
+				// The partial file may already hold the whole archive, if the
+				// download stopped before being moved to the cache.
+				String contentRange = connection.getHeaderField("Content-Range");
+				if (("bytes */" + offset).equals(contentRange)) {
+					return complete(url, metadata, metadataFile, partial, cached, connection, offset, start);
+				}
+				Files.deleteIfExists(partial);
+				throw new IOException("Range " + contentRange + " resuming " + url + " at " + offset);
+			} else {
+				throw new IOException("HTTP status " + status + " downloading " + url);
+			}
+
+			// Remembers how to resume the download before receiving it.
+			if (offset == 0) {
+				String etag = connection.getHeaderField("ETag");
+				String lastModified = connection.getHeaderField("Last-Modified");
+				setProperty(metadata, KEY_PARTIAL_VALIDATOR,
+						etag != null && !etag.startsWith("W/") ? etag : lastModified);
+				store(metadata, metadataFile);
+			}
+
+			long expected = connection.getContentLengthLong();
+			long received = 0;
+			try (InputStream in = connection.getInputStream();
+					FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+							offset == 0 ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND)) {
+				byte[] chunk = new byte[CHUNK_BYTES];
+				int length;
+				while ((length = readChunk(in, chunk)) > 0) {
+					out.write(ByteBuffer.wrap(chunk, 0, length));
+					received += length;
+					downloadedBytes.addAndGet(length);
+				}
+			}
+			if (expected >= 0 && received != expected) {
+				throw new IOException("Download of " + url + " ended after " + received + " of " + expected
+						+ " bytes");
+			}
+			return complete(url, metadata, metadataFile, partial, cached, connection, offset, start);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Moves a complete partial file to the cache and records the validators
+	 * of the response for the next request.
+	 *
+	 * @param cached
+	 *            previous download of the URL, deleted if no other URL
+	 *            refers to it
+	 * @param offset
+	 *            bytes already downloaded before the response
+	 * @return archive in the cache
+	 */
+	private Path complete(String url, Properties metadata, Path metadataFile, Path partial, Path cached,
+			HttpURLConnection connection, long offset, long start) throws IOException {
+		Path archive = store(partial);
+		metadata.remove(KEY_PARTIAL_VALIDATOR);
+		setProperty(metadata, KEY_SHA256, archive.getFileName().toString().replace(ARCHIVE_EXTENSION, ""));
+		setProperty(metadata, KEY_ETAG, connection.getHeaderField("ETag"));
+		setProperty(metadata, KEY_LAST_MODIFIED, connection.getHeaderField("Last-Modified"));
+		store(metadata, metadataFile);
+		if (cached != null && !cached.equals(archive) && !isReferenced(cached)) {
+			Files.deleteIfExists(cached);
+		}
+		LOG.info("Downloaded trials for " + url + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+				+ "ms, " + Files.size(archive) + " bytes, " + (offset > 0 ? "resumed at " + offset + " bytes: " : "")
+				+ archive);
+		return archive;
+	}
+
+	/**
+	 * Deletes the archives used least recently until the cache fits in its
+	 * maximum size, and makes the URLs they were downloaded from forget them.
+	 *
+	 * @param current
+	 *            archive just returned, never deleted
+	 */
+	private void evict(Path current) throws IOException {
+		List<Path> archives = new ArrayList<>();
+		long cacheBytes = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir, "*" + ARCHIVE_EXTENSION)) {
+			for (Path file : files) {
+				archives.add(file);
+				cacheBytes += Files.size(file);
+			}
+		}
+		if (cacheBytes <= maxCacheBytes) {
+			return;
+		}
+		Map<Path, FileTime> lastUsed = new HashMap<>();
+		for (Path archive : archives) {
+			lastUsed.put(archive, Files.getLastModifiedTime(archive));
+		}
+		archives.sort(Comparator.comparing(lastUsed::get));
+		for (Path archive : archives) {
+			if (cacheBytes <= maxCacheBytes) {
+				break;
+			}
+			if (archive.equals(current)) {
+				continue;
+			}
+			cacheBytes -= Files.size(archive);
+			forget(archive);
+			Files.delete(archive);
+			LOG.info("Evicted " + archive + " from the download cache");
+		}
+	}
+
+	/**
+	 * Removes an archive from the metadata of the URLs downloaded to it, so
+	 * that they are downloaded without a conditional request.
+	 *
+	 * @param archive
+	 */
+	private void forget(Path archive) throws IOException {
+		String sha256 = archive.getFileName().toString().replace(ARCHIVE_EXTENSION, "");
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir, "*" + METADATA_EXTENSION)) {
+			for (Path file : files) {
+				Properties metadata = new Properties();
+				try (InputStream is = Files.newInputStream(file)) {
+					metadata.load(is);
+				}
+				if (sha256.equals(metadata.getProperty(KEY_SHA256))) {
+					metadata.remove(KEY_SHA256);
+					metadata.remove(KEY_ETAG);
+					metadata.remove(KEY_LAST_MODIFIED);
+					store(metadata, file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Last use times increase with each download, even within the
+	 * resolution of the clock.
+	 *
+	 * @return time of the current use, in milliseconds
+	 */
+	private long nextUse() {
+		return lastUse.updateAndGet(previous -> Math.max(previous + 1, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Moves a complete download to the cache, under the hash of its
+	 * contents.
+	 *
+	 * @param partial
+	 * @return archive in the cache
+	 */
+	private Path store(Path partial) throws IOException {
+		MessageDigest digest = sha256();
+		try (InputStream in = Files.newInputStream(partial)) {
+			byte[] chunk = new byte[CHUNK_BYTES];
+			int length;
+			while ((length = in.read(chunk)) > 0) {
+				digest.update(chunk, 0, length);
+			}
+		}
+		Path archive = cacheDir.resolve(toHex(digest.digest()) + ARCHIVE_EXTENSION);
+		if (Files.exists(archive)) {
+			Files.delete(partial);
+		} else {
+			Files.move(partial, archive, StandardCopyOption.ATOMIC_MOVE);
+		}
+		return archive;
+	}
+
+	/**
+	 *
+	 * @param archive
+	 * @return <code>true</code> if the last download of some URL is the
+	 *         archive
+	 */
+	private boolean isReferenced(Path archive) throws IOException {
+		String sha256 = archive.getFileName().toString().replace(ARCHIVE_EXTENSION, "");
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir, "*" + METADATA_EXTENSION)) {
+			for (Path file : files) {
+				Properties metadata = new Properties();
+				try (InputStream is = Files.newInputStream(file)) {
+					metadata.load(is);
+				}
+				if (sha256.equals(metadata.getProperty(KEY_SHA256))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static void store(Properties metadata, Path file) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (OutputStream os = Files.newOutputStream(temp)) {
+			metadata.store(os, "Last download of " + metadata.getProperty(KEY_URL));
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Fills the chunk unless the stream ends first.
+	 *
+	 * @return number of bytes read
+	 */
+	private static int readChunk(InputStream in, byte[] chunk) throws IOException {
+		int length = 0;
+		int read;
+		while (length < chunk.length && (read = in.read(chunk, length, chunk.length - length)) > 0) {
+			length += read;
+		}
+		return length;
+	}
+
+	private static void setHeader(HttpURLConnection connection, String header, String value) {
+		if (value != null) {
+			connection.setRequestProperty(header, value);
+		}
+	}
+
+	private static void setProperty(Properties properties, String key, String value) {
+		if (value != null) {
+			properties.setProperty(key, value);
+		} else {
+			properties.remove(key);
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+}
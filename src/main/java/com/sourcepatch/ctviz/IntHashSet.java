@@ -0,0 +1,118 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.Arrays;
+
+/**
+ * Set of non-negative ints in an open-addressing table, without boxing.
+ *
+ * <p>
+ * Lookups can run concurrently once the set is no longer modified.
+ *
+ * @author Denilson Nastacio
+ */
+public class IntHashSet {
+
+	private static final int EMPTY = -1;
+
+	private int[] slots;
+	private int size;
+
+	/**
+	 *
+	 * @param expectedSize
+	 */
+	public IntHashSet(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+		this.slots = new int[capacity];
+		Arrays.fill(slots, EMPTY);
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param value
+	 *            non-negative value
+	 * @return <code>true</code> if the value was not in the set
+	 */
+	public boolean add(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative value: " + value);
+		}
+		if ((size + 1) * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		int mask = slots.length - 1;
+		int slot = mix(value) & mask;
+		while (slots[slot] != EMPTY) {
+			if (slots[slot] == value) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		slots[slot] = value;
+		size++;
+		return true;
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return <code>true</code> if the value is in the set
+	 */
+	public boolean contains(int value) {
+		int mask = slots.length - 1;
+		for (int slot = mix(value) & mask;; slot = (slot + 1) & mask) {
+			int slotValue = slots[slot];
+			if (slotValue == value) {
+				return true;
+			}
+			if (slotValue == EMPTY) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return number of values in the set
+	 */
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private void rehash(int capacity) {
+		int[] oldSlots = slots;
+		slots = new int[capacity];
+		Arrays.fill(slots, EMPTY);
+		int mask = capacity - 1;
+		for (int value : oldSlots) {
+			if (value != EMPTY) {
+				int slot = mix(value) & mask;
+				while (slots[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = value;
+			}
+		}
+	}
+
+	private static int mix(int value) {
+		int h = value * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,183 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Map of non-negative int keys to non-negative int values in an
+ * open-addressing table, without boxing.
+ *
+ * <p>
+ * The table can be saved to a snapshot and read back as views over a
+ * memory-mapped buffer. Lookups can run concurrently once the map is no
+ * longer modified.
+ *
+ * @author Denilson Nastacio
+ */
+public class IntIntHashMap {
+
+	/**
+	 * Value returned for keys not in the map.
+	 */
+	public static final int NO_VALUE = -1;
+
+	private static final int EMPTY = -1;
+
+	private IntBuffer keys;
+	private IntBuffer values;
+	private int size;
+
+	/**
+	 *
+	 * @param expectedSize
+	 */
+	public IntIntHashMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+		this.keys = emptyKeys(capacity);
+		this.values = IntBuffer.allocate(capacity);
+	}
+
+	private IntIntHashMap(IntBuffer keys, IntBuffer values, int size) {
+		this.keys = keys;
+		this.values = values;
+		this.size = size;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param key
+	 *            non-negative key
+	 * @param value
+	 *            non-negative value
+	 * @return previous value for the key, or {@link #NO_VALUE}
+	 */
+	public int put(int key, int value) {
+		if (key < 0 || value < 0) {
+			throw new IllegalArgumentException("Negative key or value: " + key + ", " + value);
+		}
+		if ((size + 1) * 2 > keys.limit()) {
+			rehash(keys.limit() * 2);
+		}
+		int mask = keys.limit() - 1;
+		int slot = mix(key) & mask;
+		while (keys.get(slot) != EMPTY) {
+			if (keys.get(slot) == key) {
+				int previous = values.get(slot);
+				values.put(slot, value);
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys.put(slot, key);
+		values.put(slot, value);
+		size++;
+		return NO_VALUE;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return value for the key, or {@link #NO_VALUE}
+	 */
+	public int get(int key) {
+		int mask = keys.limit() - 1;
+		for (int slot = mix(key) & mask;; slot = (slot + 1) & mask) {
+			int slotKey = keys.get(slot);
+			if (slotKey == key) {
+				return values.get(slot);
+			}
+			if (slotKey == EMPTY) {
+				return NO_VALUE;
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return number of keys in the map
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Writes the table at the current position of the channel.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(FileChannel out) throws IOException {
+		BinarySnapshot.putInts(out, IntBuffer.wrap(new int[] { size }), 1);
+		BinarySnapshot.putInts(out, keys, keys.limit());
+		BinarySnapshot.putInts(out, values, values.limit());
+	}
+
+	/**
+	 * Reads a table written by {@link #write(FileChannel)}, using the buffer
+	 * as storage instead of copying it.
+	 *
+	 * @param in
+	 *            buffer positioned at the table, left positioned after it
+	 * @return read-only map
+	 * @throws IOException
+	 */
+	public static IntIntHashMap read(ByteBuffer in) throws IOException {
+		IntBuffer size = BinarySnapshot.getInts(in);
+		IntBuffer keys = BinarySnapshot.getInts(in);
+		IntBuffer values = BinarySnapshot.getInts(in);
+		if (size.limit() != 1 || Integer.bitCount(keys.limit()) != 1 || values.limit() != keys.limit()
+				|| size.get(0) < 0 || size.get(0) >= keys.limit()) {
+			throw new IOException("Inconsistent int map");
+		}
+		return new IntIntHashMap(keys, values, size.get(0));
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private void rehash(int capacity) {
+		IntBuffer oldKeys = keys;
+		IntBuffer oldValues = values;
+		keys = emptyKeys(capacity);
+		values = IntBuffer.allocate(capacity);
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.limit(); i++) {
+			int key = oldKeys.get(i);
+			if (key != EMPTY) {
+				int slot = mix(key) & mask;
+				while (keys.get(slot) != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys.put(slot, key);
+				values.put(slot, oldValues.get(i));
+			}
+		}
+	}
+
+	private static IntBuffer emptyKeys(int capacity) {
+		int[] keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		return IntBuffer.wrap(keys);
+	}
+
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
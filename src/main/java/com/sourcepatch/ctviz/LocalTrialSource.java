@@ -0,0 +1,42 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Predicate;
+
+/**
+ * Trials of an archive downloaded from clinicaltrials.gov, or of a
+ * directory of study XML files, whatever the search term.
+ *
+ * @author Denilson Nastacio
+ */
+public class LocalTrialSource implements TrialSource {
+
+	private final Path archive;
+
+	/**
+	 *
+	 * @param archive
+	 *            ZIP archive or directory of study XML files
+	 */
+	public LocalTrialSource(Path archive) {
+		this.archive = archive;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	@Override
+	public StudyArchive open(String searchTerm, Predicate<String> nctIdFilter) throws IOException {
+		return new StudyArchive(archive, nctIdFilter);
+	}
+}
@@ -0,0 +1,194 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+/**
+ * Parser for the dates in clinicaltrials.gov records, written either as
+ * <code>MMMMM yyyy</code> ("May 2012") or <code>MMMMM dd, yyyy</code> ("May 3,
+ * 2012").
+ *
+ * <p>
+ * Dates are returned packed into a single int as <code>yyyymmdd</code>, with a
+ * day of zero when the date only has a month and year. Month names are matched
+ * without regard to case, in full or abbreviated to at least three letters,
+ * and text after the year is ignored, as with the <code>SimpleDateFormat</code>
+ * patterns previously used for these dates.
+ *
+ * <p>
+ * The parser keeps no state and does not allocate, so it can be called from
+ * any number of threads.
+ *
+ * @author Denilson Nastacio
+ */
+public final class NctDateParser {
+
+	/**
+	 * Returned for text that is not a date in either form.
+	 */
+	public static final int INVALID_DATE = -1;
+
+	private static final String[] MONTHS = { "january", "february", "march", "april", "may", "june", "july",
+			"august", "september", "october", "november", "december" };
+
+	private static final int MIN_MONTH_PREFIX = 3;
+
+	private static final int MAX_YEAR_DIGITS = 9;
+
+	private NctDateParser() {
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param text
+	 *            date from a clinical study record
+	 * @return date packed as <code>yyyymmdd</code> or {@link #INVALID_DATE}
+	 */
+	public static int parse(CharSequence text) {
+		if (text == null) {
+			return INVALID_DATE;
+		}
+		int length = text.length();
+		int i = skipSpaces(text, 0);
+
+		int monthStart = i;
+		while (i < length && Character.isLetter(text.charAt(i))) {
+			i++;
+		}
+		int month = getMonth(text, monthStart, i);
+		if (month == 0 || i == length || !Character.isWhitespace(text.charAt(i))) {
+			return INVALID_DATE;
+		}
+		i = skipSpaces(text, i);
+
+		int numberStart = i;
+		int number = 0;
+		while (i < length && i - numberStart < MAX_YEAR_DIGITS && isDigit(text.charAt(i))) {
+			number = number * 10 + text.charAt(i) - '0';
+			i++;
+		}
+		if (i == numberStart) {
+			return INVALID_DATE;
+		}
+		if (number > 31) {
+			return pack(number, month, 0);
+		}
+		if (i == length || text.charAt(i) != ',') {
+			// A year up to 31 is only accepted as the day of the long form.
+			return INVALID_DATE;
+		}
+
+		int day = number;
+		i = skipSpaces(text, i + 1);
+		int yearStart = i;
+		int year = 0;
+		while (i < length && i - yearStart < MAX_YEAR_DIGITS && isDigit(text.charAt(i))) {
+			year = year * 10 + text.charAt(i) - '0';
+			i++;
+		}
+		if (i == yearStart || day < 1 || day > 31) {
+			return INVALID_DATE;
+		}
+		return pack(year, month, day);
+	}
+
+	/**
+	 *
+	 * @param text
+	 *            date from a clinical study record
+	 * @return year of the date or {@link #INVALID_DATE}
+	 */
+	public static int parseYear(CharSequence text) {
+		int date = parse(text);
+		return date == INVALID_DATE ? INVALID_DATE : getYear(date);
+	}
+
+	/**
+	 *
+	 * @param date
+	 *            packed date
+	 * @return
+	 */
+	public static int getYear(int date) {
+		return date / 10000;
+	}
+
+	/**
+	 *
+	 * @param date
+	 *            packed date
+	 * @return month from 1 to 12
+	 */
+	public static int getMonth(int date) {
+		return date / 100 % 100;
+	}
+
+	/**
+	 *
+	 * @param date
+	 *            packed date
+	 * @return day of the month, or zero if the date has no day
+	 */
+	public static int getDay(int date) {
+		return date % 100;
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 *
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @return month from 1 to 12, or zero if the text is not a month name
+	 */
+	private static int getMonth(CharSequence text, int start, int end) {
+		int length = end - start;
+		if (length < MIN_MONTH_PREFIX) {
+			return 0;
+		}
+		for (int m = 0; m < MONTHS.length; m++) {
+			String name = MONTHS[m];
+			if (length > name.length()) {
+				continue;
+			}
+			int i = 0;
+			while (i < length && Character.toLowerCase(text.charAt(start + i)) == name.charAt(i)) {
+				i++;
+			}
+			if (i == length) {
+				return m + 1;
+			}
+		}
+		return 0;
+	}
+
+	private static int pack(int year, int month, int day) {
+		if (year > (Integer.MAX_VALUE - 1231) / 10000) {
+			return INVALID_DATE;
+		}
+		return year * 10000 + month * 100 + day;
+	}
+
+	private static int skipSpaces(CharSequence text, int i) {
+		while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isDigit(char ch) {
+		return ch >= '0' && ch <= '9';
+	}
+}
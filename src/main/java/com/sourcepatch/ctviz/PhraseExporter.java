@@ -0,0 +1,263 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Writes the phrase files used to train the NLP models, one file per node
+ * attribute, with one phrase per line.
+ *
+ * <p>
+ * The nodes of the graph are read once for all phrase files. Each file has
+ * its own writer thread, which writes large batches of phrases while the
+ * nodes are still being read. Phrases can be deduplicated and sorted, in
+ * which case each file is sorted and written by its own thread after all
+ * nodes are read.
+ *
+ * @author Denilson Nastacio
+ */
+public class PhraseExporter {
+
+	/**
+	 * Writes each phrase once, in sorted order, when <code>true</code>.
+	 */
+	public static final String PROPERTY_DEDUPLICATE = "ctviz.phrases.deduplicate";
+
+	/**
+	 * File with the names of conditions, as written in the trials.
+	 */
+	public static final String FILE_CONDITION_PHRASES = "ct.condition.phrases.txt";
+
+	/**
+	 * File with the names of interventions.
+	 */
+	public static final String FILE_INTERVENTION_PHRASES = "ct.intervention.phrases.txt";
+
+	private static final Logger LOG = Logger.getLogger(PhraseExporter.class.getName());
+
+	private static final String PHRASE_END = " .\n";
+
+	private static final int BATCH_CHARS = 1024 * 1024;
+
+	private final Map<String, Path> phraseFiles = new LinkedHashMap<>();
+
+	private final boolean deduplicate;
+
+	/**
+	 *
+	 * @param deduplicate
+	 *            writes each phrase once, in sorted order
+	 */
+	public PhraseExporter(boolean deduplicate) {
+		this.deduplicate = deduplicate;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 * Exports the condition and intervention phrases to a directory,
+	 * deduplicated according to {@link #PROPERTY_DEDUPLICATE}.
+	 *
+	 * @param dir
+	 *            directory of the phrase files
+	 * @return exporter
+	 */
+	public static PhraseExporter fromProperties(Path dir) {
+		return new PhraseExporter(Boolean.getBoolean(PROPERTY_DEDUPLICATE))
+				.addPhrases(GraphSchema.VERTEX_PROPERTY_CONDITION_RAW, dir.resolve(FILE_CONDITION_PHRASES))
+				.addPhrases(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME,
+						dir.resolve(FILE_INTERVENTION_PHRASES));
+	}
+
+	/**
+	 *
+	 * @param attribute
+	 *            node attribute holding the phrases
+	 * @param file
+	 *            file receiving the phrases
+	 * @return this exporter
+	 */
+	public PhraseExporter addPhrases(String attribute, Path file) {
+		phraseFiles.put(attribute, file);
+		return this;
+	}
+
+	/**
+	 *
+	 * @param graph
+	 * @return number of phrases written to each file
+	 * @throws IOException
+	 */
+	public <N, E> Map<Path, Integer> export(ExportableGraph<N, E> graph) throws IOException {
+		long start = System.nanoTime();
+		List<PhraseFile> files = new ArrayList<>();
+		try {
+			for (Map.Entry<String, Path> phraseFile : phraseFiles.entrySet()) {
+				files.add(new PhraseFile(phraseFile.getKey(), phraseFile.getValue(), deduplicate));
+			}
+			for (N node : graph.getNodes()) {
+				for (PhraseFile file : files) {
+					Object phrase = graph.getNodeAttribute(node, file.attribute);
+					if (phrase != null) {
+						file.add(phrase.toString());
+					}
+				}
+			}
+			for (PhraseFile file : files) {
+				file.finish();
+			}
+			Map<Path, Integer> result = new LinkedHashMap<>();
+			for (PhraseFile file : files) {
+				result.put(file.file, file.awaitWrites());
+			}
+			LOG.info("Exported phrases in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms: "
+					+ result);
+			return result;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while exporting phrases", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException("Unable to export phrases", cause);
+		} finally {
+			for (PhraseFile file : files) {
+				file.close();
+			}
+		}
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Phrases of one attribute, written by a thread of their own.
+	 */
+	private static class PhraseFile {
+		private final String attribute;
+		private final Path file;
+		private final Set<String> unique;
+		private final FileChannel channel;
+		private final ExecutorService writer = Executors.newSingleThreadExecutor();
+		private StringBuilder batch = new StringBuilder();
+		private Future<?> lastWrite;
+		private Future<Integer> finished;
+		private int count;
+
+		PhraseFile(String attribute, Path file, boolean deduplicate) throws IOException {
+			this.attribute = attribute;
+			this.file = file;
+			this.unique = deduplicate ? new HashSet<>() : null;
+			if (file.getParent() != null) {
+				Files.createDirectories(file.getParent());
+			}
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		void add(String phrase) throws InterruptedException, ExecutionException {
+			if (unique != null) {
+				unique.add(phrase);
+				return;
+			}
+			batch.append(phrase).append(PHRASE_END);
+			count++;
+			if (batch.length() >= BATCH_CHARS) {
+				submitBatch();
+			}
+		}
+
+		/**
+		 * Writes the remaining phrases, sorting them first if they are
+		 * deduplicated.
+		 */
+		void finish() throws InterruptedException, ExecutionException {
+			if (unique == null) {
+				submitBatch();
+				finished = writer.submit(() -> count);
+				return;
+			}
+			finished = writer.submit(() -> {
+				List<String> sorted = new ArrayList<>(unique);
+				unique.clear();
+				Collections.sort(sorted);
+				StringBuilder sb = new StringBuilder(BATCH_CHARS + 1024);
+				for (String phrase : sorted) {
+					sb.append(phrase).append(PHRASE_END);
+					if (sb.length() >= BATCH_CHARS) {
+						write(sb);
+						sb.setLength(0);
+					}
+				}
+				write(sb);
+				return sorted.size();
+			});
+		}
+
+		int awaitWrites() throws InterruptedException, ExecutionException {
+			if (lastWrite != null) {
+				lastWrite.get();
+			}
+			return finished.get();
+		}
+
+		void close() throws IOException {
+			writer.shutdownNow();
+			channel.close();
+		}
+
+		/**
+		 * Hands the batch to the writer thread once the previous batch is
+		 * written, so that at most two batches are in memory.
+		 */
+		private void submitBatch() throws InterruptedException, ExecutionException {
+			if (lastWrite != null) {
+				lastWrite.get();
+			}
+			CharSequence text = batch;
+			lastWrite = writer.submit(() -> {
+				write(text);
+				return null;
+			});
+			batch = new StringBuilder(BATCH_CHARS + 1024);
+		}
+
+		private void write(CharSequence text) throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+}
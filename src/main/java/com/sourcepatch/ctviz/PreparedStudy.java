@@ -0,0 +1,63 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.List;
+import java.util.Map;
+
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+
+/**
+ * Clinical study with the values that are expensive to compute but
+ * independent of the graph, so they can be computed away from the thread
+ * writing to the graph.
+ *
+ * @author Denilson Nastacio
+ */
+class PreparedStudy {
+
+	private final ClinicalStudy study;
+	private final Map<String, String> normalizedConditions;
+	private final Integer startYear;
+	private final List<String> locationKeys;
+
+	/**
+	 *
+	 * @param study
+	 * @param normalizedConditions
+	 *            normalized name for each condition of the study
+	 * @param startYear
+	 *            valid start year or <code>null</code>
+	 * @param locationKeys
+	 *            full address of each location of the study, in the same order
+	 */
+	PreparedStudy(ClinicalStudy study, Map<String, String> normalizedConditions, Integer startYear,
+			List<String> locationKeys) {
+		this.study = study;
+		this.normalizedConditions = normalizedConditions;
+		this.startYear = startYear;
+		this.locationKeys = locationKeys;
+	}
+
+	ClinicalStudy getStudy() {
+		return study;
+	}
+
+	Map<String, String> getNormalizedConditions() {
+		return normalizedConditions;
+	}
+
+	Integer getStartYear() {
+		return startYear;
+	}
+
+	List<String> getLocationKeys() {
+		return locationKeys;
+	}
+}
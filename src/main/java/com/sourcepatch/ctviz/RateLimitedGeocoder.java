@@ -0,0 +1,74 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.maps.model.LatLng;
+
+/**
+ * Geocoder that spaces out the requests sent to another geocoder, from any
+ * number of threads, to stay under a number of queries per second.
+ *
+ * @author Denilson Nastacio
+ */
+public class RateLimitedGeocoder implements Geocoder {
+
+	private final Geocoder delegate;
+	private final long intervalNanos;
+	private long nextPermitNanos;
+
+	/**
+	 *
+	 * @param delegate
+	 *            geocoder receiving the requests
+	 * @param queriesPerSecond
+	 *            maximum rate of requests to the delegate
+	 */
+	public RateLimitedGeocoder(Geocoder delegate, double queriesPerSecond) {
+		if (queriesPerSecond <= 0) {
+			throw new IllegalArgumentException("Rate must be positive: " + queriesPerSecond);
+		}
+		this.delegate = delegate;
+		this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / queriesPerSecond);
+		this.nextPermitNanos = System.nanoTime();
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	@Override
+	public LatLng geocode(String city, String state, String zip, String country) throws Exception {
+		acquire();
+		return delegate.geocode(city, state, zip, country);
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * Reserves the next free slot and waits for it.
+	 *
+	 * @throws InterruptedException
+	 */
+	private void acquire() throws InterruptedException {
+		long waitNanos;
+		synchronized (this) {
+			long now = System.nanoTime();
+			long permit = Math.max(now, nextPermitNanos);
+			nextPermitNanos = permit + intervalNanos;
+			waitNanos = permit - now;
+		}
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Selects the rows of UMLS RRF files, such as MRCONSO.RRF, by the CUI in
+ * their first field.
+ *
+ * <p>
+ * The file is memory-mapped in chunks that end at line boundaries and the
+ * chunks are scanned in parallel, as bytes. Only the first field of each row
+ * is parsed, into the numeric part of the CUI, which is looked up in an
+ * {@link IntHashSet}. Selected rows are written unchanged and in their
+ * original order.
+ *
+ * @author Denilson Nastacio
+ */
+public class RrfFilter {
+
+	/**
+	 * Default size of the chunks scanned by each thread.
+	 */
+	public static final int DEFAULT_CHUNK_BYTES = 64 * 1024 * 1024;
+
+	private static final int RRF_FIELD_STY = 3;
+
+	private final int threads;
+	private final int chunkBytes;
+
+	/**
+	 *
+	 * @param threads
+	 *            number of chunks scanned at the same time
+	 * @param chunkBytes
+	 *            approximate size of each chunk
+	 */
+	public RrfFilter(int threads, int chunkBytes) {
+		this.threads = Math.max(1, threads);
+		this.chunkBytes = Math.max(1, chunkBytes);
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param rrf
+	 *            RRF file with a CUI in the first field of each row
+	 * @param cuis
+	 *            numeric part of the CUIs to keep
+	 * @param out
+	 *            receives the selected rows, each ending with a newline
+	 * @return number of rows written
+	 * @throws IOException
+	 */
+	public long filterByCui(Path rrf, IntHashSet cuis, OutputStream out) throws IOException {
+		long rows = 0;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try (FileChannel channel = FileChannel.open(rrf, StandardOpenOption.READ)) {
+			List<long[]> chunks = split(channel);
+
+			// Chunks are written in order, with a bounded number of scanned
+			// chunks waiting for the ones before them.
+			Deque<Future<Chunk>> pending = new ArrayDeque<>();
+			int next = 0;
+			while (next < chunks.size() || !pending.isEmpty()) {
+				while (next < chunks.size() && pending.size() < threads * 2) {
+					long[] range = chunks.get(next++);
+					pending.add(pool.submit(() -> scan(channel, range[0], range[1], cuis)));
+				}
+				Chunk chunk = pending.remove().get();
+				chunk.selected.writeTo(out);
+				rows += chunk.rows;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while filtering " + rrf, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("Unable to filter " + rrf, cause);
+		} finally {
+			pool.shutdownNow();
+		}
+		return rows;
+	}
+
+	/**
+	 *
+	 * @param cuiFile
+	 *            one CUI per line, such as <code>cui.conditions.csv</code>
+	 * @return numeric part of the CUIs
+	 * @throws IOException
+	 */
+	public static IntHashSet readCuis(Path cuiFile) throws IOException {
+		List<String> lines = Files.readAllLines(cuiFile, StandardCharsets.UTF_8);
+		IntHashSet cuis = new IntHashSet(lines.size());
+		for (String line : lines) {
+			int cui = ConditionDictionary.parseCui(line.trim());
+			if (cui >= 0) {
+				cuis.add(cui);
+			}
+		}
+		return cuis;
+	}
+
+	/**
+	 *
+	 * @param mrsty
+	 *            UMLS MRSTY.RRF file
+	 * @param semanticTypes
+	 *            names of the semantic types to keep, such as "Disease or
+	 *            Syndrome"
+	 * @return sorted CUIs of the concepts with any of the semantic types
+	 * @throws IOException
+	 */
+	public static Set<String> readSemanticTypeCuis(Path mrsty, Collection<String> semanticTypes)
+			throws IOException {
+		Set<String> types = new HashSet<>(semanticTypes);
+		Set<String> cuis = new TreeSet<>();
+		try (BufferedReader br = Files.newBufferedReader(mrsty, StandardCharsets.UTF_8)) {
+			String line = null;
+			while ((line = br.readLine()) != null) {
+				int cuiEnd = line.indexOf('|');
+				int styStart = cuiEnd;
+				for (int i = 1; i < RRF_FIELD_STY && styStart != -1; i++) {
+					styStart = line.indexOf('|', styStart + 1);
+				}
+				if (styStart == -1) {
+					continue;
+				}
+				int styEnd = line.indexOf('|', styStart + 1);
+				String sty = line.substring(styStart + 1, styEnd == -1 ? line.length() : styEnd);
+				if (types.contains(sty)) {
+					cuis.add(line.substring(0, cuiEnd));
+				}
+			}
+		}
+		return cuis;
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * Splits the file in ranges of about {@link #chunkBytes} that end after a
+	 * newline.
+	 *
+	 * @param channel
+	 * @return start and end offsets of each chunk
+	 * @throws IOException
+	 */
+	private List<long[]> split(FileChannel channel) throws IOException {
+		long size = channel.size();
+		List<long[]> chunks = new ArrayList<>();
+		ByteBuffer probe = ByteBuffer.allocate(8192);
+		long start = 0;
+		while (start < size) {
+			long end = Math.min(size, start + chunkBytes);
+			while (end < size) {
+				probe.clear();
+				int read = channel.read(probe, end);
+				int newline = -1;
+				for (int i = 0; i < read && newline == -1; i++) {
+					if (probe.get(i) == '\n') {
+						newline = i;
+					}
+				}
+				if (newline != -1) {
+					end += newline + 1;
+					break;
+				}
+				end += Math.max(read, 0);
+			}
+			chunks.add(new long[] { start, Math.min(end, size) });
+			start = end;
+		}
+		return chunks;
+	}
+
+	/**
+	 *
+	 * @param channel
+	 * @param start
+	 *            offset of the first row
+	 * @param end
+	 *            offset after the last row
+	 * @param cuis
+	 * @return rows of the chunk with one of the CUIs
+	 * @throws IOException
+	 */
+	private static Chunk scan(FileChannel channel, long start, long end, IntHashSet cuis) throws IOException {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		Chunk chunk = new Chunk();
+		byte[] row = new byte[4096];
+		int limit = buffer.limit();
+		int lineStart = 0;
+		while (lineStart < limit) {
+			int cui = -1;
+			int pos = lineStart;
+			if (buffer.get(pos) == 'C') {
+				cui = 0;
+				for (pos++; pos < limit; pos++) {
+					int digit = buffer.get(pos) - '0';
+					if (digit < 0 || digit > 9) {
+						break;
+					}
+					cui = cui * 10 + digit;
+				}
+				int digits = pos - lineStart - 1;
+				if (digits == 0 || digits > 9 || (pos < limit && buffer.get(pos) != '|' && buffer.get(pos) != '\n')) {
+					cui = -1;
+				}
+			}
+			int lineEnd = pos;
+			while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+
+			if (cui >= 0 && cuis.contains(cui)) {
+				int length = lineEnd - lineStart;
+				if (length > row.length) {
+					row = new byte[Math.max(length, row.length * 2)];
+				}
+				buffer.position(lineStart);
+				buffer.get(row, 0, length);
+				chunk.selected.write(row, 0, length);
+				chunk.selected.write('\n');
+				chunk.rows++;
+			}
+			lineStart = lineEnd + 1;
+		}
+		return chunk;
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Selected rows of a chunk.
+	 */
+	private static class Chunk {
+		private final ByteArrayOutputStream selected = new ByteArrayOutputStream();
+		private long rows;
+	}
+}
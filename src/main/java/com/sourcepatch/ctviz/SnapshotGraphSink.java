@@ -0,0 +1,149 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.Collection;
+import java.util.stream.IntStream;
+
+/**
+ * Graph snapshot receiving the vertices and edges of the clinical trials,
+ * which builds a graph without a graph library.
+ *
+ * <p>
+ * Vertices and edges are rows of a {@link GraphSnapshot.Builder}, appended
+ * as they are created. Snapshots are append-only, so the sink builds new
+ * graphs but cannot replace the trials of an existing one: adjacency and
+ * removal throw {@link UnsupportedOperationException}.
+ *
+ * @author Denilson Nastacio
+ */
+public class SnapshotGraphSink implements GraphSink<Integer, Integer> {
+
+	private final GraphSnapshot.Builder builder;
+
+	/**
+	 *
+	 * @param builder
+	 */
+	public SnapshotGraphSink(GraphSnapshot.Builder builder) {
+		this.builder = builder;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @return builder receiving the vertices and edges
+	 */
+	public GraphSnapshot.Builder getBuilder() {
+		return builder;
+	}
+
+	@Override
+	public Integer newVertex(String label) {
+		return builder.addVertex(Integer.toString(builder.getVertexCount()), label);
+	}
+
+	@Override
+	public void addVertex(Integer vertex) {
+		// Already in the snapshot.
+	}
+
+	@Override
+	public Integer newEdge(Integer source, Integer target, String label) {
+		return builder.addEdge("e" + builder.getEdgeCount(), source, target, label, 1.0);
+	}
+
+	@Override
+	public void addEdge(Integer edge) {
+		// Already in the snapshot.
+	}
+
+	@Override
+	public String getVertexLabel(Integer vertex) {
+		return builder.getVertexLabel(vertex);
+	}
+
+	@Override
+	public Object getVertexProperty(Integer vertex, String property) {
+		return builder.getVertexProperty(vertex, property);
+	}
+
+	@Override
+	public void setVertexProperty(Integer vertex, String property, Object value) {
+		builder.setVertexProperty(vertex, property, value);
+	}
+
+	@Override
+	public void removeVertexProperty(Integer vertex, String property) {
+		throw new UnsupportedOperationException("Graph snapshots are append-only");
+	}
+
+	@Override
+	public String getEdgeLabel(Integer edge) {
+		return builder.getEdgeLabel(edge);
+	}
+
+	@Override
+	public Integer getEdgeSource(Integer edge) {
+		return builder.getEdgeSource(edge);
+	}
+
+	@Override
+	public Integer getEdgeTarget(Integer edge) {
+		return builder.getEdgeTarget(edge);
+	}
+
+	@Override
+	public Object getEdgeProperty(Integer edge, String property) {
+		return builder.getEdgeProperty(edge, property);
+	}
+
+	@Override
+	public void setEdgeProperty(Integer edge, String property, Object value) {
+		builder.setEdgeProperty(edge, property, value);
+	}
+
+	@Override
+	public void setEdgeWeight(Integer edge, double weight) {
+		builder.setEdgeWeight(edge, weight);
+	}
+
+	@Override
+	public Iterable<Integer> getVertices() {
+		return () -> IntStream.range(0, builder.getVertexCount()).iterator();
+	}
+
+	@Override
+	public Iterable<Integer> getEdges() {
+		return () -> IntStream.range(0, builder.getEdgeCount()).iterator();
+	}
+
+	@Override
+	public Collection<Integer> getEdges(Integer vertex) {
+		throw new UnsupportedOperationException("Graph snapshots are append-only");
+	}
+
+	@Override
+	public boolean hasEdges(Integer vertex) {
+		throw new UnsupportedOperationException("Graph snapshots are append-only");
+	}
+
+	@Override
+	public void removeVertex(Integer vertex) {
+		throw new UnsupportedOperationException("Graph snapshots are append-only");
+	}
+
+	@Override
+	public void removeEdge(Integer edge) {
+		throw new UnsupportedOperationException("Graph snapshots are append-only");
+	}
+}
@@ -0,0 +1,94 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of strings stored in a snapshot as one block of characters
+ * and the offset where each string starts.
+ *
+ * <p>
+ * Strings are created when requested, so a table read from a memory-mapped
+ * file takes no heap until it is used.
+ *
+ * @author Denilson Nastacio
+ */
+final class StringTable extends AbstractList<String> implements RandomAccess {
+
+	private final IntBuffer offsets;
+	private final CharBuffer chars;
+
+	private StringTable(IntBuffer offsets, CharBuffer chars) {
+		this.offsets = offsets;
+		this.chars = chars;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param out
+	 * @param strings
+	 * @throws IOException
+	 */
+	static void write(FileChannel out, List<String> strings) throws IOException {
+		int[] offsets = new int[strings.size() + 1];
+		int i = 0;
+		for (String s : strings) {
+			offsets[i + 1] = offsets[i] + s.length();
+			i++;
+		}
+		BinarySnapshot.putInts(out, IntBuffer.wrap(offsets), offsets.length);
+		BinarySnapshot.putChars(out, strings, offsets[offsets.length - 1]);
+	}
+
+	/**
+	 *
+	 * @param in
+	 *            buffer positioned at a table, left positioned after it
+	 * @return table backed by the buffer
+	 * @throws IOException
+	 */
+	static StringTable read(ByteBuffer in) throws IOException {
+		IntBuffer offsets = BinarySnapshot.getInts(in);
+		CharBuffer chars = BinarySnapshot.getChars(in);
+		if (offsets.limit() == 0 || offsets.get(offsets.limit() - 1) != chars.limit()) {
+			throw new IOException("Inconsistent string table");
+		}
+		return new StringTable(offsets, chars);
+	}
+
+	@Override
+	public String get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		int start = offsets.get(index);
+		char[] value = new char[offsets.get(index + 1) - start];
+		for (int i = 0; i < value.length; i++) {
+			value[i] = chars.get(start + i);
+		}
+		return new String(value);
+	}
+
+	@Override
+	public int size() {
+		return offsets.limit() - 1;
+	}
+}
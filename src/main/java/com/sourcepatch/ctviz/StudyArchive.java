@@ -0,0 +1,263 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+
+/**
+ * Random access to the clinical studies in a clinicaltrials.gov archive saved
+ * on disk, or in a directory of study XML files.
+ *
+ * <p>
+ * The archive central directory is read once when the archive is opened.
+ * Entries are then addressed by index, so different threads can open and
+ * inflate different studies at the same time, and a subset of the studies can
+ * be selected by NCT id without inflating the others. Directories are listed
+ * once, in file name order, and each study is a <code>.xml</code> file in the
+ * directory or its subdirectories.
+ *
+ * <p>
+ * Setting the <code>ctviz.ingest.tempfiles</code> system property to
+ * <code>true</code> copies each archive entry to a temporary file before it
+ * is read, as ingestion did before studies were read from the archive in
+ * place.
+ *
+ * @author Denilson Nastacio
+ */
+public class StudyArchive implements Closeable {
+
+	/**
+	 * Copy each archive entry to a temporary file before reading it.
+	 */
+	public static final String PROPERTY_TEMP_FILES = "ctviz.ingest.tempfiles";
+
+	private static final String XML_EXTENSION = ".xml";
+
+	private final ZipFile zf;
+	private final List<Entry> entries = new ArrayList<>();
+	private final boolean useTempFiles;
+
+	/**
+	 *
+	 * @param archive
+	 *            path to the archive, or directory of study XML files
+	 * @throws IOException
+	 */
+	public StudyArchive(Path archive) throws IOException {
+		this(archive, nctId -> true);
+	}
+
+	/**
+	 *
+	 * @param archive
+	 *            path to the archive, or directory of study XML files
+	 * @param nctIdFilter
+	 *            selects the studies to expose, by NCT id
+	 * @throws IOException
+	 */
+	public StudyArchive(Path archive, Predicate<String> nctIdFilter) throws IOException {
+		this(archive, nctIdFilter, Boolean.getBoolean(PROPERTY_TEMP_FILES));
+	}
+
+	/**
+	 *
+	 * @param archive
+	 *            path to the archive, or directory of study XML files
+	 * @param nctIdFilter
+	 *            selects the studies to expose, by NCT id
+	 * @param useTempFiles
+	 *            whether to copy each archive entry to a temporary file
+	 *            before reading it
+	 * @throws IOException
+	 */
+	public StudyArchive(Path archive, Predicate<String> nctIdFilter, boolean useTempFiles) throws IOException {
+		this.useTempFiles = useTempFiles;
+		if (Files.isDirectory(archive)) {
+			this.zf = null;
+			List<Path> files;
+			try (Stream<Path> walk = Files.walk(archive)) {
+				files = walk.filter(file -> file.getFileName().toString().endsWith(XML_EXTENSION))
+						.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+			}
+			for (Path file : files) {
+				Entry entry = new Entry(file.getFileName().toString(), Files.size(file), null, file);
+				if (nctIdFilter.test(entry.getNctId())) {
+					entries.add(entry);
+				}
+			}
+		} else {
+			this.zf = new ZipFile(archive.toFile());
+			Enumeration<? extends ZipEntry> zipEntries = zf.entries();
+			while (zipEntries.hasMoreElements()) {
+				ZipEntry zipEntry = zipEntries.nextElement();
+				Entry entry = new Entry(zipEntry.getName(), zipEntry.getSize(), zipEntry, null);
+				if (!zipEntry.isDirectory() && nctIdFilter.test(entry.getNctId())) {
+					entries.add(entry);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @return number of studies selected in the archive
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return NCT id of the study, taken from the entry name
+	 */
+	public String getNctId(int index) {
+		return entries.get(index).getNctId();
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return uncompressed size of the study XML, or -1 if unknown
+	 */
+	public long getSize(int index) {
+		return entries.get(index).size;
+	}
+
+	/**
+	 * Safe to call from multiple threads.
+	 *
+	 * @param index
+	 * @return XML contents of the study
+	 * @throws IOException
+	 */
+	public InputStream openEntry(int index) throws IOException {
+		Entry entry = entries.get(index);
+		if (entry.zipEntry == null) {
+			return Files.newInputStream(entry.file);
+		}
+		InputStream is = zf.getInputStream(entry.zipEntry);
+		return useTempFiles ? copyToTempFile(is) : is;
+	}
+
+	/**
+	 * Safe to call from multiple threads.
+	 *
+	 * @param index
+	 * @return the study at the index, read with
+	 *         {@link StudyUnmarshallers#unmarshal(InputStream)}
+	 * @throws IOException
+	 * @throws JAXBException
+	 */
+	public ClinicalStudy unmarshal(int index) throws IOException, JAXBException {
+		try (InputStream is = openEntry(index)) {
+			return StudyUnmarshallers.unmarshal(is);
+		}
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @param u
+	 *            unmarshaller owned by the calling thread
+	 * @return the study at the index
+	 * @throws IOException
+	 * @throws JAXBException
+	 */
+	public ClinicalStudy unmarshal(int index, Unmarshaller u) throws IOException, JAXBException {
+		try (InputStream is = openEntry(index)) {
+			return (ClinicalStudy) u.unmarshal(is);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (zf != null) {
+			zf.close();
+		}
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 *
+	 * @param is
+	 *            contents of an archive entry, closed before returning
+	 * @return contents of a temporary file, deleted when the stream is closed
+	 * @throws IOException
+	 */
+	private static InputStream copyToTempFile(InputStream is) throws IOException {
+		Path tf = Files.createTempFile(GraphSchema.EDGE_PROPERTY_NCT_ID, XML_EXTENSION);
+		try {
+			try (InputStream entry = is) {
+				Files.copy(entry, tf, StandardCopyOption.REPLACE_EXISTING);
+			}
+			return Files.newInputStream(tf, StandardOpenOption.DELETE_ON_CLOSE);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tf);
+			throw e;
+		}
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Study in a ZIP entry or in a file.
+	 */
+	private static class Entry {
+		private final String name;
+		private final long size;
+		private final ZipEntry zipEntry;
+		private final Path file;
+
+		Entry(String name, long size, ZipEntry zipEntry, Path file) {
+			this.name = name;
+			this.size = size;
+			this.zipEntry = zipEntry;
+			this.file = file;
+		}
+
+		/**
+		 *
+		 * @return entry file name without directories and extension
+		 */
+		String getNctId() {
+			int start = name.lastIndexOf('/') + 1;
+			int end = name.lastIndexOf('.');
+			return end > start ? name.substring(start, end) : name.substring(start);
+		}
+	}
+}
@@ -0,0 +1,496 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+
+import com.sourcepatch.ctviz.ctgov.ActualAnticipatedEnum;
+import com.sourcepatch.ctviz.ctgov.AddressStruct;
+import com.sourcepatch.ctviz.ctgov.AgencyClassEnum;
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+import com.sourcepatch.ctviz.ctgov.CountriesStruct;
+import com.sourcepatch.ctviz.ctgov.EligibilityStruct;
+import com.sourcepatch.ctviz.ctgov.EnrollmentStruct;
+import com.sourcepatch.ctviz.ctgov.FacilityStruct;
+import com.sourcepatch.ctviz.ctgov.GenderEnum;
+import com.sourcepatch.ctviz.ctgov.IdInfoStruct;
+import com.sourcepatch.ctviz.ctgov.InterventionStruct;
+import com.sourcepatch.ctviz.ctgov.InterventionTypeEnum;
+import com.sourcepatch.ctviz.ctgov.LocationStruct;
+import com.sourcepatch.ctviz.ctgov.PhaseEnum;
+import com.sourcepatch.ctviz.ctgov.RequiredHeaderStruct;
+import com.sourcepatch.ctviz.ctgov.SponsorStruct;
+import com.sourcepatch.ctviz.ctgov.SponsorsStruct;
+import com.sourcepatch.ctviz.ctgov.StudyTypeEnum;
+import com.sourcepatch.ctviz.ctgov.VariableDateStruct;
+
+/**
+ * Seeded generator of clinical studies resembling the clinicaltrials.gov
+ * registry, for scale tests and benchmarks that cannot download hundreds of
+ * thousands of trials.
+ *
+ * <p>
+ * Sponsors, conditions, interventions and trial sites are drawn from Zipf
+ * distributions, so that a few of them appear in many trials and most in a
+ * handful, as in the registry. Most trials have a single site and no
+ * collaborators, while a long tail has hundreds of sites. The generated
+ * studies have the elements required by <code>ctgov-public.xsd</code>.
+ *
+ * <p>
+ * Each study depends only on the seed and its index, so the same study can
+ * be generated again in any order and from multiple threads.
+ *
+ * @author Denilson Nastacio
+ */
+public class StudyGenerator implements IntFunction<ClinicalStudy> {
+
+	/**
+	 * Seed of the generated studies.
+	 */
+	public static final String PROPERTY_SEED = "ctviz.synthetic.seed";
+
+	/**
+	 * Number of generated trials. When set, the graph is built from
+	 * generated trials instead of downloaded ones.
+	 */
+	public static final String PROPERTY_TRIALS = "ctviz.synthetic.trials";
+
+	private static final String[] SYLLABLES = { "ka", "lo", "ve", "ra", "mi", "to", "sen", "dor", "bel", "na",
+			"tri", "os", "mar", "quin", "zu", "fen", "lia", "gro", "pe", "hal", "cor", "dan", "vi", "mu" };
+
+	private static final String[] MONTHS = { "January", "February", "March", "April", "May", "June", "July",
+			"August", "September", "October", "November", "December" };
+
+	private static final String[] STATUSES = { "Completed", "Recruiting", "Active, not recruiting",
+			"Unknown status", "Terminated", "Not yet recruiting", "Withdrawn", "Enrolling by invitation",
+			"Suspended" };
+	private static final double[] STATUS_WEIGHTS = { 45, 20, 8, 12, 6, 4, 3, 1, 1 };
+
+	private static final StudyTypeEnum[] STUDY_TYPES = { StudyTypeEnum.INTERVENTIONAL,
+			StudyTypeEnum.OBSERVATIONAL, StudyTypeEnum.OBSERVATIONAL_PATIENT_REGISTRY,
+			StudyTypeEnum.EXPANDED_ACCESS };
+	private static final double[] STUDY_TYPE_WEIGHTS = { 77, 20, 2, 1 };
+
+	private static final PhaseEnum[] PHASES = { PhaseEnum.N_A, PhaseEnum.EARLY_PHASE_1, PhaseEnum.PHASE_1,
+			PhaseEnum.PHASE_1_PHASE_2, PhaseEnum.PHASE_2, PhaseEnum.PHASE_2_PHASE_3, PhaseEnum.PHASE_3,
+			PhaseEnum.PHASE_4 };
+	private static final double[] PHASE_WEIGHTS = { 35, 2, 15, 5, 20, 2, 12, 9 };
+
+	private static final InterventionTypeEnum[] INTERVENTION_TYPES = { InterventionTypeEnum.DRUG,
+			InterventionTypeEnum.DEVICE, InterventionTypeEnum.BEHAVIORAL, InterventionTypeEnum.PROCEDURE,
+			InterventionTypeEnum.BIOLOGICAL, InterventionTypeEnum.OTHER, InterventionTypeEnum.DIETARY_SUPPLEMENT,
+			InterventionTypeEnum.RADIATION, InterventionTypeEnum.GENETIC, InterventionTypeEnum.DIAGNOSTIC_TEST,
+			InterventionTypeEnum.COMBINATION_PRODUCT };
+	private static final double[] INTERVENTION_TYPE_WEIGHTS = { 45, 12, 10, 8, 6, 10, 4, 2, 1, 1, 1 };
+
+	private static final AgencyClassEnum[] AGENCY_CLASSES = { AgencyClassEnum.OTHER, AgencyClassEnum.INDUSTRY,
+			AgencyClassEnum.NIH, AgencyClassEnum.U_S_FED };
+	private static final double[] AGENCY_CLASS_WEIGHTS = { 55, 35, 5, 5 };
+
+	private static final String[] COUNTRIES = { "United States", "France", "China", "Canada", "Germany",
+			"United Kingdom", "Italy", "Spain", "Japan", "Korea, Republic of", "Brazil", "Australia" };
+	private static final double[] COUNTRY_WEIGHTS = { 50, 7, 7, 6, 5, 5, 4, 4, 3, 3, 3, 3 };
+
+	private static final String[] STATES = { "California", "Texas", "New York", "Florida", "Pennsylvania",
+			"Ohio", "Illinois", "Massachusetts", "North Carolina", "Michigan", "Georgia", "Washington" };
+
+	private static final String[] CONDITION_SUFFIXES = { "itis", "osis", " Syndrome", " Disease", " Carcinoma",
+			" Disorder", " Deficiency", " Infection" };
+	private static final String[] DRUG_SUFFIXES = { "mab", "nib", "vir", "statin", "pril", "olol", "cillin",
+			"azole" };
+	private static final String[] FACILITY_KINDS = { "General Hospital", "University Medical Center",
+			"Research Site", "Cancer Institute", "Children's Hospital", "Clinic" };
+
+	private static final int MAX_CONDITIONS = 10;
+	private static final int MAX_INTERVENTIONS = 8;
+	private static final int MAX_COLLABORATORS = 10;
+	private static final int MAX_SITES = 500;
+	private static final int LAST_YEAR = 2026;
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private final long seed;
+	private final int[] syllableOffsets = new int[8];
+
+	private final Zipf sponsors;
+	private final Zipf conditions;
+	private final Zipf interventions;
+	private final Zipf sites;
+	private final Zipf cities;
+
+	/**
+	 *
+	 * @param seed
+	 *            the same seed generates the same studies
+	 * @param trials
+	 *            expected number of trials, which sizes the number of
+	 *            distinct sponsors, conditions, interventions and sites in
+	 *            the same proportions as the registry
+	 */
+	public StudyGenerator(long seed, int trials) {
+		this.seed = seed;
+		Random random = new Random(seed);
+		for (int i = 0; i < syllableOffsets.length; i++) {
+			syllableOffsets[i] = random.nextInt(SYLLABLES.length);
+		}
+		sponsors = new Zipf(Math.max(10, trials / 8), 1.1);
+		conditions = new Zipf(Math.max(20, trials / 3), 1.0);
+		interventions = new Zipf(Math.max(20, trials / 2), 0.9);
+		sites = new Zipf(Math.max(20, trials / 4), 0.9);
+		cities = new Zipf(Math.max(10, trials / 10), 1.0);
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @return generator configured by {@link #PROPERTY_SEED} and
+	 *         {@link #PROPERTY_TRIALS}
+	 */
+	public static StudyGenerator fromProperties() {
+		return new StudyGenerator(Long.getLong(PROPERTY_SEED, 1), Integer.getInteger(PROPERTY_TRIALS, 10000));
+	}
+
+	/**
+	 * Safe to call from multiple threads.
+	 *
+	 * @param index
+	 *            index of the study, also its NCT id
+	 */
+	@Override
+	public ClinicalStudy apply(int index) {
+		Random random = new Random(mix64(seed ^ mix64(index + GOLDEN_GAMMA)));
+		ClinicalStudy study = new ClinicalStudy();
+		String nctId = String.format("NCT%08d", index);
+
+		RequiredHeaderStruct header = new RequiredHeaderStruct();
+		header.setDownloadDate("ClinicalTrials.gov processed this data on January 1, " + LAST_YEAR);
+		header.setLinkText("Link to the current ClinicalTrials.gov record.");
+		header.setUrl("https://clinicaltrials.gov/show/" + nctId);
+		study.setRequiredHeader(header);
+
+		IdInfoStruct idInfo = new IdInfoStruct();
+		idInfo.setOrgStudyId(word(random.nextInt(1 << 16)).toUpperCase() + "-" + random.nextInt(1000));
+		idInfo.setNctId(nctId);
+		study.setIdInfo(idInfo);
+
+		SponsorStruct lead = newSponsor(sponsors.sample(random));
+		SponsorsStruct studySponsors = new SponsorsStruct();
+		studySponsors.setLeadSponsor(lead);
+		Set<String> agencies = new HashSet<>();
+		agencies.add(lead.getAgency());
+		int collaboratorCount = random.nextInt(10) < 7 ? 0 : geometric(random, 0.5, MAX_COLLABORATORS);
+		for (int i = 0; i < collaboratorCount; i++) {
+			SponsorStruct collaborator = newSponsor(sponsors.sample(random));
+			if (agencies.add(collaborator.getAgency())) {
+				studySponsors.getCollaborator().add(collaborator);
+			}
+		}
+		study.setSponsors(studySponsors);
+		study.setSource(lead.getAgency());
+
+		int conditionCount = geometric(random, 0.45, MAX_CONDITIONS);
+		Set<Integer> conditionRanks = new TreeSet<>();
+		while (conditionRanks.size() < conditionCount) {
+			conditionRanks.add(conditions.sample(random));
+		}
+		for (int rank : conditionRanks) {
+			String condition = getCondition(rank);
+			// The registry spells the same condition in different ways.
+			study.getCondition().add(random.nextInt(20) == 0 ? condition.toLowerCase() : condition);
+		}
+		study.setBriefTitle("Study of " + String.join(" and ", study.getCondition()));
+
+		StudyTypeEnum studyType = STUDY_TYPES[pick(random, STUDY_TYPE_WEIGHTS)];
+		study.setStudyType(studyType);
+		boolean interventional = studyType == StudyTypeEnum.INTERVENTIONAL;
+		study.setPhase(interventional ? PHASES[pick(random, PHASE_WEIGHTS)] : PhaseEnum.N_A);
+		if (interventional) {
+			int interventionCount = geometric(random, 0.5, MAX_INTERVENTIONS);
+			Set<Integer> interventionRanks = new TreeSet<>();
+			while (interventionRanks.size() < interventionCount) {
+				interventionRanks.add(interventions.sample(random));
+			}
+			for (int rank : interventionRanks) {
+				study.getIntervention().add(newIntervention(rank));
+			}
+		}
+
+		String status = STATUSES[pick(random, STATUS_WEIGHTS)];
+		study.setOverallStatus(status);
+		int startYear = Math.max(1999, LAST_YEAR - (int) Math.abs(random.nextGaussian() * 7));
+		VariableDateStruct startDate = new VariableDateStruct();
+		startDate.setValue(random.nextInt(10) < 7 ? MONTHS[random.nextInt(12)] + " " + startYear
+				: newDate(random, startYear));
+		startDate.setType("Not yet recruiting".equals(status) ? ActualAnticipatedEnum.ANTICIPATED
+				: ActualAnticipatedEnum.ACTUAL);
+		study.setStartDate(startDate);
+
+		EnrollmentStruct enrollment = new EnrollmentStruct();
+		// Log-normal, with a median of about 70 participants.
+		long participants = Math.round(Math.exp(4.2 + random.nextGaussian() * 1.3));
+		enrollment.setValue(BigInteger.valueOf(Math.min(1000000, participants)));
+		enrollment.setType("Completed".equals(status) ? ActualAnticipatedEnum.ACTUAL
+				: ActualAnticipatedEnum.ANTICIPATED);
+		study.setEnrollment(enrollment);
+
+		EligibilityStruct eligibility = new EligibilityStruct();
+		int gender = random.nextInt(100);
+		eligibility.setGender(gender < 85 ? GenderEnum.ALL : gender < 95 ? GenderEnum.FEMALE : GenderEnum.MALE);
+		eligibility.setMinimumAge(random.nextInt(10) < 8 ? "18 Years" : (1 + random.nextInt(17)) + " Years");
+		eligibility.setMaximumAge(random.nextBoolean() ? "N/A" : (50 + random.nextInt(50)) + " Years");
+		study.setEligibility(eligibility);
+
+		int siteCount = random.nextInt(10) == 0 ? 0
+				: (int) Math.min(MAX_SITES, Math.pow(1 - random.nextDouble(), -1 / 1.3));
+		Set<Integer> siteRanks = new TreeSet<>();
+		for (int attempt = 0; siteRanks.size() < siteCount && attempt < siteCount * 4; attempt++) {
+			siteRanks.add(sites.sample(random));
+		}
+		Set<String> countries = new TreeSet<>();
+		for (int rank : siteRanks) {
+			LocationStruct location = newLocation(rank);
+			study.getLocation().add(location);
+			countries.add(location.getFacility().getAddress().getCountry());
+		}
+		if (!countries.isEmpty()) {
+			CountriesStruct locationCountries = new CountriesStruct();
+			locationCountries.getCountry().addAll(countries);
+			study.setLocationCountries(locationCountries);
+		}
+
+		int lastChangedYear = startYear + random.nextInt(LAST_YEAR - startYear + 1);
+		study.setLastchangedDate(newDate(random, lastChangedYear));
+		study.setFirstreceivedDate(newDate(random, Math.max(1999, startYear - random.nextInt(2))));
+
+		return study;
+	}
+
+	/**
+	 *
+	 * @param rank
+	 *            popularity of the sponsor, zero for the most frequent
+	 * @return name of the sponsor
+	 */
+	public String getSponsor(int rank) {
+		String name = word(rank);
+		switch (getAgencyClass(rank)) {
+		case INDUSTRY:
+			return name + (rank % 2 == 0 ? " Pharmaceuticals" : " Therapeutics");
+		case NIH:
+			return "National Institute of " + name;
+		case U_S_FED:
+			return name + " VA Medical Center";
+		default:
+			return "University of " + name;
+		}
+	}
+
+	/**
+	 *
+	 * @param rank
+	 *            popularity of the condition, zero for the most frequent
+	 * @return name of the condition
+	 */
+	public String getCondition(int rank) {
+		return word(rank) + CONDITION_SUFFIXES[(int) ((hash(1, rank) >>> 40) % CONDITION_SUFFIXES.length)];
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private SponsorStruct newSponsor(int rank) {
+		SponsorStruct sponsor = new SponsorStruct();
+		sponsor.setAgency(getSponsor(rank));
+		sponsor.setAgencyClass(getAgencyClass(rank));
+		return sponsor;
+	}
+
+	private AgencyClassEnum getAgencyClass(int rank) {
+		return AGENCY_CLASSES[pick(hash(0, rank), AGENCY_CLASS_WEIGHTS)];
+	}
+
+	/**
+	 * The same intervention always has the same type.
+	 */
+	private InterventionStruct newIntervention(int rank) {
+		InterventionStruct intervention = new InterventionStruct();
+		if (rank == 0) {
+			intervention.setInterventionType(InterventionTypeEnum.DRUG);
+			intervention.setInterventionName("Placebo");
+			return intervention;
+		}
+		long h = hash(2, rank);
+		InterventionTypeEnum type = INTERVENTION_TYPES[pick(h, INTERVENTION_TYPE_WEIGHTS)];
+		String name = word(rank);
+		switch (type) {
+		case DRUG:
+			name += DRUG_SUFFIXES[(int) ((h >>> 40) % DRUG_SUFFIXES.length)];
+			break;
+		case DEVICE:
+			name += " Device";
+			break;
+		case BEHAVIORAL:
+			name += " Program";
+			break;
+		case PROCEDURE:
+			name += " Surgery";
+			break;
+		default:
+			name += " " + type.value();
+		}
+		intervention.setInterventionType(type);
+		intervention.setInterventionName(name);
+		return intervention;
+	}
+
+	/**
+	 * Sites in the same city share its state and country, and popular cities
+	 * have more sites.
+	 */
+	private LocationStruct newLocation(int rank) {
+		Random random = new Random(hash(3, rank));
+		int city = cities.sample(random);
+		long cityHash = hash(4, city);
+		String country = COUNTRIES[pick(cityHash, COUNTRY_WEIGHTS)];
+
+		AddressStruct address = new AddressStruct();
+		address.setCity(word(city));
+		if ("United States".equals(country)) {
+			address.setState(STATES[(int) ((cityHash >>> 40) % STATES.length)]);
+			address.setZip(String.format("%05d", (cityHash >>> 20) % 99000 + random.nextInt(1000)));
+		}
+		address.setCountry(country);
+
+		FacilityStruct facility = new FacilityStruct();
+		facility.setName(word(rank) + " " + FACILITY_KINDS[random.nextInt(FACILITY_KINDS.length)]);
+		facility.setAddress(address);
+		LocationStruct location = new LocationStruct();
+		location.setFacility(facility);
+		return location;
+	}
+
+	/**
+	 * Words for different numbers are different.
+	 *
+	 * @param number
+	 * @return a capitalized word of at least two syllables
+	 */
+	private String word(int number) {
+		StringBuilder sb = new StringBuilder();
+		int n = number;
+		for (int position = 0; position < 2 || n > 0; position++) {
+			int syllable = (n % SYLLABLES.length + syllableOffsets[position % syllableOffsets.length])
+					% SYLLABLES.length;
+			sb.append(SYLLABLES[syllable]);
+			n /= SYLLABLES.length;
+		}
+		sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+		return sb.toString();
+	}
+
+	private static String newDate(Random random, int year) {
+		return MONTHS[random.nextInt(12)] + " " + (1 + random.nextInt(28)) + ", " + year;
+	}
+
+	/**
+	 *
+	 * @return at least 1, at most max, each value p times as likely as the
+	 *         previous one
+	 */
+	private static int geometric(Random random, double p, int max) {
+		int count = 1;
+		while (count < max && random.nextDouble() >= p) {
+			count++;
+		}
+		return count;
+	}
+
+	private static int pick(Random random, double[] weights) {
+		return pick(random.nextDouble(), weights);
+	}
+
+	private static int pick(long hash, double[] weights) {
+		return pick((hash >>> 11) * 0x1.0p-53, weights);
+	}
+
+	private static int pick(double uniform, double[] weights) {
+		double total = 0;
+		for (double weight : weights) {
+			total += weight;
+		}
+		double target = uniform * total;
+		for (int i = 0; i < weights.length - 1; i++) {
+			target -= weights[i];
+			if (target < 0) {
+				return i;
+			}
+		}
+		return weights.length - 1;
+	}
+
+	/**
+	 *
+	 * @param kind
+	 *            separates the hashes of sponsors, conditions and other
+	 *            vocabularies with the same rank
+	 * @param rank
+	 */
+	private long hash(int kind, int rank) {
+		return mix64(mix64(seed + kind * GOLDEN_GAMMA) + rank);
+	}
+
+	/**
+	 * Finalizer of the 64-bit MurmurHash3.
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return z ^ (z >>> 33);
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Ranks drawn with a probability inversely proportional to a power of
+	 * the rank.
+	 */
+	private static class Zipf {
+
+		private final double[] cdf;
+
+		private Zipf(int size, double exponent) {
+			cdf = new double[size];
+			double sum = 0;
+			for (int i = 0; i < size; i++) {
+				sum += 1 / Math.pow(i + 1, exponent);
+				cdf[i] = sum;
+			}
+			for (int i = 0; i < size; i++) {
+				cdf[i] /= sum;
+			}
+		}
+
+		private int sample(Random random) {
+			int i = Arrays.binarySearch(cdf, random.nextDouble());
+			return Math.min(i >= 0 ? i + 1 : -i - 1, cdf.length - 1);
+		}
+	}
+}
@@ -0,0 +1,736 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import com.google.maps.model.LatLng;
+import com.sourcepatch.ctviz.GeocodingStage.GeocodedAddress;
+import com.sourcepatch.ctviz.ctgov.AddressStruct;
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+import com.sourcepatch.ctviz.ctgov.EligibilityStruct;
+import com.sourcepatch.ctviz.ctgov.FacilityStruct;
+import com.sourcepatch.ctviz.ctgov.InterventionStruct;
+import com.sourcepatch.ctviz.ctgov.LocationStruct;
+import com.sourcepatch.ctviz.ctgov.SponsorStruct;
+import com.sourcepatch.ctviz.ctgov.SponsorsStruct;
+import com.sourcepatch.ctviz.ctgov.StudyDesignInfoStruct;
+import com.sourcepatch.ctviz.ctgov.StudyTypeEnum;
+
+/**
+ * Turns clinical trials into the vertices and edges of a graph, whatever the
+ * graph library behind the {@link GraphSink}.
+ *
+ * <p>
+ * Each trial becomes a trial vertex linked to the vertices of its sponsors,
+ * conditions, interventions and locations, which are shared by all trials
+ * and found through a {@link VertexRegistry}. A relation stated by several
+ * trials is a single edge, found through an {@link EdgeRegistry}. Trials
+ * already in the graph are replaced by their new version, see
+ * {@link #upsertStudy(ClinicalStudy)}.
+ *
+ * <p>
+ * Instances are not thread-safe and must be used from the thread that writes
+ * to the graph, except for {@link #prepareStudy(ClinicalStudy)}.
+ *
+ * @param <V>
+ *            vertex type of the underlying graph library
+ * @param <E>
+ *            edge type of the underlying graph library
+ *
+ * @author Denilson Nastacio
+ */
+public class StudyGraphBuilder<V, E> {
+
+	private static final Logger LOG = Logger.getLogger(StudyGraphBuilder.class.getName());
+
+	/**
+	 * Properties of a trial vertex, which are also copied to the locations
+	 * created for the trial.
+	 */
+	private static final String[] TRIAL_PROPERTIES = { GraphSchema.VERTEX_PROPERTY_NCT_STUDY_ID,
+			GraphSchema.VERTEX_PROPERTY_NCT_ORG_STUDY_ID, GraphSchema.VERTEX_PROPERTY_NCT_TITLE,
+			GraphSchema.VERTEX_PROPERTY_NCT_OVERALL_STATUS, GraphSchema.VERTEX_PROPERTY_NCT_PHASE,
+			GraphSchema.VERTEX_PROPERTY_NCT_STUDY_TYPE, GraphSchema.VERTEX_PROPERTY_NCT_ENROLLMENT,
+			GraphSchema.VERTEX_PROPERTY_NCT_GENDER, GraphSchema.VERTEX_PROPERTY_NCT_MIN_AGE,
+			GraphSchema.VERTEX_PROPERTY_NCT_MAX_AGE, GraphSchema.VERTEX_PROPERTY_NCT_LAST_CHANGED,
+			GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_MODEL, GraphSchema.VERTEX_PROPERTY_NCT_PRIMARY_PURPOSE,
+			GraphSchema.VERTEX_PROPERTY_NCT_MASKING, GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR };
+
+	private final GraphSink<V, E> sink;
+	private final VertexRegistry<V> registry = new VertexRegistry<>();
+	private final EdgeRegistry<V, E> edges = new EdgeRegistry<>();
+	private final ConditionDictionary conditionDictionary;
+	private final ConditionNormalizer conditionNormalizer;
+	private final Map<String, String> stateAbbrev;
+
+	/**
+	 * Receives the address of each new location, or <code>null</code> to
+	 * leave locations without coordinates.
+	 */
+	private GeocodingStage geocoding;
+	private int geocodedCount;
+
+	/**
+	 *
+	 * @param sink
+	 *            graph receiving the vertices and edges
+	 * @param conditionDictionary
+	 *            source of the concept id of each normalized condition
+	 * @param conditionNormalizer
+	 * @param stateAbbrev
+	 *            abbreviation of each state name, see
+	 *            {@link #loadStateAbbreviations()}
+	 */
+	public StudyGraphBuilder(GraphSink<V, E> sink, ConditionDictionary conditionDictionary,
+			ConditionNormalizer conditionNormalizer, Map<String, String> stateAbbrev) {
+		this.sink = sink;
+		this.conditionDictionary = conditionDictionary;
+		this.conditionNormalizer = conditionNormalizer;
+		this.stateAbbrev = stateAbbrev;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @return abbreviation of each US state name
+	 * @throws IOException
+	 */
+	public static Map<String, String> loadStateAbbreviations() throws IOException {
+		Map<String, String> stateAbbrev = new TreeMap<>();
+		try (InputStream resourceAsStream = StudyGraphBuilder.class.getResourceAsStream("/states.csv");
+				InputStreamReader in = new InputStreamReader(resourceAsStream);
+				BufferedReader br = new BufferedReader(in)) {
+
+			String line = null;
+			while ((line = br.readLine()) != null) {
+				String[] tokens = line.split(",");
+				stateAbbrev.put(tokens[0], tokens[1]);
+			}
+		}
+		return stateAbbrev;
+	}
+
+	/**
+	 *
+	 * @return graph receiving the vertices and edges
+	 */
+	public GraphSink<V, E> getSink() {
+		return sink;
+	}
+
+	/**
+	 *
+	 * @return vertices of the graph by natural key
+	 */
+	public VertexRegistry<V> getVertexRegistry() {
+		return registry;
+	}
+
+	/**
+	 *
+	 * @return edges of the graph by source, target and label
+	 */
+	public EdgeRegistry<V, E> getEdgeRegistry() {
+		return edges;
+	}
+
+	/**
+	 *
+	 * @param geocoding
+	 *            receives the address of each new location, or
+	 *            <code>null</code> to leave locations without coordinates
+	 */
+	public void setGeocoding(GeocodingStage geocoding) {
+		this.geocoding = geocoding;
+	}
+
+	/**
+	 * Registers the vertices and edges of a graph loaded from a previous run,
+	 * so that the trials in it can be updated.
+	 *
+	 * @return number of trials in the graph
+	 */
+	public int registerGraph() {
+		for (V vertex : sink.getVertices()) {
+			String label = sink.getVertexLabel(vertex);
+			String keyProperty = label != null ? VertexRegistry.getKeyProperty(label) : null;
+			Object key = keyProperty != null ? sink.getVertexProperty(vertex, keyProperty) : null;
+			if (key != null) {
+				registry.register(label, key.toString(), vertex);
+			}
+		}
+		for (E edge : sink.getEdges()) {
+			String label = sink.getEdgeLabel(edge);
+			if (label != null) {
+				edges.register(sink.getEdgeSource(edge), sink.getEdgeTarget(edge), label, edge,
+						(String) sink.getEdgeProperty(edge, GraphSchema.EDGE_PROPERTY_NCT_ID));
+			}
+		}
+		return registry.size(GraphSchema.VERTEX_LABEL_TRIAL);
+	}
+
+	/**
+	 * Adds the trials of an archive to the graph, replacing the earlier
+	 * version of the trials already in it.
+	 *
+	 * @param archive
+	 * @param workers
+	 *            threads preparing the studies, or zero to prepare each
+	 *            study on the calling thread
+	 * @param queueCapacity
+	 *            maximum number of studies waiting to be added to the graph
+	 * @return number of trials in the archive
+	 * @throws Exception
+	 */
+	public int ingest(StudyArchive archive, int workers, int queueCapacity) throws Exception {
+		int trialCount = 0;
+		int[] unchangedCount = new int[1];
+		Consumer<GeocodedAddress> setCoordinates = address -> {
+			if (setLocationCoordinates(address)) {
+				geocodedCount++;
+			}
+		};
+		Consumer<PreparedStudy> upsert = prepared -> {
+			if (!upsertStudy(prepared)) {
+				unchangedCount[0]++;
+			}
+			if (geocoding != null) {
+				geocoding.drain(setCoordinates);
+			}
+		};
+		if (workers > 0) {
+			StudyIngestPipeline<PreparedStudy> pipeline = new StudyIngestPipeline<>(workers, queueCapacity);
+			trialCount = pipeline.run(archive, this::prepareStudy, upsert);
+		} else {
+			for (int i = 0; i < archive.size(); i++) {
+				upsert.accept(prepareStudy(archive.unmarshal(i)));
+				trialCount++;
+			}
+		}
+		flush();
+
+		int locationCount = registry.size(GraphSchema.VERTEX_LABEL_LOCATION);
+		if (geocoding != null) {
+			LOG.info("Added " + trialCount + " clinical trials to graph. Waiting for coordinates of "
+					+ (locationCount - geocodedCount) + " locations.");
+			geocoding.awaitAll(setCoordinates);
+		}
+
+		LOG.info("Processed " + trialCount + " clinical trials into graph, " + unchangedCount[0]
+				+ " of them unchanged. Trials: " + registry.size(GraphSchema.VERTEX_LABEL_TRIAL) + ". Edges: "
+				+ edges.size() + ". Locations with coordinates: " + geocodedCount + " of " + locationCount + ".");
+		return trialCount;
+	}
+
+	/**
+	 * Adds a study to the graph, which must not have the trial yet.
+	 *
+	 * @param study
+	 */
+	public void addStudy(ClinicalStudy study) {
+		addStudy(prepareStudy(study));
+	}
+
+	/**
+	 * Adds a study to the graph, replacing the earlier version of the trial
+	 * if the graph has one.
+	 *
+	 * @param study
+	 * @return <code>false</code> if the graph already had the trial with the
+	 *         same last update date
+	 */
+	public boolean upsertStudy(ClinicalStudy study) {
+		return upsertStudy(prepareStudy(study));
+	}
+
+	/**
+	 * Writes the NCT ids of the edges changed since the last flush, and adds
+	 * the vertices and edges still held by the sink to the graph.
+	 */
+	public void flush() {
+		edges.writeNctIds((edge, nctIds) -> sink.setEdgeProperty(edge, GraphSchema.EDGE_PROPERTY_NCT_ID, nctIds));
+		sink.flush();
+	}
+
+	/*
+	 * Package methods.
+	 */
+
+	/**
+	 * Computes everything about a study that does not depend on the graph.
+	 * Safe to call from multiple threads.
+	 *
+	 * @param study
+	 * @return
+	 */
+	PreparedStudy prepareStudy(ClinicalStudy study) {
+		String nctId = study.getIdInfo().getNctId();
+
+		Map<String, String> normalizedConditions = new HashMap<>();
+		for (String c : study.getCondition()) {
+			normalizedConditions.put(c, conditionNormalizer.normalize(c));
+		}
+
+		Integer startYear = null;
+		if (study.getStartDate() != null) {
+			String startDateStr = study.getStartDate().getValue();
+			int year = NctDateParser.parseYear(startDateStr);
+			if (year == NctDateParser.INVALID_DATE) {
+				LOG.warning(nctId + " does not have a valid start year: " + startDateStr);
+			} else if (year < 1900) {
+				LOG.warning(nctId + " has a likely invalid start year: " + startDateStr);
+			} else {
+				startYear = year;
+			}
+		}
+
+		List<String> locationKeys = new ArrayList<>(study.getLocation().size());
+		study.getLocation().forEach(l -> locationKeys.add(getLocationKey(l.getFacility().getAddress())));
+
+		return new PreparedStudy(study, normalizedConditions, startYear, locationKeys);
+	}
+
+	/**
+	 *
+	 * @param prepared
+	 * @return <code>false</code> if the graph already had the trial with the
+	 *         same last update date
+	 * @see #upsertStudy(ClinicalStudy)
+	 */
+	boolean upsertStudy(PreparedStudy prepared) {
+		ClinicalStudy study = prepared.getStudy();
+		String nctId = study.getIdInfo().getNctId();
+		V previous = registry.get(GraphSchema.VERTEX_LABEL_TRIAL, nctId);
+		if (previous != null) {
+			String lastChanged = study.getLastchangedDate();
+			Object previousChanged = sink.getVertexProperty(previous, GraphSchema.VERTEX_PROPERTY_NCT_LAST_CHANGED);
+			if (lastChanged != null && lastChanged.equals(previousChanged)) {
+				return false;
+			}
+			removeTrial(previous, nctId);
+		}
+		addStudy(prepared);
+		return true;
+	}
+
+	/**
+	 *
+	 * @param prepared
+	 * @see #addStudy(ClinicalStudy)
+	 */
+	void addStudy(PreparedStudy prepared) {
+		ClinicalStudy study = prepared.getStudy();
+		String nctId = study.getIdInfo().getNctId();
+
+		//
+		// Add nodes
+		//
+
+		Map<String, Object> trialProperties = getTrialProperties(prepared);
+		V ctVertex = sink.newVertex(GraphSchema.VERTEX_LABEL_TRIAL);
+		trialProperties.forEach((property, value) -> sink.setVertexProperty(ctVertex, property, value));
+		sink.addVertex(ctVertex);
+		registry.register(GraphSchema.VERTEX_LABEL_TRIAL, nctId, ctVertex);
+
+		if (StudyTypeEnum.INTERVENTIONAL.equals(study.getStudyType())) {
+			for (InterventionStruct intv : study.getIntervention()) {
+				V interventionVertex = getOrCreateInterventionVertex(intv);
+				E testsEdge = addEdge(ctVertex, interventionVertex, GraphSchema.EDGE_LABEL_TESTS, nctId);
+				setEdgePropertyIfAbsent(testsEdge, GraphSchema.EDGE_PROPERTY_NCT_INTERVENTION_TYPE,
+						intv.getInterventionType().toString());
+			}
+		}
+
+		SponsorsStruct ssList = study.getSponsors();
+		V sv = getOrCreateSponsorVertex(ssList.getLeadSponsor());
+
+		List<String> studyConditions = study.getCondition();
+		List<V> conditionVertices = new ArrayList<>(studyConditions.size());
+		for (String c : studyConditions) {
+			conditionVertices.add(getOrCreateConditionVertex(c, prepared.getNormalizedConditions().get(c)));
+		}
+
+		// sponsor -> condition
+		// sponsor -> trial
+		for (V conditionVertex : conditionVertices) {
+			addEdge(sv, conditionVertex, GraphSchema.EDGE_LABEL_RESEARCHES, nctId);
+		}
+		addEdge(sv, ctVertex, GraphSchema.EDGE_LABEL_SPONSORS, nctId);
+
+		for (SponsorStruct collabAgency : ssList.getCollaborator()) {
+			// sponsor -> collaborators
+			V collabVertex = getOrCreateSponsorVertex(collabAgency);
+			addEdge(sv, collabVertex, GraphSchema.EDGE_LABEL_LEADS, nctId);
+			addEdge(collabVertex, sv, GraphSchema.EDGE_LABEL_COLLABORATES, nctId);
+
+			// collaborators -> condition
+			// collaborators -> trial
+			for (V conditionVertex : conditionVertices) {
+				addEdge(collabVertex, conditionVertex, GraphSchema.EDGE_LABEL_RESEARCHES, nctId);
+			}
+			addEdge(collabVertex, ctVertex, GraphSchema.EDGE_LABEL_CONSPONSOR, nctId);
+		}
+
+		// trial -> conditions
+		for (V conditionVertex : conditionVertices) {
+			addEdge(ctVertex, conditionVertex, GraphSchema.EDGE_LABEL_COVERS, nctId);
+		}
+
+		// trial -> locations
+		List<LocationStruct> locations = study.getLocation();
+		for (int i = 0; i < locations.size(); i++) {
+			FacilityStruct facility = locations.get(i).getFacility();
+			V locationVertex = getOrCreateLocationVertex(trialProperties, facility.getAddress(),
+					prepared.getLocationKeys().get(i));
+			E locationEdge = addEdge(ctVertex, locationVertex, GraphSchema.EDGE_LABEL_LOCATION, nctId);
+			// Facilities of the trial at the same address share the edge,
+			// which keeps the name of the first one.
+			setEdgePropertyIfAbsent(locationEdge, GraphSchema.EDGE_PROPERTY_LOCATION_NAME,
+					getStringOrEmpty(facility.getName()));
+		}
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 *
+	 * @param prepared
+	 * @return properties of the trial vertex
+	 */
+	private Map<String, Object> getTrialProperties(PreparedStudy prepared) {
+		ClinicalStudy study = prepared.getStudy();
+		EligibilityStruct studyEligibility = study.getEligibility();
+
+		Map<String, Object> properties = new LinkedHashMap<>();
+		properties.put(GraphSchema.VERTEX_PROPERTY_NCT_STUDY_ID, study.getIdInfo().getNctId());
+		properties.put(GraphSchema.VERTEX_PROPERTY_NCT_ORG_STUDY_ID,
+				getStringOrEmpty(study.getIdInfo().getOrgStudyId()));
+		properties.put(GraphSchema.VERTEX_PROPERTY_NCT_TITLE, getStringOrEmpty(study.getBriefTitle()));
+		properties.put(GraphSchema.VERTEX_PROPERTY_NCT_OVERALL_STATUS, getStringOrEmpty(study.getOverallStatus()));
+		properties.put(GraphSchema.VERTEX_PROPERTY_NCT_PHASE,
+				study.getPhase() != null ? study.getPhase().toString() : "");
+		properties.put(GraphSchema.VERTEX_PROPERTY_NCT_STUDY_TYPE,
+				study.getStudyType() != null ? study.getStudyType().toString() : "");
+		properties.put(GraphSchema.VERTEX_PROPERTY_NCT_ENROLLMENT,
+				study.getEnrollment() != null ? study.getEnrollment().getValue().longValue() : 0L);
+		properties.put(GraphSchema.VERTEX_PROPERTY_NCT_GENDER, studyEligibility.getGender().toString());
+		properties.put(GraphSchema.VERTEX_PROPERTY_NCT_MIN_AGE, studyEligibility.getMinimumAge());
+		properties.put(GraphSchema.VERTEX_PROPERTY_NCT_MAX_AGE, studyEligibility.getMaximumAge());
+		properties.put(GraphSchema.VERTEX_PROPERTY_NCT_LAST_CHANGED, study.getLastchangedDate());
+
+		StudyDesignInfoStruct designInfo = study.getStudyDesignInfo();
+		if (designInfo != null) {
+			properties.put(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_MODEL,
+					getStringOrEmpty(designInfo.getInterventionModel()));
+			properties.put(GraphSchema.VERTEX_PROPERTY_NCT_PRIMARY_PURPOSE,
+					getStringOrEmpty(designInfo.getPrimaryPurpose()));
+			properties.put(GraphSchema.VERTEX_PROPERTY_NCT_MASKING, getStringOrEmpty(designInfo.getMasking()));
+		}
+		properties.put(GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR, prepared.getStartYear());
+		return properties;
+	}
+
+	/**
+	 * Removes a trial with its edges, removes its NCT id from the relations
+	 * between its sponsors and conditions, and removes the edges and vertices
+	 * left without trials. The locations left with other trials and holding
+	 * the properties of the removed trial receive those of another trial at
+	 * the location.
+	 *
+	 * <p>
+	 * The relations stated by the trial are found from its own edges, so the
+	 * cost depends on the size of the trial, not on the number of edges of its
+	 * sponsors.
+	 *
+	 * @param trial
+	 * @param nctId
+	 */
+	private void removeTrial(V trial, String nctId) {
+		V leadSponsor = null;
+		List<V> collaborators = new ArrayList<>();
+		List<V> conditions = new ArrayList<>();
+		Set<V> locations = new LinkedHashSet<>();
+		Set<V> orphanCandidates = new LinkedHashSet<>();
+		for (E edge : sink.getEdges(trial)) {
+			V source = sink.getEdgeSource(edge);
+			V target = sink.getEdgeTarget(edge);
+			String label = sink.getEdgeLabel(edge);
+			edges.remove(source, target, label);
+			orphanCandidates.add(trial.equals(source) ? target : source);
+			if (GraphSchema.EDGE_LABEL_SPONSORS.equals(label)) {
+				leadSponsor = source;
+			} else if (GraphSchema.EDGE_LABEL_CONSPONSOR.equals(label)) {
+				collaborators.add(source);
+			} else if (GraphSchema.EDGE_LABEL_COVERS.equals(label)) {
+				conditions.add(target);
+			} else if (GraphSchema.EDGE_LABEL_LOCATION.equals(label)) {
+				locations.add(target);
+			}
+		}
+		sink.removeVertex(trial);
+		registry.remove(GraphSchema.VERTEX_LABEL_TRIAL, nctId);
+
+		if (leadSponsor != null) {
+			for (V condition : conditions) {
+				removeNctId(leadSponsor, condition, GraphSchema.EDGE_LABEL_RESEARCHES, nctId, orphanCandidates);
+			}
+			for (V collaborator : collaborators) {
+				removeNctId(leadSponsor, collaborator, GraphSchema.EDGE_LABEL_LEADS, nctId, orphanCandidates);
+				removeNctId(collaborator, leadSponsor, GraphSchema.EDGE_LABEL_COLLABORATES, nctId,
+						orphanCandidates);
+				for (V condition : conditions) {
+					removeNctId(collaborator, condition, GraphSchema.EDGE_LABEL_RESEARCHES, nctId, orphanCandidates);
+				}
+			}
+		}
+
+		for (V vertex : orphanCandidates) {
+			if (!sink.hasEdges(vertex)) {
+				String label = sink.getVertexLabel(vertex);
+				String keyProperty = label != null ? VertexRegistry.getKeyProperty(label) : null;
+				if (keyProperty != null) {
+					registry.remove(label, String.valueOf(sink.getVertexProperty(vertex, keyProperty)));
+				}
+				sink.removeVertex(vertex);
+				locations.remove(vertex);
+			}
+		}
+
+		for (V location : locations) {
+			if (nctId.equals(sink.getVertexProperty(location, GraphSchema.VERTEX_PROPERTY_NCT_STUDY_ID))) {
+				copyTrialProperties(sink.getEdgeSource(sink.getEdges(location).iterator().next()), location);
+			}
+		}
+	}
+
+	/**
+	 * Removes the occurrences of an NCT id from a relation, and the edge if no
+	 * other trial states the relation.
+	 *
+	 * @param source
+	 * @param target
+	 * @param edgeLabel
+	 * @param nctId
+	 * @param orphanCandidates
+	 *            receives the ends of the edge if it is removed
+	 */
+	private void removeNctId(V source, V target, String edgeLabel, String nctId, Set<V> orphanCandidates) {
+		if (!edges.containsNctId(source, target, edgeLabel, nctId)) {
+			return;
+		}
+		E edge = edges.get(source, target, edgeLabel);
+		int remaining = edges.removeNctId(source, target, edgeLabel, nctId);
+		if (remaining == 0) {
+			edges.remove(source, target, edgeLabel);
+			orphanCandidates.add(source);
+			orphanCandidates.add(target);
+			sink.removeEdge(edge);
+		} else {
+			setCount(edge, remaining);
+		}
+	}
+
+	/**
+	 * Replaces the trial properties of a location with those of a trial.
+	 *
+	 * @param trial
+	 * @param location
+	 */
+	private void copyTrialProperties(V trial, V location) {
+		for (String property : TRIAL_PROPERTIES) {
+			Object value = sink.getVertexProperty(trial, property);
+			if (value != null) {
+				sink.setVertexProperty(location, property, value);
+			} else {
+				sink.removeVertexProperty(location, property);
+			}
+		}
+	}
+
+	/**
+	 * Adds a relation stated by a trial, as a new edge or as one more
+	 * occurrence of the edge with the same source, target and label.
+	 *
+	 * @param source
+	 * @param target
+	 * @param edgeLabel
+	 * @param nctId
+	 * @return the edge, with no properties other than the count if it is
+	 *         new, and NCT ids written on {@link #flush()}
+	 */
+	private E addEdge(V source, V target, String edgeLabel, String nctId) {
+		E edge = edges.get(source, target, edgeLabel);
+		if (edge != null) {
+			setCount(edge, edges.addNctId(source, target, edgeLabel, nctId));
+			return edge;
+		}
+		edge = sink.newEdge(source, target, edgeLabel);
+		sink.setEdgeProperty(edge, GraphSchema.EDGE_PROPERTY_COUNT, 1);
+		sink.addEdge(edge);
+		edges.register(source, target, edgeLabel, edge, null);
+		edges.addNctId(source, target, edgeLabel, nctId);
+		return edge;
+	}
+
+	/**
+	 *
+	 * @param edge
+	 * @param count
+	 *            number of NCT ids on the edge, which is also its weight
+	 */
+	private void setCount(E edge, int count) {
+		sink.setEdgeProperty(edge, GraphSchema.EDGE_PROPERTY_COUNT, count);
+		sink.setEdgeWeight(edge, count);
+	}
+
+	private void setEdgePropertyIfAbsent(E edge, String property, Object value) {
+		if (sink.getEdgeProperty(edge, property) == null) {
+			sink.setEdgeProperty(edge, property, value);
+		}
+	}
+
+	/**
+	 *
+	 * @param locationAddress
+	 * @return full address used as the natural key of a location
+	 */
+	private String getLocationKey(AddressStruct locationAddress) {
+		String city = getStringOrEmpty(locationAddress.getCity());
+		String state = getStringOrEmpty(locationAddress.getState());
+		String zip = getStringOrEmpty(locationAddress.getZip());
+		String country = getStringOrEmpty(locationAddress.getCountry());
+		return city + " " + state + " " + zip + " " + country;
+	}
+
+	/**
+	 * Creates a location without coordinates, which are set once the address
+	 * is geocoded.
+	 *
+	 * @param trialProperties
+	 *            properties of the trial first found at the location
+	 * @param locationAddress
+	 * @param locationString
+	 *            full address of the location
+	 * @return
+	 */
+	private V getOrCreateLocationVertex(Map<String, Object> trialProperties, AddressStruct locationAddress,
+			String locationString) {
+		return registry.getOrCreate(GraphSchema.VERTEX_LABEL_LOCATION, locationString, k -> {
+			String city = getStringOrEmpty(locationAddress.getCity());
+			String state = getStringOrEmpty(locationAddress.getState());
+			String zip = getStringOrEmpty(locationAddress.getZip());
+			String country = getStringOrEmpty(locationAddress.getCountry());
+
+			V locationVertex = sink.newVertex(GraphSchema.VERTEX_LABEL_LOCATION);
+
+			// Cloning essential clinical trial fields in case we want to just
+			// plot the view of clinical trials with location and attributes on
+			// a map, without the relations to everything else.
+			trialProperties.forEach((property, value) -> sink.setVertexProperty(locationVertex, property, value));
+
+			sink.setVertexProperty(locationVertex, GraphSchema.VERTEX_PROPERTY_LOCATION_FULL_ADDRESS, locationString);
+			sink.setVertexProperty(locationVertex, GraphSchema.VERTEX_PROPERTY_ADDRESS_CITY, city);
+			sink.setVertexProperty(locationVertex, GraphSchema.VERTEX_PROPERTY_ADDRESS_STATE,
+					stateAbbrev.getOrDefault(state, state));
+			sink.setVertexProperty(locationVertex, GraphSchema.VERTEX_PROPERTY_ADDRESS_ZIP, zip);
+			sink.setVertexProperty(locationVertex, GraphSchema.VERTEX_PROPERTY_ADDRESS_COUNTRY, country);
+			sink.addVertex(locationVertex);
+
+			if (geocoding != null) {
+				geocoding.submit(locationString, city, state, zip, country);
+			}
+			return locationVertex;
+		});
+	}
+
+	/**
+	 * Sets the coordinates of a location created earlier, if the address was
+	 * geocoded.
+	 *
+	 * @param address
+	 * @return <code>true</code> if coordinates were set
+	 */
+	private boolean setLocationCoordinates(GeocodedAddress address) {
+		LatLng coords = address.getCoordinates();
+		V locationVertex = registry.get(GraphSchema.VERTEX_LABEL_LOCATION, address.getKey());
+		if (coords == null || locationVertex == null) {
+			return false;
+		}
+		sink.setVertexProperty(locationVertex, GraphSchema.VERTEX_PROPERTY_LOCATION_LATITUDE, coords.lat);
+		sink.setVertexProperty(locationVertex, GraphSchema.VERTEX_PROPERTY_LOCATION_LONGITUDE, coords.lng);
+		return true;
+	}
+
+	private V getOrCreateInterventionVertex(InterventionStruct intv) {
+		String interventionName = intv.getInterventionName();
+		return registry.getOrCreate(GraphSchema.VERTEX_LABEL_INTERVENTION, interventionName, k -> {
+			V iVt = sink.newVertex(GraphSchema.VERTEX_LABEL_INTERVENTION);
+			sink.setVertexProperty(iVt, GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_TYPE,
+					intv.getInterventionType().toString());
+			sink.setVertexProperty(iVt, GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME, interventionName);
+			sink.addVertex(iVt);
+			return iVt;
+		});
+	}
+
+	/**
+	 *
+	 * @param conditionName
+	 * @param c2
+	 *            normalized condition name
+	 * @return
+	 */
+	private V getOrCreateConditionVertex(String conditionName, String c2) {
+		return registry.getOrCreate(GraphSchema.VERTEX_LABEL_CONDITION, c2, k -> {
+			V cVt = sink.newVertex(GraphSchema.VERTEX_LABEL_CONDITION);
+			sink.setVertexProperty(cVt, GraphSchema.VERTEX_PROPERTY_CONDITION_RAW, conditionName);
+			sink.setVertexProperty(cVt, GraphSchema.VERTEX_PROPERTY_CONDITION_NAME, c2);
+			int cui = conditionDictionary.getCui(c2);
+			if (cui != ConditionDictionary.NO_CUI) {
+				sink.setVertexProperty(cVt, GraphSchema.VERTEX_PROPERTY_CONDITION_CUI, cui);
+			}
+			sink.addVertex(cVt);
+			return cVt;
+		});
+	}
+
+	private V getOrCreateSponsorVertex(SponsorStruct sponsor) {
+		String sponsorAgency = sponsor.getAgency();
+		return registry.getOrCreate(GraphSchema.VERTEX_LABEL_SPONSOR, sponsorAgency, k -> {
+			V sv = sink.newVertex(GraphSchema.VERTEX_LABEL_SPONSOR);
+			sink.setVertexProperty(sv, GraphSchema.VERTEX_PROPERTY_SPONSOR_NAME, sponsorAgency);
+			sink.setVertexProperty(sv, GraphSchema.VERTEX_PROPERTY_SPONSOR_CLASS, sponsor.getAgencyClass().toString());
+			sink.addVertex(sv);
+			return sv;
+		});
+	}
+
+	private static String getStringOrEmpty(String parm) {
+		return parm != null ? parm : "";
+	}
+}
@@ -0,0 +1,248 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+
+/**
+ * Staged ingestion of a clinical trial archive.
+ *
+ * <ol>
+ * <li>A reader thread hands out the entries of the archive in order.</li>
+ * <li>A pool of workers inflates and unmarshals each study and prepares
+ * everything that does not touch the graph.</li>
+ * <li>The calling thread is the only writer, applying prepared studies to the
+ * graph in archive order.</li>
+ * </ol>
+ *
+ * <p>
+ * The stages are connected by a bounded queue, so the reader stalls when the
+ * writer falls behind instead of buffering the whole archive.
+ *
+ * @param <T>
+ *            prepared study handed from the workers to the writer
+ *
+ * @author Denilson Nastacio
+ */
+public class StudyIngestPipeline<T> {
+
+	private static final Logger LOG = Logger.getLogger(StudyIngestPipeline.class.getName());
+
+	private static final Future<?> END_OF_ENTRIES = CompletableFuture.completedFuture(null);
+
+	private final int workers;
+	private final int queueCapacity;
+
+	private final AtomicLong readNanos = new AtomicLong();
+	private final AtomicLong readBytes = new AtomicLong();
+	private final AtomicLong prepareNanos = new AtomicLong();
+	private long writeNanos;
+
+	/**
+	 *
+	 * @param workers
+	 *            number of threads unmarshalling and preparing studies
+	 * @param queueCapacity
+	 *            maximum number of studies between the reader and the writer
+	 */
+	public StudyIngestPipeline(int workers, int queueCapacity) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("At least one worker is required: " + workers);
+		}
+		this.workers = workers;
+		this.queueCapacity = Math.max(1, queueCapacity);
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 * Each worker opens and inflates its own entries, so the reader only hands
+	 * out entry indexes.
+	 *
+	 * @param archive
+	 *            archive with one clinical study per entry
+	 * @param prepare
+	 *            work done on a worker thread, must not touch the graph
+	 * @param apply
+	 *            work done on the calling thread, in archive order
+	 * @return number of studies applied
+	 * @throws Exception
+	 *             if any stage fails, after all stages are stopped
+	 */
+	public int run(StudyArchive archive, Function<ClinicalStudy, T> prepare, Consumer<T> apply) throws Exception {
+		int[] nextIndex = { 0 };
+		return run(() -> {
+			int index = nextIndex[0]++;
+			if (index >= archive.size()) {
+				return null;
+			}
+			readBytes.addAndGet(archive.getSize(index));
+			return () -> archive.openEntry(index);
+		}, prepare, apply);
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 *
+	 * @param source
+	 * @param prepare
+	 * @param apply
+	 * @return
+	 * @throws Exception
+	 */
+	private int run(StudySource source, Function<ClinicalStudy, T> prepare, Consumer<T> apply) throws Exception {
+		BlockingQueue<Future<?>> pending = new ArrayBlockingQueue<>(queueCapacity);
+		AtomicReference<Exception> readerFailure = new AtomicReference<>();
+
+		AtomicInteger workerId = new AtomicInteger();
+		ExecutorService workerPool = Executors.newFixedThreadPool(workers, r -> {
+			Thread t = new Thread(r, "ctviz-ingest-worker-" + workerId.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+
+		Thread reader = new Thread(() -> {
+			try {
+				StudyXml xml = null;
+				long start = System.nanoTime();
+				while ((xml = source.next()) != null) {
+					readNanos.addAndGet(System.nanoTime() - start);
+
+					StudyXml studyXml = xml;
+					pending.put(workerPool.submit(() -> {
+						long prepareStart = System.nanoTime();
+						ClinicalStudy study;
+						try (InputStream is = studyXml.open()) {
+							study = StudyUnmarshallers.unmarshal(is);
+						}
+						T prepared = prepare.apply(study);
+						prepareNanos.addAndGet(System.nanoTime() - prepareStart);
+						return prepared;
+					}));
+					start = System.nanoTime();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				readerFailure.set(e);
+			} finally {
+				try {
+					pending.put(END_OF_ENTRIES);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, "ctviz-ingest-reader");
+		reader.setDaemon(true);
+
+		long wallStart = System.nanoTime();
+		int studyCount = 0;
+		try {
+			reader.start();
+			Future<?> next;
+			while ((next = pending.take()) != END_OF_ENTRIES) {
+				T prepared = getPrepared(next);
+				long writeStart = System.nanoTime();
+				apply.accept(prepared);
+				writeNanos += System.nanoTime() - writeStart;
+				studyCount++;
+			}
+			if (readerFailure.get() != null) {
+				throw readerFailure.get();
+			}
+		} finally {
+			reader.interrupt();
+			workerPool.shutdownNow();
+		}
+
+		logThroughput(studyCount, System.nanoTime() - wallStart);
+		return studyCount;
+	}
+
+	/**
+	 *
+	 * @param future
+	 * @return
+	 * @throws Exception
+	 *             the failure of the worker that prepared the study
+	 */
+	@SuppressWarnings("unchecked")
+	private T getPrepared(Future<?> future) throws Exception {
+		try {
+			return (T) future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof Exception ? (Exception) cause : e;
+		}
+	}
+
+	/**
+	 *
+	 * @param studyCount
+	 * @param wallNanos
+	 */
+	private void logThroughput(int studyCount, long wallNanos) {
+		LOG.info("Ingested " + studyCount + " studies in " + TimeUnit.NANOSECONDS.toMillis(wallNanos) + "ms ("
+				+ rate(studyCount, wallNanos) + " studies/s). Reader: " + readBytes.get() / 1024 + "KB at "
+				+ rate(studyCount, readNanos.get()) + " studies/s. Workers (" + workers + "): "
+				+ rate(studyCount, prepareNanos.get() / workers) + " studies/s. Writer: "
+				+ rate(studyCount, writeNanos) + " studies/s.");
+	}
+
+	private static long rate(int count, long nanos) {
+		return nanos > 0 ? count * TimeUnit.SECONDS.toNanos(1) / nanos : 0;
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Hands out the studies of an archive, in order, on the reader thread.
+	 */
+	private interface StudySource {
+
+		/**
+		 *
+		 * @return next study or <code>null</code> at the end of the archive
+		 * @throws IOException
+		 */
+		StudyXml next() throws IOException;
+	}
+
+	/**
+	 * XML of one study, opened on a worker thread.
+	 */
+	private interface StudyXml {
+
+		InputStream open() throws IOException;
+	}
+}
@@ -0,0 +1,386 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.function.Function;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.sourcepatch.ctviz.ctgov.ActualAnticipatedEnum;
+import com.sourcepatch.ctviz.ctgov.AddressStruct;
+import com.sourcepatch.ctviz.ctgov.AgencyClassEnum;
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+import com.sourcepatch.ctviz.ctgov.EligibilityStruct;
+import com.sourcepatch.ctviz.ctgov.EnrollmentStruct;
+import com.sourcepatch.ctviz.ctgov.FacilityStruct;
+import com.sourcepatch.ctviz.ctgov.GenderEnum;
+import com.sourcepatch.ctviz.ctgov.IdInfoStruct;
+import com.sourcepatch.ctviz.ctgov.InterventionStruct;
+import com.sourcepatch.ctviz.ctgov.InterventionTypeEnum;
+import com.sourcepatch.ctviz.ctgov.LocationStruct;
+import com.sourcepatch.ctviz.ctgov.PhaseEnum;
+import com.sourcepatch.ctviz.ctgov.SponsorStruct;
+import com.sourcepatch.ctviz.ctgov.SponsorsStruct;
+import com.sourcepatch.ctviz.ctgov.StudyDesignInfoStruct;
+import com.sourcepatch.ctviz.ctgov.StudyTypeEnum;
+import com.sourcepatch.ctviz.ctgov.VariableDateStruct;
+
+/**
+ * Streaming parser for the clinical study XML that only reads the elements
+ * used to build the graph.
+ *
+ * <p>
+ * The result is a sparse {@link ClinicalStudy}: identification, title, status,
+ * phase, study type, start and last changed dates, enrollment, eligibility,
+ * design info, sponsors, conditions, interventions and locations. Text blocks
+ * such as descriptions, outcomes and results are skipped without being turned
+ * into strings. Values that JAXB would reject, such as unknown enumeration
+ * values, are left <code>null</code> as JAXB does by default.
+ *
+ * <p>
+ * Instances are stateless and can be shared across threads. Each thread keeps
+ * its own stream reader factory, which the JDK parser uses to recycle the
+ * reader and its buffers from one study to the next.
+ *
+ * @author Denilson Nastacio
+ */
+public class StudyStaxParser {
+
+	/**
+	 * Lets the JDK parser reset and hand back the same reader for each study
+	 * instead of allocating new buffers.
+	 */
+	private static final String PROPERTY_REUSE_INSTANCE = "reuse-instance";
+
+	private static final ThreadLocal<XMLInputFactory> FACTORY = ThreadLocal.withInitial(StudyStaxParser::newFactory);
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 * The input stream is not closed.
+	 *
+	 * @param is
+	 *            XML of one clinical study
+	 * @return the study, with only the fields used by the graph
+	 * @throws XMLStreamException
+	 */
+	public ClinicalStudy parse(InputStream is) throws XMLStreamException {
+		XMLStreamReader r = FACTORY.get().createXMLStreamReader(is);
+		try {
+			r.nextTag();
+			r.require(XMLStreamConstants.START_ELEMENT, null, "clinical_study");
+			ClinicalStudy study = readStudy(r);
+			// The JDK parser only recycles its scanner buffers at the end of
+			// the document.
+			while (r.hasNext()) {
+				r.next();
+			}
+			return study;
+		} finally {
+			r.close();
+		}
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private static XMLInputFactory newFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		if (factory.isPropertySupported(PROPERTY_REUSE_INSTANCE)) {
+			factory.setProperty(PROPERTY_REUSE_INSTANCE, Boolean.TRUE);
+		}
+		return factory;
+	}
+
+	/**
+	 *
+	 * @param r
+	 *            positioned at the clinical_study start tag
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	private ClinicalStudy readStudy(XMLStreamReader r) throws XMLStreamException {
+		ClinicalStudy study = new ClinicalStudy();
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (r.getLocalName()) {
+			case "id_info":
+				study.setIdInfo(readIdInfo(r));
+				break;
+			case "brief_title":
+				study.setBriefTitle(r.getElementText());
+				break;
+			case "sponsors":
+				study.setSponsors(readSponsors(r));
+				break;
+			case "overall_status":
+				study.setOverallStatus(r.getElementText());
+				break;
+			case "start_date":
+				study.setStartDate(readDate(r));
+				break;
+			case "phase":
+				study.setPhase(toEnum(r.getElementText(), PhaseEnum::fromValue));
+				break;
+			case "study_type":
+				study.setStudyType(toEnum(r.getElementText(), StudyTypeEnum::fromValue));
+				break;
+			case "study_design_info":
+				study.setStudyDesignInfo(readDesignInfo(r));
+				break;
+			case "enrollment":
+				study.setEnrollment(readEnrollment(r));
+				break;
+			case "condition":
+				study.getCondition().add(r.getElementText());
+				break;
+			case "intervention":
+				study.getIntervention().add(readIntervention(r));
+				break;
+			case "eligibility":
+				study.setEligibility(readEligibility(r));
+				break;
+			case "location":
+				study.getLocation().add(readLocation(r));
+				break;
+			case "lastchanged_date":
+				study.setLastchangedDate(r.getElementText());
+				break;
+			default:
+				skipElement(r);
+			}
+		}
+		return study;
+	}
+
+	private IdInfoStruct readIdInfo(XMLStreamReader r) throws XMLStreamException {
+		IdInfoStruct idInfo = new IdInfoStruct();
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (r.getLocalName()) {
+			case "org_study_id":
+				idInfo.setOrgStudyId(r.getElementText());
+				break;
+			case "nct_id":
+				idInfo.setNctId(r.getElementText());
+				break;
+			default:
+				skipElement(r);
+			}
+		}
+		return idInfo;
+	}
+
+	private SponsorsStruct readSponsors(XMLStreamReader r) throws XMLStreamException {
+		SponsorsStruct sponsors = new SponsorsStruct();
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (r.getLocalName()) {
+			case "lead_sponsor":
+				sponsors.setLeadSponsor(readSponsor(r));
+				break;
+			case "collaborator":
+				sponsors.getCollaborator().add(readSponsor(r));
+				break;
+			default:
+				skipElement(r);
+			}
+		}
+		return sponsors;
+	}
+
+	private SponsorStruct readSponsor(XMLStreamReader r) throws XMLStreamException {
+		SponsorStruct sponsor = new SponsorStruct();
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (r.getLocalName()) {
+			case "agency":
+				sponsor.setAgency(r.getElementText());
+				break;
+			case "agency_class":
+				sponsor.setAgencyClass(toEnum(r.getElementText(), AgencyClassEnum::fromValue));
+				break;
+			default:
+				skipElement(r);
+			}
+		}
+		return sponsor;
+	}
+
+	private VariableDateStruct readDate(XMLStreamReader r) throws XMLStreamException {
+		VariableDateStruct date = new VariableDateStruct();
+		date.setType(toEnum(r.getAttributeValue(null, "type"), ActualAnticipatedEnum::fromValue));
+		date.setValue(r.getElementText());
+		return date;
+	}
+
+	private EnrollmentStruct readEnrollment(XMLStreamReader r) throws XMLStreamException {
+		EnrollmentStruct enrollment = new EnrollmentStruct();
+		enrollment.setType(toEnum(r.getAttributeValue(null, "type"), ActualAnticipatedEnum::fromValue));
+		try {
+			enrollment.setValue(new BigInteger(r.getElementText().trim()));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		return enrollment;
+	}
+
+	private StudyDesignInfoStruct readDesignInfo(XMLStreamReader r) throws XMLStreamException {
+		StudyDesignInfoStruct designInfo = new StudyDesignInfoStruct();
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (r.getLocalName()) {
+			case "intervention_model":
+				designInfo.setInterventionModel(r.getElementText());
+				break;
+			case "primary_purpose":
+				designInfo.setPrimaryPurpose(r.getElementText());
+				break;
+			case "masking":
+				designInfo.setMasking(r.getElementText());
+				break;
+			default:
+				skipElement(r);
+			}
+		}
+		return designInfo;
+	}
+
+	private InterventionStruct readIntervention(XMLStreamReader r) throws XMLStreamException {
+		InterventionStruct intervention = new InterventionStruct();
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (r.getLocalName()) {
+			case "intervention_type":
+				intervention.setInterventionType(toEnum(r.getElementText(), InterventionTypeEnum::fromValue));
+				break;
+			case "intervention_name":
+				intervention.setInterventionName(r.getElementText());
+				break;
+			default:
+				skipElement(r);
+			}
+		}
+		return intervention;
+	}
+
+	private EligibilityStruct readEligibility(XMLStreamReader r) throws XMLStreamException {
+		EligibilityStruct eligibility = new EligibilityStruct();
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (r.getLocalName()) {
+			case "gender":
+				eligibility.setGender(toEnum(r.getElementText(), GenderEnum::fromValue));
+				break;
+			case "minimum_age":
+				eligibility.setMinimumAge(r.getElementText());
+				break;
+			case "maximum_age":
+				eligibility.setMaximumAge(r.getElementText());
+				break;
+			default:
+				skipElement(r);
+			}
+		}
+		return eligibility;
+	}
+
+	private LocationStruct readLocation(XMLStreamReader r) throws XMLStreamException {
+		LocationStruct location = new LocationStruct();
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if ("facility".equals(r.getLocalName())) {
+				location.setFacility(readFacility(r));
+			} else {
+				skipElement(r);
+			}
+		}
+		return location;
+	}
+
+	private FacilityStruct readFacility(XMLStreamReader r) throws XMLStreamException {
+		FacilityStruct facility = new FacilityStruct();
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (r.getLocalName()) {
+			case "name":
+				facility.setName(r.getElementText());
+				break;
+			case "address":
+				facility.setAddress(readAddress(r));
+				break;
+			default:
+				skipElement(r);
+			}
+		}
+		return facility;
+	}
+
+	private AddressStruct readAddress(XMLStreamReader r) throws XMLStreamException {
+		AddressStruct address = new AddressStruct();
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (r.getLocalName()) {
+			case "city":
+				address.setCity(r.getElementText());
+				break;
+			case "state":
+				address.setState(r.getElementText());
+				break;
+			case "zip":
+				address.setZip(r.getElementText());
+				break;
+			case "country":
+				address.setCountry(r.getElementText());
+				break;
+			default:
+				skipElement(r);
+			}
+		}
+		return address;
+	}
+
+	/**
+	 * Moves past the end tag of the current element, ignoring its contents.
+	 *
+	 * @param r
+	 *            positioned at a start tag
+	 * @throws XMLStreamException
+	 */
+	private static void skipElement(XMLStreamReader r) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = r.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param text
+	 * @param fromValue
+	 * @return the enumeration constant or <code>null</code> if the text is
+	 *         missing or not a value of the enumeration
+	 */
+	private static <E> E toEnum(String text, Function<String, E> fromValue) {
+		if (text == null) {
+			return null;
+		}
+		try {
+			return fromValue.apply(text.trim());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.UnmarshalException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamException;
+
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+
+/**
+ * Process-wide JAXB context for the clinical study classes and a bounded pool
+ * of unmarshallers created from it.
+ *
+ * <p>
+ * Creating the context reflects over every class generated from the
+ * clinicaltrials.gov schema, so it is done once per process. Unmarshallers are
+ * cheap in comparison but cannot be shared between threads, so each caller
+ * borrows one for the duration of a single study.
+ *
+ * <p>
+ * By default {@link #unmarshal(InputStream)} unmarshals the complete study.
+ * Setting the <code>ctviz.parser</code> system property to <code>stax</code>
+ * reads only the fields used by the graph with a {@link StudyStaxParser}
+ * instead.
+ *
+ * @author Denilson Nastacio
+ */
+public final class StudyUnmarshallers {
+
+	/**
+	 * Maximum number of idle unmarshallers kept for reuse.
+	 */
+	public static final String PROPERTY_POOL_SIZE = "ctviz.unmarshaller.pool";
+
+	/**
+	 * Parser used by {@link #unmarshal(InputStream)}: <code>jaxb</code>, the
+	 * default, or <code>stax</code>.
+	 */
+	public static final String PROPERTY_PARSER = "ctviz.parser";
+
+	private static final String PARSER_STAX = "stax";
+
+	private static final StudyStaxParser STAX_PARSER = new StudyStaxParser();
+
+	private static final String INSTANCE_PATH = "com.sourcepatch.ctviz.ctgov";
+
+	private static final BlockingQueue<Unmarshaller> IDLE = new ArrayBlockingQueue<>(
+			Math.max(1, Integer.getInteger(PROPERTY_POOL_SIZE, Runtime.getRuntime().availableProcessors() * 2)));
+
+	private static volatile JAXBContext context;
+
+	private StudyUnmarshallers() {
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @return the shared context, created on first use
+	 * @throws JAXBException
+	 */
+	public static JAXBContext getContext() throws JAXBException {
+		JAXBContext result = context;
+		if (result == null) {
+			synchronized (StudyUnmarshallers.class) {
+				result = context;
+				if (result == null) {
+					result = JAXBContext.newInstance(INSTANCE_PATH);
+					context = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Safe to call from multiple threads.
+	 *
+	 * @param is
+	 *            XML of one clinical study
+	 * @return the unmarshalled study, with only the fields used by the graph
+	 *         if {@link #PROPERTY_PARSER} is <code>stax</code>
+	 * @throws JAXBException
+	 */
+	public static ClinicalStudy unmarshal(InputStream is) throws JAXBException {
+		if (PARSER_STAX.equals(System.getProperty(PROPERTY_PARSER))) {
+			try {
+				return STAX_PARSER.parse(is);
+			} catch (XMLStreamException e) {
+				throw new UnmarshalException(e);
+			}
+		}
+
+		Unmarshaller u = borrow();
+		try {
+			return (ClinicalStudy) u.unmarshal(is);
+		} finally {
+			release(u);
+		}
+	}
+
+	/**
+	 *
+	 * @return an idle unmarshaller or a new one if none is idle
+	 * @throws JAXBException
+	 */
+	public static Unmarshaller borrow() throws JAXBException {
+		Unmarshaller u = IDLE.poll();
+		return u != null ? u : getContext().createUnmarshaller();
+	}
+
+	/**
+	 * Returns an unmarshaller to the pool. Unmarshallers beyond the pool size
+	 * are left to the garbage collector.
+	 *
+	 * @param u
+	 *            unmarshaller no longer used by the caller
+	 */
+	public static void release(Unmarshaller u) {
+		IDLE.offer(u);
+	}
+}
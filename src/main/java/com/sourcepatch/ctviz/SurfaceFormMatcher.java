@@ -0,0 +1,436 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over the lowercase UMLS surface forms of conditions.
+ *
+ * <p>
+ * Finds the longest surface form that occurs as a whole, space-delimited
+ * phrase in a condition text with a single pass over the text. The matching
+ * rules are the ones originally applied by a scan over every surface form:
+ * <ul>
+ * <li>matching is case-insensitive;</li>
+ * <li>surface forms written entirely in uppercase, such as acronyms, are
+ * ignored;</li>
+ * <li>only the first occurrence of a surface form in the text is considered,
+ * and it must be delimited by spaces or by the ends of the text;</li>
+ * <li>the longest match wins, with ties going to the surface form that comes
+ * first in the iteration order given to {@link #build(Iterable)}.</li>
+ * </ul>
+ *
+ * <p>
+ * Instances are immutable after construction and can be shared across
+ * threads. The automaton can be saved to a file and read back without
+ * rebuilding it, directly from a memory-mapped buffer.
+ *
+ * @author Denilson Nastacio
+ */
+public class SurfaceFormMatcher {
+
+	private static final int ROOT = 0;
+	private static final int NONE = -1;
+
+	private static final long EMPTY_KEY = -1L;
+
+	/*
+	 * Node columns.
+	 */
+	private IntBuffer depth;
+	private IntBuffer fail;
+	private IntBuffer output;
+	private IntBuffer outputLink;
+	private CharBuffer incomingChar;
+	private IntBuffer parent;
+	private int nodeCount;
+
+	/*
+	 * Goto function as an open-addressing table of (node, char) -> node.
+	 */
+	private LongBuffer edgeKeys;
+	private IntBuffer edgeTargets;
+	private int edgeCount;
+
+	private final List<String> surfaceForms;
+
+	/**
+	 *
+	 * @param surfaceForms
+	 */
+	private SurfaceFormMatcher(List<String> surfaceForms) {
+		this.surfaceForms = surfaceForms;
+		this.depth = IntBuffer.allocate(1024);
+		this.fail = IntBuffer.allocate(1024);
+		this.output = IntBuffer.allocate(1024);
+		this.outputLink = IntBuffer.allocate(1024);
+		this.incomingChar = CharBuffer.allocate(1024);
+		this.parent = IntBuffer.allocate(1024);
+		this.nodeCount = 1;
+		this.output.put(ROOT, NONE);
+		this.outputLink.put(ROOT, NONE);
+		this.edgeKeys = emptyEdgeKeys(2048);
+		this.edgeTargets = IntBuffer.allocate(2048);
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param surfaceForms
+	 *            dictionary surface forms, in the order used to break ties
+	 *            between matches of the same length
+	 * @return automaton for the surface forms
+	 */
+	public static SurfaceFormMatcher build(Iterable<String> surfaceForms) {
+		int count = 0;
+		for (@SuppressWarnings("unused")
+		String surfaceForm : surfaceForms) {
+			count++;
+		}
+		String[] forms = new String[count];
+		int i = 0;
+		for (String surfaceForm : surfaceForms) {
+			forms[i++] = surfaceForm;
+		}
+
+		SurfaceFormMatcher matcher = new SurfaceFormMatcher(Arrays.asList(forms));
+		for (int formId = 0; formId < forms.length; formId++) {
+			String surfaceForm = forms[formId];
+			if (surfaceForm.isEmpty() || surfaceForm.equals(surfaceForm.toUpperCase())) {
+				continue;
+			}
+			matcher.addSurfaceForm(surfaceForm.toLowerCase(), formId);
+		}
+		matcher.linkFailures();
+		matcher.incomingChar = null;
+		matcher.parent = null;
+		return matcher;
+	}
+
+	/**
+	 * Reads an automaton written by {@link #write(FileChannel)}, using the
+	 * buffer as storage instead of copying it.
+	 *
+	 * @param in
+	 *            buffer positioned at the automaton, left positioned after it
+	 * @param surfaceForms
+	 *            the surface forms given to {@link #build(Iterable)}, in the
+	 *            same order
+	 * @return automaton for the surface forms
+	 * @throws IOException
+	 *             if the buffer does not hold an automaton for as many
+	 *             surface forms
+	 */
+	public static SurfaceFormMatcher read(ByteBuffer in, List<String> surfaceForms) throws IOException {
+		SurfaceFormMatcher matcher = new SurfaceFormMatcher(surfaceForms);
+		matcher.depth = BinarySnapshot.getInts(in);
+		matcher.fail = BinarySnapshot.getInts(in);
+		matcher.output = BinarySnapshot.getInts(in);
+		matcher.outputLink = BinarySnapshot.getInts(in);
+		matcher.edgeKeys = BinarySnapshot.getLongs(in);
+		matcher.edgeTargets = BinarySnapshot.getInts(in);
+		matcher.incomingChar = null;
+		matcher.parent = null;
+		matcher.nodeCount = matcher.depth.limit();
+		int edgeCapacity = matcher.edgeKeys.limit();
+		if (matcher.fail.limit() != matcher.nodeCount || matcher.output.limit() != matcher.nodeCount
+				|| matcher.outputLink.limit() != matcher.nodeCount || matcher.edgeTargets.limit() != edgeCapacity
+				|| Integer.bitCount(edgeCapacity) != 1) {
+			throw new IOException("Inconsistent surface form automaton");
+		}
+		for (int node = 0; node < matcher.nodeCount; node++) {
+			if (matcher.output.get(node) >= surfaceForms.size()) {
+				throw new IOException("Surface form automaton built for more than " + surfaceForms.size()
+						+ " surface forms");
+			}
+		}
+		return matcher;
+	}
+
+	/**
+	 * Writes the automaton at the current position of the channel.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(FileChannel out) throws IOException {
+		BinarySnapshot.putInts(out, depth, nodeCount);
+		BinarySnapshot.putInts(out, fail, nodeCount);
+		BinarySnapshot.putInts(out, output, nodeCount);
+		BinarySnapshot.putInts(out, outputLink, nodeCount);
+		BinarySnapshot.putLongs(out, edgeKeys, edgeKeys.limit());
+		BinarySnapshot.putInts(out, edgeTargets, edgeTargets.limit());
+	}
+
+	/**
+	 *
+	 * @param text
+	 *            condition text
+	 * @return the longest surface form found in the text as a whole phrase, or
+	 *         <code>null</code> if there is none
+	 */
+	public String findLongest(String text) {
+		String lowerCase = text.toLowerCase();
+		int length = lowerCase.length();
+
+		int best = NONE;
+		int[] seen = null;
+		int seenCount = 0;
+		int state = ROOT;
+		for (int i = 0; i < length; i++) {
+			char ch = lowerCase.charAt(i);
+			int next = transition(state, ch);
+			while (next == NONE && state != ROOT) {
+				state = fail.get(state);
+				next = transition(state, ch);
+			}
+			state = next == NONE ? ROOT : next;
+
+			int node = output.get(state) != NONE ? state : outputLink.get(state);
+			for (; node != NONE; node = outputLink.get(node)) {
+				// Mirrors indexOf: only the first occurrence of a surface form
+				// is checked for word boundaries.
+				if (seen == null) {
+					seen = new int[8];
+				} else if (contains(seen, seenCount, node)) {
+					continue;
+				} else if (seenCount == seen.length) {
+					seen = Arrays.copyOf(seen, seenCount * 2);
+				}
+				seen[seenCount++] = node;
+
+				int start = i - depth.get(node) + 1;
+				boolean startsWord = start == 0 || lowerCase.charAt(start - 1) == ' ';
+				boolean endsWord = i + 1 == length || lowerCase.charAt(i + 1) == ' ';
+				if (startsWord && endsWord) {
+					int formId = output.get(node);
+					if (best == NONE || isBetter(formId, best)) {
+						best = formId;
+					}
+				}
+			}
+		}
+
+		return best != NONE ? surfaceForms.get(best) : null;
+	}
+
+	/**
+	 *
+	 * @return number of states in the automaton
+	 */
+	public int size() {
+		return nodeCount;
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 *
+	 * @param lowerCase
+	 * @param formId
+	 */
+	private void addSurfaceForm(String lowerCase, int formId) {
+		int node = ROOT;
+		for (int i = 0; i < lowerCase.length(); i++) {
+			char ch = lowerCase.charAt(i);
+			int next = transition(node, ch);
+			if (next == NONE) {
+				next = newNode(node, ch);
+				putTransition(node, ch, next);
+			}
+			node = next;
+		}
+		if (output.get(node) == NONE || isBetter(formId, output.get(node))) {
+			output.put(node, formId);
+		}
+	}
+
+	/**
+	 * Computes failure and output links, visiting nodes in order of depth so
+	 * that the links of shallower nodes are always ready.
+	 */
+	private void linkFailures() {
+		int maxDepth = 0;
+		for (int node = 0; node < nodeCount; node++) {
+			maxDepth = Math.max(maxDepth, depth.get(node));
+		}
+		int[] depthStart = new int[maxDepth + 2];
+		for (int node = 0; node < nodeCount; node++) {
+			depthStart[depth.get(node) + 1]++;
+		}
+		for (int d = 1; d < depthStart.length; d++) {
+			depthStart[d] += depthStart[d - 1];
+		}
+		int[] byDepth = new int[nodeCount];
+		for (int node = 0; node < nodeCount; node++) {
+			byDepth[depthStart[depth.get(node)]++] = node;
+		}
+
+		fail.put(ROOT, ROOT);
+		for (int node : byDepth) {
+			if (node == ROOT) {
+				continue;
+			}
+			int p = parent.get(node);
+			if (p == ROOT) {
+				fail.put(node, ROOT);
+			} else {
+				char ch = incomingChar.get(node);
+				int f = fail.get(p);
+				int next = transition(f, ch);
+				while (next == NONE && f != ROOT) {
+					f = fail.get(f);
+					next = transition(f, ch);
+				}
+				fail.put(node, next == NONE ? ROOT : next);
+			}
+			int f = fail.get(node);
+			outputLink.put(node, output.get(f) != NONE ? f : outputLink.get(f));
+		}
+	}
+
+	/**
+	 *
+	 * @param formId
+	 * @param otherFormId
+	 * @return <code>true</code> if the first surface form wins over the second
+	 */
+	private boolean isBetter(int formId, int otherFormId) {
+		int length = surfaceForms.get(formId).length();
+		int otherLength = surfaceForms.get(otherFormId).length();
+		return length > otherLength || (length == otherLength && formId < otherFormId);
+	}
+
+	/**
+	 *
+	 * @param parentNode
+	 * @param ch
+	 *            character on the edge from the parent node
+	 * @return
+	 */
+	private int newNode(int parentNode, char ch) {
+		if (nodeCount == depth.limit()) {
+			int capacity = nodeCount * 2;
+			depth = IntBuffer.wrap(Arrays.copyOf(depth.array(), capacity));
+			fail = IntBuffer.wrap(Arrays.copyOf(fail.array(), capacity));
+			output = IntBuffer.wrap(Arrays.copyOf(output.array(), capacity));
+			outputLink = IntBuffer.wrap(Arrays.copyOf(outputLink.array(), capacity));
+			incomingChar = CharBuffer.wrap(Arrays.copyOf(incomingChar.array(), capacity));
+			parent = IntBuffer.wrap(Arrays.copyOf(parent.array(), capacity));
+		}
+		int node = nodeCount++;
+		depth.put(node, depth.get(parentNode) + 1);
+		output.put(node, NONE);
+		outputLink.put(node, NONE);
+		incomingChar.put(node, ch);
+		parent.put(node, parentNode);
+		return node;
+	}
+
+	/**
+	 *
+	 * @param node
+	 * @param ch
+	 * @return target node or {@link #NONE}
+	 */
+	private int transition(int node, char ch) {
+		long key = edgeKey(node, ch);
+		int mask = edgeKeys.limit() - 1;
+		for (int slot = mix(key) & mask;; slot = (slot + 1) & mask) {
+			long slotKey = edgeKeys.get(slot);
+			if (slotKey == key) {
+				return edgeTargets.get(slot);
+			}
+			if (slotKey == EMPTY_KEY) {
+				return NONE;
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param node
+	 * @param ch
+	 * @param target
+	 */
+	private void putTransition(int node, char ch, int target) {
+		if ((edgeCount + 1) * 2 > edgeKeys.limit()) {
+			rehash(edgeKeys.limit() * 2);
+		}
+		long key = edgeKey(node, ch);
+		int mask = edgeKeys.limit() - 1;
+		int slot = mix(key) & mask;
+		while (edgeKeys.get(slot) != EMPTY_KEY) {
+			slot = (slot + 1) & mask;
+		}
+		edgeKeys.put(slot, key);
+		edgeTargets.put(slot, target);
+		edgeCount++;
+	}
+
+	/**
+	 *
+	 * @param capacity
+	 */
+	private void rehash(int capacity) {
+		LongBuffer oldKeys = edgeKeys;
+		IntBuffer oldTargets = edgeTargets;
+		edgeKeys = emptyEdgeKeys(capacity);
+		edgeTargets = IntBuffer.allocate(capacity);
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.limit(); i++) {
+			long key = oldKeys.get(i);
+			if (key != EMPTY_KEY) {
+				int slot = mix(key) & mask;
+				while (edgeKeys.get(slot) != EMPTY_KEY) {
+					slot = (slot + 1) & mask;
+				}
+				edgeKeys.put(slot, key);
+				edgeTargets.put(slot, oldTargets.get(i));
+			}
+		}
+	}
+
+	private static LongBuffer emptyEdgeKeys(int capacity) {
+		long[] keys = new long[capacity];
+		Arrays.fill(keys, EMPTY_KEY);
+		return LongBuffer.wrap(keys);
+	}
+
+	private static long edgeKey(int node, char ch) {
+		return ((long) node << 16) | ch;
+	}
+
+	private static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static boolean contains(int[] values, int count, int value) {
+		for (int i = 0; i < count; i++) {
+			if (values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,102 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+
+/**
+ * Generated trials, written to a temporary archive in the layout of a
+ * clinicaltrials.gov download, whatever the search term.
+ *
+ * @author Denilson Nastacio
+ */
+public class SyntheticTrialSource implements TrialSource {
+
+	private final IntFunction<ClinicalStudy> studies;
+	private final int count;
+
+	/**
+	 *
+	 * @param studies
+	 *            generates the study at an index, the same study for the
+	 *            same index
+	 * @param count
+	 *            number of studies
+	 */
+	public SyntheticTrialSource(IntFunction<ClinicalStudy> studies, int count) {
+		this.studies = studies;
+		this.count = count;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 * Writes the studies in the layout of a clinicaltrials.gov download, one
+	 * XML file per study named after its NCT id.
+	 *
+	 * @param os
+	 * @throws IOException
+	 */
+	public void writeArchive(OutputStream os) throws IOException {
+		try {
+			Marshaller m = StudyUnmarshallers.getContext().createMarshaller();
+			m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+			ZipOutputStream zos = new ZipOutputStream(os);
+			for (int i = 0; i < count; i++) {
+				ClinicalStudy study = studies.apply(i);
+				zos.putNextEntry(new ZipEntry(study.getIdInfo().getNctId() + ".xml"));
+				m.marshal(study, zos);
+				zos.closeEntry();
+			}
+			zos.finish();
+		} catch (JAXBException e) {
+			throw new IOException("Unable to write synthetic studies", e);
+		}
+	}
+
+	/**
+	 * The temporary archive is deleted when the returned archive is closed.
+	 */
+	@Override
+	public StudyArchive open(String searchTerm, Predicate<String> nctIdFilter) throws IOException {
+		Path archive = Files.createTempFile("ctviz-synthetic", ".zip");
+		try {
+			try (OutputStream os = Files.newOutputStream(archive)) {
+				writeArchive(os);
+			}
+			return new StudyArchive(archive, nctIdFilter) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						Files.deleteIfExists(archive);
+					}
+				}
+			};
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(archive);
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.Collection;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.apache.tinkerpop.gremlin.util.iterator.IteratorUtils;
+
+/**
+ * TinkerPop graph, such as a TinkerGraph, receiving the vertices and edges of
+ * the clinical trials.
+ *
+ * <p>
+ * TinkerPop has no bulk insert, so vertices and edges are in the graph as
+ * soon as they are created. Edges are not weighted; their weight is the
+ * {@link GraphSchema#EDGE_PROPERTY_COUNT} property.
+ *
+ * @author Denilson Nastacio
+ */
+public class TinkerPopGraphSink implements GraphSink<Vertex, Edge> {
+
+	private final Graph g;
+
+	/**
+	 *
+	 * @param g
+	 */
+	public TinkerPopGraphSink(Graph g) {
+		this.g = g;
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	@Override
+	public Vertex newVertex(String label) {
+		return g.addVertex(T.label, label);
+	}
+
+	@Override
+	public void addVertex(Vertex vertex) {
+		// Already in the graph.
+	}
+
+	@Override
+	public Edge newEdge(Vertex source, Vertex target, String label) {
+		return source.addEdge(label, target);
+	}
+
+	@Override
+	public void addEdge(Edge edge) {
+		// Already in the graph.
+	}
+
+	@Override
+	public String getVertexLabel(Vertex vertex) {
+		return vertex.label();
+	}
+
+	@Override
+	public Object getVertexProperty(Vertex vertex, String property) {
+		return vertex.property(property).orElse(null);
+	}
+
+	@Override
+	public void setVertexProperty(Vertex vertex, String property, Object value) {
+		if (value != null) {
+			vertex.property(VertexProperty.Cardinality.single, property, value);
+		}
+	}
+
+	@Override
+	public void removeVertexProperty(Vertex vertex, String property) {
+		vertex.property(property).remove();
+	}
+
+	@Override
+	public String getEdgeLabel(Edge edge) {
+		return edge.label();
+	}
+
+	@Override
+	public Vertex getEdgeSource(Edge edge) {
+		return edge.outVertex();
+	}
+
+	@Override
+	public Vertex getEdgeTarget(Edge edge) {
+		return edge.inVertex();
+	}
+
+	@Override
+	public Object getEdgeProperty(Edge edge, String property) {
+		return edge.property(property).orElse(null);
+	}
+
+	@Override
+	public void setEdgeProperty(Edge edge, String property, Object value) {
+		if (value != null) {
+			edge.property(property, value);
+		}
+	}
+
+	@Override
+	public void setEdgeWeight(Edge edge, double weight) {
+		// Edges are not weighted.
+	}
+
+	@Override
+	public Iterable<Vertex> getVertices() {
+		return g::vertices;
+	}
+
+	@Override
+	public Iterable<Edge> getEdges() {
+		return g::edges;
+	}
+
+	@Override
+	public Collection<Edge> getEdges(Vertex vertex) {
+		return IteratorUtils.list(vertex.edges(Direction.BOTH));
+	}
+
+	@Override
+	public boolean hasEdges(Vertex vertex) {
+		return vertex.edges(Direction.BOTH).hasNext();
+	}
+
+	@Override
+	public void removeVertex(Vertex vertex) {
+		vertex.remove();
+	}
+
+	@Override
+	public void removeEdge(Edge edge) {
+		edge.remove();
+	}
+}
@@ -0,0 +1,430 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Concurrent cache with a maximum size, evicting entries with the W-TinyLFU
+ * policy.
+ *
+ * <p>
+ * New entries go to a small LRU window. Entries leaving the window compete
+ * with the least recently used entry of the main area, and the one used less
+ * often, according to a frequency sketch of recent accesses, is evicted. The
+ * main area is split in a probation segment and a protected segment for
+ * entries used more than once. The policy keeps frequently used entries
+ * through scans of values used only once, which is how condition texts look
+ * across a search: a few conditions appear in many studies and most appear
+ * in one.
+ *
+ * <p>
+ * Lookups are lock-free. The policy is updated under a lock, which reads only
+ * try to take, so some accesses are not recorded when threads compete for it.
+ * Values are loaded outside of the lock, so two threads missing the same key
+ * may both load it, and the first value stored wins.
+ *
+ * @author Denilson Nastacio
+ *
+ * @param <K>
+ *            key type
+ * @param <V>
+ *            value type
+ */
+public class TinyLfuCache<K, V> {
+
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+	private static final int REMOVED = -1;
+
+	private final int maximumSize;
+	private final int windowMaximum;
+	private final int protectedMaximum;
+
+	private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+	private final ReentrantLock policyLock = new ReentrantLock();
+	private final FrequencySketch sketch;
+
+	private final AccessOrder<K, V> window = new AccessOrder<>();
+	private final AccessOrder<K, V> probation = new AccessOrder<>();
+	private final AccessOrder<K, V> protectedArea = new AccessOrder<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder loadNanos = new LongAdder();
+
+	/**
+	 *
+	 * @param maximumSize
+	 *            maximum number of entries
+	 */
+	public TinyLfuCache(int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+		}
+		this.maximumSize = maximumSize;
+		this.windowMaximum = Math.max(1, maximumSize / 100);
+		this.protectedMaximum = (maximumSize - windowMaximum) * 4 / 5;
+		this.sketch = new FrequencySketch(maximumSize);
+	}
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param key
+	 * @param loader
+	 *            computes the value of keys missing from the cache, never
+	 *            returning <code>null</code>
+	 * @return value for the key
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		Node<K, V> node = data.get(key);
+		if (node != null) {
+			hits.increment();
+			afterRead(node);
+			return node.value;
+		}
+
+		misses.increment();
+		long start = System.nanoTime();
+		V value = Objects.requireNonNull(loader.apply(key), "Loaded value");
+		loadNanos.add(System.nanoTime() - start);
+		loads.increment();
+		return putIfAbsent(key, value);
+	}
+
+	/**
+	 * Adds an entry without counting a miss or a load, such as entries saved
+	 * by a previous run.
+	 *
+	 * @param key
+	 * @param value
+	 * @return value in the cache for the key, which is the previous value if
+	 *         there was one
+	 */
+	public V putIfAbsent(K key, V value) {
+		Node<K, V> node = new Node<>(key, Objects.requireNonNull(value, "Value"));
+		Node<K, V> previous = data.putIfAbsent(key, node);
+		if (previous != null) {
+			afterRead(previous);
+			return previous.value;
+		}
+		afterWrite(node);
+		return value;
+	}
+
+	/**
+	 *
+	 * @param action
+	 *            receives each entry in the cache
+	 */
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		data.forEach((key, node) -> action.accept(key, node.value));
+	}
+
+	/**
+	 *
+	 * @return number of entries in the cache
+	 */
+	public int size() {
+		return data.size();
+	}
+
+	/**
+	 *
+	 * @return maximum number of entries in the cache
+	 */
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 *
+	 * @return lookups answered from the cache
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 *
+	 * @return lookups that loaded the value
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 *
+	 * @return entries removed to stay within the maximum size
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 *
+	 * @return values loaded
+	 */
+	public long getLoadCount() {
+		return loads.sum();
+	}
+
+	/**
+	 *
+	 * @return time spent loading values
+	 */
+	public long getTotalLoadNanos() {
+		return loadNanos.sum();
+	}
+
+	/**
+	 *
+	 * @return fraction of the lookups answered from the cache
+	 */
+	public double getHitRate() {
+		long hitCount = getHitCount();
+		long requests = hitCount + getMissCount();
+		return requests == 0 ? 1.0 : (double) hitCount / requests;
+	}
+
+	/**
+	 *
+	 * @return one-line summary of the counters
+	 */
+	public String getStatistics() {
+		long loadCount = getLoadCount();
+		long totalLoadNanos = getTotalLoadNanos();
+		return String.format("size=%d/%d hits=%d misses=%d hitRate=%.1f%% evictions=%d loads=%d loadTime=%dms"
+				+ " averageLoad=%.1fus", size(), maximumSize, getHitCount(), getMissCount(), getHitRate() * 100,
+				getEvictionCount(), loadCount, TimeUnit.NANOSECONDS.toMillis(totalLoadNanos),
+				loadCount == 0 ? 0.0 : totalLoadNanos / 1000.0 / loadCount);
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private void afterRead(Node<K, V> node) {
+		if (!policyLock.tryLock()) {
+			return;
+		}
+		try {
+			sketch.increment(node.key.hashCode());
+			switch (node.area) {
+			case WINDOW:
+				window.moveToBack(node);
+				break;
+			case PROBATION:
+				probation.remove(node);
+				protectedArea.addToBack(node, PROTECTED);
+				if (protectedArea.size > protectedMaximum) {
+					probation.addToBack(protectedArea.removeFirst(), PROBATION);
+				}
+				break;
+			case PROTECTED:
+				protectedArea.moveToBack(node);
+				break;
+			default:
+				// Evicted while it was read.
+			}
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	private void afterWrite(Node<K, V> node) {
+		policyLock.lock();
+		try {
+			sketch.increment(node.key.hashCode());
+			window.addToBack(node, WINDOW);
+			while (window.size > windowMaximum) {
+				probation.addToBack(window.removeFirst(), PROBATION);
+			}
+			while (window.size + probation.size + protectedArea.size > maximumSize) {
+				evict();
+			}
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	/**
+	 * Evicts the least recently used entry in probation or the entry that
+	 * just left the window, whichever was used less often.
+	 */
+	private void evict() {
+		Node<K, V> victim = probation.first;
+		Node<K, V> candidate = probation.last;
+		Node<K, V> evicted;
+		if (victim == null) {
+			evicted = protectedArea.first != null ? protectedArea.first : window.first;
+		} else if (victim == candidate) {
+			evicted = victim;
+		} else {
+			evicted = sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode()) ? victim
+					: candidate;
+		}
+		switch (evicted.area) {
+		case WINDOW:
+			window.remove(evicted);
+			break;
+		case PROBATION:
+			probation.remove(evicted);
+			break;
+		default:
+			protectedArea.remove(evicted);
+		}
+		evicted.area = REMOVED;
+		data.remove(evicted.key, evicted);
+		evictions.increment();
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Entry of the cache, linked in the access order of its area.
+	 */
+	private static class Node<K, V> {
+		private final K key;
+		private final V value;
+		private int area = REMOVED;
+		private Node<K, V> previous;
+		private Node<K, V> next;
+
+		Node(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Entries of an area, from least to most recently used.
+	 */
+	private static class AccessOrder<K, V> {
+		private Node<K, V> first;
+		private Node<K, V> last;
+		private int size;
+
+		void addToBack(Node<K, V> node, int area) {
+			node.area = area;
+			node.previous = last;
+			node.next = null;
+			if (last == null) {
+				first = node;
+			} else {
+				last.next = node;
+			}
+			last = node;
+			size++;
+		}
+
+		void moveToBack(Node<K, V> node) {
+			if (node != last) {
+				int area = node.area;
+				remove(node);
+				addToBack(node, area);
+			}
+		}
+
+		Node<K, V> removeFirst() {
+			Node<K, V> node = first;
+			remove(node);
+			return node;
+		}
+
+		void remove(Node<K, V> node) {
+			if (node.previous == null) {
+				first = node.next;
+			} else {
+				node.previous.next = node.next;
+			}
+			if (node.next == null) {
+				last = node.previous;
+			} else {
+				node.next.previous = node.previous;
+			}
+			node.previous = null;
+			node.next = null;
+			size--;
+		}
+	}
+
+	/**
+	 * Count-min sketch of 4-bit counters, halved periodically so that the
+	 * frequencies reflect recent accesses.
+	 */
+	private static class FrequencySketch {
+
+		private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+				0xcbf29ce484222325L };
+
+		private static final long RESET_MASK = 0x7777777777777777L;
+
+		private final long[] table;
+		private final int tableMask;
+		private final int sampleSize;
+		private int additions;
+
+		FrequencySketch(int maximumSize) {
+			int length = Integer.highestOneBit(Math.max(2, Math.min(maximumSize, 1 << 26)) - 1) << 1;
+			this.table = new long[length];
+			this.tableMask = length - 1;
+			this.sampleSize = 10 * Math.min(maximumSize, Integer.MAX_VALUE / 10);
+		}
+
+		int frequency(int hash) {
+			int frequency = Integer.MAX_VALUE;
+			for (int i = 0; i < SEEDS.length; i++) {
+				int h = rowHash(hash, i);
+				int shift = (h >>> 28) << 2;
+				frequency = Math.min(frequency, (int) ((table[h & tableMask] >>> shift) & 0xF));
+			}
+			return frequency;
+		}
+
+		void increment(int hash) {
+			boolean added = false;
+			for (int i = 0; i < SEEDS.length; i++) {
+				int h = rowHash(hash, i);
+				int index = h & tableMask;
+				int shift = (h >>> 28) << 2;
+				if (((table[index] >>> shift) & 0xF) < 15) {
+					table[index] += 1L << shift;
+					added = true;
+				}
+			}
+			if (added && ++additions >= sampleSize) {
+				for (int i = 0; i < table.length; i++) {
+					table[i] = (table[i] >>> 1) & RESET_MASK;
+				}
+				additions /= 2;
+			}
+		}
+
+		private static int rowHash(int hash, int row) {
+			long h = (hash + SEEDS[row]) * SEEDS[row];
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.util.function.Predicate;
+
+/**
+ * Source of the clinical trials matching a search term.
+ *
+ * @author Denilson Nastacio
+ */
+public interface TrialSource {
+
+	/**
+	 *
+	 * @param searchTerm
+	 *            clinicaltrials.gov search term, ignored by sources holding a
+	 *            fixed set of trials
+	 * @param nctIdFilter
+	 *            selects the trials to expose, by NCT id
+	 * @return archive with the trials, closed by the caller
+	 * @throws IOException
+	 */
+	StudyArchive open(String searchTerm, Predicate<String> nctIdFilter) throws IOException;
+
+	/**
+	 *
+	 * @return generated trials if {@link StudyGenerator#PROPERTY_TRIALS} is
+	 *         set, downloaded trials otherwise
+	 */
+	static TrialSource fromProperties() {
+		Integer trials = Integer.getInteger(StudyGenerator.PROPERTY_TRIALS);
+		if (trials != null) {
+			return new SyntheticTrialSource(StudyGenerator.fromProperties(), trials);
+		}
+		return HttpTrialSource.fromProperties();
+	}
+}
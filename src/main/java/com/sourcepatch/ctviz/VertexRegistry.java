@@ -0,0 +1,139 @@
+/********************************************************* {COPYRIGHT-TOP} ***
+ * ctgov-viz
+ *
+ * Public domain
+ * MIT License
+ *
+ * https://github.com/nastacio/clinical-viz
+ ********************************************************* {COPYRIGHT-END} **/
+package com.sourcepatch.ctviz;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Hash index of the vertices in one graph, keyed by vertex label and by the
+ * natural key of each vertex type.
+ *
+ * <p>
+ * Natural keys are the normalized condition name for conditions, the agency
+ * name for sponsors, the intervention name for interventions, the full
+ * address for locations and the NCT id for trials, see
+ * {@link #getKeyProperty(String)}. Lookups are constant time, replacing the
+ * scans over every vertex in the graph.
+ *
+ * <p>
+ * Instances are not thread-safe and must be used from the thread that writes
+ * to the graph.
+ *
+ * @param <V>
+ *            vertex type of the underlying graph library
+ *
+ * @author Denilson Nastacio
+ */
+public class VertexRegistry<V> {
+
+	private final Map<String, Map<String, V>> verticesByLabel = new HashMap<>();
+
+	/*
+	 * Public methods.
+	 */
+
+	/**
+	 *
+	 * @param vertexLabel
+	 *            one of the <code>GraphSchema.VERTEX_LABEL_*</code> values
+	 * @param key
+	 *            natural key of the vertex
+	 * @param factory
+	 *            creates and adds the vertex to the graph when it is not yet
+	 *            registered
+	 * @return the registered vertex for the key
+	 */
+	public V getOrCreate(String vertexLabel, String key, Function<String, V> factory) {
+		return getLabelIndex(vertexLabel).computeIfAbsent(key, factory);
+	}
+
+	/**
+	 *
+	 * @param vertexLabel
+	 * @param key
+	 * @return the registered vertex or <code>null</code> if there is none
+	 */
+	public V get(String vertexLabel, String key) {
+		Map<String, V> labelIndex = verticesByLabel.get(vertexLabel);
+		return labelIndex != null ? labelIndex.get(key) : null;
+	}
+
+	/**
+	 * Registers a vertex that was created outside this registry, such as
+	 * vertices in a graph loaded from disk.
+	 *
+	 * @param vertexLabel
+	 * @param key
+	 * @param vertex
+	 */
+	public void register(String vertexLabel, String key, V vertex) {
+		getLabelIndex(vertexLabel).put(key, vertex);
+	}
+
+	/**
+	 *
+	 * @param vertexLabel
+	 * @param key
+	 * @return the vertex that was registered for the key, or
+	 *         <code>null</code> if there was none
+	 */
+	public V remove(String vertexLabel, String key) {
+		Map<String, V> labelIndex = verticesByLabel.get(vertexLabel);
+		return labelIndex != null ? labelIndex.remove(key) : null;
+	}
+
+	/**
+	 *
+	 * @param vertexLabel
+	 * @return number of vertices registered under the label
+	 */
+	public int size(String vertexLabel) {
+		Map<String, V> labelIndex = verticesByLabel.get(vertexLabel);
+		return labelIndex != null ? labelIndex.size() : 0;
+	}
+
+	/**
+	 *
+	 * @param vertexLabel
+	 *            one of the <code>GraphSchema.VERTEX_LABEL_*</code> values
+	 * @return vertex property holding the natural key of vertices with the
+	 *         label, or <code>null</code> for unknown labels
+	 */
+	public static String getKeyProperty(String vertexLabel) {
+		switch (vertexLabel) {
+		case GraphSchema.VERTEX_LABEL_CONDITION:
+			return GraphSchema.VERTEX_PROPERTY_CONDITION_NAME;
+		case GraphSchema.VERTEX_LABEL_INTERVENTION:
+			return GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME;
+		case GraphSchema.VERTEX_LABEL_LOCATION:
+			return GraphSchema.VERTEX_PROPERTY_LOCATION_FULL_ADDRESS;
+		case GraphSchema.VERTEX_LABEL_SPONSOR:
+			return GraphSchema.VERTEX_PROPERTY_SPONSOR_NAME;
+		case GraphSchema.VERTEX_LABEL_TRIAL:
+			return GraphSchema.VERTEX_PROPERTY_NCT_STUDY_ID;
+		default:
+			return null;
+		}
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 *
+	 * @param vertexLabel
+	 * @return
+	 */
+	private Map<String, V> getLabelIndex(String vertexLabel) {
+		return verticesByLabel.computeIfAbsent(vertexLabel, l -> new HashMap<>());
+	}
+}
@@ -0,0 +1,185 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.io.graphml.GraphMLReader;
+import org.apache.tinkerpop.gremlin.structure.io.graphml.GraphMLWriter;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.apache.tinkerpop.gremlin.util.iterator.IteratorUtils;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+
+/**
+ * Unit test and benchmark for the incremental update of {@link AppGraphMl}
+ * graphs.
+ */
+public class AppGraphMlTest {
+
+	private static final String FIRST_DATE = "January 4, 2016";
+	private static final String SECOND_DATE = "March 14, 2016";
+
+	/**
+	 * Updating a graph with changed and new trials must produce the same
+	 * graph as building it from the final versions of the trials.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void updatedGraphMatchesRebuiltGraph() throws IOException {
+		AppGraphMl app = new AppGraphMl();
+		Graph original = TinkerGraph.open();
+		StudyGraphBuilder<Vertex, Edge> originalBuilder = app.newGraphBuilder(original);
+		for (int i = 0; i < 200; i++) {
+			originalBuilder.addStudy(study(i, i, FIRST_DATE));
+		}
+		originalBuilder.flush();
+
+		Graph g = roundTrip(original);
+		StudyGraphBuilder<Vertex, Edge> builder = app.newGraphBuilder(g);
+		assertEquals(200, builder.registerGraph());
+		VertexRegistry<Vertex> registry = builder.getVertexRegistry();
+
+		int changed = 0;
+		for (int i = 0; i < 250; i++) {
+			if (builder.upsertStudy(finalStudy(i))) {
+				changed++;
+			}
+		}
+		assertEquals(200, changed);
+		assertFalse(builder.upsertStudy(finalStudy(10)));
+
+		Graph rebuilt = TinkerGraph.open();
+		StudyGraphBuilder<Vertex, Edge> rebuiltBuilder = app.newGraphBuilder(rebuilt);
+		for (int i = 0; i < 250; i++) {
+			rebuiltBuilder.addStudy(finalStudy(i));
+		}
+		VertexRegistry<Vertex> rebuiltRegistry = rebuiltBuilder.getVertexRegistry();
+
+		assertEquals(IteratorUtils.count(rebuilt.vertices()), IteratorUtils.count(g.vertices()));
+		assertEquals(IteratorUtils.count(rebuilt.edges()), IteratorUtils.count(g.edges()));
+		assertEquals(countOccurrences(rebuilt), countOccurrences(g));
+		for (String label : new String[] { GraphSchema.VERTEX_LABEL_TRIAL, GraphSchema.VERTEX_LABEL_SPONSOR,
+				GraphSchema.VERTEX_LABEL_CONDITION, GraphSchema.VERTEX_LABEL_INTERVENTION,
+				GraphSchema.VERTEX_LABEL_LOCATION }) {
+			assertEquals(label, rebuiltRegistry.size(label), registry.size(label));
+			assertEquals(label, IteratorUtils.count(rebuilt.traversal().V().hasLabel(label)),
+					IteratorUtils.count(g.traversal().V().hasLabel(label)));
+		}
+
+		Vertex trial = registry.get(GraphSchema.VERTEX_LABEL_TRIAL, nctId(120));
+		assertEquals(SECOND_DATE, trial.value(GraphSchema.VERTEX_PROPERTY_NCT_LAST_CHANGED));
+		assertEquals("Study 5120", trial.value(GraphSchema.VERTEX_PROPERTY_NCT_TITLE));
+		assertTrue(trial.edges(Direction.BOTH).hasNext());
+		assertNull(registry.get(GraphSchema.VERTEX_LABEL_TRIAL, nctId(300)));
+	}
+
+	/**
+	 * Compares updating a few trials in a graph read from GraphML with
+	 * building the whole graph again.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkUpdate() throws IOException {
+		int trials = 5000;
+		int changedTrials = 50;
+		AppGraphMl app = new AppGraphMl();
+		Graph original = TinkerGraph.open();
+		StudyGraphBuilder<Vertex, Edge> originalBuilder = app.newGraphBuilder(original);
+		for (int i = 0; i < trials; i++) {
+			originalBuilder.addStudy(study(i, i, FIRST_DATE));
+		}
+		ByteArrayOutputStream graphMl = new ByteArrayOutputStream();
+		GraphMLWriter.build().create().writeGraph(graphMl, original);
+
+		long start = System.nanoTime();
+		Graph rebuilt = TinkerGraph.open();
+		StudyGraphBuilder<Vertex, Edge> rebuiltBuilder = app.newGraphBuilder(rebuilt);
+		for (int i = 0; i < trials; i++) {
+			ClinicalStudy study = i < changedTrials ? study(i, i + 1, SECOND_DATE) : study(i, i, FIRST_DATE);
+			rebuiltBuilder.addStudy(study);
+		}
+		long rebuildNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		Graph g = TinkerGraph.open();
+		GraphMLReader.build().create().readGraph(new ByteArrayInputStream(graphMl.toByteArray()), g);
+		long readNanos = System.nanoTime() - start;
+		StudyGraphBuilder<Vertex, Edge> builder = app.newGraphBuilder(g);
+		builder.registerGraph();
+		for (int i = 0; i < changedTrials; i++) {
+			builder.upsertStudy(study(i, i + 1, SECOND_DATE));
+		}
+		long updateNanos = System.nanoTime() - start;
+
+		assertEquals(IteratorUtils.count(rebuilt.edges()), IteratorUtils.count(g.edges()));
+		System.out.println("Rebuilding " + trials + " trials: " + TimeUnit.NANOSECONDS.toMillis(rebuildNanos)
+				+ "ms. Updating " + changedTrials + " of them: " + TimeUnit.NANOSECONDS.toMillis(updateNanos)
+				+ "ms, " + TimeUnit.NANOSECONDS.toMillis(readNanos) + "ms of which reading GraphML.");
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 *
+	 * @param g
+	 * @return number of relations stated by the trials, summed over the
+	 *         aggregated edges
+	 */
+	private static long countOccurrences(Graph g) {
+		long occurrences = 0;
+		for (Edge e : IteratorUtils.list(g.edges())) {
+			occurrences += e.<Integer> value(GraphSchema.EDGE_PROPERTY_COUNT);
+		}
+		return occurrences;
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return final version of the trials: the first 50 unchanged, the next
+	 *         150 changed and 50 new
+	 */
+	private static ClinicalStudy finalStudy(int index) {
+		if (index < 50) {
+			return study(index, index, FIRST_DATE);
+		}
+		return study(index, index + 5000, SECOND_DATE);
+	}
+
+	private static ClinicalStudy study(int index, int contentIndex, String lastChanged) {
+		ClinicalStudy study = StudyFixtures.newStudy(contentIndex);
+		study.getIdInfo().setNctId(nctId(index));
+		study.setLastchangedDate(lastChanged);
+		return study;
+	}
+
+	private static String nctId(int index) {
+		return String.format("NCT%08d", index);
+	}
+
+	private static Graph roundTrip(Graph g) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.build().create().writeGraph(out, g);
+		Graph result = TinkerGraph.open();
+		GraphMLReader.build().create().readGraph(new ByteArrayInputStream(out.toByteArray()), result);
+		return result;
+	}
+}
@@ -0,0 +1,13 @@
+package com.sourcepatch.ctviz;
+
+/**
+ * JUnit category of the tests measuring performance, which need large
+ * fixtures and assert little. They are left out of the unit tests and run
+ * with the <code>benchmark</code> profile:
+ * 
+ * <pre>
+ * mvn test -Pbenchmark
+ * </pre>
+ */
+public interface Benchmark {
+}
@@ -0,0 +1,343 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Unit test and benchmark for {@link ConditionDictionary} and
+ * {@link IntIntHashMap}.
+ */
+public class ConditionDictionaryTest {
+
+	private static final String[] ROWS = { row("C0006142", "Breast Cancer"), row("C0006142", "breast carcinoma"),
+			row("C0006826", "Cancer"), row("C0006826", "cancer"), row("C0024117", "Lung Cancer"),
+			row("C0001175", "AIDS"), row("C0011849", "Diabetes Mellitus"), row("C0011860", "Diabetes Mellitus, Type 2"),
+			row("C0030193", "Pain"), row("C0024031", "Low Back Pain"), row("C0004604", "Back Pain"),
+			row("C0596263", "Cancer Pain"), row("C0004604", "Low Back Pain"), row("C0030193", "Painful", false),
+			row("C0001175", "Acquired Immunodeficiency Syndrome", false) };
+
+	private static final String[] CONDITIONS = { "Metastatic breast cancer", "Chronic Low Back Pain",
+			"Diabetes Mellitus, Type 2", "cancer", "AIDS", "Painful lesions", "Lung Cancer Pain", "" };
+
+	private Path dir;
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("ctviz-conditions");
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@After
+	public void deleteDir() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path p : files) {
+				Files.delete(p);
+			}
+		}
+		Files.delete(dir);
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void readsRrfRows() throws IOException {
+		ConditionDictionary dictionary = fromRows(ROWS);
+
+		assertEquals(10, dictionary.getConceptCount());
+		assertEquals(14, dictionary.getSurfaceFormCount());
+		assertEquals(6142, dictionary.getCui("breast carcinoma"));
+		assertEquals(4604, dictionary.getCui("Low Back Pain"));
+		assertEquals(ConditionDictionary.NO_CUI, dictionary.getCui("low back pain"));
+		assertEquals("Breast Cancer", dictionary.getPreferredName(6142));
+		assertEquals("Pain", dictionary.getPreferredName(30193));
+		assertEquals("AIDS", dictionary.getPreferredName(1175));
+		assertNull(dictionary.getPreferredName(1));
+		assertEquals("Breast Cancer", dictionary.getMatcher().findLongest("Metastatic breast cancer"));
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void loadsSnapshotLikeRrf() throws IOException {
+		ConditionDictionary built = fromRows(ROWS);
+		Path snapshot = dir.resolve("conditions.dict");
+		built.write(snapshot);
+		ConditionDictionary loaded = ConditionDictionary.load(snapshot);
+
+		assertEquals(built.getConceptCount(), loaded.getConceptCount());
+		assertEquals(built.getSurfaceFormCount(), loaded.getSurfaceFormCount());
+		assertEquals(built.getMatcher().size(), loaded.getMatcher().size());
+		assertEquals(built.getContentHash(), loaded.getContentHash());
+		for (String row : ROWS) {
+			String surfaceForm = row.split("\\|")[14];
+			int cui = built.getCui(surfaceForm);
+			assertEquals(cui, loaded.getCui(surfaceForm));
+			assertEquals(built.getPreferredName(cui), loaded.getPreferredName(cui));
+		}
+		assertEquals(ConditionDictionary.NO_CUI, loaded.getCui("Headache"));
+		for (String condition : CONDITIONS) {
+			assertEquals(condition, built.getMatcher().findLongest(condition),
+					loaded.getMatcher().findLongest(condition));
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void parsesAndFormatsCuis() {
+		assertEquals(6142, ConditionDictionary.parseCui("C0006142"));
+		assertEquals(0, ConditionDictionary.parseCui("C0000000"));
+		assertEquals(ConditionDictionary.NO_CUI, ConditionDictionary.parseCui("c0006142"));
+		assertEquals(ConditionDictionary.NO_CUI, ConditionDictionary.parseCui("C000614X"));
+		assertEquals(ConditionDictionary.NO_CUI, ConditionDictionary.parseCui("C"));
+		assertEquals(ConditionDictionary.NO_CUI, ConditionDictionary.parseCui("C99999999999"));
+		assertEquals(ConditionDictionary.NO_CUI, ConditionDictionary.parseCui(null));
+		assertEquals("C0006142", ConditionDictionary.formatCui(6142));
+		assertEquals("C0000000", ConditionDictionary.formatCui(0));
+		assertEquals("C12345678", ConditionDictionary.formatCui(12345678));
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void growsAndReadsIntIntHashMap() throws IOException {
+		IntIntHashMap map = new IntIntHashMap(1);
+		for (int i = 0; i < 100000; i += 7) {
+			assertEquals(IntIntHashMap.NO_VALUE, map.put(i, i / 7));
+		}
+		assertEquals(10, map.put(70, 11));
+		assertEquals(14286, map.size());
+
+		Path snapshot = dir.resolve("map.bin");
+		try (FileChannel out = FileChannel.open(snapshot, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			map.write(out);
+		}
+		IntIntHashMap loaded = IntIntHashMap.read(BinarySnapshot.map(snapshot));
+		assertEquals(map.size(), loaded.size());
+		for (int i = 0; i < 100000; i++) {
+			int expected = i % 7 != 0 ? IntIntHashMap.NO_VALUE : i == 70 ? 11 : i / 7;
+			assertEquals(expected, map.get(i));
+			assertEquals(expected, loaded.get(i));
+		}
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void rejectsOtherFiles() throws IOException {
+		Path notSnapshot = dir.resolve("conditions.dict");
+		Files.write(notSnapshot, "C0006142|ENG|P".getBytes(StandardCharsets.UTF_8));
+		try {
+			ConditionDictionary.load(notSnapshot);
+			fail("Loading a file that is not a snapshot should fail");
+		} catch (IOException e) {
+			// expected
+		}
+
+		Path truncated = dir.resolve("truncated.dict");
+		fromRows(ROWS).write(truncated);
+		byte[] content = Files.readAllBytes(truncated);
+		Files.write(truncated, Arrays.copyOf(content, content.length / 2));
+		try {
+			ConditionDictionary.load(truncated);
+			fail("Loading a truncated snapshot should fail");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Compares the startup time and retained heap of the dictionary, built
+	 * from the archive and read from the snapshot, with the string maps it
+	 * replaces, on a synthetic MRCONSO subset with 45,000 concepts.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkStartupAndHeap() throws IOException {
+		Path archive = dir.resolve("MRCONSO.conditions.zip");
+		writeSyntheticArchive(archive, 45000, 150000);
+		Path snapshot = dir.resolve("MRCONSO.conditions.dict");
+		ConditionDictionary.fromRrf(archive).write(snapshot);
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+		long heapBefore = usedHeap(memory);
+		long start = System.nanoTime();
+		Object[] rrfMaps = loadRrfMaps(archive);
+		long rrfNanos = System.nanoTime() - start;
+		long rrfHeap = usedHeap(memory) - heapBefore;
+
+		heapBefore = usedHeap(memory);
+		start = System.nanoTime();
+		ConditionDictionary built = ConditionDictionary.fromRrf(archive);
+		long builtNanos = System.nanoTime() - start;
+		long builtHeap = usedHeap(memory) - heapBefore;
+
+		heapBefore = usedHeap(memory);
+		start = System.nanoTime();
+		ConditionDictionary loaded = ConditionDictionary.load(snapshot);
+		long snapshotNanos = System.nanoTime() - start;
+		long snapshotHeap = usedHeap(memory) - heapBefore;
+
+		SurfaceFormMatcher rrfMatcher = (SurfaceFormMatcher) rrfMaps[2];
+		Random random = new Random(7);
+		for (int i = 0; i < 2000; i++) {
+			String condition = "chronic " + syntheticSurfaceForm(random) + " of the " + syntheticWord(random);
+			assertEquals(condition, rrfMatcher.findLongest(condition), loaded.getMatcher().findLongest(condition));
+		}
+		@SuppressWarnings("unchecked")
+		Map<String, String> diseaseCui = (Map<String, String>) rrfMaps[1];
+		for (Map.Entry<String, String> entry : diseaseCui.entrySet()) {
+			assertEquals(entry.getValue(), ConditionDictionary.formatCui(built.getCui(entry.getKey())));
+		}
+
+		System.out.println("Condition dictionary with " + loaded.getSurfaceFormCount() + " surface forms and "
+				+ loaded.getMatcher().size() + " matcher states (snapshot " + Files.size(snapshot) / 1024
+				+ "KB):");
+		System.out.println("  String maps from zip:       " + TimeUnit.NANOSECONDS.toMillis(rrfNanos) + "ms, "
+				+ rrfHeap / 1024 + "KB retained heap");
+		System.out.println("  Int tables from zip:        " + TimeUnit.NANOSECONDS.toMillis(builtNanos) + "ms, "
+				+ builtHeap / 1024 + "KB retained heap");
+		System.out.println("  Int tables from snapshot:   " + TimeUnit.NANOSECONDS.toMillis(snapshotNanos) + "ms, "
+				+ snapshotHeap / 1024 + "KB retained heap");
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private static ConditionDictionary fromRows(String... rows) throws IOException {
+		return ConditionDictionary.fromRrf(new BufferedReader(new StringReader(String.join("\n", rows))));
+	}
+
+	private static String row(String cui, String surfaceForm) {
+		return row(cui, surfaceForm, true);
+	}
+
+	private static String row(String cui, String surfaceForm, boolean preferred) {
+		return cui + (preferred ? "|ENG|P|L0000001|PF|S0000001|Y|" : "|ENG|S|L0000002|VO|S0000002|N|")
+				+ "A0000001||M0000001|D000001|MSH|PT|D000001|" + surfaceForm + "|0|N|256|";
+	}
+
+	/**
+	 * The loader the snapshot replaces.
+	 *
+	 * @param archive
+	 * @return concept map, surface form map and matcher
+	 * @throws IOException
+	 */
+	private static Object[] loadRrfMaps(Path archive) throws IOException {
+		Map<String, String> cuiDisease = new TreeMap<>();
+		Map<String, String> diseaseCui = new TreeMap<>();
+		try (ZipFile zf = new ZipFile(archive.toFile())) {
+			ZipEntry entry = zf.getEntry("dsyn.rrf");
+			InputStream zis = zf.getInputStream(entry);
+			BufferedReader br = new BufferedReader(new InputStreamReader(zis));
+
+			String line = null;
+			while ((line = br.readLine()) != null) {
+				String[] tokens = line.split("\\|");
+				String cui = tokens[0];
+				String preferredName = tokens[14];
+
+				cuiDisease.put(cui, preferredName);
+				diseaseCui.put(preferredName, cui);
+			}
+		}
+		return new Object[] { cuiDisease, diseaseCui, SurfaceFormMatcher.build(diseaseCui.keySet()) };
+	}
+
+	private static void writeSyntheticArchive(Path archive, int concepts, int rows) throws IOException {
+		Random random = new Random(42);
+		try (OutputStream os = Files.newOutputStream(archive);
+				ZipOutputStream zos = new ZipOutputStream(os);
+				PrintWriter pw = new PrintWriter(new OutputStreamWriter(zos, StandardCharsets.UTF_8))) {
+			zos.putNextEntry(new ZipEntry("dsyn.rrf"));
+			for (int i = 0; i < rows; i++) {
+				pw.println(row(String.format("C%07d", random.nextInt(concepts)), syntheticSurfaceForm(random)));
+			}
+		}
+	}
+
+	private static String syntheticSurfaceForm(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int words = 1 + random.nextInt(4);
+		for (int w = 0; w < words; w++) {
+			if (w > 0) {
+				sb.append(' ');
+			}
+			String word = syntheticWord(random);
+			sb.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+		}
+		return sb.toString();
+	}
+
+	private static String syntheticWord(Random random) {
+		// Small vocabulary, so that surface forms share prefixes like the
+		// real ones do.
+		int id = (int) Math.abs(random.nextGaussian() * 3000) % 20000;
+		StringBuilder sb = new StringBuilder();
+		Random wordRandom = new Random(id);
+		int length = 3 + wordRandom.nextInt(9);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + wordRandom.nextInt(26)));
+		}
+		return sb.toString();
+	}
+
+	private static long usedHeap(MemoryMXBean memory) {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,306 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Unit test and benchmark for {@link ConditionNormalizer} and
+ * {@link TinyLfuCache}.
+ */
+public class ConditionNormalizerTest {
+
+	private static final String[] ROWS = { row("C0006142", "Breast Cancer"), row("C0006826", "Cancer"),
+			row("C0024117", "Lung Cancer"), row("C0011849", "Diabetes Mellitus"), row("C0030193", "Pain"),
+			row("C0024031", "Low Back Pain") };
+
+	private Path dir;
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("ctviz-normalizer");
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@After
+	public void deleteDir() throws IOException {
+		Files.deleteIfExists(dir.resolve("conditions.cache"));
+		Files.delete(dir);
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void normalizesAndCountsLookups() throws IOException {
+		ConditionNormalizer normalizer = new ConditionNormalizer(fromRows(ROWS), 10, null);
+
+		assertEquals("Breast Cancer", normalizer.normalize("Metastatic breast cancer"));
+		assertEquals("Low Back Pain", normalizer.normalize("Chronic Low Back Pain"));
+		assertEquals("non hodgkin lymphoma", normalizer.normalize("Non-Hodgkin Lymphoma"));
+		assertEquals("Breast Cancer", normalizer.normalize("Metastatic breast cancer"));
+
+		TinyLfuCache<String, String> cache = normalizer.getCache();
+		assertEquals(1, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+		assertEquals(3, cache.getLoadCount());
+		assertEquals(3, cache.size());
+		assertTrue(cache.getTotalLoadNanos() > 0);
+		assertEquals(0.25, cache.getHitRate(), 0.0001);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void evictsBeyondMaximumSize() {
+		TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+		for (int i = 0; i < 1000; i++) {
+			cache.get(i, String::valueOf);
+		}
+		assertEquals(100, cache.size());
+		assertEquals(900, cache.getEvictionCount());
+		assertEquals(1000, cache.getLoadCount());
+
+		TinyLfuCache<Integer, String> single = new TinyLfuCache<>(1);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(String.valueOf(i % 3), single.get(i % 3, String::valueOf));
+		}
+		assertEquals(1, single.size());
+	}
+
+	/**
+	 * Conditions used by many studies stay in the cache while conditions used
+	 * by one study go through it.
+	 */
+	@Test
+	public void keepsFrequentKeysThroughScans() {
+		TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+		int[] hotLoads = new int[1];
+		Function<Integer, String> loader = key -> {
+			if (key < 50) {
+				hotLoads[0]++;
+			}
+			return String.valueOf(key);
+		};
+		for (int round = 0; round < 5; round++) {
+			for (int hot = 0; hot < 50; hot++) {
+				cache.get(hot, loader);
+			}
+		}
+		assertEquals(50, hotLoads[0]);
+
+		for (int i = 0; i < 10000; i++) {
+			cache.get(1000 + i, loader);
+			if (i % 10 == 0) {
+				cache.get(i / 10 % 50, loader);
+			}
+		}
+		assertEquals(50, hotLoads[0]);
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void savesAndReadsCacheFile() throws IOException {
+		Path file = dir.resolve("conditions.cache");
+		ConditionDictionary dictionary = fromRows(ROWS);
+		ConditionNormalizer first = new ConditionNormalizer(dictionary, 10, file);
+		first.normalize("Metastatic breast cancer");
+		first.normalize("Type 2 Diabetes Mellitus");
+		first.normalize("Tab\tseparated");
+		first.save();
+
+		ConditionNormalizer second = new ConditionNormalizer(dictionary, 10, file);
+		assertEquals(2, second.getCache().size());
+		assertEquals("Breast Cancer", second.normalize("Metastatic breast cancer"));
+		assertEquals("Diabetes Mellitus", second.normalize("Type 2 Diabetes Mellitus"));
+		assertEquals(0, second.getCache().getLoadCount());
+
+		ConditionNormalizer otherDictionary = new ConditionNormalizer(fromRows(ROWS[0], ROWS[1]), 10, file);
+		assertEquals(0, otherDictionary.getCache().size());
+
+		// Same number of concepts and surface forms, but other names.
+		String[] renamed = ROWS.clone();
+		renamed[0] = row("C0006142", "Breast Tumors");
+		ConditionNormalizer sameCounts = new ConditionNormalizer(fromRows(renamed), 10, file);
+		assertEquals(0, sameCounts.getCache().size());
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void sharesCacheAcrossThreads() throws Exception {
+		TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(500);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				int seed = t;
+				futures.add(pool.submit(() -> {
+					Random random = new Random(seed);
+					for (int i = 0; i < 50000; i++) {
+						int key = (int) Math.abs(random.nextGaussian() * 1000);
+						assertEquals(String.valueOf(key), cache.get(key, String::valueOf));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertTrue(cache.size() <= 500);
+		assertEquals(200000, cache.getHitCount() + cache.getMissCount());
+	}
+
+	/**
+	 * Compares the hit rate of the cache with an LRU cache of the same size,
+	 * and the time spent normalizing conditions with and without the cache,
+	 * on condition texts drawn from a Zipf distribution.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkHitRate() throws IOException {
+		Random random = new Random(42);
+		String[] rows = new String[20000];
+		String[] surfaceForms = new String[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			surfaceForms[i] = syntheticWord(random) + " " + syntheticWord(random);
+			rows[i] = row(ConditionDictionary.formatCui(i), surfaceForms[i]);
+		}
+		ConditionDictionary dictionary = fromRows(rows);
+		int distinct = 50000;
+		int lookups = 400000;
+		int cacheSize = 2000;
+		String[] conditions = new String[distinct];
+		for (int i = 0; i < distinct; i++) {
+			conditions[i] = "Chronic " + surfaceForms[random.nextInt(surfaceForms.length)] + " of the "
+					+ syntheticWord(random) + " in patients with " + syntheticWord(random);
+		}
+		int[] workload = zipf(distinct, lookups, 0.9, random);
+
+		SurfaceFormMatcher matcher = dictionary.getMatcher();
+		long start = System.nanoTime();
+		for (int i : workload) {
+			matcher.findLongest(conditions[i]);
+		}
+		long uncachedNanos = System.nanoTime() - start;
+
+		ConditionNormalizer normalizer = new ConditionNormalizer(dictionary, cacheSize, null);
+		start = System.nanoTime();
+		for (int i : workload) {
+			normalizer.normalize(conditions[i]);
+		}
+		long cachedNanos = System.nanoTime() - start;
+
+		Map<String, String> lru = new LinkedHashMap<String, String>(cacheSize * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > cacheSize;
+			}
+		};
+		long lruHits = 0;
+		for (int i : workload) {
+			if (lru.get(conditions[i]) != null) {
+				lruHits++;
+			} else {
+				lru.put(conditions[i], conditions[i]);
+			}
+		}
+
+		TinyLfuCache<String, String> cache = normalizer.getCache();
+		System.out.println("Normalizing " + lookups + " conditions (" + distinct + " distinct, Zipf 0.9) with "
+				+ cacheSize + " cache entries:");
+		System.out.println("  " + cache.getStatistics());
+		System.out.println(String.format("  W-TinyLFU hit rate: %.1f%%, LRU hit rate: %.1f%%",
+				cache.getHitRate() * 100, lruHits * 100.0 / lookups));
+		System.out.println("  Time with cache: " + TimeUnit.NANOSECONDS.toMillis(cachedNanos)
+				+ "ms, matcher only: " + TimeUnit.NANOSECONDS.toMillis(uncachedNanos) + "ms");
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private static ConditionDictionary fromRows(String... rows) throws IOException {
+		return ConditionDictionary.fromRrf(new BufferedReader(new StringReader(String.join("\n", rows))));
+	}
+
+	private static String row(String cui, String surfaceForm) {
+		return cui + "|ENG|P|L0000001|PF|S0000001|Y|A0000001||M0000001|D000001|MSH|PT|D000001|" + surfaceForm
+				+ "|0|N|256|";
+	}
+
+	private static String syntheticWord(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int length = 3 + random.nextInt(9);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + random.nextInt(26)));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 *
+	 * @param n
+	 *            number of distinct values
+	 * @param count
+	 *            number of values drawn
+	 * @param exponent
+	 * @param random
+	 * @return values in [0, n), value 0 being the most frequent
+	 */
+	private static int[] zipf(int n, int count, double exponent, Random random) {
+		double[] cumulative = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += 1 / Math.pow(i + 1, exponent);
+			cumulative[i] = sum;
+		}
+		int[] values = new int[count];
+		for (int i = 0; i < count; i++) {
+			int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+			values[i] = Math.min(n - 1, index >= 0 ? index : -index - 1);
+		}
+		return values;
+	}
+}
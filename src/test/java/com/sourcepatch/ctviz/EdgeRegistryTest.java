@@ -0,0 +1,158 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.apache.tinkerpop.gremlin.util.iterator.IteratorUtils;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Unit test and benchmark for {@link EdgeRegistry}.
+ */
+public class EdgeRegistryTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void registersEdgesBySourceTargetAndLabel() {
+		EdgeRegistry<String, String> edges = new EdgeRegistry<>();
+		edges.register("NCI", "Asthma", GraphSchema.EDGE_LABEL_RESEARCHES, "e1", null);
+		edges.register("NCI", "Asthma", GraphSchema.EDGE_LABEL_LEADS, "e2", null);
+
+		assertEquals("e1", edges.get("NCI", "Asthma", GraphSchema.EDGE_LABEL_RESEARCHES));
+		assertNull(edges.get("Asthma", "NCI", GraphSchema.EDGE_LABEL_RESEARCHES));
+		assertEquals(2, edges.size());
+		assertEquals("e2", edges.remove("NCI", "Asthma", GraphSchema.EDGE_LABEL_LEADS));
+		assertNull(edges.get("NCI", "Asthma", GraphSchema.EDGE_LABEL_LEADS));
+		assertEquals(1, edges.size());
+	}
+
+	/**
+	 * NCT ids must be counted per edge, and written as multisets only for the
+	 * edges that changed.
+	 */
+	@Test
+	public void updatesNctIdMultisets() {
+		EdgeRegistry<String, String> edges = new EdgeRegistry<>();
+		edges.register("NCI", "Asthma", GraphSchema.EDGE_LABEL_RESEARCHES, "e1", null);
+		edges.register("NCI", "COPD", GraphSchema.EDGE_LABEL_RESEARCHES, "e2", "NCT3 NCT3 NCT4");
+		assertEquals(1, edges.addNctId("NCI", "Asthma", GraphSchema.EDGE_LABEL_RESEARCHES, "NCT1"));
+		assertEquals(2, edges.addNctId("NCI", "Asthma", GraphSchema.EDGE_LABEL_RESEARCHES, "NCT10"));
+		assertEquals(3, edges.addNctId("NCI", "Asthma", GraphSchema.EDGE_LABEL_RESEARCHES, "NCT1"));
+		assertEquals(4, edges.addNctId("NCI", "Asthma", GraphSchema.EDGE_LABEL_RESEARCHES, "NCT2"));
+		assertEquals("NCT1 NCT1 NCT10 NCT2", edges.getNctIds("NCI", "Asthma", GraphSchema.EDGE_LABEL_RESEARCHES));
+
+		assertTrue(edges.containsNctId("NCI", "Asthma", GraphSchema.EDGE_LABEL_RESEARCHES, "NCT10"));
+		assertFalse(edges.containsNctId("NCI", "Asthma", GraphSchema.EDGE_LABEL_RESEARCHES, "NCT0"));
+		assertFalse(edges.containsNctId("NCI", "Asthma", GraphSchema.EDGE_LABEL_LEADS, "NCT1"));
+		assertTrue(edges.containsNctId("NCI", "COPD", GraphSchema.EDGE_LABEL_RESEARCHES, "NCT3"));
+
+		assertEquals(2, edges.removeNctId("NCI", "Asthma", GraphSchema.EDGE_LABEL_RESEARCHES, "NCT1"));
+		assertEquals("NCT10 NCT2", edges.getNctIds("NCI", "Asthma", GraphSchema.EDGE_LABEL_RESEARCHES));
+		assertEquals(3, edges.removeNctId("NCI", "COPD", GraphSchema.EDGE_LABEL_RESEARCHES, "NCT5"));
+
+		Map<String, String> written = new HashMap<>();
+		assertEquals(1, edges.writeNctIds(written::put));
+		assertEquals(Collections.singletonMap("e1", "NCT10 NCT2"), written);
+		assertEquals(0, edges.writeNctIds(written::put));
+
+		assertEquals(1, edges.removeNctId("NCI", "COPD", GraphSchema.EDGE_LABEL_RESEARCHES, "NCT3"));
+		assertEquals(0, edges.removeNctId("NCI", "COPD", GraphSchema.EDGE_LABEL_RESEARCHES, "NCT4"));
+		assertNull(edges.getNctIds("NCI", "COPD", GraphSchema.EDGE_LABEL_RESEARCHES));
+		edges.remove("NCI", "COPD", GraphSchema.EDGE_LABEL_RESEARCHES);
+		assertEquals(0, edges.writeNctIds(written::put));
+	}
+
+	/**
+	 * Trials 0 and 2000 of the fixtures share their sponsor, collaborator and
+	 * conditions.
+	 */
+	@Test
+	public void aggregatesRelationsStatedByTrials() {
+		Graph g = TinkerGraph.open();
+		VertexRegistry<Vertex> registry = buildGraph(g, 0, 2000);
+
+		Set<String> keys = new HashSet<>();
+		for (Edge e : IteratorUtils.list(g.edges())) {
+			assertTrue(e.toString(), keys.add(e.outVertex().id() + " " + e.label() + " " + e.inVertex().id()));
+		}
+
+		Vertex trial = registry.get(GraphSchema.VERTEX_LABEL_TRIAL, "NCT00000000");
+		Vertex sponsor = registry.get(GraphSchema.VERTEX_LABEL_SPONSOR, "Sponsor 0");
+		List<Edge> sponsors = IteratorUtils.list(trial.edges(Direction.IN, GraphSchema.EDGE_LABEL_SPONSORS));
+		assertEquals(1, sponsors.size());
+		assertSame(sponsor, sponsors.get(0).outVertex());
+		assertEquals(1, (int) sponsors.get(0).<Integer> value(GraphSchema.EDGE_PROPERTY_COUNT));
+		assertEquals(3, IteratorUtils.count(trial.edges(Direction.OUT, GraphSchema.EDGE_LABEL_COVERS)));
+
+		List<Edge> researches = IteratorUtils.list(sponsor.edges(Direction.OUT, GraphSchema.EDGE_LABEL_RESEARCHES));
+		assertEquals(3, researches.size());
+		for (Edge e : researches) {
+			assertEquals(2, (int) e.<Integer> value(GraphSchema.EDGE_PROPERTY_COUNT));
+			assertEquals("NCT00000000 NCT00002000", e.value(GraphSchema.EDGE_PROPERTY_NCT_ID));
+		}
+		assertEquals(1, IteratorUtils.count(sponsor.edges(Direction.OUT, GraphSchema.EDGE_LABEL_LEADS)));
+	}
+
+	/**
+	 * Reports the edges and heap of a graph, and how many edges it would have
+	 * without aggregation.
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkEdgeCount() {
+		int trials = 20000;
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		long baseline = runtime.totalMemory() - runtime.freeMemory();
+		Graph g = TinkerGraph.open();
+		long start = System.nanoTime();
+		int[] indexes = new int[trials];
+		for (int i = 0; i < trials; i++) {
+			indexes[i] = i;
+		}
+		buildGraph(g, indexes);
+		long buildNanos = System.nanoTime() - start;
+		System.gc();
+		long heap = runtime.totalMemory() - runtime.freeMemory() - baseline;
+
+		long edges = 0;
+		long occurrences = 0;
+		for (Edge e : IteratorUtils.list(g.edges())) {
+			edges++;
+			occurrences += e.<Integer> value(GraphSchema.EDGE_PROPERTY_COUNT);
+		}
+		System.out.println(trials + " trials: " + edges + " edges for " + occurrences + " relations, heap "
+				+ heap / 1024 / 1024 + "MB, built in " + buildNanos / 1000000 + "ms.");
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private static VertexRegistry<Vertex> buildGraph(Graph g, int... indexes) {
+		StudyGraphBuilder<Vertex, Edge> builder = new AppGraphMl().newGraphBuilder(g);
+		for (int i : indexes) {
+			builder.addStudy(StudyFixtures.newStudy(i));
+		}
+		builder.flush();
+		return builder.getVertexRegistry();
+	}
+}
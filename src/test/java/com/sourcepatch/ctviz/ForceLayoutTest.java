@@ -0,0 +1,148 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Unit test and benchmark for {@link ForceLayout}.
+ */
+public class ForceLayoutTest {
+
+	/**
+	 * Two dense clusters joined by a single edge must converge into two
+	 * separate groups of nodes.
+	 */
+	@Test
+	public void separatesClusters() {
+		int size = 40;
+		List<int[]> edges = new ArrayList<>();
+		for (int cluster = 0; cluster < 2; cluster++) {
+			for (int i = 0; i < size; i++) {
+				for (int j = i + 1; j < size; j++) {
+					edges.add(new int[] { cluster * size + i, cluster * size + j });
+				}
+			}
+		}
+		edges.add(new int[] { 0, size });
+		Layout layout = new Layout(2 * size, edges);
+
+		int iterations = new ForceLayout(2, 1.2, 0.01, 1000).run(layout.x, layout.y, layout.sources,
+				layout.targets, layout.weights);
+		assertTrue("Iterations: " + iterations, iterations < 1000);
+
+		double within = 0;
+		double across = 0;
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				within += layout.distance(i, j) + layout.distance(size + i, size + j);
+				across += 2 * layout.distance(i, size + j);
+			}
+		}
+		assertTrue("Within " + within + ", across " + across, within * 3 < across);
+	}
+
+	/**
+	 * Forces only depend on the positions at the start of each iteration, so
+	 * the layout must not depend on the number of threads.
+	 */
+	@Test
+	public void threadsDoNotChangeTheLayout() {
+		Layout sequential = newStudyLayout(2000);
+		Layout parallel = newStudyLayout(2000);
+
+		new ForceLayout(1, 1.2, 0.01, 50).run(sequential.x, sequential.y, sequential.sources, sequential.targets,
+				sequential.weights);
+		new ForceLayout(4, 1.2, 0.01, 50).run(parallel.x, parallel.y, parallel.sources, parallel.targets,
+				parallel.weights);
+
+		assertArrayEquals(sequential.x, parallel.x, 0);
+		assertArrayEquals(sequential.y, parallel.y, 0);
+	}
+
+	/**
+	 * Lays out the graph of a large number of trials.
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkLayout() {
+		Layout layout = newStudyLayout(10000);
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		long start = System.nanoTime();
+		int iterations = new ForceLayout(threads, 1.2, 0.01, 300).run(layout.x, layout.y, layout.sources,
+				layout.targets, layout.weights);
+		long nanos = System.nanoTime() - start;
+
+		for (int i = 0; i < layout.x.length; i++) {
+			assertTrue(Float.isFinite(layout.x[i]) && Float.isFinite(layout.y[i]));
+		}
+		System.out.println("Layout of " + layout.x.length + " nodes and " + layout.sources.length + " edges with "
+				+ threads + " threads: " + iterations + " iterations in " + TimeUnit.NANOSECONDS.toMillis(nanos)
+				+ "ms, " + String.format("%.2f", iterations * 1e9 / nanos) + " iterations/s");
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 *
+	 * @param trials
+	 * @return layout of the graph built from the trial fixtures
+	 */
+	private static Layout newStudyLayout(int trials) {
+		SnapshotGraphSink sink = new SnapshotGraphSink(new GraphSnapshot.Builder());
+		StudyGraphBuilder<Integer, Integer> builder = new StudyGraphBuilder<>(sink, ConditionDictionary.empty(),
+				new ConditionNormalizer(ConditionDictionary.empty(), ConditionNormalizer.DEFAULT_CACHE_SIZE, null),
+				new HashMap<>());
+		for (int i = 0; i < trials; i++) {
+			builder.addStudy(StudyFixtures.newStudy(i));
+		}
+		GraphSnapshot.Builder snapshot = sink.getBuilder();
+		List<int[]> edges = new ArrayList<>();
+		for (int e = 0; e < snapshot.getEdgeCount(); e++) {
+			edges.add(new int[] { snapshot.getEdgeSource(e), snapshot.getEdgeTarget(e) });
+		}
+		return new Layout(snapshot.getVertexCount(), edges);
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Nodes at the origin and edges of weight 1.
+	 */
+	private static class Layout {
+		private final float[] x;
+		private final float[] y;
+		private final int[] sources;
+		private final int[] targets;
+		private final double[] weights;
+
+		Layout(int nodes, List<int[]> edges) {
+			x = new float[nodes];
+			y = new float[nodes];
+			sources = new int[edges.size()];
+			targets = new int[edges.size()];
+			weights = new double[edges.size()];
+			for (int e = 0; e < edges.size(); e++) {
+				sources[e] = edges.get(e)[0];
+				targets[e] = edges.get(e)[1];
+				weights[e] = 1;
+			}
+		}
+
+		double distance(int i, int j) {
+			return Math.hypot(x[i] - x[j], y[i] - y[j]);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Unit test and benchmark for {@link GeoLayout}.
+ */
+public class GeoLayoutTest {
+
+	private static final double WIDTH = 10000;
+
+	@Test
+	public void projectsWebMercator() {
+		GeoLayout layout = new GeoLayout(WIDTH, 20);
+		assertEquals(0, layout.projectX(0), 1e-9);
+		assertEquals(WIDTH / 2, layout.projectX(180), 1e-9);
+		assertEquals(-WIDTH / 4, layout.projectX(-90), 1e-9);
+		assertEquals(0, layout.projectY(0), 1e-9);
+		assertEquals(WIDTH / 2, layout.projectY(85.05112878), 1e-3);
+		assertEquals(WIDTH / 2, layout.projectY(90), 1e-3);
+		assertEquals(-layout.projectY(40), layout.projectY(-40), 1e-9);
+		assertTrue(layout.projectY(60) - layout.projectY(40) > layout.projectY(20) - layout.projectY(0));
+	}
+
+	/**
+	 * Locations must stay at their coordinates, a trial between its
+	 * locations, its sponsor next to it and unconnected nodes below the map.
+	 */
+	@Test
+	public void pinsLocationsAndPlacesNeighbors() {
+		// Locations 0 and 1, trial 2, sponsor 3, unconnected node 4.
+		float[] x = new float[5];
+		float[] y = new float[5];
+		double[] latitudes = { 0, 45, Double.NaN, Double.NaN, Double.NaN };
+		double[] longitudes = { 0, 90, Double.NaN, Double.NaN, Double.NaN };
+		int[] sources = { 2, 2, 3 };
+		int[] targets = { 0, 1, 2 };
+		double[] weights = { 1, 1, 1 };
+
+		GeoLayout layout = new GeoLayout(WIDTH, 20);
+		assertEquals(2, layout.run(x, y, latitudes, longitudes, sources, targets, weights));
+
+		assertEquals(0, x[0], 1e-3);
+		assertEquals(0, y[0], 1e-3);
+		assertEquals(layout.projectX(90), x[1], 1e-3);
+		assertEquals(layout.projectY(45), y[1], 1e-3);
+		assertEquals(x[1] / 2, x[2], WIDTH / 1000);
+		assertEquals(y[1] / 2, y[2], WIDTH / 1000);
+		assertEquals(x[2], x[3], WIDTH / 1000);
+		assertEquals(y[2], y[3], WIDTH / 1000);
+		assertTrue(x[2] != x[3] || y[2] != y[3]);
+		assertTrue(y[4] < -WIDTH / 2);
+	}
+
+	/**
+	 * Lays out the graph of a large number of trials twice, which must give
+	 * the same positions, and compares it with a {@link ForceLayout}.
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkLayout() {
+		SnapshotGraphSink sink = new SnapshotGraphSink(new GraphSnapshot.Builder());
+		StudyGraphBuilder<Integer, Integer> builder = new StudyGraphBuilder<>(sink, ConditionDictionary.empty(),
+				new ConditionNormalizer(ConditionDictionary.empty(), ConditionNormalizer.DEFAULT_CACHE_SIZE, null),
+				new HashMap<>());
+		for (int i = 0; i < 10000; i++) {
+			builder.addStudy(StudyFixtures.newStudy(i));
+		}
+		GraphSnapshot.Builder snapshot = sink.getBuilder();
+		int n = snapshot.getVertexCount();
+		double[] latitudes = new double[n];
+		double[] longitudes = new double[n];
+		Arrays.fill(latitudes, Double.NaN);
+		Arrays.fill(longitudes, Double.NaN);
+		for (int v = 0; v < n; v++) {
+			if (GraphSchema.VERTEX_LABEL_LOCATION.equals(snapshot.getVertexLabel(v))) {
+				latitudes[v] = 26 + (v * 7919 % 1000) / 100.0;
+				longitudes[v] = -106 + (v * 104729 % 1200) / 100.0;
+			}
+		}
+		int[] sources = new int[snapshot.getEdgeCount()];
+		int[] targets = new int[snapshot.getEdgeCount()];
+		double[] weights = new double[snapshot.getEdgeCount()];
+		for (int e = 0; e < sources.length; e++) {
+			sources[e] = snapshot.getEdgeSource(e);
+			targets[e] = snapshot.getEdgeTarget(e);
+			weights[e] = 1;
+		}
+
+		float[] x = new float[n];
+		float[] y = new float[n];
+		long start = System.nanoTime();
+		new GeoLayout(WIDTH, 20).run(x, y, latitudes, longitudes, sources, targets, weights);
+		long geoNanos = System.nanoTime() - start;
+		float[] x2 = new float[n];
+		float[] y2 = new float[n];
+		new GeoLayout(WIDTH, 20).run(x2, y2, latitudes, longitudes, sources, targets, weights);
+		assertArrayEquals(x, x2, 0);
+		assertArrayEquals(y, y2, 0);
+
+		start = System.nanoTime();
+		new ForceLayout(Runtime.getRuntime().availableProcessors(), 1.2, 0.01, 1000).run(new float[n], new float[n],
+				sources, targets, weights);
+		long forceNanos = System.nanoTime() - start;
+
+		System.out.println("Layout of " + n + " nodes and " + sources.length + " edges: map "
+				+ TimeUnit.NANOSECONDS.toMillis(geoNanos) + "ms, force-directed "
+				+ TimeUnit.NANOSECONDS.toMillis(forceNanos) + "ms");
+	}
+}
@@ -0,0 +1,212 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.maps.model.LatLng;
+
+/**
+ * Unit test for {@link GeocodeCache}.
+ */
+public class GeocodeCacheTest {
+
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+	private static final Clock NOW = Clock.fixed(Instant.parse("2017-03-01T00:00:00Z"), ZoneOffset.UTC);
+
+	private Path dir;
+	private Path file;
+	private StubGeocoder stub;
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void createCacheDir() throws IOException {
+		dir = Files.createTempDirectory("ctviz-geocode");
+		file = dir.resolve("geocode.cache");
+		stub = new StubGeocoder();
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@After
+	public void deleteCacheDir() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path p : files) {
+				Files.delete(p);
+			}
+		}
+		Files.delete(dir);
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void remembersCoordinatesAcrossRuns() throws Exception {
+		GeocodeCache cache = newCache(NOW);
+		LatLng houston = cache.geocode("Houston", "Texas", "77030", "United States");
+		cache.geocode("Houston", "Texas", "77030", "United States");
+		assertEquals(1, stub.calls.get());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		GeocodeCache nextRun = newCache(NOW);
+		LatLng cached = nextRun.geocode(" houston ", "TEXAS", "77030", "United  States");
+		assertEquals(1, stub.calls.get());
+		assertEquals(houston.lat, cached.lat, 0);
+		assertEquals(houston.lng, cached.lng, 0);
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void expiresNegativeResultsBeforeCoordinates() throws Exception {
+		GeocodeCache cache = newCache(NOW);
+		assertNull(cache.geocode("Nowhere", "", "", "Atlantis"));
+		assertNotNull(cache.geocode("Austin", "Texas", "", "United States"));
+		assertNull(cache.geocode("Nowhere", "", "", "Atlantis"));
+		assertEquals(2, stub.calls.get());
+
+		GeocodeCache nextMonth = newCache(Clock.offset(NOW, Duration.ofDays(31)));
+		nextMonth.geocode("Nowhere", "", "", "Atlantis");
+		nextMonth.geocode("Austin", "Texas", "", "United States");
+		assertEquals(3, stub.calls.get());
+
+		GeocodeCache nextYear = newCache(Clock.offset(NOW, Duration.ofDays(366)));
+		nextYear.geocode("Austin", "Texas", "", "United States");
+		assertEquals(4, stub.calls.get());
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void doesNotRememberFailures() throws Exception {
+		GeocodeCache cache = newCache(NOW);
+		stub.failing = true;
+		try {
+			cache.geocode("Houston", "Texas", "", "United States");
+			fail("Geocoder failure should be reported");
+		} catch (IOException e) {
+			// expected
+		}
+		stub.failing = false;
+		assertNotNull(cache.geocode("Houston", "Texas", "", "United States"));
+		assertEquals(2, stub.calls.get());
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void sharesFileBetweenConcurrentWriters() throws Exception {
+		GeocodeCache first = newCache(NOW);
+		GeocodeCache second = newCache(NOW);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<LatLng>> results = new ArrayList<>();
+			for (int i = 0; i < 400; i++) {
+				GeocodeCache cache = i % 2 == 0 ? first : second;
+				String city = "City " + i;
+				results.add(pool.submit(() -> cache.geocode(city, "Texas", "", "United States")));
+			}
+			for (Future<LatLng> result : results) {
+				result.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		GeocodeCache nextRun = newCache(NOW);
+		for (int i = 0; i < 400; i++) {
+			nextRun.geocode("City " + i, "Texas", "", "United States");
+		}
+		assertEquals(400, stub.calls.get());
+		assertEquals(400, Files.readAllLines(file).size());
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void compactsObsoleteLines() throws Exception {
+		GeocodeCache alwaysExpired = new GeocodeCache(file, stub, -1, -1, NOW);
+		for (int i = 0; i < 1500; i++) {
+			alwaysExpired.geocode("City " + i % 10, "Texas", "", "United States");
+		}
+		assertEquals(1500, Files.readAllLines(file).size());
+
+		GeocodeCache nextRun = newCache(NOW);
+		nextRun.geocode("City 1", "Texas", "", "United States");
+		assertEquals(1, nextRun.getHitCount());
+		assertEquals(10, Files.readAllLines(file).size());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void normalizesKeys() {
+		assertEquals("houston texas 77030 united states",
+				GeocodeCache.getKey(" Houston", "Texas ", "77030", "United\tStates"));
+		assertEquals("paris france", GeocodeCache.getKey("Paris", "", "", "France"));
+	}
+
+	private GeocodeCache newCache(Clock clock) {
+		return new GeocodeCache(file, stub, 365 * DAY, 30 * DAY, clock);
+	}
+
+	/**
+	 * Geocoder that derives coordinates from the city name.
+	 */
+	private static class StubGeocoder implements Geocoder {
+
+		private final AtomicInteger calls = new AtomicInteger();
+		private volatile boolean failing;
+
+		@Override
+		public LatLng geocode(String city, String state, String zip, String country) throws Exception {
+			calls.incrementAndGet();
+			if (failing) {
+				throw new IOException("Geocoding service unavailable");
+			}
+			if (country.equals("Atlantis")) {
+				return null;
+			}
+			return new LatLng(city.length(), city.hashCode() % 180);
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.google.maps.errors.OverQueryLimitException;
+import com.google.maps.errors.RequestDeniedException;
+import com.google.maps.model.LatLng;
+
+/**
+ * Unit test and benchmark for {@link GeocodingStage} and {@link RateLimitedGeocoder}.
+ */
+public class GeocodingStageTest {
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void submitsWithoutWaitingForGeocoder() throws Exception {
+		SlowGeocoder blocked = new SlowGeocoder(0);
+		blocked.release = new CountDownLatch(1);
+		try (GeocodingStage stage = new GeocodingStage(blocked, 2, 1, 0)) {
+			for (int i = 0; i < 20; i++) {
+				assertTrue(stage.submit("City " + i, "City " + i, "Texas", "", "United States"));
+			}
+			assertEquals(0, stage.drain(address -> {
+			}));
+			assertEquals(1, blocked.release.getCount());
+			blocked.release.countDown();
+			stage.awaitAll(address -> assertNotNull(address.getCoordinates()));
+		}
+		assertEquals(20, blocked.calls.get());
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void geocodesEachAddressOnce() throws Exception {
+		SlowGeocoder slow = new SlowGeocoder(20);
+		Map<String, LatLng> results = new HashMap<>();
+		try (GeocodingStage stage = new GeocodingStage(slow, 8, 1, 0)) {
+			int accepted = 0;
+			for (int i = 0; i < 200; i++) {
+				String city = "City " + i % 25;
+				if (stage.submit(city, city, "Texas", "", "United States")) {
+					accepted++;
+				}
+			}
+			assertEquals(25, accepted);
+			stage.awaitAll(address -> assertNull(results.put(address.getKey(), address.getCoordinates())));
+		}
+		assertEquals(25, slow.calls.get());
+		assertEquals(25, results.size());
+		assertEquals("City 7".length(), results.get("City 7").lat, 0);
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void retriesTransientFailures() throws Exception {
+		SlowGeocoder flaky = new SlowGeocoder(1);
+		flaky.failuresPerAddress = 2;
+		Map<String, LatLng> results = new HashMap<>();
+		try (GeocodingStage stage = new GeocodingStage(flaky, 4, 3, 10)) {
+			stage.submit("Houston", "Houston", "Texas", "", "United States");
+			stage.submit("Austin", "Austin", "Texas", "", "United States");
+			stage.awaitAll(address -> results.put(address.getKey(), address.getCoordinates()));
+		}
+		assertEquals(6, flaky.calls.get());
+		assertNotNull(results.get("Houston"));
+		assertNotNull(results.get("Austin"));
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void givesUpAfterLastAttempt() throws Exception {
+		SlowGeocoder failing = new SlowGeocoder(1);
+		failing.failuresPerAddress = Integer.MAX_VALUE;
+		Map<String, LatLng> results = new HashMap<>();
+		try (GeocodingStage stage = new GeocodingStage(failing, 1, 3, 1)) {
+			stage.submit("Houston", "Houston", "Texas", "", "United States");
+			stage.awaitAll(address -> results.put(address.getKey(), address.getCoordinates()));
+		}
+		assertEquals(3, failing.calls.get());
+		assertTrue(results.containsKey("Houston"));
+		assertNull(results.get("Houston"));
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void doesNotRetryPermanentFailures() throws Exception {
+		SlowGeocoder denied = new SlowGeocoder(1);
+		denied.failuresPerAddress = Integer.MAX_VALUE;
+		denied.failure = new RequestDeniedException("The provided API key is invalid.");
+		Map<String, LatLng> results = new HashMap<>();
+		try (GeocodingStage stage = new GeocodingStage(denied, 1, 3, 1000)) {
+			stage.submit("Houston", "Houston", "Texas", "", "United States");
+			stage.awaitAll(address -> results.put(address.getKey(), address.getCoordinates()));
+		}
+		assertEquals(1, denied.calls.get());
+		assertTrue(results.containsKey("Houston"));
+		assertNull(results.get("Houston"));
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void retriesQueryLimitFailures() throws Exception {
+		SlowGeocoder limited = new SlowGeocoder(1);
+		limited.failuresPerAddress = 1;
+		limited.failure = new OverQueryLimitException("You have exceeded your rate-limit for this API.");
+		Map<String, LatLng> results = new HashMap<>();
+		try (GeocodingStage stage = new GeocodingStage(limited, 1, 3, 1)) {
+			stage.submit("Houston", "Houston", "Texas", "", "United States");
+			stage.awaitAll(address -> results.put(address.getKey(), address.getCoordinates()));
+		}
+		assertEquals(2, limited.calls.get());
+		assertNotNull(results.get("Houston"));
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void limitsQueriesPerSecond() throws Exception {
+		SlowGeocoder fast = new SlowGeocoder(0);
+		Geocoder limited = new RateLimitedGeocoder(fast, 50);
+		long start = System.nanoTime();
+		try (GeocodingStage stage = new GeocodingStage(limited, 8, 1, 0)) {
+			for (int i = 0; i < 26; i++) {
+				stage.submit("City " + i, "City " + i, "Texas", "", "United States");
+			}
+			stage.awaitAll(address -> {
+			});
+		}
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertEquals(26, fast.calls.get());
+		// 25 intervals of 20ms after the first request.
+		assertTrue("26 requests took " + elapsedMillis + "ms", elapsedMillis >= 480);
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void overlapsSlowRequests() throws Exception {
+		SlowGeocoder slow = new SlowGeocoder(100);
+		try (GeocodingStage stage = new GeocodingStage(slow, 10, 1, 0)) {
+			for (int i = 0; i < 20; i++) {
+				stage.submit("City " + i, "City " + i, "Texas", "", "United States");
+			}
+			stage.awaitAll(address -> assertFalse(address.getCoordinates() == null));
+		}
+		assertEquals(20, slow.calls.get());
+		assertTrue("At most " + slow.peak.get() + " concurrent requests", slow.peak.get() > 1);
+	}
+
+	/**
+	 * Compares geocoding slow addresses on one thread and on a pool.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkThreads() throws Exception {
+		int addresses = 50;
+		for (int threads : new int[] { 1, 10 }) {
+			SlowGeocoder slow = new SlowGeocoder(100);
+			long start = System.nanoTime();
+			try (GeocodingStage stage = new GeocodingStage(slow, threads, 1, 0)) {
+				for (int i = 0; i < addresses; i++) {
+					stage.submit("City " + i, "City " + i, "Texas", "", "United States");
+				}
+				stage.awaitAll(address -> {
+				});
+			}
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			System.out.println("Geocoding " + addresses + " addresses with 100ms latency on " + threads
+					+ " threads: " + elapsedMillis + "ms, at most " + slow.peak.get() + " concurrent requests");
+		}
+	}
+
+	/**
+	 * Geocoder that takes a fixed time to answer, can wait for a latch before
+	 * answering and can fail the first requests for each address.
+	 */
+	private static class SlowGeocoder implements Geocoder {
+
+		private final long latencyMillis;
+		private final AtomicInteger calls = new AtomicInteger();
+		private final AtomicInteger active = new AtomicInteger();
+		private final AtomicInteger peak = new AtomicInteger();
+		private final Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+		private volatile int failuresPerAddress;
+		private volatile Exception failure = new IOException("Geocoding service unavailable");
+		private volatile CountDownLatch release;
+
+		SlowGeocoder(long latencyMillis) {
+			this.latencyMillis = latencyMillis;
+		}
+
+		@Override
+		public LatLng geocode(String city, String state, String zip, String country) throws Exception {
+			calls.incrementAndGet();
+			int running = active.incrementAndGet();
+			peak.accumulateAndGet(running, Math::max);
+			try {
+				if (release != null) {
+					release.await();
+				}
+				Thread.sleep(latencyMillis);
+			} finally {
+				active.decrementAndGet();
+			}
+			AtomicInteger failed = failures.computeIfAbsent(city, k -> new AtomicInteger());
+			if (failed.get() < failuresPerAddress) {
+				failed.incrementAndGet();
+				throw failure;
+			}
+			return new LatLng(city.length(), city.hashCode() % 180);
+		}
+	}
+}
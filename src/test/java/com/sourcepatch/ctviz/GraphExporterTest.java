@@ -0,0 +1,270 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.io.graphml.GraphMLReader;
+import org.apache.tinkerpop.gremlin.structure.io.graphml.GraphMLWriter;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Unit test and benchmark for {@link GraphExporter}.
+ */
+public class GraphExporterTest {
+
+	private Path dir;
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("ctviz-export");
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@After
+	public void deleteDir() throws IOException {
+		for (String name : new String[] { "graph.ctgs", "graph.gexf", "graph.gexf.gz", "graph.graphml" }) {
+			Files.deleteIfExists(dir.resolve(name));
+		}
+		Files.delete(dir);
+	}
+
+	/**
+	 * A graph read back with TinkerPop must be the graph that was exported.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void exportsGraphMlReadByTinkerPop() throws IOException {
+		Graph g = buildGraph(500);
+		byte[] graphMl = export(new GraphExporter(3, 7), AppGraphMl.toExportable(g), GraphExporter.Format.GRAPHML);
+
+		Graph reloaded = TinkerGraph.open();
+		GraphMLReader.build().create().readGraph(new ByteArrayInputStream(graphMl), reloaded);
+		assertEquals(writeGraphMl(g), writeGraphMl(reloaded));
+	}
+
+	/**
+	 * The document must not depend on how the elements were split in chunks
+	 * and threads.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void chunksAreWrittenInOrder() throws IOException {
+		ExportableGraph<Vertex, Edge> graph = AppGraphMl.toExportable(buildGraph(300));
+		byte[] single = export(new GraphExporter(1, 100000), graph, GraphExporter.Format.GEXF);
+		byte[] chunked = export(new GraphExporter(4, 5), graph, GraphExporter.Format.GEXF);
+		assertArrayEquals(single, chunked);
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void exportsCompressedGexf() throws Exception {
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+		int trial = builder.addVertex("t1", GraphSchema.VERTEX_LABEL_TRIAL);
+		int sponsor = builder.addVertex("s1", GraphSchema.VERTEX_LABEL_SPONSOR);
+		builder.setVertexPosition(sponsor, 3.5f, -1f);
+		builder.setVertexProperty(trial, GraphSchema.VERTEX_PROPERTY_NCT_TITLE, "Drugs <A & B> \"C\"\u0001\ttabbed");
+		builder.setVertexProperty(trial, GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR, 2012);
+		int edge = builder.addEdge("e1", sponsor, trial, GraphSchema.EDGE_LABEL_SPONSORS, 2.0);
+		builder.setEdgeProperty(edge, GraphSchema.EDGE_PROPERTY_NCT_ID, "NCT00000001");
+		Path snapshotFile = dir.resolve("graph.ctgs");
+		builder.write(snapshotFile);
+
+		Path file = dir.resolve("graph.gexf.gz");
+		new GraphExporter(2, 1).export(GraphSnapshot.load(snapshotFile).toExportable(), file);
+
+		Document doc;
+		try (InputStream is = new GZIPInputStream(Files.newInputStream(file))) {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			doc = factory.newDocumentBuilder().parse(is);
+		}
+		NodeList nodes = doc.getElementsByTagName("node");
+		assertEquals(2, nodes.getLength());
+		Element trialNode = (Element) nodes.item(0);
+		assertEquals("t1", trialNode.getAttribute("id"));
+		assertEquals(GraphSchema.VERTEX_LABEL_TRIAL, trialNode.getAttribute("label"));
+		Element title = (Element) trialNode.getElementsByTagName("attvalue").item(0);
+		assertEquals(GraphSchema.VERTEX_PROPERTY_NCT_TITLE, title.getAttribute("for"));
+		assertEquals("Drugs <A & B> \"C\"\ttabbed", title.getAttribute("value"));
+		Element position = (Element) ((Element) nodes.item(1))
+				.getElementsByTagNameNS("http://www.gexf.net/1.2draft/viz", "position").item(0);
+		assertEquals("3.5", position.getAttribute("x"));
+
+		NodeList attributes = doc.getElementsByTagName("attribute");
+		assertEquals(3, attributes.getLength());
+		assertEquals("integer", ((Element) attributes.item(1)).getAttribute("type"));
+
+		Element edgeElement = (Element) doc.getElementsByTagName("edge").item(0);
+		assertEquals("s1", edgeElement.getAttribute("source"));
+		assertEquals("2.0", edgeElement.getAttribute("weight"));
+		assertEquals(GraphSchema.EDGE_LABEL_SPONSORS, edgeElement.getAttribute("label"));
+	}
+
+	/**
+	 * A snapshot exported to a file must keep every node and edge.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void exportsSnapshotToFile() throws Exception {
+		int vertices = 200;
+		int edges = 2000;
+		Path snapshotFile = dir.resolve("graph.ctgs");
+		buildSnapshot(vertices, edges).write(snapshotFile);
+
+		Path file = dir.resolve("graph.gexf");
+		new GraphExporter(3, 64).export(GraphSnapshot.load(snapshotFile).toExportable(), file);
+
+		Document doc;
+		try (InputStream is = Files.newInputStream(file)) {
+			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(is);
+		}
+		assertEquals(vertices, doc.getElementsByTagName("node").getLength());
+		NodeList edgeElements = doc.getElementsByTagName("edge");
+		assertEquals(edges, edgeElements.getLength());
+		Element last = (Element) edgeElements.item(edges - 1);
+		assertEquals(Integer.toString(edges - 1), last.getAttribute("id"));
+		assertEquals(Integer.toString((edges - 1) % vertices), last.getAttribute("source"));
+		assertEquals(String.format("NCT%08d", edges - 1),
+				((Element) last.getElementsByTagName("attvalue").item(0)).getAttribute("value"));
+	}
+
+	/**
+	 * Compares the exporter with the TinkerPop GraphML writer, then exports a
+	 * snapshot with millions of edges and reports the peak heap use.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkExport() throws Exception {
+		Graph g = buildGraph(5000);
+		GraphExporter exporter = GraphExporter.fromProperties();
+		long start = 0;
+		long tinkerPopNanos = 0;
+		long streamedNanos = 0;
+		ByteArrayOutputStream tinkerPop = null;
+		byte[] streamed = null;
+		// First round warms up both writers.
+		for (int round = 0; round < 2; round++) {
+			start = System.nanoTime();
+			tinkerPop = new ByteArrayOutputStream();
+			GraphMLWriter.build().create().writeGraph(tinkerPop, g);
+			tinkerPopNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			streamed = export(exporter, AppGraphMl.toExportable(g), GraphExporter.Format.GRAPHML);
+			streamedNanos = System.nanoTime() - start;
+		}
+		System.out.println("GraphML of 5000 trials: TinkerPop writer " + TimeUnit.NANOSECONDS.toMillis(tinkerPopNanos)
+				+ "ms (" + tinkerPop.size() / 1024 + "KB), streaming exporter "
+				+ TimeUnit.NANOSECONDS.toMillis(streamedNanos) + "ms (" + streamed.length / 1024 + "KB)");
+		g = null;
+
+		int vertices = 200000;
+		int edges = 2000000;
+		Path snapshotFile = dir.resolve("graph.ctgs");
+		buildSnapshot(vertices, edges).write(snapshotFile);
+		GraphSnapshot snapshot = GraphSnapshot.load(snapshotFile);
+
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		long baseline = runtime.totalMemory() - runtime.freeMemory();
+		AtomicLong peak = new AtomicLong(baseline);
+		Thread sampler = new Thread(() -> {
+			while (!Thread.currentThread().isInterrupted()) {
+				peak.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		});
+		sampler.start();
+		Path file = dir.resolve("graph.gexf");
+		start = System.nanoTime();
+		exporter.export(snapshot.toExportable(), file);
+		long exportNanos = System.nanoTime() - start;
+		sampler.interrupt();
+		sampler.join();
+
+		System.out.println("GEXF of " + vertices + " nodes and " + edges + " edges (" + Files.size(file) / 1024 / 1024
+				+ "MB): " + TimeUnit.NANOSECONDS.toMillis(exportNanos) + "ms, peak heap growth with garbage "
+				+ (peak.get() - baseline) / 1024 / 1024 + "MB");
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private static Graph buildGraph(int trials) {
+		Graph g = TinkerGraph.open();
+		StudyGraphBuilder<Vertex, Edge> builder = new AppGraphMl().newGraphBuilder(g);
+		for (int i = 0; i < trials; i++) {
+			builder.addStudy(StudyFixtures.newStudy(i));
+		}
+		return g;
+	}
+
+	private static GraphSnapshot.Builder buildSnapshot(int vertices, int edges) {
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+		for (int v = 0; v < vertices; v++) {
+			int row = builder.addVertex(Integer.toString(v), GraphSchema.VERTEX_LABEL_CONDITION);
+			builder.setVertexProperty(row, GraphSchema.VERTEX_PROPERTY_CONDITION_NAME, "condition " + v);
+		}
+		for (int e = 0; e < edges; e++) {
+			int row = builder.addEdge(Integer.toString(e), e % vertices, (e * 7 + 1) % vertices,
+					GraphSchema.EDGE_LABEL_RESEARCHES, 1.0);
+			builder.setEdgeProperty(row, GraphSchema.EDGE_PROPERTY_NCT_ID, String.format("NCT%08d", e % 300000));
+		}
+		return builder;
+	}
+
+	private static <N, E> byte[] export(GraphExporter exporter, ExportableGraph<N, E> graph,
+			GraphExporter.Format format) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		exporter.export(graph, format, Channels.newChannel(out));
+		return out.toByteArray();
+	}
+
+	private static String writeGraphMl(Graph g) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.build().normalize(true).create().writeGraph(out, g);
+		return out.toString("UTF-8");
+	}
+}
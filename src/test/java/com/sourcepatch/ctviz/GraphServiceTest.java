@@ -0,0 +1,200 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link GraphService}.
+ */
+public class GraphServiceTest {
+
+	private Path cacheDir;
+	private GraphService service;
+
+	@Before
+	public void setUp() throws IOException {
+		cacheDir = Files.createTempDirectory("ctviz");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (service != null) {
+			service.stop();
+		}
+		try (Stream<Path> files = Files.list(cacheDir)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(cacheDir);
+	}
+
+	/**
+	 * Concurrent requests for the same search term must wait for a single
+	 * build.
+	 */
+	@Test
+	public void coalescesConcurrentRequests() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger builds = new AtomicInteger();
+		service = new GraphService((term, file) -> {
+			builds.incrementAndGet();
+			release.await();
+			writeSnapshot(term, 10, file);
+		}, cacheDir, Long.MAX_VALUE, new GraphExporter(1, 100));
+
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<GraphService.CachedGraph>> requests = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				requests.add(pool.submit(() -> service.getGraph("asthma")));
+			}
+			Thread.sleep(100);
+			release.countDown();
+			GraphService.CachedGraph graph = requests.get(0).get(10, TimeUnit.SECONDS);
+			for (Future<GraphService.CachedGraph> request : requests) {
+				assertSame(graph, request.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			pool.shutdown();
+		}
+		assertSame(service.getGraph("asthma"), service.getGraph("asthma"));
+		assertEquals(1, builds.get());
+		assertEquals(1, service.getBuildCount());
+		assertEquals(2, service.getHitCount());
+	}
+
+	/**
+	 * The least recently used graphs must leave the cache once the snapshots
+	 * exceed its size.
+	 */
+	@Test
+	public void evictsLeastRecentlyUsedGraphs() throws Exception {
+		Path probe = cacheDir.resolve("probe");
+		writeSnapshot("x", 1000, probe);
+		long size = Files.size(probe);
+		Files.delete(probe);
+
+		service = new GraphService((term, file) -> writeSnapshot(term, 1000, file), cacheDir, 2 * size + size / 2,
+				new GraphExporter(1, 100));
+		GraphService.CachedGraph a = service.getGraph("a");
+		service.getGraph("b");
+		assertSame(a, service.getGraph("a"));
+		service.getGraph("c");
+		assertEquals(3, service.getBuildCount());
+		assertEquals(2 * size, service.getCachedBytes());
+
+		// "b" was the least recently used.
+		assertSame(a, service.getGraph("a"));
+		service.getGraph("b");
+		assertEquals(4, service.getBuildCount());
+		assertEquals("0", a.getSnapshot().getVertexId(0));
+		try (Stream<Path> files = Files.list(cacheDir)) {
+			assertEquals(2, files.count());
+		}
+	}
+
+	/**
+	 * Exports must be served over HTTP, and failed builds reported and
+	 * retried by the next request.
+	 */
+	@Test
+	public void servesGraphsOverHttp() throws Exception {
+		AtomicInteger failures = new AtomicInteger(1);
+		service = new GraphService((term, file) -> {
+			if (failures.getAndDecrement() > 0) {
+				throw new IOException("Download failed");
+			}
+			writeSnapshot(term, 3, file);
+		}, cacheDir, Long.MAX_VALUE, new GraphExporter(2, 2));
+		int port = service.start(0, 2);
+		String url = "http://localhost:" + port + "/graph?term=" + URLEncoder.encode("lung cancer", "UTF-8");
+
+		assertEquals(500, get(url).status);
+		Response gexf = get(url);
+		assertEquals(200, gexf.status);
+		assertTrue(gexf.body, gexf.body.contains("<gexf"));
+		assertTrue(gexf.body, gexf.body.contains("lung cancer 2"));
+
+		Response graphMl = get(url + "&format=graphml");
+		assertEquals(200, graphMl.status);
+		assertTrue(graphMl.body, graphMl.body.contains("<graphml"));
+
+		Response conditions = get(url + "&format=conditions");
+		assertEquals(200, conditions.status);
+		assertEquals("Condition 0 .\nCondition 1 .\nCondition 2 .\n", conditions.body);
+
+		assertEquals(400, get(url + "&format=pdf").status);
+		assertEquals(400, get("http://localhost:" + port + "/graph").status);
+		assertEquals(1, service.getBuildCount());
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private static void writeSnapshot(String term, int vertices, Path file) throws IOException {
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+		for (int v = 0; v < vertices; v++) {
+			int row = builder.addVertex(Integer.toString(v), term + " " + v);
+			builder.setVertexProperty(row, GraphSchema.VERTEX_PROPERTY_CONDITION_RAW, "Condition " + v);
+			if (v > 0) {
+				builder.addEdge("e" + v, v - 1, v, GraphSchema.EDGE_LABEL_RESEARCHES, 1.0);
+			}
+		}
+		builder.write(file);
+	}
+
+	private static Response get(String url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		try {
+			Response response = new Response();
+			response.status = connection.getResponseCode();
+			try (InputStream in = response.status < 400 ? connection.getInputStream()
+					: connection.getErrorStream()) {
+				ByteArrayOutputStream body = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				for (int read; (read = in.read(buffer)) > 0;) {
+					body.write(buffer, 0, read);
+				}
+				response.body = new String(body.toByteArray(), StandardCharsets.UTF_8);
+			}
+			return response;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	private static class Response {
+		private int status;
+		private String body;
+	}
+}
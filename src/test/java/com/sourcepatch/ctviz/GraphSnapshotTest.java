@@ -0,0 +1,265 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.io.graphml.GraphMLReader;
+import org.apache.tinkerpop.gremlin.structure.io.graphml.GraphMLWriter;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Unit test and benchmark for {@link GraphSnapshot}.
+ */
+public class GraphSnapshotTest {
+
+	private Path dir;
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("ctviz-graph");
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@After
+	public void deleteDir() throws IOException {
+		Files.deleteIfExists(dir.resolve("graph.ctgs"));
+		Files.delete(dir);
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void writesAndReadsGraph() throws IOException {
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+		int trial = builder.addVertex("t1", GraphSchema.VERTEX_LABEL_TRIAL);
+		int sponsor = builder.addVertex("s1", GraphSchema.VERTEX_LABEL_SPONSOR);
+		int condition = builder.addVertex("c1", null);
+		builder.setVertexPosition(sponsor, 1.5f, -2.25f);
+		builder.setVertexProperty(trial, GraphSchema.VERTEX_PROPERTY_NCT_STUDY_ID, "NCT00000001");
+		builder.setVertexProperty(trial, GraphSchema.VERTEX_PROPERTY_NCT_ENROLLMENT, 120L);
+		builder.setVertexProperty(trial, GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR, 2012);
+		builder.setVertexProperty(sponsor, GraphSchema.VERTEX_PROPERTY_SPONSOR_NAME, "NCI");
+		builder.setVertexProperty(condition, GraphSchema.VERTEX_PROPERTY_LOCATION_LATITUDE, 40.7);
+		builder.setVertexProperty(condition, "visible", Boolean.TRUE);
+		builder.setVertexProperty(condition, "size", 2.5f);
+		builder.setVertexProperty(condition, GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR, null);
+
+		builder.addEdge("e1", trial, condition, GraphSchema.EDGE_LABEL_COVERS, 1.0);
+		int sponsors = builder.addEdge("e2", sponsor, trial, GraphSchema.EDGE_LABEL_SPONSORS, 2.0);
+		builder.addEdge("e3", sponsor, condition, GraphSchema.EDGE_LABEL_RESEARCHES, 3.0);
+		builder.setEdgeProperty(sponsors, GraphSchema.EDGE_PROPERTY_NCT_ID, "NCT00000001");
+
+		Path file = dir.resolve("graph.ctgs");
+		builder.write(file);
+		GraphSnapshot snapshot = GraphSnapshot.load(file);
+
+		assertEquals(3, snapshot.getVertexCount());
+		assertEquals(3, snapshot.getEdgeCount());
+		assertEquals("s1", snapshot.getVertexId(sponsor));
+		assertEquals(GraphSchema.VERTEX_LABEL_TRIAL, snapshot.getVertexLabel(trial));
+		assertNull(snapshot.getVertexLabel(condition));
+		assertEquals(1.5f, snapshot.getVertexX(sponsor), 0);
+		assertEquals(-2.25f, snapshot.getVertexY(sponsor), 0);
+
+		assertEquals("NCT00000001", snapshot.getVertexProperty(trial, GraphSchema.VERTEX_PROPERTY_NCT_STUDY_ID));
+		assertEquals(120L, snapshot.getVertexProperty(trial, GraphSchema.VERTEX_PROPERTY_NCT_ENROLLMENT));
+		assertEquals(2012, snapshot.getVertexProperty(trial, GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR));
+		assertNull(snapshot.getVertexProperty(condition, GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR));
+		assertNull(snapshot.getVertexProperty(trial, GraphSchema.VERTEX_PROPERTY_SPONSOR_NAME));
+		assertEquals(40.7, snapshot.getVertexProperty(condition, GraphSchema.VERTEX_PROPERTY_LOCATION_LATITUDE));
+		assertEquals(Boolean.TRUE, snapshot.getVertexProperty(condition, "visible"));
+		assertEquals(2.5f, snapshot.getVertexProperty(condition, "size"));
+		assertNull(snapshot.getVertexProperty(trial, "unknown"));
+		assertEquals(Arrays.asList(GraphSchema.VERTEX_PROPERTY_NCT_STUDY_ID,
+				GraphSchema.VERTEX_PROPERTY_NCT_ENROLLMENT, GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR,
+				GraphSchema.VERTEX_PROPERTY_SPONSOR_NAME, GraphSchema.VERTEX_PROPERTY_LOCATION_LATITUDE, "visible",
+				"size"), new ArrayList<>(snapshot.getVertexColumns().keySet()));
+		assertEquals(Long.class,
+				snapshot.getVertexColumns().get(GraphSchema.VERTEX_PROPERTY_NCT_ENROLLMENT).getType());
+
+		// Edges are sorted by source vertex.
+		assertEquals(0, snapshot.getOutEdgeStart(trial));
+		assertEquals(1, snapshot.getOutEdgeEnd(trial));
+		assertEquals("e1", snapshot.getEdgeId(0));
+		assertEquals(1, snapshot.getOutEdgeStart(sponsor));
+		assertEquals(3, snapshot.getOutEdgeEnd(sponsor));
+		assertEquals(3, snapshot.getOutEdgeStart(condition));
+		assertEquals(3, snapshot.getOutEdgeEnd(condition));
+		assertEquals("e2", snapshot.getEdgeId(1));
+		assertEquals(GraphSchema.EDGE_LABEL_SPONSORS, snapshot.getEdgeLabel(1));
+		assertEquals(trial, snapshot.getEdgeTarget(1));
+		assertEquals(2.0, snapshot.getEdgeWeight(1), 0);
+		assertEquals("NCT00000001", snapshot.getEdgeProperty(1, GraphSchema.EDGE_PROPERTY_NCT_ID));
+		assertNull(snapshot.getEdgeProperty(2, GraphSchema.EDGE_PROPERTY_NCT_ID));
+
+		assertEquals(2, snapshot.getInDegree(condition));
+		assertEquals(0, snapshot.getInDegree(sponsor));
+		int[] conditionEdges = { snapshot.getInEdge(condition, 0), snapshot.getInEdge(condition, 1) };
+		assertArrayEquals(new int[] { 0, 2 }, conditionEdges);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void rejectsMixedPropertyTypes() {
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+		int first = builder.addVertex("1", GraphSchema.VERTEX_LABEL_TRIAL);
+		int second = builder.addVertex("2", GraphSchema.VERTEX_LABEL_TRIAL);
+		builder.setVertexProperty(first, GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR, 2012);
+		try {
+			builder.setVertexProperty(second, GraphSchema.VERTEX_PROPERTY_NCT_START_YEAR, "2012");
+			fail("String value accepted in Integer column");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+		try {
+			builder.addEdge("e", first, 2, GraphSchema.EDGE_LABEL_COVERS, 1.0);
+			fail("Edge to unknown vertex accepted");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * A graph read back from a snapshot must write the same GraphML as the
+	 * graph the snapshot was taken from.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void convertsToGraphMlLosslessly() throws IOException {
+		Graph g = buildGraph(500);
+		Path file = dir.resolve("graph.ctgs");
+		AppGraphMl.toSnapshot(g).write(file);
+		Graph reloaded = AppGraphMl.readGraph(file);
+
+		assertEquals(writeGraphMl(g), writeGraphMl(reloaded));
+	}
+
+	/**
+	 * Compares reloading a graph from GraphML and from a snapshot, and times
+	 * writing and reading a snapshot with millions of edges.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkReload() throws IOException {
+		Path file = dir.resolve("graph.ctgs");
+		Graph g = buildGraph(5000);
+		ByteArrayOutputStream graphMl = new ByteArrayOutputStream();
+		GraphMLWriter.build().create().writeGraph(graphMl, g);
+		AppGraphMl.toSnapshot(g).write(file);
+		long snapshotBytes = Files.size(file);
+
+		long start = System.nanoTime();
+		Graph fromGraphMl = TinkerGraph.open();
+		GraphMLReader.build().create().readGraph(new ByteArrayInputStream(graphMl.toByteArray()), fromGraphMl);
+		long graphMlNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		Graph fromSnapshot = AppGraphMl.readGraph(file);
+		long snapshotNanos = System.nanoTime() - start;
+		assertEquals(fromGraphMl.toString(), fromSnapshot.toString());
+
+		System.out.println("Reloading 5000 trials into TinkerGraph from GraphML (" + graphMl.size() / 1024
+				+ "KB): " + TimeUnit.NANOSECONDS.toMillis(graphMlNanos) + "ms, from snapshot ("
+				+ snapshotBytes / 1024 + "KB): " + TimeUnit.NANOSECONDS.toMillis(snapshotNanos) + "ms");
+
+		int vertices = 500000;
+		int edges = 4000000;
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+		String[] labels = { GraphSchema.VERTEX_LABEL_TRIAL, GraphSchema.VERTEX_LABEL_SPONSOR,
+				GraphSchema.VERTEX_LABEL_CONDITION, GraphSchema.VERTEX_LABEL_LOCATION };
+		for (int v = 0; v < vertices; v++) {
+			int row = builder.addVertex(Integer.toString(v), labels[v % labels.length]);
+			builder.setVertexProperty(row, GraphSchema.VERTEX_PROPERTY_CONDITION_NAME, "name " + v % 20000);
+		}
+		long state = 42;
+		for (int e = 0; e < edges; e++) {
+			state = state * 6364136223846793005L + 1442695040888963407L;
+			int source = (int) ((state >>> 33) % vertices);
+			int target = (int) ((state >>> 13) % vertices);
+			int row = builder.addEdge(Integer.toString(e), source, target, GraphSchema.EDGE_LABEL_RESEARCHES, 1.0);
+			builder.setEdgeProperty(row, GraphSchema.EDGE_PROPERTY_NCT_ID, String.format("NCT%08d", e % 300000));
+		}
+		start = System.nanoTime();
+		builder.write(file);
+		long writeNanos = System.nanoTime() - start;
+		builder = null;
+
+		start = System.nanoTime();
+		GraphSnapshot snapshot = GraphSnapshot.load(file);
+		long loadNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		long degrees = 0;
+		int withNctId = 0;
+		GraphSnapshot.Column nctIds = snapshot.getEdgeColumns().get(GraphSchema.EDGE_PROPERTY_NCT_ID);
+		for (int v = 0; v < snapshot.getVertexCount(); v++) {
+			degrees += snapshot.getOutEdgeEnd(v) - snapshot.getOutEdgeStart(v) + snapshot.getInDegree(v);
+			for (int e = snapshot.getOutEdgeStart(v); e < snapshot.getOutEdgeEnd(v); e++) {
+				if (nctIds.get(e) != null) {
+					withNctId++;
+				}
+			}
+		}
+		long scanNanos = System.nanoTime() - start;
+		assertEquals(2L * edges, degrees);
+		assertEquals(edges, withNctId);
+		assertTrue(loadNanos < TimeUnit.SECONDS.toNanos(5));
+
+		System.out.println("Snapshot of " + vertices + " vertices and " + edges + " edges (" + Files.size(file) / 1024
+				/ 1024 + "MB): write " + TimeUnit.NANOSECONDS.toMillis(writeNanos) + "ms, load "
+				+ TimeUnit.NANOSECONDS.toMillis(loadNanos) + "ms, scan of all edges "
+				+ TimeUnit.NANOSECONDS.toMillis(scanNanos) + "ms");
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private static Graph buildGraph(int trials) {
+		Graph g = TinkerGraph.open();
+		StudyGraphBuilder<Vertex, Edge> builder = new AppGraphMl().newGraphBuilder(g);
+		for (int i = 0; i < trials; i++) {
+			builder.addStudy(StudyFixtures.newStudy(i));
+		}
+		return g;
+	}
+
+	private static String writeGraphMl(Graph g) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.build().normalize(true).create().writeGraph(out, g);
+		return out.toString("UTF-8");
+	}
+}
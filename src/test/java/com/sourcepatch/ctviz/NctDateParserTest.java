@@ -0,0 +1,122 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link NctDateParser}.
+ */
+public class NctDateParserTest {
+
+	private static final String[] MONTHS = { "January", "February", "March", "April", "May", "June", "July",
+			"August", "September", "October", "November", "December" };
+
+	/**
+	 *
+	 */
+	@Test
+	public void parsesBothForms() {
+		assertEquals(20120500, NctDateParser.parse("May 2012"));
+		assertEquals(20120503, NctDateParser.parse("May 3, 2012"));
+		assertEquals(19991231, NctDateParser.parse("December 31, 1999"));
+		assertEquals(20150900, NctDateParser.parse("sep 2015"));
+		assertEquals(20150900, NctDateParser.parse("  September  2015 (estimated)"));
+
+		int date = NctDateParser.parse("July 14, 2016");
+		assertEquals(2016, NctDateParser.getYear(date));
+		assertEquals(7, NctDateParser.getMonth(date));
+		assertEquals(14, NctDateParser.getDay(date));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void rejectsOtherText() {
+		assertEquals(NctDateParser.INVALID_DATE, NctDateParser.parse(null));
+		assertEquals(NctDateParser.INVALID_DATE, NctDateParser.parse(""));
+		assertEquals(NctDateParser.INVALID_DATE, NctDateParser.parse("2012"));
+		assertEquals(NctDateParser.INVALID_DATE, NctDateParser.parse("Ma 2012"));
+		assertEquals(NctDateParser.INVALID_DATE, NctDateParser.parse("Mayo 2012"));
+		assertEquals(NctDateParser.INVALID_DATE, NctDateParser.parse("May"));
+		assertEquals(NctDateParser.INVALID_DATE, NctDateParser.parse("May 3 2012"));
+		assertEquals(NctDateParser.INVALID_DATE, NctDateParser.parse("May 3,"));
+		assertEquals(NctDateParser.INVALID_DATE, NctDateParser.parse("May 12"));
+		assertEquals(NctDateParser.INVALID_DATE, NctDateParser.parse("May 99999999999"));
+		assertEquals(NctDateParser.INVALID_DATE, NctDateParser.parseYear("unknown"));
+	}
+
+	/**
+	 * Compares years against the <code>SimpleDateFormat</code> patterns the
+	 * parser replaced.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void matchesSimpleDateFormatYears() throws Exception {
+		List<String> dates = new ArrayList<>();
+		for (String month : MONTHS) {
+			for (int year = 1850; year <= 2030; year += 7) {
+				dates.add(month + " " + year);
+				dates.add(month.substring(0, 3) + " " + year);
+				for (int day = 1; day <= 28; day += 9) {
+					dates.add(month + " " + day + ", " + year);
+				}
+			}
+		}
+		dates.add("May 5, 12");
+		dates.add("May 5 2012");
+		dates.add("Spring 2012");
+
+		for (String date : dates) {
+			assertEquals(date, getYearWithSimpleDateFormat(date), NctDateParser.parseYear(date));
+		}
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void parsesFromConcurrentThreads() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Integer>> years = new ArrayList<>();
+			for (int i = 0; i < 1000; i++) {
+				String date = MONTHS[i % 12] + " " + (1 + i % 28) + ", " + (1900 + i);
+				years.add(pool.submit(() -> NctDateParser.parseYear(date)));
+			}
+			for (int i = 0; i < 1000; i++) {
+				assertEquals(1900 + i, years.get(i).get().intValue());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static int getYearWithSimpleDateFormat(String date) {
+		try {
+			Calendar c = Calendar.getInstance();
+			c.setTime(new SimpleDateFormat("MMMMM yyyy", Locale.US).parse(date));
+			int year = c.get(Calendar.YEAR);
+			if (year <= 31) {
+				c.setTime(new SimpleDateFormat("MMMMM dd, yyyy", Locale.US).parse(date));
+				year = c.get(Calendar.YEAR);
+			}
+			return year;
+		} catch (ParseException e) {
+			return NctDateParser.INVALID_DATE;
+		}
+	}
+}
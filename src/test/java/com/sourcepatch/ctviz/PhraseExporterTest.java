@@ -0,0 +1,175 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Unit test and benchmark for {@link PhraseExporter}.
+ */
+public class PhraseExporterTest {
+
+	private Path dir;
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("ctviz-phrases");
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@After
+	public void deleteDir() throws IOException {
+		for (String name : new String[] { "graph.ctgs", "old.txt", PhraseExporter.FILE_CONDITION_PHRASES,
+				PhraseExporter.FILE_INTERVENTION_PHRASES }) {
+			Files.deleteIfExists(dir.resolve(name));
+		}
+		Files.delete(dir);
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void writesPhrasesInNodeOrder() throws IOException {
+		GraphSnapshot graph = buildGraph(Arrays.asList("Asthma", "Diabetes", "Asthma"),
+				Arrays.asList("Insulin", "Placebo"));
+		Map<Path, Integer> counts = PhraseExporter.fromProperties(dir).export(graph.toExportable());
+
+		assertEquals(Arrays.asList("Asthma .", "Diabetes .", "Asthma ."),
+				readPhrases(PhraseExporter.FILE_CONDITION_PHRASES));
+		assertEquals(Arrays.asList("Insulin .", "Placebo ."), readPhrases(PhraseExporter.FILE_INTERVENTION_PHRASES));
+		assertEquals(3, counts.get(dir.resolve(PhraseExporter.FILE_CONDITION_PHRASES)).intValue());
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void deduplicatesAndSortsPhrases() throws IOException {
+		GraphSnapshot graph = buildGraph(Arrays.asList("diabetes", "Asthma", "diabetes", "Zika"),
+				Arrays.asList("Placebo", "Placebo"));
+		Map<Path, Integer> counts = newExporter(true).export(graph.toExportable());
+
+		assertEquals(Arrays.asList("Asthma .", "Zika .", "diabetes ."),
+				readPhrases(PhraseExporter.FILE_CONDITION_PHRASES));
+		assertEquals(Arrays.asList("Placebo ."), readPhrases(PhraseExporter.FILE_INTERVENTION_PHRASES));
+		assertEquals(3, counts.get(dir.resolve(PhraseExporter.FILE_CONDITION_PHRASES)).intValue());
+	}
+
+	/**
+	 * Compares the single pass with one pass and one print writer per file,
+	 * over more phrases than fit in a write batch.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkExport() throws IOException {
+		List<String> conditions = new ArrayList<>();
+		List<String> interventions = new ArrayList<>();
+		for (int i = 0; i < 400000; i++) {
+			conditions.add("condition number " + i % 150000);
+			interventions.add("intervention number " + i % 100000);
+		}
+		GraphSnapshot graph = buildGraph(conditions, interventions);
+		ExportableGraph<Integer, Integer> exportable = graph.toExportable();
+
+		long start = System.nanoTime();
+		Path old = dir.resolve("old.txt");
+		for (String attribute : new String[] { GraphSchema.VERTEX_PROPERTY_CONDITION_RAW,
+				GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME }) {
+			try (PrintWriter pw = new PrintWriter(old.toFile())) {
+				for (Integer node : exportable.getNodes()) {
+					Object phrase = exportable.getNodeAttribute(node, attribute);
+					if (phrase != null) {
+						pw.println(phrase + " .");
+					}
+				}
+			}
+		}
+		long printWriterNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		newExporter(false).export(exportable);
+		long singlePassNanos = System.nanoTime() - start;
+		List<String> written = readPhrases(PhraseExporter.FILE_CONDITION_PHRASES);
+		assertEquals(conditions.size(), written.size());
+		assertEquals(conditions.get(conditions.size() - 1) + " .", written.get(written.size() - 1));
+
+		start = System.nanoTime();
+		newExporter(true).export(exportable);
+		long deduplicatedNanos = System.nanoTime() - start;
+		written = readPhrases(PhraseExporter.FILE_CONDITION_PHRASES);
+		List<String> expected = new ArrayList<>();
+		for (String condition : new TreeSet<>(conditions)) {
+			expected.add(condition + " .");
+		}
+		assertEquals(expected, written);
+
+		System.out.println("Phrases of " + conditions.size() + " nodes: print writers "
+				+ TimeUnit.NANOSECONDS.toMillis(printWriterNanos) + "ms, single pass "
+				+ TimeUnit.NANOSECONDS.toMillis(singlePassNanos) + "ms, deduplicated "
+				+ TimeUnit.NANOSECONDS.toMillis(deduplicatedNanos) + "ms");
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * One condition node per condition, followed by one intervention node per
+	 * intervention and a trial without phrases.
+	 */
+	private GraphSnapshot buildGraph(List<String> conditions, List<String> interventions) throws IOException {
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+		int i = 0;
+		for (String condition : conditions) {
+			int row = builder.addVertex("c" + i++, GraphSchema.VERTEX_LABEL_CONDITION);
+			builder.setVertexProperty(row, GraphSchema.VERTEX_PROPERTY_CONDITION_RAW, condition);
+		}
+		for (String intervention : interventions) {
+			int row = builder.addVertex("i" + i++, GraphSchema.VERTEX_LABEL_INTERVENTION);
+			builder.setVertexProperty(row, GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME, intervention);
+		}
+		builder.addVertex("t" + i, GraphSchema.VERTEX_LABEL_TRIAL);
+		Path file = dir.resolve("graph.ctgs");
+		builder.write(file);
+		return GraphSnapshot.load(file);
+	}
+
+	private PhraseExporter newExporter(boolean deduplicate) {
+		return new PhraseExporter(deduplicate)
+				.addPhrases(GraphSchema.VERTEX_PROPERTY_CONDITION_RAW,
+						dir.resolve(PhraseExporter.FILE_CONDITION_PHRASES))
+				.addPhrases(GraphSchema.VERTEX_PROPERTY_NCT_INTERVENTION_NAME,
+						dir.resolve(PhraseExporter.FILE_INTERVENTION_PHRASES));
+	}
+
+	private List<String> readPhrases(String name) throws IOException {
+		return Files.readAllLines(dir.resolve(name), StandardCharsets.UTF_8);
+	}
+}
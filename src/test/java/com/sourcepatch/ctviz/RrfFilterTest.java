@@ -0,0 +1,207 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Unit test and benchmark for {@link RrfFilter} and {@link IntHashSet}.
+ */
+public class RrfFilterTest {
+
+	private Path dir;
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("ctviz-rrf");
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@After
+	public void deleteDir() throws IOException {
+		for (String name : new String[] { "MRCONSO.RRF", "MRSTY.RRF" }) {
+			Files.deleteIfExists(dir.resolve(name));
+		}
+		Files.delete(dir);
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void keepsSelectedRowsInOrder() throws IOException {
+		Path mrconso = dir.resolve("MRCONSO.RRF");
+		StringBuilder longName = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			longName.append("syndrome ");
+		}
+		List<String> rows = new ArrayList<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 2000; i++) {
+			rows.add(row(random.nextInt(50), i % 500 == 0 ? longName.toString() : "Condition " + i));
+		}
+		rows.add("");
+		rows.add("X0000001|ENG|P|not a CUI|");
+		rows.add("C|ENG|P|no digits|");
+		rows.add("C0000003");
+		rows.add("C0000004");
+		rows.add(row(3, "last row without newline"));
+		Files.write(mrconso, String.join("\n", rows).getBytes(StandardCharsets.UTF_8));
+
+		Set<String> selected = new TreeSet<>();
+		IntHashSet cuis = new IntHashSet(4);
+		for (int cui = 0; cui < 50; cui += 3) {
+			selected.add(String.format("C%07d", cui));
+			cuis.add(cui);
+		}
+
+		byte[] expected = scan(mrconso, selected);
+		for (int chunkBytes : new int[] { 1, 100, 4096, Integer.MAX_VALUE }) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			long written = new RrfFilter(4, chunkBytes).filterByCui(mrconso, cuis, out);
+			assertArrayEquals("Chunks of " + chunkBytes + " bytes", expected, out.toByteArray());
+			assertEquals(new String(expected, StandardCharsets.UTF_8).split("\n").length, written);
+		}
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void readsConceptsBySemanticType() throws IOException {
+		Path mrsty = dir.resolve("MRSTY.RRF");
+		Files.write(mrsty,
+				Arrays.asList("C0006142|T191|B2.2.1.2.1.3|Neoplastic Process|AT17683839|3840|",
+						"C0011849|T047|B2.2.1.2.1|Disease or Syndrome|AT17648347|256|",
+						"C0011849|T047|B2.2.1.2.1|Disease or Syndrome|AT17648348|256|",
+						"C0030193|T184|A2.2.2|Sign or Symptom|AT17602930|256|",
+						"C0004057|T121|A1.4.1.1.1|Pharmacologic Substance|AT17567356|256|",
+						"C0000001|T121|A1.4.1.1.1|Disease or Syndrome (mentioned)|AT17567356|256|", "C0000002|T047"),
+				StandardCharsets.UTF_8);
+
+		Set<String> cuis = RrfFilter.readSemanticTypeCuis(mrsty,
+				Arrays.asList("Disease or Syndrome", "Sign or Symptom", "Neoplastic Process"));
+		assertEquals(Arrays.asList("C0006142", "C0011849", "C0030193"), new ArrayList<>(cuis));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void growsIntHashSet() {
+		IntHashSet set = new IntHashSet(1);
+		for (int i = 0; i < 100000; i += 7) {
+			assertTrue(set.add(i));
+		}
+		assertFalse(set.add(70));
+		assertEquals(14286, set.size());
+		for (int i = 0; i < 100000; i++) {
+			assertEquals(i % 7 == 0, set.contains(i));
+		}
+	}
+
+	/**
+	 * Compares the filter with the line-by-line scan it replaces, on a
+	 * synthetic MRCONSO file.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkFilter() throws IOException {
+		Path mrconso = dir.resolve("MRCONSO.RRF");
+		Random random = new Random(42);
+		try (BufferedWriter bw = Files.newBufferedWriter(mrconso, StandardCharsets.UTF_8)) {
+			for (int i = 0; i < 600000; i++) {
+				bw.write(row(random.nextInt(3000000), "Surface form of a concept " + random.nextInt()));
+				bw.write('\n');
+			}
+		}
+		Set<String> selected = new TreeSet<>();
+		IntHashSet cuis = new IntHashSet(300000);
+		for (int cui = 0; cui < 3000000; cui += 10) {
+			selected.add(String.format("C%07d", cui));
+			cuis.add(cui);
+		}
+
+		long start = System.nanoTime();
+		byte[] expected = scan(mrconso, selected);
+		long scanNanos = System.nanoTime() - start;
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		start = System.nanoTime();
+		new RrfFilter(threads, 8 * 1024 * 1024).filterByCui(mrconso, cuis, out);
+		long filterNanos = System.nanoTime() - start;
+		assertArrayEquals(expected, out.toByteArray());
+
+		System.out.println("Filtering " + Files.size(mrconso) / (1024 * 1024) + "MB of MRCONSO rows:");
+		System.out.println("  split and TreeSet:           " + TimeUnit.NANOSECONDS.toMillis(scanNanos) + "ms");
+		System.out.println("  RrfFilter with " + threads + " threads:   " + TimeUnit.NANOSECONDS.toMillis(filterNanos)
+				+ "ms");
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private static String row(int cui, String surfaceForm) {
+		return String.format("C%07d", cui) + "|ENG|P|L0000001|PF|S0000001|Y|A0000001||M0000001|D000001|MSH|PT|D000001|"
+				+ surfaceForm + "|0|N|256|";
+	}
+
+	/**
+	 * The line-by-line scan the filter replaces.
+	 *
+	 * @param mrconso
+	 * @param diseaseCuis
+	 * @return selected rows
+	 * @throws IOException
+	 */
+	private static byte[] scan(Path mrconso, Set<String> diseaseCuis) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BufferedReader br = Files.newBufferedReader(mrconso, StandardCharsets.UTF_8);
+				PrintWriter pw = new PrintWriter(out)) {
+			String line = null;
+			while ((line = br.readLine()) != null) {
+				String cui = line.split("\\|")[0];
+				if (diseaseCuis.contains(cui)) {
+					pw.print(line);
+					pw.print('\n');
+				}
+			}
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,80 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.Unmarshaller;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Unit test and benchmark for {@link StudyArchive}.
+ */
+public class StudyArchiveTest {
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void inPlaceAndTempFileModesReadSameStudies() throws Exception {
+		Path fixture = Files.createTempFile("ctviz-fixture", ".zip");
+		try {
+			StudyFixtures.writeArchive(fixture, 200);
+			List<String> inPlace = readNctIds(fixture, false);
+			List<String> copied = readNctIds(fixture, true);
+
+			assertEquals(200, inPlace.size());
+			assertEquals(copied, inPlace);
+		} finally {
+			Files.deleteIfExists(fixture);
+		}
+	}
+
+	/**
+	 * Compares reading 10,000 studies from the archive in place against the
+	 * temporary file fallback.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkInPlaceAgainstTempFiles() throws Exception {
+		int studies = 10000;
+		Path fixture = Files.createTempFile("ctviz-fixture", ".zip");
+		try {
+			StudyFixtures.writeArchive(fixture, studies);
+			readNctIds(fixture, false);
+			readNctIds(fixture, true);
+
+			long tempFileNanos = timeRead(fixture, true);
+			long inPlaceNanos = timeRead(fixture, false);
+			System.out.println(studies + " studies. Temp files: " + tempFileNanos / 1000000 + "ms. In place: "
+					+ inPlaceNanos / 1000000 + "ms.");
+		} finally {
+			Files.deleteIfExists(fixture);
+		}
+	}
+
+	private long timeRead(Path fixture, boolean useTempFiles) throws Exception {
+		long start = System.nanoTime();
+		readNctIds(fixture, useTempFiles);
+		return System.nanoTime() - start;
+	}
+
+	private List<String> readNctIds(Path fixture, boolean useTempFiles) throws Exception {
+		List<String> nctIds = new ArrayList<>();
+		Unmarshaller u = StudyUnmarshallers.getContext().createUnmarshaller();
+		try (StudyArchive archive = new StudyArchive(fixture, nctId -> true, useTempFiles)) {
+			for (int i = 0; i < archive.size(); i++) {
+				nctIds.add(archive.unmarshal(i, u).getIdInfo().getNctId());
+			}
+		}
+		return nctIds;
+	}
+}
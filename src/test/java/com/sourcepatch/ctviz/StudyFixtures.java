@@ -0,0 +1,132 @@
+package com.sourcepatch.ctviz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.xml.bind.JAXBException;
+
+import com.sourcepatch.ctviz.ctgov.AddressStruct;
+import com.sourcepatch.ctviz.ctgov.AgencyClassEnum;
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+import com.sourcepatch.ctviz.ctgov.EligibilityStruct;
+import com.sourcepatch.ctviz.ctgov.EnrollmentStruct;
+import com.sourcepatch.ctviz.ctgov.FacilityStruct;
+import com.sourcepatch.ctviz.ctgov.GenderEnum;
+import com.sourcepatch.ctviz.ctgov.IdInfoStruct;
+import com.sourcepatch.ctviz.ctgov.InterventionStruct;
+import com.sourcepatch.ctviz.ctgov.InterventionTypeEnum;
+import com.sourcepatch.ctviz.ctgov.LocationStruct;
+import com.sourcepatch.ctviz.ctgov.PhaseEnum;
+import com.sourcepatch.ctviz.ctgov.SponsorStruct;
+import com.sourcepatch.ctviz.ctgov.SponsorsStruct;
+import com.sourcepatch.ctviz.ctgov.StudyTypeEnum;
+import com.sourcepatch.ctviz.ctgov.VariableDateStruct;
+
+/**
+ * Deterministic clinical studies for tests that need many trials.
+ */
+public class StudyFixtures {
+
+	private static final int SPONSORS = 1000;
+	private static final int CONDITIONS = 2000;
+	private static final int INTERVENTIONS = 3000;
+	private static final int LOCATIONS = 5000;
+
+	/**
+	 * 
+	 * @param index
+	 * @return a study sharing sponsors, conditions, interventions and
+	 *         locations with other studies from this class
+	 */
+	public static ClinicalStudy newStudy(int index) {
+		ClinicalStudy study = new ClinicalStudy();
+
+		IdInfoStruct idInfo = new IdInfoStruct();
+		idInfo.setNctId(String.format("NCT%08d", index));
+		idInfo.setOrgStudyId("ORG-" + index);
+		study.setIdInfo(idInfo);
+		study.setBriefTitle("Study " + index);
+		study.setOverallStatus("Recruiting");
+		study.setPhase(PhaseEnum.PHASE_2);
+		study.setStudyType(StudyTypeEnum.INTERVENTIONAL);
+
+		EnrollmentStruct enrollment = new EnrollmentStruct();
+		enrollment.setValue(BigInteger.valueOf(index % 500));
+		study.setEnrollment(enrollment);
+
+		EligibilityStruct eligibility = new EligibilityStruct();
+		eligibility.setGender(GenderEnum.ALL);
+		eligibility.setMinimumAge("18 Years");
+		eligibility.setMaximumAge("N/A");
+		study.setEligibility(eligibility);
+
+		VariableDateStruct startDate = new VariableDateStruct();
+		startDate.setValue("May 2012");
+		study.setStartDate(startDate);
+
+		SponsorsStruct sponsors = new SponsorsStruct();
+		sponsors.setLeadSponsor(newSponsor("Sponsor " + index % SPONSORS));
+		sponsors.getCollaborator().add(newSponsor("Sponsor " + (index * 31 + 1) % SPONSORS));
+		study.setSponsors(sponsors);
+
+		for (int k = 0; k < 3; k++) {
+			study.getCondition().add("Condition " + (index * 7 + k) % CONDITIONS);
+		}
+
+		InterventionStruct intervention = new InterventionStruct();
+		intervention.setInterventionType(InterventionTypeEnum.DRUG);
+		intervention.setInterventionName("Drug " + index % INTERVENTIONS);
+		study.getIntervention().add(intervention);
+
+		for (int k = 0; k < 2; k++) {
+			AddressStruct address = new AddressStruct();
+			address.setCity("City " + (index * 13 + k) % LOCATIONS);
+			address.setState("Texas");
+			address.setCountry("United States");
+			FacilityStruct facility = new FacilityStruct();
+			facility.setName("Hospital " + k);
+			facility.setAddress(address);
+			LocationStruct location = new LocationStruct();
+			location.setFacility(facility);
+			study.getLocation().add(location);
+		}
+
+		return study;
+	}
+
+	/**
+	 * Writes studies in the layout of a clinicaltrials.gov download, one XML
+	 * file per study.
+	 * 
+	 * @param archive
+	 * @param count
+	 * @throws IOException
+	 * @throws JAXBException
+	 */
+	public static void writeArchive(Path archive, int count) throws IOException, JAXBException {
+		try (OutputStream os = Files.newOutputStream(archive)) {
+			writeArchive(os, count);
+		}
+	}
+
+	/**
+	 * 
+	 * @param os
+	 * @param count
+	 * @throws IOException
+	 * @throws JAXBException
+	 */
+	public static void writeArchive(OutputStream os, int count) throws IOException, JAXBException {
+		new SyntheticTrialSource(StudyFixtures::newStudy, count).writeArchive(os);
+	}
+
+	private static SponsorStruct newSponsor(String agency) {
+		SponsorStruct sponsor = new SponsorStruct();
+		sponsor.setAgency(agency);
+		sponsor.setAgencyClass(AgencyClassEnum.OTHER);
+		return sponsor;
+	}
+}
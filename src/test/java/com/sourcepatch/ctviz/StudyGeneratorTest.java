@@ -0,0 +1,251 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.XMLConstants;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.validation.SchemaFactory;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.google.maps.model.LatLng;
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+import com.sourcepatch.ctviz.ctgov.SponsorStruct;
+
+/**
+ * Unit test and benchmark for {@link StudyGenerator}.
+ */
+public class StudyGeneratorTest {
+
+	private static final int TRIALS = 20000;
+
+	private static final int BENCHMARK_TRIALS = 10000;
+
+	/**
+	 * A study must depend only on the seed and its index.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void generatesSameStudiesForSameSeed() throws Exception {
+		StudyGenerator generator = new StudyGenerator(7, 1000);
+		List<byte[]> forward = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			forward.add(marshal(generator.apply(i)));
+		}
+		StudyGenerator again = new StudyGenerator(7, 1000);
+		for (int i = 99; i >= 0; i--) {
+			assertArrayEquals(forward.get(i), marshal(again.apply(i)));
+		}
+		assertFalse(new String(forward.get(0), "UTF-8")
+				.equals(new String(marshal(new StudyGenerator(8, 1000).apply(0)), "UTF-8")));
+	}
+
+	/**
+	 * Generated studies must be valid against the clinicaltrials.gov schema.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void generatesValidStudies() throws Exception {
+		Marshaller m = StudyUnmarshallers.getContext().createMarshaller();
+		m.setSchema(SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+				.newSchema(Paths.get("src", "main", "xsd", "ctgov-public.xsd").toFile()));
+		StudyGenerator generator = new StudyGenerator(1, 2000);
+		for (int i = 0; i < 2000; i++) {
+			m.marshal(generator.apply(i), new ByteArrayOutputStream());
+		}
+	}
+
+	/**
+	 * Sponsors, conditions and sites must follow long-tailed distributions,
+	 * with most trials at a single site and without collaborators.
+	 */
+	@Test
+	public void followsRegistryDistributions() {
+		StudyGenerator generator = new StudyGenerator(1, TRIALS);
+		Map<String, Integer> leadSponsors = new HashMap<>();
+		Map<String, Integer> conditions = new HashMap<>();
+		int withoutCollaborators = 0;
+		int singleSite = 0;
+		int maxSites = 0;
+		int interventional = 0;
+		for (int i = 0; i < TRIALS; i++) {
+			ClinicalStudy study = generator.apply(i);
+			SponsorStruct lead = study.getSponsors().getLeadSponsor();
+			leadSponsors.merge(lead.getAgency(), 1, Integer::sum);
+			study.getCondition().forEach(c -> conditions.merge(c, 1, Integer::sum));
+			if (study.getSponsors().getCollaborator().isEmpty()) {
+				withoutCollaborators++;
+			}
+			if (study.getLocation().size() == 1) {
+				singleSite++;
+			}
+			maxSites = Math.max(maxSites, study.getLocation().size());
+			if (!study.getIntervention().isEmpty()) {
+				interventional++;
+			}
+		}
+
+		int topSponsor = leadSponsors.values().stream().max(Integer::compare).get();
+		long rareSponsors = leadSponsors.values().stream().filter(count -> count <= 2).count();
+		assertTrue("Top sponsor: " + topSponsor, topSponsor > TRIALS / 20 && topSponsor < TRIALS / 2);
+		assertTrue("Rare sponsors: " + rareSponsors, rareSponsors > leadSponsors.size() / 2);
+		assertTrue(conditions.get(generator.getCondition(0)) > TRIALS / 20);
+		assertTrue("Distinct conditions: " + conditions.size(), conditions.size() > TRIALS / 10);
+		assertEquals(0.7, withoutCollaborators / (double) TRIALS, 0.05);
+		assertEquals(0.55, singleSite / (double) TRIALS, 0.05);
+		assertTrue("Most sites: " + maxSites, maxSites > 100);
+		assertEquals(0.77, interventional / (double) TRIALS, 0.02);
+	}
+
+	/**
+	 * Archives of generated studies must be read like a clinicaltrials.gov
+	 * download.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void writesArchiveInDownloadLayout() throws Exception {
+		StudyGenerator generator = new StudyGenerator(3, 300);
+		SyntheticTrialSource source = new SyntheticTrialSource(generator, 300);
+		ByteArrayOutputStream archive = new ByteArrayOutputStream();
+		source.writeArchive(archive);
+		try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+			int i = 0;
+			for (ZipEntry entry; (entry = zis.getNextEntry()) != null; i++) {
+				assertEquals(String.format("NCT%08d.xml", i), entry.getName());
+			}
+			assertEquals(300, i);
+		}
+
+		try (StudyArchive studies = source.open("anything", nctId -> true)) {
+			assertEquals(300, studies.size());
+			Unmarshaller u = StudyUnmarshallers.getContext().createUnmarshaller();
+			assertArrayEquals(marshal(generator.apply(123)), marshal(studies.unmarshal(123, u)));
+		}
+	}
+
+	/**
+	 * Times each ingest stage on generated trials. Set
+	 * {@link StudyGenerator#PROPERTY_TRIALS} to change the number of trials.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkIngestStages() throws Exception {
+		int trials = Integer.getInteger(StudyGenerator.PROPERTY_TRIALS, BENCHMARK_TRIALS);
+		StudyGenerator generator = new StudyGenerator(1, trials);
+		Path archiveFile = Files.createTempFile("ctviz-synthetic", ".zip");
+		try {
+			long start = System.nanoTime();
+			try (OutputStream os = Files.newOutputStream(archiveFile)) {
+				new SyntheticTrialSource(generator, trials).writeArchive(os);
+			}
+			long writeNanos = System.nanoTime() - start;
+
+			try (StudyArchive archive = new StudyArchive(archiveFile)) {
+				start = System.nanoTime();
+				Unmarshaller u = StudyUnmarshallers.getContext().createUnmarshaller();
+				List<ClinicalStudy> studies = new ArrayList<>(trials);
+				for (int i = 0; i < archive.size(); i++) {
+					studies.add(archive.unmarshal(i, u));
+				}
+				long jaxbNanos = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				StudyStaxParser parser = new StudyStaxParser();
+				for (int i = 0; i < archive.size(); i++) {
+					try (InputStream is = archive.openEntry(i)) {
+						parser.parse(is);
+					}
+				}
+				long staxNanos = System.nanoTime() - start;
+
+				StudyGraphBuilder<Integer, Integer> builder = newBuilder();
+				start = System.nanoTime();
+				List<PreparedStudy> prepared = new ArrayList<>(trials);
+				for (ClinicalStudy study : studies) {
+					prepared.add(builder.prepareStudy(study));
+				}
+				long prepareNanos = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				for (PreparedStudy study : prepared) {
+					builder.upsertStudy(study);
+				}
+				builder.flush();
+				long buildNanos = System.nanoTime() - start;
+
+				int workers = Runtime.getRuntime().availableProcessors();
+				StudyGraphBuilder<Integer, Integer> pipelined = newBuilder();
+				start = System.nanoTime();
+				try (GeocodingStage geocoding = new GeocodingStage(
+						(city, state, zip, country) -> new LatLng(city.length(), country.length()), 4, 1, 0)) {
+					pipelined.setGeocoding(geocoding);
+					assertEquals(trials, pipelined.ingest(archive, workers, workers * 4));
+				}
+				long ingestNanos = System.nanoTime() - start;
+
+				GraphSnapshot.Builder snapshot = ((SnapshotGraphSink) pipelined.getSink()).getBuilder();
+				assertEquals(((SnapshotGraphSink) builder.getSink()).getBuilder().getVertexCount(),
+						snapshot.getVertexCount());
+				System.out.println("Ingesting " + trials + " generated trials (" + Files.size(archiveFile) / 1024
+						+ "KB archive, " + snapshot.getVertexCount() + " vertices, " + snapshot.getEdgeCount()
+						+ " edges):");
+				System.out.println("  generate and write archive: " + TimeUnit.NANOSECONDS.toMillis(writeNanos)
+						+ "ms");
+				System.out.println("  unmarshal with JAXB:        " + TimeUnit.NANOSECONDS.toMillis(jaxbNanos)
+						+ "ms");
+				System.out.println("  parse with StAX:            " + TimeUnit.NANOSECONDS.toMillis(staxNanos)
+						+ "ms");
+				System.out.println("  prepare:                    " + TimeUnit.NANOSECONDS.toMillis(prepareNanos)
+						+ "ms");
+				System.out.println("  build graph:                " + TimeUnit.NANOSECONDS.toMillis(buildNanos)
+						+ "ms");
+				System.out.println("  ingest with " + workers + " workers:     "
+						+ TimeUnit.NANOSECONDS.toMillis(ingestNanos) + "ms");
+			}
+		} finally {
+			Files.delete(archiveFile);
+		}
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private static byte[] marshal(ClinicalStudy study) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		StudyUnmarshallers.getContext().createMarshaller().marshal(study, bos);
+		return bos.toByteArray();
+	}
+
+	private static StudyGraphBuilder<Integer, Integer> newBuilder() {
+		return new StudyGraphBuilder<>(new SnapshotGraphSink(new GraphSnapshot.Builder()),
+				ConditionDictionary.empty(),
+				new ConditionNormalizer(ConditionDictionary.empty(), ConditionNormalizer.DEFAULT_CACHE_SIZE, null),
+				new HashMap<>());
+	}
+}
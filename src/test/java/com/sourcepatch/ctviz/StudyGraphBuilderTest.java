@@ -0,0 +1,253 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+import com.sourcepatch.ctviz.ctgov.StudyDesignInfoStruct;
+
+/**
+ * Unit test and benchmark for {@link StudyGraphBuilder} and its sinks.
+ */
+public class StudyGraphBuilderTest {
+
+	/**
+	 * The same trials must produce the same graph in TinkerPop and in a
+	 * snapshot.
+	 */
+	@Test
+	public void sinksReceiveTheSameGraph() {
+		Graph g = TinkerGraph.open();
+		build(new TinkerPopGraphSink(g), 500);
+		SnapshotGraphSink snapshot = new SnapshotGraphSink(new GraphSnapshot.Builder());
+		build(new BatchingGraphSink<>(snapshot, 64), 500);
+
+		assertEquals(countVertexLabels(new TinkerPopGraphSink(g)), countVertexLabels(snapshot));
+		assertEquals(countEdgeLabels(new TinkerPopGraphSink(g)), countEdgeLabels(snapshot));
+
+		GraphSnapshot.Builder builder = snapshot.getBuilder();
+		for (int e = 0; e < builder.getEdgeCount(); e++) {
+			String nctIds = (String) builder.getEdgeProperty(e, GraphSchema.EDGE_PROPERTY_NCT_ID);
+			assertEquals(nctIds, nctIds.split(" ").length,
+					builder.getEdgeProperty(e, GraphSchema.EDGE_PROPERTY_COUNT));
+		}
+	}
+
+	/**
+	 * Vertices and edges must reach the graph in batches, vertices before the
+	 * edges between them.
+	 */
+	@Test
+	public void batchingSinkAddsElementsInBulk() {
+		BulkSink sink = new BulkSink();
+		BatchingGraphSink<Integer, Integer> batching = new BatchingGraphSink<>(sink, 64);
+		StudyGraphBuilder<Integer, Integer> builder = build(batching, 200);
+
+		GraphSnapshot.Builder snapshot = sink.getBuilder();
+		assertEquals(snapshot.getVertexCount(), sink.addedVertices);
+		assertEquals(snapshot.getEdgeCount(), sink.addedEdges);
+		assertTrue(sink.bulkInserts < (sink.addedVertices + sink.addedEdges) / 32);
+		assertEquals(builder.getEdgeRegistry().size(), sink.addedEdges);
+	}
+
+	/**
+	 * Locations shared with a replaced trial must take the properties of a
+	 * trial still at the location.
+	 */
+	@Test
+	public void refreshesLocationsOfReplacedTrials() {
+		refreshLocation(new TinkerPopGraphSink(TinkerGraph.open()));
+		refreshLocation(new BatchingGraphSink<>(new TinkerPopGraphSink(TinkerGraph.open()), 64));
+	}
+
+	/**
+	 * Replacing a trial must update the relations of its sponsors without
+	 * listing their edges. Trials 0 and 2000 of the fixtures share their
+	 * sponsor, collaborator and conditions.
+	 */
+	@Test
+	public void replacesTrialWithoutListingSponsorEdges() {
+		int[] sponsorListings = new int[1];
+		TinkerPopGraphSink sink = new TinkerPopGraphSink(TinkerGraph.open()) {
+			@Override
+			public Collection<Edge> getEdges(Vertex vertex) {
+				if (GraphSchema.VERTEX_LABEL_SPONSOR.equals(getVertexLabel(vertex))) {
+					sponsorListings[0]++;
+				}
+				return super.getEdges(vertex);
+			}
+		};
+		StudyGraphBuilder<Vertex, Edge> builder = build(sink, 0);
+		builder.addStudy(StudyFixtures.newStudy(0));
+		builder.addStudy(StudyFixtures.newStudy(2000));
+		ClinicalStudy revised = StudyFixtures.newStudy(0);
+		revised.getCondition().set(0, "Revised condition");
+		revised.getSponsors().getCollaborator().clear();
+		assertTrue(builder.upsertStudy(revised));
+		assertEquals(0, sponsorListings[0]);
+
+		VertexRegistry<Vertex> registry = builder.getVertexRegistry();
+		EdgeRegistry<Vertex, Edge> edges = builder.getEdgeRegistry();
+		Vertex sponsor = registry.get(GraphSchema.VERTEX_LABEL_SPONSOR, "Sponsor 0");
+		Vertex collaborator = registry.get(GraphSchema.VERTEX_LABEL_SPONSOR, "Sponsor 1");
+		Vertex revisedCondition = registry.get(GraphSchema.VERTEX_LABEL_CONDITION, "revised condition");
+		assertEquals("NCT00002000", edges.getNctIds(sponsor,
+				registry.get(GraphSchema.VERTEX_LABEL_CONDITION, "condition 0"), GraphSchema.EDGE_LABEL_RESEARCHES));
+		assertEquals("NCT00002000 NCT00000000", edges.getNctIds(sponsor,
+				registry.get(GraphSchema.VERTEX_LABEL_CONDITION, "condition 1"), GraphSchema.EDGE_LABEL_RESEARCHES));
+		assertEquals("NCT00000000", edges.getNctIds(sponsor, revisedCondition, GraphSchema.EDGE_LABEL_RESEARCHES));
+		assertEquals("NCT00002000", edges.getNctIds(sponsor, collaborator, GraphSchema.EDGE_LABEL_LEADS));
+		assertEquals("NCT00002000", edges.getNctIds(collaborator, sponsor, GraphSchema.EDGE_LABEL_COLLABORATES));
+		assertNull(edges.get(collaborator, revisedCondition, GraphSchema.EDGE_LABEL_RESEARCHES));
+	}
+
+	/**
+	 * Compares building the same trials into TinkerPop and into a snapshot.
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkSinks() {
+		int trials = 20000;
+		build(new TinkerPopGraphSink(TinkerGraph.open()), 2000);
+		build(new SnapshotGraphSink(new GraphSnapshot.Builder()), 2000);
+
+		long start = System.nanoTime();
+		build(new TinkerPopGraphSink(TinkerGraph.open()), trials);
+		long tinkerPopNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		StudyGraphBuilder<Integer, Integer> builder = build(
+				BatchingGraphSink.fromProperties(new SnapshotGraphSink(new GraphSnapshot.Builder())), trials);
+		builder.flush();
+		long snapshotNanos = System.nanoTime() - start;
+
+		System.out.println("Building " + trials + " trials: TinkerGraph "
+				+ TimeUnit.NANOSECONDS.toMillis(tinkerPopNanos) + "ms, snapshot "
+				+ TimeUnit.NANOSECONDS.toMillis(snapshotNanos) + "ms");
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private static <V, E> StudyGraphBuilder<V, E> build(GraphSink<V, E> sink, int trials) {
+		StudyGraphBuilder<V, E> builder = new StudyGraphBuilder<>(sink, ConditionDictionary.empty(),
+				new ConditionNormalizer(ConditionDictionary.empty(), ConditionNormalizer.DEFAULT_CACHE_SIZE, null),
+				new HashMap<>());
+		for (int i = 0; i < trials; i++) {
+			builder.addStudy(StudyFixtures.newStudy(i));
+		}
+		builder.flush();
+		return builder;
+	}
+
+	/**
+	 * Trials 0 and 5000 of the fixtures share their locations.
+	 */
+	private static <V, E> void refreshLocation(GraphSink<V, E> sink) {
+		StudyGraphBuilder<V, E> builder = build(sink, 0);
+		ClinicalStudy first = StudyFixtures.newStudy(0);
+		StudyDesignInfoStruct designInfo = new StudyDesignInfoStruct();
+		designInfo.setMasking("Double");
+		first.setStudyDesignInfo(designInfo);
+		first.setLastchangedDate("January 1, 2020");
+		builder.addStudy(first);
+		builder.addStudy(StudyFixtures.newStudy(5000));
+
+		V location = builder.getVertexRegistry().get(GraphSchema.VERTEX_LABEL_LOCATION, "City 0 Texas  United States");
+		assertEquals("Study 0", sink.getVertexProperty(location, GraphSchema.VERTEX_PROPERTY_NCT_TITLE));
+		assertEquals("Double", sink.getVertexProperty(location, GraphSchema.VERTEX_PROPERTY_NCT_MASKING));
+
+		ClinicalStudy revised = StudyFixtures.newStudy(0);
+		revised.setBriefTitle("Study 0 revised");
+		revised.setLastchangedDate("February 1, 2020");
+		assertTrue(builder.upsertStudy(revised));
+		assertEquals("NCT00005000", sink.getVertexProperty(location, GraphSchema.VERTEX_PROPERTY_NCT_STUDY_ID));
+		assertEquals("Study 5000", sink.getVertexProperty(location, GraphSchema.VERTEX_PROPERTY_NCT_TITLE));
+		assertNull(sink.getVertexProperty(location, GraphSchema.VERTEX_PROPERTY_NCT_MASKING));
+	}
+
+	private static <V, E> Map<String, Integer> countVertexLabels(GraphSink<V, E> sink) {
+		Map<String, Integer> counts = new TreeMap<>();
+		for (V vertex : sink.getVertices()) {
+			counts.merge(sink.getVertexLabel(vertex), 1, Integer::sum);
+		}
+		return counts;
+	}
+
+	/**
+	 *
+	 * @return number of edges and sum of their counts by edge label
+	 */
+	private static <V, E> Map<String, String> countEdgeLabels(GraphSink<V, E> sink) {
+		Map<String, Integer> edges = new TreeMap<>();
+		Map<String, Integer> occurrences = new TreeMap<>();
+		for (E edge : sink.getEdges()) {
+			String label = sink.getEdgeLabel(edge);
+			edges.merge(label, 1, Integer::sum);
+			occurrences.merge(label, (Integer) sink.getEdgeProperty(edge, GraphSchema.EDGE_PROPERTY_COUNT),
+					Integer::sum);
+		}
+		Map<String, String> counts = new TreeMap<>();
+		edges.forEach((label, count) -> counts.put(label, count + " " + occurrences.get(label)));
+		return counts;
+	}
+
+	/*
+	 * Private classes.
+	 */
+
+	/**
+	 * Snapshot sink checking that elements are added in bulk, and edges
+	 * after their vertices.
+	 */
+	private static class BulkSink extends SnapshotGraphSink {
+		private int addedVertices;
+		private int addedEdges;
+		private int bulkInserts;
+
+		BulkSink() {
+			super(new GraphSnapshot.Builder());
+		}
+
+		@Override
+		public void addVertex(Integer vertex) {
+			throw new AssertionError("Vertex added alone");
+		}
+
+		@Override
+		public void addVertices(Collection<Integer> vertices) {
+			addedVertices += vertices.size();
+			bulkInserts++;
+		}
+
+		@Override
+		public void addEdge(Integer edge) {
+			throw new AssertionError("Edge added alone");
+		}
+
+		@Override
+		public void addEdges(Collection<Integer> edges) {
+			for (Integer edge : edges) {
+				assertTrue(getEdgeSource(edge) < addedVertices);
+				assertTrue(getEdgeTarget(edge) < addedVertices);
+			}
+			addedEdges += edges.size();
+			bulkInserts++;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link StudyIngestPipeline}.
+ */
+public class StudyIngestPipelineTest {
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void appliesStudiesInArchiveOrder() throws Exception {
+		Path archiveFile = Files.createTempFile("ctviz-fixture", ".zip");
+		try {
+			StudyFixtures.writeArchive(archiveFile, 500);
+
+			StudyIngestPipeline<String> pipeline = new StudyIngestPipeline<>(4, 8);
+			List<String> applied = new ArrayList<>();
+			try (StudyArchive archive = new StudyArchive(archiveFile)) {
+				int count = pipeline.run(archive, study -> study.getIdInfo().getNctId(), applied::add);
+				assertEquals(500, count);
+			}
+
+			for (int i = 0; i < applied.size(); i++) {
+				assertEquals(StudyFixtures.newStudy(i).getIdInfo().getNctId(), applied.get(i));
+			}
+		} finally {
+			Files.delete(archiveFile);
+		}
+	}
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void readsFilteredArchiveByIndex() throws Exception {
+		Path archiveFile = Files.createTempFile("ctviz-fixture", ".zip");
+		try {
+			StudyFixtures.writeArchive(archiveFile, 300);
+
+			StudyIngestPipeline<String> pipeline = new StudyIngestPipeline<>(4, 8);
+			List<String> applied = new ArrayList<>();
+			try (StudyArchive archive = new StudyArchive(archiveFile, nctId -> nctId.endsWith("7"))) {
+				assertEquals(30, archive.size());
+				int count = pipeline.run(archive, study -> study.getIdInfo().getNctId(), applied::add);
+				assertEquals(30, count);
+			}
+
+			for (int i = 0; i < applied.size(); i++) {
+				assertEquals(StudyFixtures.newStudy(i * 10 + 7).getIdInfo().getNctId(), applied.get(i));
+			}
+		} finally {
+			Files.delete(archiveFile);
+		}
+	}
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void propagatesWorkerFailure() throws Exception {
+		Path archiveFile = Files.createTempFile("ctviz-fixture", ".zip");
+		StudyIngestPipeline<String> pipeline = new StudyIngestPipeline<>(2, 2);
+		try {
+			StudyFixtures.writeArchive(archiveFile, 50);
+			try (StudyArchive archive = new StudyArchive(archiveFile)) {
+				pipeline.run(archive, study -> {
+					throw new IllegalStateException(study.getIdInfo().getNctId());
+				}, nctId -> fail(nctId));
+				fail("Worker failure was not propagated");
+			}
+		} catch (IllegalStateException e) {
+			assertEquals("NCT00000000", e.getMessage());
+		} finally {
+			Files.delete(archiveFile);
+		}
+	}
+}
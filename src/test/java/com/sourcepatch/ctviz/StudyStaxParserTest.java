@@ -0,0 +1,196 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.sourcepatch.ctviz.ctgov.AddressStruct;
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+import com.sourcepatch.ctviz.ctgov.EligibilityStruct;
+import com.sourcepatch.ctviz.ctgov.InterventionStruct;
+import com.sourcepatch.ctviz.ctgov.LocationStruct;
+import com.sourcepatch.ctviz.ctgov.SponsorStruct;
+import com.sourcepatch.ctviz.ctgov.StudyDesignInfoStruct;
+
+/**
+ * Unit test and benchmark for {@link StudyStaxParser}.
+ */
+public class StudyStaxParserTest {
+
+	private static final int BENCHMARK_STUDIES = 20000;
+
+	private static byte[] sample;
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@BeforeClass
+	public static void readSample() throws Exception {
+		try (InputStream is = StudyStaxParserTest.class.getResourceAsStream("/clinical-study-sample.xml")) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				bos.write(buffer, 0, read);
+			}
+			sample = bos.toByteArray();
+		}
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void readsSampleLikeJaxb() throws Exception {
+		ClinicalStudy study = new StudyStaxParser().parse(new ByteArrayInputStream(sample));
+
+		assertEquals("NCT01999999", study.getIdInfo().getNctId());
+		assertEquals(2, study.getCondition().size());
+		assertEquals(3, study.getLocation().size());
+		assertEquals("March 14, 2016", study.getLastchangedDate());
+		assertNull(study.getDetailedDescription());
+		assertNull(study.getClinicalResults());
+		assertEquals(describe(jaxb(sample)), describe(study));
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void readsFixturesLikeJaxb() throws Exception {
+		Marshaller m = StudyUnmarshallers.getContext().createMarshaller();
+		StudyStaxParser parser = new StudyStaxParser();
+		for (int i = 0; i < 500; i++) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			m.marshal(StudyFixtures.newStudy(i), bos);
+			byte[] xml = bos.toByteArray();
+			assertEquals(describe(jaxb(xml)), describe(parser.parse(new ByteArrayInputStream(xml))));
+		}
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void leavesUnknownValuesEmptyLikeJaxb() throws Exception {
+		String xml = new String(sample, StandardCharsets.UTF_8).replace("<phase>Phase 2</phase>",
+				"<phase>Phase 9</phase>").replace("<enrollment type=\"Actual\">362</enrollment>",
+						"<enrollment type=\"Unknown\">362</enrollment>");
+		byte[] modified = xml.getBytes(StandardCharsets.UTF_8);
+
+		ClinicalStudy study = new StudyStaxParser().parse(new ByteArrayInputStream(modified));
+
+		assertNull(study.getPhase());
+		assertNull(study.getEnrollment().getType());
+		assertEquals(describe(jaxb(modified)), describe(study));
+	}
+
+	/**
+	 * Compares parse time and allocation per study against JAXB on the sample
+	 * study.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkStaxAgainstJaxb() throws Exception {
+		StudyStaxParser parser = new StudyStaxParser();
+		Unmarshaller u = StudyUnmarshallers.getContext().createUnmarshaller();
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		for (int round = 0; round < 2; round++) {
+			long startBytes = threads.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			for (int i = 0; i < BENCHMARK_STUDIES; i++) {
+				u.unmarshal(new ByteArrayInputStream(sample));
+			}
+			long jaxbNanos = System.nanoTime() - start;
+			long jaxbBytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+
+			startBytes = threads.getThreadAllocatedBytes(threadId);
+			start = System.nanoTime();
+			for (int i = 0; i < BENCHMARK_STUDIES; i++) {
+				parser.parse(new ByteArrayInputStream(sample));
+			}
+			long staxNanos = System.nanoTime() - start;
+			long staxBytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+
+			if (round == 1) {
+				System.out.println(BENCHMARK_STUDIES + " x " + sample.length / 1024 + "KB study. JAXB: "
+						+ jaxbNanos / BENCHMARK_STUDIES / 1000 + "us, " + jaxbBytes / BENCHMARK_STUDIES / 1024
+						+ "KB per study. StAX: " + staxNanos / BENCHMARK_STUDIES / 1000 + "us, "
+						+ staxBytes / BENCHMARK_STUDIES / 1024 + "KB per study.");
+			}
+		}
+	}
+
+	private static ClinicalStudy jaxb(byte[] xml) throws Exception {
+		return (ClinicalStudy) StudyUnmarshallers.getContext().createUnmarshaller()
+				.unmarshal(new ByteArrayInputStream(xml));
+	}
+
+	/**
+	 *
+	 * @param study
+	 * @return the fields used by the graph, in a comparable form
+	 */
+	private static String describe(ClinicalStudy study) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(study.getIdInfo().getNctId()).append('|').append(study.getIdInfo().getOrgStudyId());
+		sb.append('|').append(study.getBriefTitle()).append('|').append(study.getOverallStatus());
+		sb.append('|').append(study.getPhase()).append('|').append(study.getStudyType());
+		if (study.getStartDate() != null) {
+			sb.append('|').append(study.getStartDate().getValue()).append('|').append(study.getStartDate().getType());
+		}
+		sb.append('|').append(study.getLastchangedDate());
+		if (study.getEnrollment() != null) {
+			sb.append('|').append(study.getEnrollment().getValue()).append('|')
+					.append(study.getEnrollment().getType());
+		}
+		EligibilityStruct eligibility = study.getEligibility();
+		sb.append('|').append(eligibility.getGender()).append('|').append(eligibility.getMinimumAge()).append('|')
+				.append(eligibility.getMaximumAge());
+		StudyDesignInfoStruct designInfo = study.getStudyDesignInfo();
+		if (designInfo != null) {
+			sb.append('|').append(designInfo.getInterventionModel()).append('|')
+					.append(designInfo.getPrimaryPurpose()).append('|').append(designInfo.getMasking());
+		}
+		for (InterventionStruct intervention : study.getIntervention()) {
+			sb.append("|i:").append(intervention.getInterventionType()).append('|')
+					.append(intervention.getInterventionName());
+		}
+		SponsorStruct lead = study.getSponsors().getLeadSponsor();
+		sb.append("|s:").append(lead.getAgency()).append('|').append(lead.getAgencyClass());
+		for (SponsorStruct collaborator : study.getSponsors().getCollaborator()) {
+			sb.append("|c:").append(collaborator.getAgency()).append('|').append(collaborator.getAgencyClass());
+		}
+		for (String condition : study.getCondition()) {
+			sb.append("|d:").append(condition);
+		}
+		for (LocationStruct location : study.getLocation()) {
+			AddressStruct address = location.getFacility().getAddress();
+			sb.append("|l:").append(location.getFacility().getName()).append('|').append(address.getCity())
+					.append('|').append(address.getState()).append('|').append(address.getZip()).append('|')
+					.append(address.getCountry());
+		}
+		return sb.toString();
+	}
+}
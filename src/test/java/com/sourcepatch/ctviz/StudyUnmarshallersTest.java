@@ -0,0 +1,156 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+
+/**
+ * Unit test and benchmark for {@link StudyUnmarshallers}.
+ */
+public class StudyUnmarshallersTest {
+
+	private static final int FIXTURE_STUDIES = 2000;
+
+	private static final int SEARCHES = 5;
+
+	private static List<byte[]> fixture = new ArrayList<>();
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@BeforeClass
+	public static void writeFixture() throws Exception {
+		Marshaller m = StudyUnmarshallers.getContext().createMarshaller();
+		for (int i = 0; i < FIXTURE_STUDIES; i++) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			m.marshal(StudyFixtures.newStudy(i), bos);
+			fixture.add(bos.toByteArray());
+		}
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void sharesOneContext() throws Exception {
+		assertSame(StudyUnmarshallers.getContext(), StudyUnmarshallers.getContext());
+	}
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void unmarshalsFromConcurrentThreads() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> nctIds = new ArrayList<>();
+			for (int i = 0; i < FIXTURE_STUDIES; i++) {
+				byte[] xml = fixture.get(i);
+				nctIds.add(pool.submit(
+						() -> StudyUnmarshallers.unmarshal(new ByteArrayInputStream(xml)).getIdInfo().getNctId()));
+			}
+			for (int i = 0; i < FIXTURE_STUDIES; i++) {
+				assertEquals(StudyFixtures.newStudy(i).getIdInfo().getNctId(), nctIds.get(i).get());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Studies must be complete unless the StAX parser is requested.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void unmarshalsWithJaxbUnlessStaxIsRequested() throws Exception {
+		ClinicalStudy study = StudyFixtures.newStudy(1);
+		study.setOfficialTitle("Official title 1");
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		StudyUnmarshallers.getContext().createMarshaller().marshal(study, bos);
+		byte[] xml = bos.toByteArray();
+
+		assertEquals("Official title 1",
+				StudyUnmarshallers.unmarshal(new ByteArrayInputStream(xml)).getOfficialTitle());
+		System.setProperty(StudyUnmarshallers.PROPERTY_PARSER, "stax");
+		try {
+			ClinicalStudy sparse = StudyUnmarshallers.unmarshal(new ByteArrayInputStream(xml));
+			assertEquals(study.getIdInfo().getNctId(), sparse.getIdInfo().getNctId());
+			assertNull(sparse.getOfficialTitle());
+		} finally {
+			System.clearProperty(StudyUnmarshallers.PROPERTY_PARSER);
+		}
+	}
+
+	/**
+	 * Compares building a context for every search against the shared
+	 * context, and a new unmarshaller for every study against the pool.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkContextAndUnmarshallerReuse() throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < SEARCHES; i++) {
+			JAXBContext.newInstance("com.sourcepatch.ctviz.ctgov");
+		}
+		long newContextNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < SEARCHES; i++) {
+			StudyUnmarshallers.getContext();
+		}
+		long cachedContextNanos = System.nanoTime() - start;
+
+		JAXBContext jc = StudyUnmarshallers.getContext();
+		for (int round = 0; round < 2; round++) {
+			start = System.nanoTime();
+			for (byte[] xml : fixture) {
+				jc.createUnmarshaller().unmarshal(new ByteArrayInputStream(xml));
+			}
+			long newUnmarshallerNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (byte[] xml : fixture) {
+				Unmarshaller u = StudyUnmarshallers.borrow();
+				try {
+					ClinicalStudy study = (ClinicalStudy) u.unmarshal(new ByteArrayInputStream(xml));
+					assertEquals(3, study.getCondition().size());
+				} finally {
+					StudyUnmarshallers.release(u);
+				}
+			}
+			long pooledNanos = System.nanoTime() - start;
+
+			if (round == 1) {
+				System.out.println(SEARCHES + " searches. New context: " + newContextNanos / 1000000
+						+ "ms. Cached context: " + cachedContextNanos / 1000 + "us.");
+				System.out.println(FIXTURE_STUDIES + " studies. New unmarshaller: "
+						+ newUnmarshallerNanos / FIXTURE_STUDIES / 1000 + "us/study. Pooled: "
+						+ pooledNanos / FIXTURE_STUDIES / 1000 + "us/study.");
+			}
+		}
+	}
+}
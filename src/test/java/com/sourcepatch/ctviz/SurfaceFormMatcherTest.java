@@ -0,0 +1,105 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SurfaceFormMatcher}.
+ */
+public class SurfaceFormMatcherTest {
+
+	private static final Set<String> SURFACE_FORMS = new TreeSet<>(Arrays.asList("Cancer", "cancer", "Breast Cancer",
+			"breast carcinoma", "Lung Cancer", "lung", "AIDS", "HIV Infections", "Diabetes", "Diabetes Mellitus",
+			"Diabetes Mellitus, Type 2", "Type 2", "Pain", "Back Pain", "Low Back Pain", "Cancer Pain"));
+
+	/**
+	 * 
+	 */
+	@Test
+	public void findsLongestWholePhrase() {
+		SurfaceFormMatcher matcher = SurfaceFormMatcher.build(SURFACE_FORMS);
+
+		assertEquals("Breast Cancer", matcher.findLongest("Metastatic breast cancer"));
+		assertEquals("Low Back Pain", matcher.findLongest("Chronic Low Back Pain"));
+		assertEquals("Diabetes Mellitus, Type 2", matcher.findLongest("Diabetes Mellitus, Type 2"));
+		assertEquals("Cancer", matcher.findLongest("cancer"));
+		assertEquals("Pain", matcher.findLongest("pain"));
+		assertNull(matcher.findLongest("Cancerous lesions"));
+		assertNull(matcher.findLongest("Painful AIDS"));
+		assertNull(matcher.findLongest(""));
+	}
+
+	/**
+	 * Only the first occurrence of a surface form is considered, as with the
+	 * original indexOf scan.
+	 */
+	@Test
+	public void checksFirstOccurrenceOnly() {
+		SurfaceFormMatcher matcher = SurfaceFormMatcher.build(SURFACE_FORMS);
+
+		assertNull(matcher.findLongest("precancer cancer"));
+		assertEquals(scan("precancer cancer"), matcher.findLongest("precancer cancer"));
+	}
+
+	/**
+	 * 
+	 */
+	@Test
+	public void matchesOriginalScan() {
+		SurfaceFormMatcher matcher = SurfaceFormMatcher.build(SURFACE_FORMS);
+		String[] words = { "cancer", "Cancer", "breast", "lung", "pain", "back", "low", "type", "2", "diabetes",
+				"mellitus,", "hiv", "infections", "aids", "of", "the", "-", "precancer", "painful" };
+
+		Random random = new Random(42);
+		for (int i = 0; i < 20000; i++) {
+			StringBuilder text = new StringBuilder();
+			int length = 1 + random.nextInt(6);
+			for (int w = 0; w < length; w++) {
+				if (w > 0) {
+					text.append(random.nextInt(10) == 0 ? "-" : " ");
+				}
+				text.append(words[random.nextInt(words.length)]);
+			}
+			String condition = text.toString();
+			assertEquals(condition, scan(condition), matcher.findLongest(condition));
+		}
+	}
+
+	/**
+	 * The per-surface-form scan the automaton replaces.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	private static String scan(String c) {
+		String c3 = null;
+		String cLowerCase = c.toLowerCase();
+		for (String surfaceForm : SURFACE_FORMS) {
+			if (surfaceForm.equals(surfaceForm.toUpperCase())) {
+				continue;
+			}
+			String sfLowerCase = surfaceForm.toLowerCase();
+			int sfIndex = cLowerCase.indexOf(sfLowerCase);
+			if (sfIndex > -1) {
+				if (cLowerCase.length() == sfLowerCase.length()
+						|| (sfIndex == 0 && cLowerCase.charAt(sfLowerCase.length()) == ' ')
+						|| (sfIndex > 0 && sfIndex + sfLowerCase.length() == cLowerCase.length()
+								&& cLowerCase.charAt(sfIndex - 1) == ' ')
+						|| (sfIndex > 0 && cLowerCase.charAt(sfIndex - 1) == ' '
+								&& cLowerCase.charAt(sfIndex + sfLowerCase.length()) == ' ')) {
+					if (c3 == null || surfaceForm.length() > c3.length()) {
+						c3 = surfaceForm;
+					}
+				}
+			}
+		}
+		return c3;
+	}
+}
@@ -0,0 +1,273 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.util.iterator.IteratorUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit test for the {@link TrialSource} implementations.
+ */
+public class TrialSourceTest {
+
+	private Path dir;
+	private HttpServer server;
+
+	private volatile byte[] content;
+	private volatile String etag;
+	private final AtomicInteger truncatedResponses = new AtomicInteger();
+	private final AtomicInteger overstatedResponses = new AtomicInteger();
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("ctviz");
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/download", this::handleDownload);
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.stop(0);
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	/**
+	 * An unchanged result set must be revalidated instead of downloaded, and
+	 * a changed one must replace it in the cache.
+	 */
+	@Test
+	public void downloadsOnlyChangedResults() throws Exception {
+		content = newArchive(40);
+		etag = "\"v1\"";
+		HttpTrialSource source = newHttpSource(1);
+
+		try (StudyArchive archive = source.open("asthma", nctId -> true)) {
+			assertEquals(40, archive.size());
+		}
+		Path first = source.download("asthma");
+		assertArrayEquals(content, Files.readAllBytes(first));
+		assertEquals(content.length, source.getDownloadedBytes());
+		assertEquals("200 304", String.join(" ", requests));
+
+		// Same results for another term are stored once.
+		assertEquals(first, source.download("copd"));
+		assertEquals(2 * content.length, source.getDownloadedBytes());
+
+		content = newArchive(41);
+		etag = "\"v2\"";
+		Path second = source.download("asthma");
+		assertNotEquals(first, second);
+		assertArrayEquals(content, Files.readAllBytes(second));
+		assertTrue(Files.exists(first));
+		source.download("copd");
+		assertFalse(Files.exists(first));
+	}
+
+	/**
+	 * A download cut short must resume where it stopped.
+	 */
+	@Test
+	public void resumesInterruptedDownload() throws Exception {
+		content = newArchive(200);
+		etag = "\"v1\"";
+		truncatedResponses.set(1);
+		HttpTrialSource source = newHttpSource(2);
+
+		Path archive = source.download("asthma");
+		assertArrayEquals(content, Files.readAllBytes(archive));
+		assertEquals(2, requests.size());
+		assertTrue(requests.toString(), requests.get(1).startsWith("206 bytes " + content.length / 2 + "-"));
+		assertEquals(content.length, source.getDownloadedBytes());
+		try (Stream<Path> files = Files.list(dir.resolve("cache"))) {
+			assertEquals(2, files.count());
+		}
+	}
+
+	/**
+	 * A partial download holding the whole archive must be completed when the
+	 * server has no more bytes to send.
+	 */
+	@Test
+	public void completesPartialDownloadWithWholeArchive() throws Exception {
+		content = newArchive(50);
+		etag = "\"v1\"";
+		overstatedResponses.set(1);
+		HttpTrialSource source = newHttpSource(2);
+
+		Path archive = source.download("asthma");
+		assertArrayEquals(content, Files.readAllBytes(archive));
+		assertEquals("200 416 bytes */" + content.length, String.join(" ", requests));
+		assertFalse(Files.exists(dir.resolve("cache").resolve(
+				archive.getFileName().toString().replace(".zip", ".part"))));
+
+		// The validators of the 416 response still allow revalidation.
+		assertEquals(archive, source.download("asthma"));
+		assertEquals("304", requests.get(requests.size() - 1));
+	}
+
+	/**
+	 * Archives used least recently must leave the cache once it is full, and
+	 * be downloaded again in full.
+	 */
+	@Test
+	public void evictsLeastRecentlyUsedArchives() throws Exception {
+		byte[] asthma = newArchive(40);
+		byte[] copd = newArchive(41);
+		byte[] flu = newArchive(42);
+		HttpTrialSource source = new HttpTrialSource(
+				"http://localhost:" + server.getAddress().getPort() + "/download?term=", dir.resolve("cache"), 1,
+				asthma.length + flu.length + copd.length / 2);
+
+		Path asthmaArchive = download(source, "asthma", asthma);
+		Path copdArchive = download(source, "copd", copd);
+		assertEquals(asthmaArchive, download(source, "asthma", asthma));
+		Path fluArchive = download(source, "flu", flu);
+		assertTrue(Files.exists(asthmaArchive));
+		assertFalse(Files.exists(copdArchive));
+		assertTrue(Files.exists(fluArchive));
+		assertEquals("200 200 304 200", String.join(" ", requests));
+
+		assertEquals(copdArchive, download(source, "copd", copd));
+		assertEquals("200", requests.get(requests.size() - 1));
+		assertFalse(Files.exists(asthmaArchive));
+	}
+
+	/**
+	 * Directories of study XML files must be read like archives.
+	 */
+	@Test
+	public void readsDirectoryOfStudies() throws Exception {
+		Path studies = Files.createDirectories(dir.resolve("studies"));
+		try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(newArchive(30)))) {
+			for (ZipEntry entry; (entry = zis.getNextEntry()) != null;) {
+				Path file = studies.resolve(entry.getName().substring(7, 9)).resolve(entry.getName());
+				Files.createDirectories(file.getParent());
+				Files.copy(zis, file);
+			}
+		}
+		Files.write(studies.resolve("README.txt"), new byte[] { 'x' });
+
+		try (StudyArchive archive = new LocalTrialSource(studies).open(null, nctId -> !nctId.endsWith("3"))) {
+			assertEquals(27, archive.size());
+			assertEquals(StudyFixtures.newStudy(0).getIdInfo().getNctId(), archive.getNctId(0));
+			assertEquals(StudyFixtures.newStudy(29).getIdInfo().getNctId(),
+					archive.unmarshal(26).getIdInfo().getNctId());
+		}
+	}
+
+	/**
+	 * Graphs must be built without the network from generated trials.
+	 */
+	@Test
+	public void buildsGraphFromSyntheticTrials() throws Exception {
+		AppGraphMl app = new AppGraphMl();
+		app.setTrialSource(new SyntheticTrialSource(StudyFixtures::newStudy, 100));
+		Graph g = app.generateGraph("anything");
+		assertEquals(100, IteratorUtils.count(g.traversal().V().hasLabel(GraphSchema.VERTEX_LABEL_TRIAL)));
+
+		Graph again = app.generateGraph("anything");
+		assertEquals(IteratorUtils.count(g.vertices()), IteratorUtils.count(again.vertices()));
+		assertEquals(IteratorUtils.count(g.edges()), IteratorUtils.count(again.edges()));
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private HttpTrialSource newHttpSource(int attempts) {
+		return new HttpTrialSource("http://localhost:" + server.getAddress().getPort() + "/download?term=",
+				dir.resolve("cache"), attempts, Long.MAX_VALUE);
+	}
+
+	private Path download(HttpTrialSource source, String searchTerm, byte[] archive) throws IOException {
+		content = archive;
+		etag = "\"" + searchTerm + "\"";
+		return source.download(searchTerm);
+	}
+
+	private static byte[] newArchive(int count) throws Exception {
+		ByteArrayOutputStream archive = new ByteArrayOutputStream();
+		StudyFixtures.writeArchive(archive, count);
+		return archive.toByteArray();
+	}
+
+	/**
+	 * Serves the content with its ETag, answering conditional and range
+	 * requests, and cuts the first responses in half or overstates their
+	 * length if requested.
+	 */
+	private void handleDownload(HttpExchange exchange) throws IOException {
+		byte[] body = content;
+		String currentEtag = etag;
+		try {
+			exchange.getResponseHeaders().set("ETag", currentEtag);
+			if (currentEtag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				requests.add("304");
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			int offset = 0;
+			if (range != null && currentEtag.equals(exchange.getRequestHeaders().getFirst("If-Range"))) {
+				offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+				if (offset >= body.length) {
+					exchange.getResponseHeaders().set("Content-Range", "bytes */" + body.length);
+					requests.add("416 bytes */" + body.length);
+					exchange.sendResponseHeaders(416, -1);
+					return;
+				}
+				String contentRange = "bytes " + offset + "-" + (body.length - 1) + "/" + body.length;
+				exchange.getResponseHeaders().set("Content-Range", contentRange);
+				requests.add("206 " + contentRange);
+				exchange.sendResponseHeaders(206, body.length - offset);
+			} else {
+				requests.add("200");
+				exchange.sendResponseHeaders(200, body.length + (overstatedResponses.get() > 0 ? 1 : 0));
+			}
+			OutputStream out = exchange.getResponseBody();
+			if (truncatedResponses.getAndDecrement() > 0) {
+				// Closing before the end of the body drops the connection.
+				out.write(body, 0, body.length / 2);
+				out.flush();
+				return;
+			}
+			// An overstated length drops the connection after the whole body.
+			overstatedResponses.decrementAndGet();
+			out.write(body, offset, body.length - offset);
+		} finally {
+			exchange.close();
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.sourcepatch.ctviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
+import org.apache.tinkerpop.gremlin.util.iterator.IteratorUtils;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.sourcepatch.ctviz.ctgov.ClinicalStudy;
+
+/**
+ * Unit test and benchmark for {@link VertexRegistry}.
+ */
+public class VertexRegistryTest {
+
+	/**
+	 * 
+	 */
+	@Test
+	public void getOrCreateOnlyCreatesOnce() {
+		VertexRegistry<String> registry = new VertexRegistry<>();
+		AtomicInteger created = new AtomicInteger();
+
+		String v1 = registry.getOrCreate(GraphSchema.VERTEX_LABEL_SPONSOR, "NCI", k -> k + created.incrementAndGet());
+		String v2 = registry.getOrCreate(GraphSchema.VERTEX_LABEL_SPONSOR, "NCI", k -> k + created.incrementAndGet());
+		String v3 = registry.getOrCreate(GraphSchema.VERTEX_LABEL_CONDITION, "NCI", k -> k + created.incrementAndGet());
+
+		assertSame(v1, v2);
+		assertEquals("NCI2", v3);
+		assertEquals(1, registry.size(GraphSchema.VERTEX_LABEL_SPONSOR));
+		assertEquals(1, registry.size(GraphSchema.VERTEX_LABEL_CONDITION));
+		assertEquals(0, registry.size(GraphSchema.VERTEX_LABEL_LOCATION));
+	}
+
+	/**
+	 * Building a graph must find existing vertices in the registry, without
+	 * scanning the graph for them.
+	 */
+	@Test
+	public void graphBuildLooksUpRegisteredVertices() {
+		Graph g = TinkerGraph.open();
+		AtomicInteger scans = new AtomicInteger();
+		StudyGraphBuilder<Vertex, Edge> builder = new AppGraphMl().newGraphBuilder(g);
+		StudyGraphBuilder<Vertex, Edge> scanCounting = new StudyGraphBuilder<>(
+				countScans(builder.getSink(), scans), ConditionDictionary.empty(),
+				new ConditionNormalizer(ConditionDictionary.empty(), ConditionNormalizer.DEFAULT_CACHE_SIZE, null),
+				new HashMap<>());
+		Set<String> cities = new HashSet<>();
+		for (int i = 0; i < 2000; i++) {
+			ClinicalStudy study = StudyFixtures.newStudy(i);
+			study.getLocation().forEach(l -> cities.add(l.getFacility().getAddress().getCity()));
+			scanCounting.addStudy(study);
+		}
+
+		assertEquals(0, scans.get());
+		VertexRegistry<Vertex> registry = scanCounting.getVertexRegistry();
+		for (int i = 0; i < 2000; i++) {
+			String nctId = String.format("NCT%08d", i);
+			assertEquals(nctId, registry.get(GraphSchema.VERTEX_LABEL_TRIAL, nctId)
+					.value(GraphSchema.VERTEX_PROPERTY_NCT_STUDY_ID));
+		}
+
+		assertEquals(2000, registry.size(GraphSchema.VERTEX_LABEL_TRIAL));
+		assertEquals(cities.size(), registry.size(GraphSchema.VERTEX_LABEL_LOCATION));
+		int registered = 0;
+		for (String label : new String[] { GraphSchema.VERTEX_LABEL_CONDITION, GraphSchema.VERTEX_LABEL_INTERVENTION,
+				GraphSchema.VERTEX_LABEL_LOCATION, GraphSchema.VERTEX_LABEL_SPONSOR,
+				GraphSchema.VERTEX_LABEL_TRIAL }) {
+			registered += registry.size(label);
+		}
+		assertEquals(IteratorUtils.count(g.vertices()), registered);
+	}
+
+	/**
+	 * Compares building ten times as many trials, which would cost a
+	 * hundredfold increase with a scan per lookup.
+	 */
+	@Test
+	@Category(Benchmark.class)
+	public void benchmarkGraphBuild() {
+		buildGraph(5000);
+
+		long smallNanos = buildGraph(5000);
+		long largeNanos = buildGraph(50000);
+		System.out.println("5k trials: " + smallNanos / 1000000 + "ms. 50k trials: " + largeNanos / 1000000
+				+ "ms, " + largeNanos / smallNanos + "x the time of 5k trials.");
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private long buildGraph(int trials) {
+		StudyGraphBuilder<Vertex, Edge> builder = new AppGraphMl().newGraphBuilder(TinkerGraph.open());
+
+		long start = System.nanoTime();
+		for (int i = 0; i < trials; i++) {
+			builder.addStudy(StudyFixtures.newStudy(i));
+		}
+		long elapsed = System.nanoTime() - start;
+
+		assertEquals(5000, builder.getVertexRegistry().size(GraphSchema.VERTEX_LABEL_LOCATION));
+		return elapsed;
+	}
+
+	/**
+	 * Counts the calls listing every vertex or edge of the graph.
+	 */
+	@SuppressWarnings("unchecked")
+	private static GraphSink<Vertex, Edge> countScans(GraphSink<Vertex, Edge> sink, AtomicInteger scans) {
+		return (GraphSink<Vertex, Edge>) Proxy.newProxyInstance(GraphSink.class.getClassLoader(),
+				new Class<?>[] { GraphSink.class }, (proxy, method, args) -> {
+					if ((method.getName().equals("getVertices") || method.getName().equals("getEdges"))
+							&& method.getParameterCount() == 0) {
+						scans.incrementAndGet();
+					}
+					try {
+						return method.invoke(sink, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+}